@@ -0,0 +1,112 @@
+package com.gps.tracking.geo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to order a route's stops with {@link TourSolver} against the greedy ordering it replaced.
+ *
+ * The stops are spread at random over a city-sized area (about 45 x 40 km), with a fixed seed. The
+ * greedy variant reproduces how stops were ordered before: nearest neighbour over BigDecimal
+ * coordinates, recomputing the distance to every remaining stop in a stream comparator. Setup
+ * prints the path length each produces, since the solver trades a little time for a shorter path:
+ *
+ * <pre>mvn -Pjmh compile exec:exec -Djmh.args="TourSolver"</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TourSolverBenchmark {
+    private static final long TIME_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Param({"100", "500", "1000"})
+    private int stops;
+
+    private double[] lats;
+    private double[] lons;
+    private List<DecimalStop> decimalStops;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        lats = new double[stops];
+        lons = new double[stops];
+        decimalStops = new ArrayList<>(stops);
+        for (int i = 0; i < stops; i++) {
+            lats[i] = 52.35 + random.nextDouble() * 0.35;
+            lons[i] = 13.10 + random.nextDouble() * 0.60;
+            decimalStops.add(new DecimalStop(i, BigDecimal.valueOf(lats[i]).setScale(8, RoundingMode.HALF_UP),
+                    BigDecimal.valueOf(lons[i]).setScale(8, RoundingMode.HALF_UP)));
+        }
+        int[] greedy = decimalNearestNeighbor().stream().mapToInt(DecimalStop::index).toArray();
+        int[] solved = TourSolver.solve(lats, lons, stops, TIME_BUDGET_NANOS);
+        System.out.printf("%n%d stops: greedy %.1f km, solver %.1f km%n", stops,
+                TourSolver.pathLengthMeters(lats, lons, greedy) / 1000,
+                TourSolver.pathLengthMeters(lats, lons, solved) / 1000);
+    }
+
+    @Benchmark
+    public int[] solve() {
+        return TourSolver.solve(lats, lons, stops, TIME_BUDGET_NANOS);
+    }
+
+    @Benchmark
+    public int[] nearestNeighborOnly() {
+        return TourSolver.solve(lats, lons, stops, 0);
+    }
+
+    @Benchmark
+    public List<DecimalStop> decimalGreedy() {
+        return decimalNearestNeighbor();
+    }
+
+    private List<DecimalStop> decimalNearestNeighbor() {
+        List<DecimalStop> optimized = new ArrayList<>();
+        List<DecimalStop> remaining = new ArrayList<>(decimalStops);
+        DecimalStop current = remaining.remove(0);
+        optimized.add(current);
+        while (!remaining.isEmpty()) {
+            DecimalStop from = current;
+            DecimalStop nearest = remaining.stream()
+                    .min((a, b) -> Double.compare(
+                            distance(from.latitude(), from.longitude(), a.latitude(), a.longitude()),
+                            distance(from.latitude(), from.longitude(), b.latitude(), b.longitude())))
+                    .orElse(remaining.get(0));
+            remaining.remove(nearest);
+            optimized.add(nearest);
+            current = nearest;
+        }
+        return optimized;
+    }
+
+    private static double distance(BigDecimal lat1, BigDecimal lon1, BigDecimal lat2, BigDecimal lon2) {
+        double dLat = Math.toRadians(lat2.doubleValue() - lat1.doubleValue());
+        double dLon = Math.toRadians(lon2.doubleValue() - lon1.doubleValue());
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1.doubleValue())) * Math.cos(Math.toRadians(lat2.doubleValue()))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 6371 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    record DecimalStop(int index, BigDecimal latitude, BigDecimal longitude) {
+    }
+}
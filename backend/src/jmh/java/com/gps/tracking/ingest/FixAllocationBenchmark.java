@@ -0,0 +1,180 @@
+package com.gps.tracking.ingest;
+
+import com.gps.tracking.entity.GpsLocation;
+import com.gps.tracking.entity.SpeedLimit;
+import com.gps.tracking.entity.Vehicle;
+import com.gps.tracking.geo.GeoUtils;
+import com.gps.tracking.service.SpeedEpisodeTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per fix on the ingest path, with BigDecimal/LocalDateTime fixes against {@link Fix}.
+ *
+ * Each benchmark turns one raw fix into the representation the pipeline queues and feeds it to
+ * the speed episode tracker, or converts a fix back to entity columns. The decimal variants
+ * reproduce how fixes were carried before: an entity with BigDecimal columns, and time windows
+ * checked with LocalDateTime and Duration. Run with the GC profiler and compare
+ * gc.alloc.rate.norm, which is bytes allocated per fix:
+ *
+ * <pre>mvn -Pjmh compile exec:exec -Djmh.args="FixAllocation -prof gc"</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FixAllocationBenchmark {
+    private static final int TRACK_LENGTH = 4096;
+    private static final long SECOND_MICROS = 1_000_000L;
+
+    private final UUID vehicleId = UUID.randomUUID();
+    private final Vehicle vehicle = new Vehicle();
+    private final SpeedLimit speedLimit = new SpeedLimit();
+    private final double[] latitudes = new double[TRACK_LENGTH];
+    private final double[] longitudes = new double[TRACK_LENGTH];
+    private final double[] speeds = new double[TRACK_LENGTH];
+
+    private SpeedEpisodeTracker primitiveTracker;
+    private DecimalEpisodeTracker decimalTracker;
+    private long startMicros;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        vehicle.setId(vehicleId);
+        speedLimit.setSpeedLimitKmh(BigDecimal.valueOf(50));
+        // A vehicle driving east at 1 Hz, drifting in and out of the limit so episodes open and close
+        for (int i = 0; i < TRACK_LENGTH; i++) {
+            latitudes[i] = 52.52 + i * 1e-5;
+            longitudes[i] = 13.405 + i * 2e-4;
+            speeds[i] = 45 + 10 * Math.sin(i / 40.0);
+        }
+        primitiveTracker = new SpeedEpisodeTracker(30, 60);
+        decimalTracker = new DecimalEpisodeTracker(Duration.ofSeconds(30), Duration.ofSeconds(60));
+        startMicros = Fix.toMicros(LocalDateTime.of(2024, 1, 1, 0, 0));
+    }
+
+    @Benchmark
+    public Object primitiveObserve() {
+        int i = (int) (sequence % TRACK_LENGTH);
+        long time = startMicros + sequence++ * SECOND_MICROS;
+        Fix fix = new Fix(null, vehicleId, latitudes[i], longitudes[i], speeds[i], 90, time);
+        return primitiveTracker.observe(fix, speedLimit);
+    }
+
+    @Benchmark
+    public Object decimalObserve() {
+        int i = (int) (sequence % TRACK_LENGTH);
+        long time = startMicros + sequence++ * SECOND_MICROS;
+        GpsLocation location = new GpsLocation();
+        location.setVehicle(vehicle);
+        location.setLatitude(BigDecimal.valueOf(Math.round(latitudes[i] * 1e8), 8));
+        location.setLongitude(BigDecimal.valueOf(Math.round(longitudes[i] * 1e8), 8));
+        location.setSpeed(BigDecimal.valueOf(Math.round(speeds[i] * 100), 2));
+        location.setDirection(BigDecimal.valueOf(9000, 2));
+        location.setTimestamp(Fix.toDateTime(time));
+        return decimalTracker.observe(location, location.getSpeed().doubleValue(), speedLimit);
+    }
+
+    @Benchmark
+    public Object primitiveToColumns() {
+        int i = (int) (sequence++ % TRACK_LENGTH);
+        Fix fix = new Fix(null, vehicleId, latitudes[i], longitudes[i], speeds[i], 90, startMicros);
+        return fix.latitudeDecimal().add(fix.longitudeDecimal()).add(fix.speedDecimal());
+    }
+
+    @Benchmark
+    public Object decimalToColumns() {
+        int i = (int) (sequence++ % TRACK_LENGTH);
+        return BigDecimal.valueOf(latitudes[i]).setScale(8, RoundingMode.HALF_UP)
+                .add(BigDecimal.valueOf(longitudes[i]).setScale(8, RoundingMode.HALF_UP))
+                .add(BigDecimal.valueOf(speeds[i]).setScale(2, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * The episode and bucket bookkeeping of {@link SpeedEpisodeTracker} as it was written against
+     * entities: time windows on LocalDateTime and a fresh result per fix.
+     */
+    static final class DecimalEpisodeTracker {
+        private final Duration grace;
+        private final Duration bucket;
+        private final Map<UUID, State> vehicles = new ConcurrentHashMap<>();
+
+        DecimalEpisodeTracker(Duration grace, Duration bucket) {
+            this.grace = grace;
+            this.bucket = bucket;
+        }
+
+        List<Object> observe(GpsLocation location, double speedKmh, SpeedLimit speedLimit) {
+            List<Object> closed = new ArrayList<>();
+            LocalDateTime time = location.getTimestamp();
+            double latitude = location.getLatitude().doubleValue();
+            double longitude = location.getLongitude().doubleValue();
+            double overKmh = speedKmh - speedLimit.getSpeedLimitKmh().doubleValue();
+
+            State state = vehicles.computeIfAbsent(location.getVehicle().getId(), id -> new State());
+            synchronized (state) {
+                if (state.episodeStart != null && time.isAfter(state.lastOverTime.plus(grace))) {
+                    closed.add(Duration.between(state.episodeStart, state.lastOverTime));
+                    state.episodeStart = null;
+                }
+                if (overKmh > 0) {
+                    if (state.episodeStart == null) {
+                        state.episodeStart = time;
+                    } else if (state.lastOver) {
+                        state.distanceOverMeters += GeoUtils.haversineMeters(
+                                state.lastLatitude, state.lastLongitude, latitude, longitude);
+                    }
+                    state.lastOverTime = time;
+                    state.peakLocation = location;
+                }
+                state.lastOver = overKmh > 0;
+                state.lastLatitude = latitude;
+                state.lastLongitude = longitude;
+
+                if (state.bucketStart != null && !time.isBefore(state.bucketStart.plus(bucket))) {
+                    closed.add(state.lastLocation);
+                    state.bucketStart = null;
+                }
+                if (state.bucketStart == null) {
+                    state.bucketStart = time;
+                }
+                state.lastLocation = location;
+            }
+            return closed;
+        }
+
+        private static final class State {
+            private LocalDateTime episodeStart;
+            private LocalDateTime lastOverTime;
+            private LocalDateTime bucketStart;
+            private GpsLocation peakLocation;
+            private GpsLocation lastLocation;
+            private double distanceOverMeters;
+            private double lastLatitude;
+            private double lastLongitude;
+            private boolean lastOver;
+        }
+    }
+}
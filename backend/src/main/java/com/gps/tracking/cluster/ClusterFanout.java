@@ -0,0 +1,398 @@
+package com.gps.tracking.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gps.tracking.dto.response.GeofenceAlertResponse;
+import com.gps.tracking.dto.response.GpsLocationResponse;
+import com.gps.tracking.service.LatestPositionStore;
+import com.gps.tracking.service.LocationBroadcastCoalescer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries live location and alert updates between backend nodes, so a browser sees the whole
+ * fleet whichever node its WebSocket landed on.
+ *
+ * In {@code LOCAL} mode (one node) this does nothing. In {@code POSTGRES} mode each node batches
+ * the updates it produced and publishes them with pg_notify on one channel; every node LISTENs on
+ * a connection of its own and hands other nodes' updates to its {@link LatestPositionStore}, its
+ * broadcast coalescer and its /topic/alerts, exactly as if they had been produced locally. A batch
+ * is sent once it is {@code batch-ms} old or would no longer fit in one notification (PostgreSQL
+ * caps payloads below 8000 bytes); all notifications of one flush go out in a single statement.
+ *
+ * Changes to geofences and speed limit zones go out on the same channel, sent from within the
+ * transaction that makes them so they are delivered only if it commits; every other node then
+ * reloads the entry into its in-memory index (see {@link IndexInvalidatedEvent}).
+ *
+ * Delivery is as reliable as the LISTEN connection: notifications sent while a node is
+ * reconnecting are lost to it, and that node's clients catch up with each vehicle's next fix.
+ * Each time its LISTEN connection is (re)established, a node reloads its indexes in full, since
+ * it may have missed changes.
+ */
+@Component
+@Slf4j
+public class ClusterFanout {
+    public static final String ALERTS_TOPIC = "/topic/alerts";
+
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final LatestPositionStore latestPositionStore;
+    private final LocationBroadcastCoalescer broadcastCoalescer;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final boolean membershipEnabled;
+    private final boolean enabled;
+    private final String channel;
+    private final String nodeId;
+    private final long batchMillis;
+    private final BlockingQueue<Object> outbox;
+
+    private Thread publisher;
+    private Thread listener;
+    private volatile boolean running;
+    private volatile Connection listenConnection;
+
+    private Counter publishedCounter;
+    private Counter notificationsCounter;
+    private Counter receivedCounter;
+    private Counter droppedCounter;
+    private Timer lagTimer;
+
+    public ClusterFanout(DataSource dataSource,
+                         JdbcTemplate jdbcTemplate,
+                         ObjectMapper objectMapper,
+                         LatestPositionStore latestPositionStore,
+                         LocationBroadcastCoalescer broadcastCoalescer,
+                         SimpMessagingTemplate messagingTemplate,
+                         ApplicationEventPublisher eventPublisher,
+                         MeterRegistry meterRegistry,
+                         ClusterMembership membership,
+                         @Value("${gps.cluster.fanout:LOCAL}") String mode,
+                         @Value("${gps.cluster.notify.channel:gps_live_updates}") String channel,
+                         @Value("${gps.cluster.notify.batch-ms:50}") long batchMillis,
+                         @Value("${gps.cluster.notify.queue-capacity:100000}") int queueCapacity) {
+        if (!"LOCAL".equalsIgnoreCase(mode) && !"POSTGRES".equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("gps.cluster.fanout must be LOCAL or POSTGRES");
+        }
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("gps.cluster.notify.channel must be a lowercase identifier");
+        }
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.latestPositionStore = latestPositionStore;
+        this.broadcastCoalescer = broadcastCoalescer;
+        this.messagingTemplate = messagingTemplate;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.membershipEnabled = membership.isEnabled();
+        this.enabled = "POSTGRES".equalsIgnoreCase(mode);
+        this.nodeId = membership.getNodeId();
+        this.channel = channel;
+        this.batchMillis = batchMillis;
+        this.outbox = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            if (membershipEnabled) {
+                log.warn("Cluster membership is enabled but gps.cluster.fanout is LOCAL: live updates and "
+                        + "geofence and speed limit changes stay on the node that made them");
+            }
+            return;
+        }
+        publishedCounter = meterRegistry.counter("gps.cluster.notify.published");
+        notificationsCounter = meterRegistry.counter("gps.cluster.notify.notifications");
+        receivedCounter = meterRegistry.counter("gps.cluster.notify.received");
+        droppedCounter = meterRegistry.counter("gps.cluster.notify.dropped");
+        lagTimer = Timer.builder("gps.cluster.notify.lag")
+                .description("Time from a peer batching an update to this node receiving it")
+                .register(meterRegistry);
+        Gauge.builder("gps.cluster.notify.outbox", outbox, BlockingQueue::size).register(meterRegistry);
+
+        running = true;
+        publisher = new Thread(this::publishLoop, "gps-cluster-notify");
+        listener = new Thread(this::listenLoop, "gps-cluster-listen");
+        publisher.start();
+        listener.start();
+        log.info("Cluster fan-out over PostgreSQL channel {} as node {}", channel, nodeId);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        publisher.interrupt();
+        publisher.join(TimeUnit.SECONDS.toMillis(5));
+        Connection connection = listenConnection;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("Closing the LISTEN connection failed: {}", e.getMessage());
+            }
+        }
+        listener.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Queue a location update produced on this node for the other nodes.
+     */
+    public void publish(GpsLocationResponse location) {
+        offer(location);
+    }
+
+    /**
+     * Queue an alert raised on this node for the other nodes.
+     */
+    public void publish(GeofenceAlertResponse alert) {
+        offer(alert);
+    }
+
+    /**
+     * Tell the other nodes that an entry of an in-memory index changed. Call within the
+     * transaction that changes it: PostgreSQL delivers the notification only once it commits.
+     */
+    public void invalidate(IndexInvalidatedEvent.Index index, UUID id) {
+        if (!enabled) {
+            return;
+        }
+        String payload = "{\"node\":\"" + nodeId + "\",\"sentAt\":" + System.currentTimeMillis()
+                + ",\"invalidations\":[{\"index\":\"" + index + "\",\"id\":\"" + id + "\"}]}";
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> { }, channel, payload);
+    }
+
+    private void offer(Object update) {
+        if (enabled && !outbox.offer(update)) {
+            droppedCounter.increment();
+        }
+    }
+
+    private void publishLoop() {
+        List<Object> batch = new ArrayList<>();
+        while (running || !outbox.isEmpty()) {
+            try {
+                Object first = outbox.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMillis);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    Object next = outbox.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (running) {
+                    continue;
+                }
+                outbox.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<Object> batch) {
+        List<String> payloads = toPayloads(batch);
+        try {
+            jdbcTemplate.query("SELECT pg_notify(?, payload) FROM unnest(?::text[]) AS payload",
+                    rs -> { }, channel, payloads.toArray(String[]::new));
+            publishedCounter.increment(batch.size());
+            notificationsCounter.increment(payloads.size());
+        } catch (RuntimeException e) {
+            droppedCounter.increment(batch.size());
+            log.warn("Could not publish {} live updates to the cluster: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Pack updates into as few notification payloads as fit:
+     * {@code {"node":..,"sentAt":..,"locations":[..],"alerts":[..]}}.
+     */
+    private List<String> toPayloads(List<Object> batch) {
+        List<String> payloads = new ArrayList<>();
+        byte[] head = ("{\"node\":\"" + nodeId + "\",\"sentAt\":" + System.currentTimeMillis() + ",")
+                .getBytes(StandardCharsets.UTF_8);
+        List<byte[]> locations = new ArrayList<>();
+        List<byte[]> alerts = new ArrayList<>();
+        int size = head.length + 32;
+        for (Object update : batch) {
+            byte[] json;
+            try {
+                json = objectMapper.writeValueAsBytes(update);
+            } catch (JsonProcessingException e) {
+                log.error("Could not serialize live update {}", update, e);
+                continue;
+            }
+            if (head.length + 32 + json.length > MAX_PAYLOAD_BYTES) {
+                droppedCounter.increment();
+                log.warn("Live update of {} bytes does not fit in a notification", json.length);
+                continue;
+            }
+            if (size + json.length + 1 > MAX_PAYLOAD_BYTES) {
+                payloads.add(toPayload(head, locations, alerts));
+                locations.clear();
+                alerts.clear();
+                size = head.length + 32;
+            }
+            (update instanceof GeofenceAlertResponse ? alerts : locations).add(json);
+            size += json.length + 1;
+        }
+        if (!locations.isEmpty() || !alerts.isEmpty()) {
+            payloads.add(toPayload(head, locations, alerts));
+        }
+        return payloads;
+    }
+
+    private static String toPayload(byte[] head, List<byte[]> locations, List<byte[]> alerts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(MAX_PAYLOAD_BYTES);
+        out.writeBytes(head);
+        appendArray(out, "locations", locations);
+        out.write(',');
+        appendArray(out, "alerts", alerts);
+        out.write('}');
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void appendArray(ByteArrayOutputStream out, String name, List<byte[]> elements) {
+        out.writeBytes(("\"" + name + "\":[").getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(elements.get(i));
+        }
+        out.write(']');
+    }
+
+    private void listenLoop() {
+        long backoffMillis = 500;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                listenConnection = connection;
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for cluster live updates on {}", channel);
+                backoffMillis = 500;
+                // Changes committed before this point, or while reconnecting, were not heard
+                reloadIndexes();
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cluster LISTEN connection failed, reconnecting in {} ms: {}", backoffMillis, e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, 10_000);
+            } finally {
+                listenConnection = null;
+            }
+        }
+    }
+
+    private void receive(String payload) {
+        try {
+            JsonNode message = objectMapper.readTree(payload);
+            if (nodeId.equals(message.path("node").asText())) {
+                return;
+            }
+            lagTimer.record(Math.max(0, System.currentTimeMillis() - message.path("sentAt").asLong()),
+                    TimeUnit.MILLISECONDS);
+            for (JsonNode node : message.path("locations")) {
+                GpsLocationResponse location = objectMapper.treeToValue(node, GpsLocationResponse.class);
+                latestPositionStore.update(location);
+                broadcastCoalescer.offer(location);
+                receivedCounter.increment();
+            }
+            for (JsonNode node : message.path("alerts")) {
+                messagingTemplate.convertAndSend(ALERTS_TOPIC, objectMapper.treeToValue(node, GeofenceAlertResponse.class));
+                receivedCounter.increment();
+            }
+            for (JsonNode node : message.path("invalidations")) {
+                invalidated(new IndexInvalidatedEvent(IndexInvalidatedEvent.Index.valueOf(node.path("index").asText()),
+                        UUID.fromString(node.path("id").asText())));
+                receivedCounter.increment();
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Ignoring malformed cluster live update: {}", e.getMessage());
+        }
+    }
+
+    private void reloadIndexes() {
+        for (IndexInvalidatedEvent.Index index : IndexInvalidatedEvent.Index.values()) {
+            invalidated(IndexInvalidatedEvent.all(index));
+        }
+    }
+
+    private void invalidated(IndexInvalidatedEvent event) {
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            // Stays stale until the next change to the entry or the next reconnect
+            log.error("Could not reload {} {} after a change on another node: {}",
+                    event.index(), event.isAll() ? "index" : event.id(), e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.gps.tracking.cluster;
+
+import com.gps.tracking.repository.ClusterNodeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Which backend nodes are alive and which of them owns each vehicle.
+ *
+ * With membership enabled, every node writes a heartbeat row to gps_cluster_nodes every
+ * {@code heartbeat-ms} and reads back the nodes heard from within {@code node-timeout-ms}. Vehicles
+ * are assigned to those nodes on a {@link HashRing}; when the set of nodes changes, the ring is
+ * rebuilt and a {@link VehicleOwnershipChangedEvent} is published. A node deletes its row when it
+ * shuts down, so the others take its vehicles over on their next heartbeat instead of after the
+ * timeout.
+ *
+ * Disabled (one node) this node owns every vehicle. Its id, from {@code gps.cluster.node-id} or
+ * random per start, also tags what it publishes to the other nodes.
+ */
+@Component
+@Slf4j
+public class ClusterMembership {
+    private final ClusterNodeRepository nodeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final ClusterNode localNode;
+    private final long heartbeatMillis;
+    private final long nodeTimeoutMillis;
+    private final int virtualNodes;
+    private final Counter rebalanceCounter;
+
+    private volatile HashRing ring;
+    private ScheduledExecutorService heartbeats;
+
+    public ClusterMembership(ClusterNodeRepository nodeRepository,
+                             ApplicationEventPublisher eventPublisher,
+                             MeterRegistry meterRegistry,
+                             @Value("${gps.cluster.membership.enabled:false}") boolean enabled,
+                             @Value("${gps.cluster.node-id:}") String nodeId,
+                             @Value("${gps.cluster.advertised-url:http://localhost:${server.port:8080}}") String advertisedUrl,
+                             @Value("${gps.cluster.heartbeat-ms:2000}") long heartbeatMillis,
+                             @Value("${gps.cluster.node-timeout-ms:10000}") long nodeTimeoutMillis,
+                             @Value("${gps.cluster.virtual-nodes:1024}") int virtualNodes) {
+        if (nodeTimeoutMillis <= heartbeatMillis) {
+            throw new IllegalArgumentException("gps.cluster.node-timeout-ms must be longer than gps.cluster.heartbeat-ms");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("gps.cluster.virtual-nodes must be at least 1");
+        }
+        this.nodeRepository = nodeRepository;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.localNode = new ClusterNode(nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId,
+                advertisedUrl.replaceAll("/+$", ""));
+        this.heartbeatMillis = heartbeatMillis;
+        this.nodeTimeoutMillis = nodeTimeoutMillis;
+        this.virtualNodes = virtualNodes;
+        this.ring = new HashRing(List.of(localNode), virtualNodes);
+        this.rebalanceCounter = meterRegistry.counter("gps.cluster.rebalances");
+        Gauge.builder("gps.cluster.nodes", this, membership -> membership.ring.getNodes().size()).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        // Join before serving, so the first requests are already routed by the full ring
+        heartbeat();
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gps-cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        log.info("Joined cluster as node {} at {}", localNode.id(), localNode.baseUrl());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        heartbeats.shutdown();
+        heartbeats.awaitTermination(5, TimeUnit.SECONDS);
+        try {
+            nodeRepository.delete(localNode.id(), nodeTimeoutMillis * 10);
+            log.info("Left cluster as node {}", localNode.id());
+        } catch (RuntimeException e) {
+            log.warn("Could not remove node {} from the cluster; it expires after {} ms: {}",
+                    localNode.id(), nodeTimeoutMillis, e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return localNode.id();
+    }
+
+    public List<ClusterNode> getNodes() {
+        return ring.getNodes();
+    }
+
+    public ClusterNode owner(UUID vehicleId) {
+        return ring.owner(vehicleId);
+    }
+
+    public boolean isLocal(ClusterNode node) {
+        return localNode.id().equals(node.id());
+    }
+
+    private void heartbeat() {
+        List<ClusterNode> live;
+        try {
+            nodeRepository.heartbeat(localNode.id(), localNode.baseUrl());
+            live = new ArrayList<>(nodeRepository.findLive(nodeTimeoutMillis));
+        } catch (RuntimeException e) {
+            // Keep the current ring; the other nodes drop this one once its heartbeat times out
+            log.warn("Cluster heartbeat failed: {}", e.getMessage());
+            return;
+        }
+        if (live.stream().noneMatch(this::isLocal)) {
+            live.add(localNode);
+        }
+        Set<String> current = ids(ring.getNodes());
+        Set<String> next = ids(live);
+        if (current.equals(next)) {
+            return;
+        }
+        HashRing previous = ring;
+        HashRing rebuilt = new HashRing(live, virtualNodes);
+        ring = rebuilt;
+        rebalanceCounter.increment();
+        log.info("Cluster membership changed: {} nodes, joined {}, left {}", next.size(),
+                next.stream().filter(id -> !current.contains(id)).toList(),
+                current.stream().filter(id -> !next.contains(id)).toList());
+        try {
+            eventPublisher.publishEvent(new VehicleOwnershipChangedEvent(previous, rebuilt, localNode.id()));
+        } catch (RuntimeException e) {
+            // Never let a listener stop the heartbeats
+            log.error("Handing over vehicles after a membership change failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private static Set<String> ids(List<ClusterNode> nodes) {
+        return nodes.stream().map(ClusterNode::id).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,7 @@
+package com.gps.tracking.cluster;
+
+/**
+ * A live backend node: its id and the base URL other nodes forward its vehicles' fixes to.
+ */
+public record ClusterNode(String id, String baseUrl) {
+}
@@ -0,0 +1,369 @@
+package com.gps.tracking.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gps.tracking.dto.request.GpsLocationRequest;
+import com.gps.tracking.dto.response.GpsIngestResponse;
+import com.gps.tracking.dto.response.GpsLocationBatchResponse;
+import com.gps.tracking.exception.ServiceUnavailableException;
+import com.gps.tracking.ingest.Fix;
+import com.gps.tracking.ingest.GpsIngestionPipeline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sends each fix to the node that owns its vehicle (see {@link ClusterMembership}).
+ *
+ * Fixes of vehicles owned here go to the local {@link GpsIngestionPipeline}; the rest are posted
+ * to the owner's same endpoint, one request per owner, all in flight together, and the owners'
+ * responses are merged back by item index. Forwarded requests carry {@link #FORWARDED_HEADER} and
+ * are always stored where they arrive, so a fix is forwarded at most once even while two nodes
+ * briefly disagree about the ring. A fix whose owner cannot be connected to is stored here rather
+ * than lost. Once the request was sent, the owner may have stored it even if the answer never came
+ * back, so a fix whose request times out or fails is reported back as unavailable instead: storing
+ * it here as well could store it twice. When the owner answers with an error, its status and message
+ * are passed on: each of its fixes is rejected with them, to be retried on a 5xx answer only. Other
+ * requests that change a vehicle's state, such as ending its route, are forwarded the same way so
+ * they run on the owner in line with the vehicle's fixes, and the owner's answer is returned as is.
+ *
+ * Ordering holds per node only. When a vehicle moves, its old owner stores the fixes already in its
+ * ingest log before handing the vehicle over, but the new owner does not wait for that: it stores
+ * the vehicle's fresh fixes right away, so for a moment both nodes may be storing fixes of the same
+ * vehicle and they can be committed out of timestamp order. Per-vehicle state starts over on the new
+ * owner either way, loaded from what is stored by its first fix.
+ */
+@Component
+@Slf4j
+public class FixRouter {
+    public static final String FORWARDED_HEADER = "X-Gps-Forwarded-By";
+
+    private static final String LOCATIONS_PATH = "/api/gps-locations";
+
+    private final ClusterMembership membership;
+    private final GpsIngestionPipeline ingestionPipeline;
+    private final ObjectMapper objectMapper;
+    private final Duration timeout;
+    private final HttpClient http;
+    private final Counter forwardedCounter;
+    private final Counter failedCounter;
+
+    public FixRouter(ClusterMembership membership,
+                     GpsIngestionPipeline ingestionPipeline,
+                     ObjectMapper objectMapper,
+                     MeterRegistry meterRegistry,
+                     @Value("${gps.cluster.forward.timeout-ms:5000}") long timeoutMillis) {
+        this.membership = membership;
+        this.ingestionPipeline = ingestionPipeline;
+        this.objectMapper = objectMapper;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.forwardedCounter = meterRegistry.counter("gps.cluster.forward.fixes");
+        this.failedCounter = meterRegistry.counter("gps.cluster.forward.failed");
+    }
+
+    /**
+     * The owner's response to the fix, or empty if it is to be stored on this node.
+     */
+    public Optional<ResponseEntity<String>> forward(GpsLocationRequest request, String forwardedBy) {
+        return forward(request.getVehicleId(), "POST", LOCATIONS_PATH, request, forwardedBy);
+    }
+
+    /**
+     * The owner's response to a request that changes a vehicle's state, or empty if it is to be
+     * handled on this node.
+     */
+    public Optional<ResponseEntity<String>> forward(UUID vehicleId, String method, String path, Object body,
+                                                    String forwardedBy) {
+        ClusterNode owner = remoteOwner(vehicleId, forwardedBy);
+        if (owner == null) {
+            return Optional.empty();
+        }
+        try {
+            HttpResponse<String> response = http.send(request(owner, method, path, body),
+                    HttpResponse.BodyHandlers.ofString());
+            forwardedCounter.increment();
+            return Optional.of(ResponseEntity.status(response.statusCode())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(response.body()));
+        } catch (IOException e) {
+            failedCounter.increment();
+            if (!notDelivered(e)) {
+                log.warn("Forwarding {} {} for vehicle {} to node {} failed: {}",
+                        method, path, vehicleId, owner.id(), e.getMessage());
+                throw new ServiceUnavailableException("Owner node " + owner.id() + " did not answer, retry later");
+            }
+            log.warn("Could not forward {} {} for vehicle {} to node {}, handling it here: {}",
+                    method, path, vehicleId, owner.id(), e.getMessage());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            // The request may be on its way to the owner, so it must not be handled here as well
+            Thread.currentThread().interrupt();
+            failedCounter.increment();
+            throw new ServiceUnavailableException("Interrupted while forwarding to owner node " + owner.id()
+                    + ", retry later");
+        }
+    }
+
+    /**
+     * Store an upload right away on the owners of its vehicles.
+     */
+    public GpsLocationBatchResponse createAll(List<GpsLocationRequest> requests, String forwardedBy) {
+        List<Integer> local = new ArrayList<>();
+        Map<ClusterNode, List<Integer>> remote = split(requests, forwardedBy, local);
+        if (remote.isEmpty()) {
+            return ingestionPipeline.createAll(requests);
+        }
+        Map<ClusterNode, CompletableFuture<GpsLocationBatchResponse>> pending = new LinkedHashMap<>();
+        remote.forEach((node, indexes) -> pending.put(node,
+                send(node, LOCATIONS_PATH + "/batch", select(requests, indexes), GpsLocationBatchResponse.class)));
+
+        GpsLocationBatchResponse response = new GpsLocationBatchResponse();
+        if (!local.isEmpty()) {
+            merge(response, ingestionPipeline.createAll(select(requests, local)), local);
+        }
+        pending.forEach((node, future) -> {
+            List<Integer> indexes = remote.get(node);
+            List<GpsLocationRequest> part = select(requests, indexes);
+            merge(response, await(node, future, () -> ingestionPipeline.createAll(part),
+                    reason -> rejectedBatch(part, reason, true), reason -> rejectedBatch(part, reason, false)), indexes);
+        });
+        response.getAccepted().sort(Comparator.comparingInt(GpsLocationBatchResponse.AcceptedLocation::getIndex));
+        response.getRejected().sort(Comparator.comparingInt(GpsLocationBatchResponse.RejectedLocation::getIndex));
+        response.setAcceptedCount(response.getAccepted().size());
+        response.setRejectedCount(response.getRejected().size());
+        return response;
+    }
+
+    /**
+     * Queue an upload in the ingest logs of the owners of its vehicles.
+     */
+    public GpsIngestResponse submitAll(List<GpsLocationRequest> requests, String forwardedBy) {
+        List<Integer> local = new ArrayList<>();
+        Map<ClusterNode, List<Integer>> remote = split(requests, forwardedBy, local);
+        if (remote.isEmpty()) {
+            return ingestionPipeline.submitAll(requests);
+        }
+        Map<ClusterNode, CompletableFuture<GpsIngestResponse>> pending = new LinkedHashMap<>();
+        remote.forEach((node, indexes) -> pending.put(node,
+                send(node, LOCATIONS_PATH + "/ingest", select(requests, indexes), GpsIngestResponse.class)));
+
+        GpsIngestResponse response = new GpsIngestResponse();
+        if (!local.isEmpty()) {
+            merge(response, ingestionPipeline.submitAll(select(requests, local)), local);
+        }
+        pending.forEach((node, future) -> {
+            List<Integer> indexes = remote.get(node);
+            List<GpsLocationRequest> part = select(requests, indexes);
+            merge(response, await(node, future, () -> ingestionPipeline.submitAll(part),
+                    reason -> rejectedIngest(part, reason, true), reason -> rejectedIngest(part, reason, false)), indexes);
+        });
+        response.getRejected().sort(Comparator.comparingInt(GpsLocationBatchResponse.RejectedLocation::getIndex));
+        response.setRejectedCount(response.getRejected().size());
+        return response;
+    }
+
+    private ClusterNode remoteOwner(UUID vehicleId, String forwardedBy) {
+        if (!membership.isEnabled() || forwardedBy != null || vehicleId == null) {
+            return null;
+        }
+        ClusterNode owner = membership.owner(vehicleId);
+        return membership.isLocal(owner) ? null : owner;
+    }
+
+    /**
+     * Group item indexes by remote owner; items to store here, including invalid ones, go to
+     * {@code local}.
+     */
+    private Map<ClusterNode, List<Integer>> split(List<GpsLocationRequest> requests, String forwardedBy,
+                                                  List<Integer> local) {
+        Map<ClusterNode, List<Integer>> remote = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            GpsLocationRequest request = requests.get(i);
+            ClusterNode owner = request != null ? remoteOwner(request.getVehicleId(), forwardedBy) : null;
+            if (owner == null) {
+                local.add(i);
+            } else {
+                if (request.getTimestamp() == null) {
+                    // Stamped on arrival, so a fix the owner does not confirm can be retried as the same fix
+                    request.setTimestamp(Fix.receivedNow());
+                }
+                remote.computeIfAbsent(owner, node -> new ArrayList<>()).add(i);
+            }
+        }
+        return remote;
+    }
+
+    private <T> CompletableFuture<T> send(ClusterNode node, String path, List<GpsLocationRequest> part, Class<T> type) {
+        return http.sendAsync(post(node, path, Map.of("locations", part)), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    // An ingest answers 503 for fixes it could not get on disk, reporting them per item
+                    boolean partial = response.statusCode() == 503 && type == GpsIngestResponse.class;
+                    if (response.statusCode() / 100 != 2 && !partial) {
+                        throw new OwnerAnswerException(response.statusCode(), message(response.body()));
+                    }
+                    try {
+                        forwardedCounter.increment(part.size());
+                        return objectMapper.readValue(response.body(), type);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * The owner's response. If the request never reached the owner, {@code fallback} stores the
+     * fixes here. If the owner answered with an error, {@code rejected} reports them back with its
+     * status and message; if it did not answer, {@code unavailable} reports them back.
+     */
+    private <T> T await(ClusterNode node, CompletableFuture<T> future, Supplier<T> fallback,
+                        Function<String, T> unavailable, Function<String, T> rejected) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            failedCounter.increment();
+            if (e.getCause() instanceof OwnerAnswerException answer) {
+                log.warn("Node {} answered forwarded fixes with HTTP {}: {}", node.id(), answer.status, answer.getMessage());
+                String reason = "Owner node " + node.id() + " answered HTTP " + answer.status + ": " + answer.getMessage();
+                // A server error may have stored part of them; retrying is safe, a stored fix is not stored again
+                return answer.status >= 500 ? unavailable.apply(reason + ", retry later") : rejected.apply(reason);
+            }
+            String reason = String.valueOf(e.getCause() != null ? e.getCause() : e);
+            if (!notDelivered(e)) {
+                log.warn("Forwarding fixes to node {} failed, reporting them unavailable: {}", node.id(), reason);
+                return unavailable.apply("Owner node " + node.id() + " did not answer, retry later");
+            }
+            log.warn("Could not forward fixes to node {}, storing them here: {}", node.id(), reason);
+            return fallback.get();
+        }
+    }
+
+    // The message of an error answer, or its body when it is not one of ours
+    private String message(byte[] body) {
+        try {
+            JsonNode message = objectMapper.readTree(body).path("message");
+            if (message.isTextual()) {
+                return message.asText();
+            }
+        } catch (IOException e) {
+            // Not JSON
+        }
+        String text = new String(body, StandardCharsets.UTF_8).strip();
+        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    }
+
+    // Refused or timed out while connecting: the owner cannot have seen the request
+    private static boolean notDelivered(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static GpsLocationBatchResponse rejectedBatch(List<GpsLocationRequest> part, String reason,
+                                                          boolean unavailable) {
+        GpsLocationBatchResponse response = new GpsLocationBatchResponse();
+        response.setRejected(rejected(part, reason, unavailable));
+        return response;
+    }
+
+    private static GpsIngestResponse rejectedIngest(List<GpsLocationRequest> part, String reason, boolean unavailable) {
+        GpsIngestResponse response = new GpsIngestResponse();
+        response.setRejected(rejected(part, reason, unavailable));
+        response.setUnavailableCount(unavailable ? part.size() : 0);
+        return response;
+    }
+
+    // Unavailable fixes are retryable; the owner may have stored them, so they carry the timestamp
+    // they were sent with, for the retry
+    private static List<GpsLocationBatchResponse.RejectedLocation> rejected(List<GpsLocationRequest> part,
+                                                                           String reason, boolean unavailable) {
+        List<GpsLocationBatchResponse.RejectedLocation> rejected = new ArrayList<>(part.size());
+        for (int i = 0; i < part.size(); i++) {
+            rejected.add(new GpsLocationBatchResponse.RejectedLocation(i, part.get(i).getVehicleId(), reason,
+                    unavailable ? part.get(i).getTimestamp() : null, unavailable));
+        }
+        return rejected;
+    }
+
+    private HttpRequest post(ClusterNode node, String path, Object body) {
+        return request(node, "POST", path, body);
+    }
+
+    private HttpRequest request(ClusterNode node, String method, String path, Object body) {
+        try {
+            return HttpRequest.newBuilder(URI.create(node.baseUrl() + path))
+                    .timeout(timeout)
+                    .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                    .header(FORWARDED_HEADER, membership.getNodeId())
+                    .method(method, body != null
+                            ? HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body))
+                            : HttpRequest.BodyPublishers.noBody())
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize a request for node " + node.id(), e);
+        }
+    }
+
+    private static List<GpsLocationRequest> select(List<GpsLocationRequest> requests, List<Integer> indexes) {
+        return indexes.stream().map(requests::get).toList();
+    }
+
+    private static void merge(GpsLocationBatchResponse into, GpsLocationBatchResponse part, List<Integer> indexes) {
+        part.getAccepted().forEach(accepted -> accepted.setIndex(indexes.get(accepted.getIndex())));
+        part.getRejected().forEach(rejected -> rejected.setIndex(indexes.get(rejected.getIndex())));
+        into.getAccepted().addAll(part.getAccepted());
+        into.getRejected().addAll(part.getRejected());
+    }
+
+    private static void merge(GpsIngestResponse into, GpsIngestResponse part, List<Integer> indexes) {
+        part.getRejected().forEach(rejected -> rejected.setIndex(indexes.get(rejected.getIndex())));
+        into.getRejected().addAll(part.getRejected());
+        into.setQueuedCount(into.getQueuedCount() + part.getQueuedCount());
+        into.setUnavailableCount(into.getUnavailableCount() + part.getUnavailableCount());
+    }
+
+    /**
+     * An error answer from the owner of forwarded fixes.
+     */
+    private static final class OwnerAnswerException extends RuntimeException {
+        private final int status;
+
+        private OwnerAnswerException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.gps.tracking.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Consistent-hash assignment of vehicles to nodes. Each node is placed on the ring at
+ * {@code virtualNodes} points; a vehicle belongs to the node at the first point at or after its
+ * own hash. A node joining or leaving only moves the vehicles between its points and their
+ * neighbours, about 1/n of the fleet. Immutable; membership changes build a new ring.
+ */
+public final class HashRing {
+    private final List<ClusterNode> nodes;
+    private final long[] points;
+    private final ClusterNode[] owners;
+
+    public HashRing(List<ClusterNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        this.nodes = nodes.stream().sorted(Comparator.comparing(ClusterNode::id)).toList();
+        Point[] placed = new Point[this.nodes.size() * virtualNodes];
+        int count = 0;
+        for (ClusterNode node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                placed[count++] = new Point(hash(node.id() + "#" + i), node);
+            }
+        }
+        Arrays.sort(placed, Comparator.comparingLong(Point::hash));
+        this.points = new long[count];
+        this.owners = new ClusterNode[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = placed[i].hash();
+            owners[i] = placed[i].node();
+        }
+    }
+
+    public List<ClusterNode> getNodes() {
+        return nodes;
+    }
+
+    public ClusterNode owner(UUID vehicleId) {
+        int index = Arrays.binarySearch(points, mix(vehicleId.getMostSignificantBits() ^ vehicleId.getLeastSignificantBits()));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // MurmurHash3 finalizer: spreads the already random UUID bits evenly over the ring
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private record Point(long hash, ClusterNode node) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.gps.tracking.cluster;
+
+import java.util.UUID;
+
+/**
+ * Published on every other node when a node commits a change to a geofence or speed limit zone,
+ * so each node reloads that entry of its in-memory index from the database. Without an id the
+ * whole index is reloaded, which {@link ClusterFanout} asks for after its LISTEN connection was
+ * down and may have missed changes.
+ */
+public record IndexInvalidatedEvent(Index index, UUID id) {
+
+    public enum Index {
+        GEOFENCE,
+        SPEED_LIMIT
+    }
+
+    public static IndexInvalidatedEvent all(Index index) {
+        return new IndexInvalidatedEvent(index, null);
+    }
+
+    public boolean isAll() {
+        return id == null;
+    }
+}
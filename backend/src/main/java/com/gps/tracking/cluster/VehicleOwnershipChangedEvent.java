@@ -0,0 +1,29 @@
+package com.gps.tracking.cluster;
+
+import java.util.UUID;
+
+/**
+ * Published when nodes join or leave and vehicles move between them. Components holding
+ * per-vehicle state keep it only for vehicles this node {@link #keeps}: what it lost belongs to
+ * another node now, and what it gained may have changed there, so both are dropped and the state
+ * of gained vehicles is loaded again on their first fix. The state is dropped per ingest
+ * partition, on {@link com.gps.tracking.ingest.PartitionHandoverEvent}, once the fixes logged
+ * before the change are stored.
+ */
+public record VehicleOwnershipChangedEvent(HashRing previous, HashRing ring, String nodeId) {
+
+    public boolean ownedBefore(UUID vehicleId) {
+        return previous.owner(vehicleId).id().equals(nodeId);
+    }
+
+    public boolean owns(UUID vehicleId) {
+        return ring.owner(vehicleId).id().equals(nodeId);
+    }
+
+    /**
+     * Whether this node owned the vehicle before the change and still does.
+     */
+    public boolean keeps(UUID vehicleId) {
+        return ownedBefore(vehicleId) && owns(vehicleId);
+    }
+}
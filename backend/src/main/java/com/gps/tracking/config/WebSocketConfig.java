@@ -1,21 +1,44 @@
 package com.gps.tracking.config;
 
+import com.gps.tracking.service.WebSocketSessionMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    private final WebSocketSessionMetrics sessionMetrics;
+    private final int outboundThreads;
+    private final int outboundQueueCapacity;
+    private final int sendTimeLimitMillis;
+    private final int sendBufferSizeLimit;
+
+    public WebSocketConfig(WebSocketSessionMetrics sessionMetrics,
+                           @Value("${gps.websocket.outbound.threads:8}") int outboundThreads,
+                           @Value("${gps.websocket.outbound.queue-capacity:10000}") int outboundQueueCapacity,
+                           @Value("${gps.websocket.send-time-limit-ms:5000}") int sendTimeLimitMillis,
+                           @Value("${gps.websocket.send-buffer-size-limit:262144}") int sendBufferSizeLimit) {
+        this.sessionMetrics = sessionMetrics;
+        this.outboundThreads = outboundThreads;
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+    }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Enable a simple in-memory message broker to carry messages back to clients
-        config.enableSimpleBroker("/topic");
+        config.enableSimpleBroker("/topic", "/queue");
         // Prefix for messages bound to methods annotated with @MessageMapping
         config.setApplicationDestinationPrefixes("/app");
+        // Per-session queues: a client subscribes to /user/queue/locations
+        config.setUserDestinationPrefix("/user");
     }
 
     @Override
@@ -25,5 +48,23 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
-}
 
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // A session that cannot take a message within the time limit, or whose unsent messages
+        // exceed the buffer limit, is closed rather than left to hold up the outbound pool
+        registration.setSendTimeLimit(sendTimeLimitMillis)
+                .setSendBufferSizeLimit(sendBufferSizeLimit);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Fixed pool with a bounded queue: a backlog shows up as queued messages (and a longer
+        // broadcast tick) instead of an ever-growing heap
+        registration.taskExecutor()
+                .corePoolSize(outboundThreads)
+                .maxPoolSize(outboundThreads)
+                .queueCapacity(outboundQueueCapacity);
+        registration.interceptors(sessionMetrics);
+    }
+}
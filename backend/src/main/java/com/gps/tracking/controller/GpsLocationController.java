@@ -1,18 +1,31 @@
 package com.gps.tracking.controller;
 
+import com.gps.tracking.cluster.FixRouter;
+import com.gps.tracking.dto.request.GpsLocationBatchRequest;
 import com.gps.tracking.dto.request.GpsLocationRequest;
+import com.gps.tracking.dto.response.GpsIngestResponse;
+import com.gps.tracking.dto.response.GpsLocationBatchResponse;
+import com.gps.tracking.dto.response.GpsLocationPageResponse;
 import com.gps.tracking.dto.response.GpsLocationResponse;
+import com.gps.tracking.dto.response.GpsLocationRollupResponse;
 import com.gps.tracking.exception.ResourceNotFoundException;
+import com.gps.tracking.ingest.GpsIngestionPipeline;
 import com.gps.tracking.service.GpsLocationService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataAccessException;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.TransactionException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -21,15 +34,54 @@ import java.util.UUID;
 @CrossOrigin(origins = "*")
 public class GpsLocationController {
     private final GpsLocationService locationService;
+    private final GpsIngestionPipeline ingestionPipeline;
+    private final FixRouter fixRouter;
 
     @PostMapping
-    public ResponseEntity<GpsLocationResponse> createLocation(@Valid @RequestBody GpsLocationRequest request) {
-        return ResponseEntity.status(HttpStatus.CREATED).body(locationService.createLocation(request));
+    public ResponseEntity<?> createLocation(@Valid @RequestBody GpsLocationRequest request,
+                                            @RequestHeader(value = FixRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        Optional<ResponseEntity<String>> forwarded = fixRouter.forward(request, forwardedBy);
+        if (forwarded.isPresent()) {
+            return forwarded.get();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(ingestionPipeline.create(request));
+        } catch (DataAccessException | TransactionException e) {
+            // Database unavailable: keep the fix in the ingest log and store it once the database is back;
+            // anything else would fail again on replay, so report it
+            if (!GpsIngestionPipeline.isTransient(e) || !ingestionPipeline.submit(request)) {
+                throw e;
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(new GpsIngestResponse(1, 0, 0, new ArrayList<>()));
+        }
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<GpsLocationBatchResponse> createLocations(@Valid @RequestBody GpsLocationBatchRequest request,
+                                                                    @RequestHeader(value = FixRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return ResponseEntity.ok(fixRouter.createAll(request.getLocations(), forwardedBy));
+    }
+
+    @PostMapping("/ingest")
+    public ResponseEntity<GpsIngestResponse> ingestLocations(@Valid @RequestBody GpsLocationBatchRequest request,
+                                                             @RequestHeader(value = FixRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        GpsIngestResponse response = fixRouter.submitAll(request.getLocations(), forwardedBy);
+        // Fixes not on disk yet were not acknowledged; tell the tracker to retry them, repeats are stored once
+        return ResponseEntity.status(response.getUnavailableCount() > 0 ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.ACCEPTED)
+                .body(response);
+    }
+
+    @GetMapping("/latest")
+    public ResponseEntity<List<GpsLocationResponse>> getLatestLocations(
+            @RequestParam(required = false) List<UUID> vehicleIds) {
+        return ResponseEntity.ok(locationService.getLatestLocations(vehicleIds));
     }
 
     @GetMapping("/vehicle/{vehicleId}")
-    public ResponseEntity<List<GpsLocationResponse>> getLocationsByVehicle(@PathVariable UUID vehicleId) {
-        return ResponseEntity.ok(locationService.getLocationsByVehicle(vehicleId));
+    public ResponseEntity<List<GpsLocationResponse>> getLocationsByVehicle(
+            @PathVariable UUID vehicleId,
+            @RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(locationService.getLocationsByVehicle(vehicleId, limit));
     }
 
     @GetMapping("/vehicle/{vehicleId}/latest")
@@ -45,10 +97,39 @@ public class GpsLocationController {
     public ResponseEntity<List<GpsLocationResponse>> getLocationHistory(
             @PathVariable UUID vehicleId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
-        return ResponseEntity.ok(locationService.getLocationHistory(vehicleId, startTime, endTime));
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(required = false) Double toleranceMeters,
+            @RequestParam(required = false) Integer zoom) {
+        return ResponseEntity.ok(locationService.getLocationHistory(vehicleId, startTime, endTime, toleranceMeters, zoom));
     }
-}
 
+    @GetMapping("/vehicle/{vehicleId}/history/page")
+    public ResponseEntity<GpsLocationPageResponse> getLocationPage(
+            @PathVariable UUID vehicleId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(locationService.getLocationPage(vehicleId, startTime, endTime, cursor,
+                "desc".equalsIgnoreCase(order), limit));
+    }
 
+    @GetMapping(value = "/vehicle/{vehicleId}/history/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamLocationHistory(
+            @PathVariable UUID vehicleId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(locationService.streamLocationHistory(vehicleId, startTime, endTime));
+    }
 
+    @GetMapping("/vehicle/{vehicleId}/rollups")
+    public ResponseEntity<List<GpsLocationRollupResponse>> getLocationRollups(
+            @PathVariable UUID vehicleId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+        return ResponseEntity.ok(locationService.getLocationRollups(vehicleId, startTime, endTime));
+    }
+}
@@ -0,0 +1,34 @@
+package com.gps.tracking.controller;
+
+import com.gps.tracking.dto.request.LocationSubscriptionRequest;
+import com.gps.tracking.service.LocationBroadcastCoalescer;
+import com.gps.tracking.service.LocationSubscriptionIndex;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+
+/**
+ * STOMP endpoints through which a client narrows its live location feed to what it can render.
+ * Clients send their viewport again whenever the map is panned or zoomed, and get a snapshot of
+ * the vehicles now in view each time.
+ */
+@Controller
+@RequiredArgsConstructor
+public class LocationSubscriptionController {
+    private final LocationSubscriptionIndex subscriptionIndex;
+    private final LocationBroadcastCoalescer broadcastCoalescer;
+
+    @MessageMapping("/locations/subscription")
+    public void subscribe(@Valid @Payload LocationSubscriptionRequest request, SimpMessageHeaderAccessor headers) {
+        subscriptionIndex.subscribe(headers.getSessionId(), request);
+        broadcastCoalescer.sync(headers.getSessionId(), request.getEpoch(), request.getSinceVersion());
+    }
+
+    @MessageMapping("/locations/unsubscription")
+    public void unsubscribe(SimpMessageHeaderAccessor headers) {
+        subscriptionIndex.unsubscribe(headers.getSessionId());
+    }
+}
@@ -1,12 +1,16 @@
 package com.gps.tracking.controller;
 
+import com.gps.tracking.cluster.FixRouter;
+import com.gps.tracking.dto.response.RouteProgressResponse;
 import com.gps.tracking.dto.response.RouteResponse;
+import com.gps.tracking.ingest.GpsIngestionPipeline;
 import com.gps.tracking.service.RouteService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -15,6 +19,8 @@ import java.util.UUID;
 @CrossOrigin(origins = "*")
 public class RouteController {
     private final RouteService routeService;
+    private final FixRouter fixRouter;
+    private final GpsIngestionPipeline ingestionPipeline;
 
     @GetMapping
     public ResponseEntity<List<RouteResponse>> getAllRoutes() {
@@ -26,16 +32,29 @@ public class RouteController {
         return ResponseEntity.ok(routeService.getRouteById(id));
     }
 
+    @GetMapping("/{id}/progress")
+    public ResponseEntity<RouteProgressResponse> getRouteProgress(@PathVariable UUID id) {
+        return ResponseEntity.ok(routeService.getRouteProgress(id));
+    }
+
     @GetMapping("/vehicle/{vehicleId}")
     public ResponseEntity<List<RouteResponse>> getRoutesByVehicle(@PathVariable UUID vehicleId) {
         return ResponseEntity.ok(routeService.getRoutesByVehicle(vehicleId));
     }
 
     @PutMapping("/{id}/end")
-    public ResponseEntity<RouteResponse> endRoute(
+    public ResponseEntity<?> endRoute(
             @PathVariable UUID id,
-            @RequestParam UUID endLocationId) {
-        return ResponseEntity.ok(routeService.endRoute(id, endLocationId));
+            @RequestParam UUID endLocationId,
+            @RequestHeader(value = FixRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        // Ended where the vehicle's fixes are stored, in line with them
+        UUID vehicleId = routeService.getRouteById(id).getVehicleId();
+        Optional<ResponseEntity<String>> forwarded = fixRouter.forward(vehicleId, "PUT",
+                "/api/routes/" + id + "/end?endLocationId=" + endLocationId, null, forwardedBy);
+        if (forwarded.isPresent()) {
+            return forwarded.get();
+        }
+        return ResponseEntity.ok(ingestionPipeline.execute(vehicleId, () -> routeService.endRoute(id, endLocationId)));
     }
 }
 
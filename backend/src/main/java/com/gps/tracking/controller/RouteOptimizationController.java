@@ -1,8 +1,10 @@
 package com.gps.tracking.controller;
 
+import com.gps.tracking.cluster.FixRouter;
 import com.gps.tracking.dto.request.OptimizedRouteRequest;
 import com.gps.tracking.dto.response.OptimizedRouteResponse;
 import com.gps.tracking.entity.RouteExecution;
+import com.gps.tracking.ingest.GpsIngestionPipeline;
 import com.gps.tracking.service.RouteOptimizationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -16,7 +18,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/route-optimization")
@@ -26,6 +30,8 @@ import java.util.UUID;
 public class RouteOptimizationController {
     
     private final RouteOptimizationService routeOptimizationService;
+    private final FixRouter fixRouter;
+    private final GpsIngestionPipeline ingestionPipeline;
     
     @PostMapping("/routes")
     @Operation(summary = "Create optimized route", description = "Create a new optimized route with multiple stops")
@@ -67,25 +73,29 @@ public class RouteOptimizationController {
     
     @PostMapping("/routes/{id}/start")
     @Operation(summary = "Start route execution", description = "Start executing a planned route")
-    public ResponseEntity<OptimizedRouteResponse> startRoute(
-            @Parameter(description = "Route ID") @PathVariable UUID id) {
-        OptimizedRouteResponse response = routeOptimizationService.startRoute(id);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<?> startRoute(
+            @Parameter(description = "Route ID") @PathVariable UUID id,
+            @RequestHeader(value = FixRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return onVehiclePartition(id, "/api/route-optimization/routes/" + id + "/start", forwardedBy,
+                () -> routeOptimizationService.startRoute(id));
     }
     
     @PostMapping("/routes/{id}/complete")
     @Operation(summary = "Complete route execution", description = "Mark a route as completed and calculate final metrics")
-    public ResponseEntity<OptimizedRouteResponse> completeRoute(
-            @Parameter(description = "Route ID") @PathVariable UUID id) {
-        OptimizedRouteResponse response = routeOptimizationService.completeRoute(id);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<?> completeRoute(
+            @Parameter(description = "Route ID") @PathVariable UUID id,
+            @RequestHeader(value = FixRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return onVehiclePartition(id, "/api/route-optimization/routes/" + id + "/complete", forwardedBy,
+                () -> routeOptimizationService.completeRoute(id));
     }
     
     @GetMapping("/routes/{id}/execution")
-    @Operation(summary = "Get route execution data", description = "Get detailed execution data for route replay")
+    @Operation(summary = "Get route execution data", description = "Get execution data for route replay, optionally simplified for display")
     public ResponseEntity<List<RouteExecution>> getRouteExecution(
-            @Parameter(description = "Route ID") @PathVariable UUID id) {
-        List<RouteExecution> execution = routeOptimizationService.getRouteExecution(id);
+            @Parameter(description = "Route ID") @PathVariable UUID id,
+            @Parameter(description = "Simplification tolerance in meters") @RequestParam(required = false) Double toleranceMeters,
+            @Parameter(description = "Map zoom level; simplifies to one pixel at that zoom") @RequestParam(required = false) Integer zoom) {
+        List<RouteExecution> execution = routeOptimizationService.getRouteExecution(id, toleranceMeters, zoom);
         return ResponseEntity.ok(execution);
     }
     
@@ -102,4 +112,18 @@ public class RouteOptimizationController {
     public ResponseEntity<String> healthCheck() {
         return ResponseEntity.ok("Route optimization service is running");
     }
-}
\ No newline at end of file
+    
+    // Started and completed where the vehicle's fixes are tracked, in line with them
+    private ResponseEntity<?> onVehiclePartition(UUID routeId, String path, String forwardedBy,
+                                                 Supplier<OptimizedRouteResponse> action) {
+        UUID vehicleId = routeOptimizationService.getRouteById(routeId).getVehicleId();
+        if (vehicleId == null) {
+            return ResponseEntity.ok(action.get());
+        }
+        Optional<ResponseEntity<String>> forwarded = fixRouter.forward(vehicleId, "POST", path, null, forwardedBy);
+        if (forwarded.isPresent()) {
+            return forwarded.get();
+        }
+        return ResponseEntity.ok(ingestionPipeline.execute(vehicleId, action));
+    }
+}
@@ -0,0 +1,26 @@
+package com.gps.tracking.controller;
+
+import com.gps.tracking.dto.response.WebSocketSessionStatsResponse;
+import com.gps.tracking.service.WebSocketSessionMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/websocket")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class WebSocketSessionController {
+
+    private final WebSocketSessionMetrics sessionMetrics;
+
+    /**
+     * Outbound queue depth and send latency of each open live-update session, most backed-up first.
+     */
+    @GetMapping("/sessions")
+    public ResponseEntity<List<WebSocketSessionStatsResponse>> getSessions() {
+        return ResponseEntity.ok(sessionMetrics.snapshot());
+    }
+}
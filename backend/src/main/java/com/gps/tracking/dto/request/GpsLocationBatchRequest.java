@@ -0,0 +1,16 @@
+package com.gps.tracking.dto.request;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class GpsLocationBatchRequest {
+    // Items are validated one by one in the service so a single bad fix
+    // only rejects itself instead of the whole upload
+    @NotEmpty(message = "At least one location is required")
+    @Size(max = 1000, message = "A batch may contain at most 1000 locations")
+    private List<GpsLocationRequest> locations;
+}
@@ -1,5 +1,7 @@
 package com.gps.tracking.dto.request;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 
@@ -18,8 +20,15 @@ public class GpsLocationRequest {
     @NotNull(message = "Longitude is required")
     private BigDecimal longitude;
 
+    @DecimalMin(value = "0.0", message = "Speed must be between 0 and 999.99")
+    @DecimalMax(value = "999.99", message = "Speed must be between 0 and 999.99")
     private BigDecimal speed;
+
+    @DecimalMin(value = "0.0", message = "Direction must be between 0 and 360")
+    @DecimalMax(value = "360.0", message = "Direction must be between 0 and 360")
     private BigDecimal direction;
+
+
     private LocalDateTime timestamp;
 }
 
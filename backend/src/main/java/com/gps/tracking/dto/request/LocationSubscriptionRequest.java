@@ -0,0 +1,48 @@
+package com.gps.tracking.dto.request;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Live location filter sent by a WebSocket client to /app/locations/subscription.
+ *
+ * The client receives, on /user/queue/locations, updates for vehicles inside the viewport plus
+ * updates for the listed vehicles wherever they are. Either part may be omitted. A viewport whose
+ * west edge is east of its east edge crosses the antimeridian. Setting a filter answers with a
+ * snapshot of the vehicles it matches.
+ */
+@Data
+public class LocationSubscriptionRequest {
+    @DecimalMin(value = "-90.0", message = "Latitude must be between -90 and 90")
+    @DecimalMax(value = "90.0", message = "Latitude must be between -90 and 90")
+    private Double south;
+
+    @DecimalMin(value = "-180.0", message = "Longitude must be between -180 and 180")
+    @DecimalMax(value = "180.0", message = "Longitude must be between -180 and 180")
+    private Double west;
+
+    @DecimalMin(value = "-90.0", message = "Latitude must be between -90 and 90")
+    @DecimalMax(value = "90.0", message = "Latitude must be between -90 and 90")
+    private Double north;
+
+    @DecimalMin(value = "-180.0", message = "Longitude must be between -180 and 180")
+    @DecimalMax(value = "180.0", message = "Longitude must be between -180 and 180")
+    private Double east;
+
+    @Size(max = 1000, message = "At most 1000 vehicles can be followed")
+    private Set<UUID> vehicleIds;
+
+    // Set when resending the same filter after a reconnect: the stream epoch and last version the
+    // client saw, so it is sent only what changed since instead of a new snapshot
+    private String epoch;
+    private Long sinceVersion;
+
+    public boolean hasViewport() {
+        return south != null && west != null && north != null && east != null;
+    }
+}
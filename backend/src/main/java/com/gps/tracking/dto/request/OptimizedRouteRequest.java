@@ -3,6 +3,7 @@ package com.gps.tracking.dto.request;
 import com.gps.tracking.entity.OptimizedRoute;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 
 import java.math.BigDecimal;
@@ -27,6 +28,7 @@ public class OptimizedRouteRequest {
     private OptimizedRoute.OptimizationType optimizationType;
     
     @NotNull(message = "Route stops are required")
+    @Size(max = 1000, message = "A route may have at most 1000 stops")
     private List<RouteStopRequest> stops;
     
     private LocalDateTime plannedStartTime;
@@ -1,8 +1,10 @@
 package com.gps.tracking.dto.response;
 
 import com.gps.tracking.entity.GeofenceAlert;
-import lombok.Data;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -10,6 +12,8 @@ import java.util.UUID;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class GeofenceAlertResponse {
     
     private UUID id;
@@ -0,0 +1,21 @@
+package com.gps.tracking.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GpsIngestResponse {
+    private int queuedCount;
+    private int rejectedCount;
+    // Rejected because the ingest log could not be flushed in time; they may still be stored,
+    // and sending them again with the timestamp in their rejection is safe, a repeat of a stored
+    // fix is not stored twice
+    private int unavailableCount;
+    private List<GpsLocationBatchResponse.RejectedLocation> rejected = new ArrayList<>();
+}
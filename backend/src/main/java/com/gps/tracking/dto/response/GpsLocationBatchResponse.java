@@ -0,0 +1,48 @@
+package com.gps.tracking.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GpsLocationBatchResponse {
+    private int acceptedCount;
+    private int rejectedCount;
+    private List<AcceptedLocation> accepted = new ArrayList<>();
+    private List<RejectedLocation> rejected = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AcceptedLocation {
+        private int index;
+        private UUID id;
+        // As stored: the uploaded timestamp, or the receive time if the fix had none
+        private LocalDateTime timestamp;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RejectedLocation {
+        private int index;
+        private UUID vehicleId;
+        private String reason;
+        // For a fix that may be stored already: the timestamp to send it again with
+        private LocalDateTime timestamp;
+        // Turned away for now, by a full queue or an unavailable log or owner node, rather than
+        // invalid; sending it again may succeed
+        private boolean retryable;
+
+        public RejectedLocation(int index, UUID vehicleId, String reason) {
+            this(index, vehicleId, reason, null, false);
+        }
+    }
+}
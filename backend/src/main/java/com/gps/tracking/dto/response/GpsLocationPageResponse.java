@@ -0,0 +1,16 @@
+package com.gps.tracking.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GpsLocationPageResponse {
+    private List<GpsLocationResponse> items;
+    private String nextCursor;
+    private boolean hasMore;
+}
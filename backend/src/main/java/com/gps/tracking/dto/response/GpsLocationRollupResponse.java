@@ -0,0 +1,26 @@
+package com.gps.tracking.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GpsLocationRollupResponse {
+    private UUID vehicleId;
+    private LocalDateTime bucketStart;
+    private int pointCount;
+    private BigDecimal avgSpeed;
+    private BigDecimal maxSpeed;
+    private LocalDateTime firstTime;
+    private BigDecimal firstLatitude;
+    private BigDecimal firstLongitude;
+    private LocalDateTime lastTime;
+    private BigDecimal lastLatitude;
+    private BigDecimal lastLongitude;
+}
@@ -0,0 +1,25 @@
+package com.gps.tracking.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteProgressResponse {
+    private UUID routeId;
+    private UUID vehicleId;
+    private String status;
+    private LocalDateTime startTime;
+    private LocalDateTime lastFixTime;
+    private BigDecimal distanceKm;
+    private int pointCount;
+    private BigDecimal maxSpeedKmh;
+    private BigDecimal avgSpeedKmh;
+    private long movingSeconds;
+}
@@ -0,0 +1,19 @@
+package com.gps.tracking.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketSessionStatsResponse {
+    private String sessionId;
+    private LocalDateTime connectedAt;
+    private int queued;
+    private long sent;
+    private double meanSendMillis;
+    private double maxSendMillis;
+}
@@ -44,6 +44,28 @@ public class Route {
     @Column(precision = 10, scale = 2)
     private BigDecimal distanceKm;
 
+    // Running trip statistics, checkpointed from RouteProgressTracker
+    @Column(nullable = false)
+    private Integer pointCount = 0;
+
+    @Column(precision = 5, scale = 2)
+    private BigDecimal maxSpeedKmh;
+
+    @Column(precision = 5, scale = 2)
+    private BigDecimal avgSpeedKmh;
+
+    @Column(nullable = false)
+    private Long movingSeconds = 0L;
+
+    @Column
+    private LocalDateTime lastFixTime;
+
+    @Column(precision = 10, scale = 8)
+    private BigDecimal lastLatitude;
+
+    @Column(precision = 11, scale = 8)
+    private BigDecimal lastLongitude;
+
     @Column(nullable = false, length = 20)
     private String status = "IN_PROGRESS";
 }
@@ -52,6 +52,9 @@ public class RouteExecution {
     @Column(precision = 8, scale = 3)
     private BigDecimal cumulativeDistanceKm;
     
+    @Column(precision = 8, scale = 3)
+    private BigDecimal progressKm;
+    
     @Column(nullable = false)
     private LocalDateTime timestamp;
     
@@ -0,0 +1,54 @@
+package com.gps.tracking.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One precomputed level of detail of a completed route's recorded track: the execution points
+ * kept by Douglas-Peucker at the level's tolerance, identified by their sequence numbers.
+ */
+@Entity
+@Table(name = "route_track_levels")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RouteTrackLevel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "optimized_route_id", nullable = false)
+    private OptimizedRoute optimizedRoute;
+
+    @Column(nullable = false)
+    private Integer level;
+
+    @Column(nullable = false, precision = 10, scale = 2)
+    private BigDecimal toleranceMeters;
+
+    @Column(nullable = false, precision = 10, scale = 8)
+    private BigDecimal referenceLatitude;
+
+    @Column(nullable = false)
+    private Integer pointCount;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(nullable = false, columnDefinition = "integer[]")
+    private int[] sequenceNumbers;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
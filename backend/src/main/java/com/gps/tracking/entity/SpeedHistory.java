@@ -39,6 +39,12 @@ public class SpeedHistory {
     @Column(name = "speed_kmh", nullable = false, precision = 5, scale = 2)
     private BigDecimal speedKmh;
     
+    @Column(name = "max_speed_kmh", precision = 5, scale = 2)
+    private BigDecimal maxSpeedKmh;
+    
+    @Column(name = "sample_count", nullable = false)
+    private Integer sampleCount = 1;
+    
     @Column(nullable = false, precision = 10, scale = 8)
     private BigDecimal latitude;
     
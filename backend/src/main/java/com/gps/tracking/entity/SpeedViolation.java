@@ -49,6 +49,19 @@ public class SpeedViolation {
     @Column(name = "speed_over_limit_kmh", nullable = false, precision = 5, scale = 2)
     private BigDecimal speedOverLimitKmh;
     
+    // Overspeed episode covered by this violation
+    @Column(name = "episode_end_time")
+    private LocalDateTime episodeEndTime;
+    
+    @Column(name = "duration_seconds")
+    private Integer durationSeconds;
+    
+    @Column(name = "distance_over_limit_meters", precision = 10, scale = 2)
+    private BigDecimal distanceOverLimitMeters;
+    
+    @Column(name = "sample_count")
+    private Integer sampleCount;
+    
     @Enumerated(EnumType.STRING)
     @Column(name = "violation_severity", nullable = false)
     private ViolationSeverity violationSeverity = ViolationSeverity.MINOR;
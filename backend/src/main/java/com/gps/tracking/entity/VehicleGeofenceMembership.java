@@ -0,0 +1,34 @@
+package com.gps.tracking.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "vehicle_geofence_memberships")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VehicleGeofenceMembership {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private UUID id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "vehicle_id", nullable = false)
+    private Vehicle vehicle;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "geofence_id", nullable = false)
+    private Geofence geofence;
+    
+    @Column(name = "entered_at", nullable = false)
+    private LocalDateTime enteredAt;
+}
@@ -0,0 +1,7 @@
+package com.gps.tracking.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
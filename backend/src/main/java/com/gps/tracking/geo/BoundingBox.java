@@ -0,0 +1,21 @@
+package com.gps.tracking.geo;
+
+/**
+ * Latitude/longitude aligned rectangle, in degrees.
+ */
+public record BoundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+
+    public boolean contains(double lat, double lon) {
+        return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+
+    public boolean intersects(BoundingBox other) {
+        return other.minLat <= maxLat && other.maxLat >= minLat
+                && other.minLon <= maxLon && other.maxLon >= minLon;
+    }
+
+    public BoundingBox union(BoundingBox other) {
+        return new BoundingBox(Math.min(minLat, other.minLat), Math.min(minLon, other.minLon),
+                Math.max(maxLat, other.maxLat), Math.max(maxLon, other.maxLon));
+    }
+}
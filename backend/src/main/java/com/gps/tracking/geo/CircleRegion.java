@@ -0,0 +1,29 @@
+package com.gps.tracking.geo;
+
+/**
+ * Circle given by a center point and a radius in meters.
+ */
+public final class CircleRegion implements Region {
+    private final double centerLat;
+    private final double centerLon;
+    private final double radiusMeters;
+    private final BoundingBox bounds;
+
+    public CircleRegion(double centerLat, double centerLon, double radiusMeters) {
+        this.centerLat = centerLat;
+        this.centerLon = centerLon;
+        this.radiusMeters = radiusMeters;
+        this.bounds = GeoUtils.circleBounds(centerLat, centerLon, radiusMeters);
+    }
+
+    @Override
+    public BoundingBox bounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean contains(double lat, double lon) {
+        return bounds.contains(lat, lon)
+                && GeoUtils.haversineMeters(centerLat, centerLon, lat, lon) <= radiusMeters;
+    }
+}
@@ -0,0 +1,42 @@
+package com.gps.tracking.geo;
+
+/**
+ * Plain double geometry helpers shared by the in-memory spatial engines.
+ */
+public final class GeoUtils {
+    public static final double EARTH_RADIUS_METERS = 6_371_000d;
+    public static final double METERS_PER_DEGREE_LATITUDE = 111_320d;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * Great-circle distance between two points, in meters.
+     */
+    public static double haversineMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLon = Math.sin(dLon / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Meters covered by one degree of longitude at the given latitude, never below 1 m
+     * so it is safe to divide by near the poles.
+     */
+    public static double metersPerDegreeLongitude(double latitude) {
+        return Math.max(1d, METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(latitude)));
+    }
+
+    /**
+     * Bounding box of a circle, widened slightly so the exact distance check stays authoritative.
+     */
+    public static BoundingBox circleBounds(double centerLat, double centerLon, double radiusMeters) {
+        double dLat = radiusMeters / METERS_PER_DEGREE_LATITUDE * 1.01;
+        double dLon = radiusMeters / metersPerDegreeLongitude(Math.abs(centerLat) + dLat) * 1.01;
+        return new BoundingBox(centerLat - dLat, centerLon - dLon, centerLat + dLat, centerLon + dLon);
+    }
+}
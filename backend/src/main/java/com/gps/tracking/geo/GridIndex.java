@@ -0,0 +1,170 @@
+package com.gps.tracking.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Uniform latitude/longitude grid over bounding boxes.
+ *
+ * Every entry is registered in each cell its box overlaps, so a point lookup reads exactly one
+ * cell and then filters by box. Entries whose box would span more than {@code maxCellsPerEntry}
+ * cells are kept in a separate list that every lookup scans, which keeps country-sized shapes
+ * from flooding the grid. Cells are copy-on-write arrays: lookups never lock, while writers
+ * (shape changes, which are rare) are serialized.
+ */
+public class GridIndex<K, V> {
+    private final double cellSizeDegrees;
+    private final long columns;
+    private final int maxCellsPerEntry;
+
+    private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Entry<K, V>[]> cells = new ConcurrentHashMap<>();
+    private volatile Entry<K, V>[] oversized = newArray(0);
+
+    public GridIndex(double cellSizeDegrees, int maxCellsPerEntry) {
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.columns = (long) Math.ceil(360d / cellSizeDegrees) + 1;
+        this.maxCellsPerEntry = maxCellsPerEntry;
+    }
+
+    public synchronized void put(K key, BoundingBox bounds, V value) {
+        remove(key);
+        Entry<K, V> entry = new Entry<>(key, bounds, value);
+        entries.put(key, entry);
+
+        long minRow = row(bounds.minLat());
+        long maxRow = row(bounds.maxLat());
+        long minCol = column(bounds.minLon());
+        long maxCol = column(bounds.maxLon());
+        if ((maxRow - minRow + 1) * (maxCol - minCol + 1) > maxCellsPerEntry) {
+            oversized = append(oversized, entry);
+            return;
+        }
+        for (long r = minRow; r <= maxRow; r++) {
+            for (long c = minCol; c <= maxCol; c++) {
+                cells.compute(r * columns + c, (cell, current) -> append(current, entry));
+            }
+        }
+    }
+
+    public synchronized void remove(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        if (contains(oversized, entry)) {
+            oversized = without(oversized, entry);
+            return;
+        }
+        BoundingBox bounds = entry.bounds();
+        for (long r = row(bounds.minLat()); r <= row(bounds.maxLat()); r++) {
+            for (long c = column(bounds.minLon()); c <= column(bounds.maxLon()); c++) {
+                cells.computeIfPresent(r * columns + c, (cell, current) -> {
+                    Entry<K, V>[] remaining = without(current, entry);
+                    return remaining.length == 0 ? null : remaining;
+                });
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        cells.clear();
+        oversized = newArray(0);
+    }
+
+    /**
+     * Call {@code action} for every value whose bounding box contains the point.
+     * The caller still has to run the exact shape test.
+     */
+    public void forEachCandidate(double lat, double lon, Consumer<V> action) {
+        Entry<K, V>[] cell = cells.get(row(lat) * columns + column(lon));
+        if (cell != null) {
+            for (Entry<K, V> entry : cell) {
+                if (entry.bounds().contains(lat, lon)) {
+                    action.accept(entry.value());
+                }
+            }
+        }
+        for (Entry<K, V> entry : oversized) {
+            if (entry.bounds().contains(lat, lon)) {
+                action.accept(entry.value());
+            }
+        }
+    }
+
+    public List<V> candidates(double lat, double lon) {
+        List<V> result = new ArrayList<>();
+        forEachCandidate(lat, lon, result::add);
+        return result;
+    }
+
+    public V get(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry != null ? entry.value() : null;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Set<K> keys() {
+        return Set.copyOf(entries.keySet());
+    }
+
+    private long row(double lat) {
+        return (long) Math.floor((clamp(lat, -90, 90) + 90d) / cellSizeDegrees);
+    }
+
+    private long column(double lon) {
+        return (long) Math.floor((clamp(lon, -180, 180) + 180d) / cellSizeDegrees);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static <K, V> boolean contains(Entry<K, V>[] array, Entry<K, V> entry) {
+        for (Entry<K, V> candidate : array) {
+            if (candidate == entry) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <K, V> Entry<K, V>[] append(Entry<K, V>[] array, Entry<K, V> entry) {
+        if (array == null) {
+            Entry<K, V>[] single = newArray(1);
+            single[0] = entry;
+            return single;
+        }
+        Entry<K, V>[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = entry;
+        return copy;
+    }
+
+    private static <K, V> Entry<K, V>[] without(Entry<K, V>[] array, Entry<K, V> entry) {
+        Entry<K, V>[] copy = newArray(array.length);
+        int size = 0;
+        for (Entry<K, V> candidate : array) {
+            if (candidate != entry) {
+                copy[size++] = candidate;
+            }
+        }
+        return Arrays.copyOf(copy, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Entry<K, V>[] newArray(int length) {
+        return (Entry<K, V>[]) new Entry[length];
+    }
+
+    private record Entry<K, V>(K key, BoundingBox bounds, V value) {
+    }
+}
@@ -0,0 +1,205 @@
+package com.gps.tracking.geo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polygon or multipolygon, with holes, compiled once into flat primitive arrays.
+ *
+ * All rings of all parts share one vertex array; {@code next[i]} is the end vertex of the edge
+ * starting at {@code i}. Point-in-polygon uses the even-odd crossing rule, which handles holes
+ * and disjoint parts without knowing which ring is which. To keep large shapes cheap, edges are
+ * bucketed into horizontal latitude bands, so a test only walks the edges of one band and never
+ * allocates.
+ *
+ * Accepted JSON, coordinates in GeoJSON order ({@code [longitude, latitude]}):
+ * <ul>
+ *   <li>a single ring: {@code [[lng,lat], ...]}</li>
+ *   <li>a polygon with holes: {@code [[[lng,lat], ...], [hole], ...]}</li>
+ *   <li>a multipolygon: {@code [[[[lng,lat], ...]], ...]}</li>
+ *   <li>a GeoJSON {@code Polygon}/{@code MultiPolygon} geometry object</li>
+ *   <li>a ring of objects: {@code [{"lat": .., "lng": ..}, ...]}</li>
+ * </ul>
+ */
+public final class PolygonRegion implements Region {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int EDGES_PER_BAND = 8;
+    private static final int MAX_BANDS = 1024;
+
+    private final double[] lats;
+    private final double[] lons;
+    private final int[] next;
+    private final BoundingBox bounds;
+    private final int bandCount;
+    private final double bandHeight;
+    private final int[] bandStart;
+    private final int[] bandEdges;
+
+    private PolygonRegion(List<double[][]> rings) {
+        int vertexCount = 0;
+        for (double[][] ring : rings) {
+            vertexCount += ring.length;
+        }
+        lats = new double[vertexCount];
+        lons = new double[vertexCount];
+        next = new int[vertexCount];
+
+        double minLat = Double.POSITIVE_INFINITY, minLon = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        int offset = 0;
+        for (double[][] ring : rings) {
+            for (int i = 0; i < ring.length; i++) {
+                int v = offset + i;
+                lons[v] = ring[i][0];
+                lats[v] = ring[i][1];
+                next[v] = i == ring.length - 1 ? offset : v + 1;
+                minLat = Math.min(minLat, lats[v]);
+                maxLat = Math.max(maxLat, lats[v]);
+                minLon = Math.min(minLon, lons[v]);
+                maxLon = Math.max(maxLon, lons[v]);
+            }
+            offset += ring.length;
+        }
+        bounds = new BoundingBox(minLat, minLon, maxLat, maxLon);
+
+        bandCount = Math.max(1, Math.min(MAX_BANDS, vertexCount / EDGES_PER_BAND));
+        bandHeight = Math.max((maxLat - minLat) / bandCount, Double.MIN_VALUE);
+        int[] counts = new int[bandCount + 1];
+        for (int e = 0; e < vertexCount; e++) {
+            for (int b = band(Math.min(lats[e], lats[next[e]])); b <= band(Math.max(lats[e], lats[next[e]])); b++) {
+                counts[b + 1]++;
+            }
+        }
+        for (int b = 0; b < bandCount; b++) {
+            counts[b + 1] += counts[b];
+        }
+        bandStart = counts.clone();
+        bandEdges = new int[counts[bandCount]];
+        int[] fill = counts;
+        for (int e = 0; e < vertexCount; e++) {
+            for (int b = band(Math.min(lats[e], lats[next[e]])); b <= band(Math.max(lats[e], lats[next[e]])); b++) {
+                bandEdges[fill[b]++] = e;
+            }
+        }
+    }
+
+    /**
+     * Parse stored polygon JSON.
+     *
+     * @throws IllegalArgumentException if the JSON is malformed or has no ring of at least three vertices
+     */
+    public static PolygonRegion fromJson(String json) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Polygon coordinates are not valid JSON");
+        }
+        if (root != null && root.isObject() && root.has("coordinates")) {
+            root = root.get("coordinates");
+        }
+        List<double[][]> rings = new ArrayList<>();
+        collectRings(root, rings);
+        if (rings.isEmpty()) {
+            throw new IllegalArgumentException("Polygon requires at least one ring of three or more points");
+        }
+        return new PolygonRegion(rings);
+    }
+
+    @Override
+    public BoundingBox bounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean contains(double lat, double lon) {
+        if (!bounds.contains(lat, lon)) {
+            return false;
+        }
+        int band = band(lat);
+        boolean inside = false;
+        for (int k = bandStart[band], end = bandStart[band + 1]; k < end; k++) {
+            int i = bandEdges[k];
+            int j = next[i];
+            double yi = lats[i];
+            double yj = lats[j];
+            if ((yi > lat) != (yj > lat)) {
+                double crossLon = lons[i] + (lat - yi) * (lons[j] - lons[i]) / (yj - yi);
+                if (lon < crossLon) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    public int vertexCount() {
+        return lats.length;
+    }
+
+    private int band(double lat) {
+        int band = (int) ((lat - bounds.minLat()) / bandHeight);
+        return Math.max(0, Math.min(bandCount - 1, band));
+    }
+
+    private static void collectRings(JsonNode node, List<double[][]> rings) {
+        if (node == null || !node.isArray() || node.isEmpty()) {
+            throw new IllegalArgumentException("Polygon coordinates must be a non-empty array");
+        }
+        JsonNode first = node.get(0);
+        if (first.isObject() || (first.isArray() && first.size() > 0 && first.get(0).isNumber())) {
+            addRing(node, rings);
+            return;
+        }
+        for (JsonNode child : node) {
+            collectRings(child, rings);
+        }
+    }
+
+    private static void addRing(JsonNode ring, List<double[][]> rings) {
+        List<double[]> points = new ArrayList<>(ring.size());
+        for (JsonNode point : ring) {
+            points.add(toLonLat(point));
+        }
+        // GeoJSON rings repeat the first vertex at the end; the edge array closes rings itself
+        if (points.size() > 1) {
+            double[] head = points.get(0);
+            double[] tail = points.get(points.size() - 1);
+            if (head[0] == tail[0] && head[1] == tail[1]) {
+                points.remove(points.size() - 1);
+            }
+        }
+        if (points.size() < 3) {
+            throw new IllegalArgumentException("Polygon ring requires at least three distinct points");
+        }
+        rings.add(points.toArray(new double[0][]));
+    }
+
+    private static double[] toLonLat(JsonNode point) {
+        double lon;
+        double lat;
+        if (point.isArray() && point.size() >= 2) {
+            lon = point.get(0).asDouble();
+            lat = point.get(1).asDouble();
+        } else if (point.isObject()) {
+            JsonNode latNode = point.has("lat") ? point.get("lat") : point.get("latitude");
+            JsonNode lonNode = point.has("lng") ? point.get("lng")
+                    : point.has("lon") ? point.get("lon") : point.get("longitude");
+            if (latNode == null || lonNode == null) {
+                throw new IllegalArgumentException("Polygon point objects need lat and lng");
+            }
+            lat = latNode.asDouble();
+            lon = lonNode.asDouble();
+        } else {
+            throw new IllegalArgumentException("Polygon point must be [lng, lat] or {\"lat\", \"lng\"}");
+        }
+        if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+            throw new IllegalArgumentException("Polygon point out of range: [" + lon + ", " + lat + "]");
+        }
+        return new double[]{lon, lat};
+    }
+}
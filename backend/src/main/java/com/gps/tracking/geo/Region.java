@@ -0,0 +1,11 @@
+package com.gps.tracking.geo;
+
+/**
+ * A closed area on the map that can answer point-membership queries without allocating.
+ */
+public interface Region {
+
+    BoundingBox bounds();
+
+    boolean contains(double lat, double lon);
+}
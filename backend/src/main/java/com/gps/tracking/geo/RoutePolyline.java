@@ -0,0 +1,216 @@
+package com.gps.tracking.geo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Planned route line compiled once into flat primitive arrays, answering "how far is this fix
+ * from the route, and how far along the route is it" without allocating.
+ *
+ * Segments are registered in every cell of a uniform latitude/longitude grid they pass through.
+ * A lookup measures only the segments of the 3x3 cells around the fix; if the nearest of those is
+ * closer than one cell width no other segment can be nearer, so the answer is exact. Fixes farther
+ * out than that (a vehicle well off its route) fall back to a scan of all segments.
+ *
+ * Distances use a local equirectangular projection around the fix, which is accurate to well under
+ * a meter at corridor scale. Progress is measured along the great-circle length of the segments.
+ */
+public final class RoutePolyline {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final double[] lats;
+    private final double[] lons;
+    private final double[] cumulativeMeters;
+    private final double cellSizeDegrees;
+    private final long columns;
+    private final Map<Long, int[]> cells;
+
+    private RoutePolyline(double[] lats, double[] lons, double cellSizeDegrees) {
+        this.lats = lats;
+        this.lons = lons;
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.columns = (long) Math.ceil(360d / cellSizeDegrees) + 1;
+
+        cumulativeMeters = new double[lats.length];
+        for (int i = 1; i < lats.length; i++) {
+            cumulativeMeters[i] = cumulativeMeters[i - 1]
+                    + GeoUtils.haversineMeters(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+        }
+
+        Map<Long, List<Integer>> building = new HashMap<>();
+        for (int s = 0; s < segmentCount(); s++) {
+            registerSegment(s, building);
+        }
+        cells = new HashMap<>(building.size() * 2);
+        building.forEach((cell, segments) ->
+                cells.put(cell, segments.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Parse stored route coordinates: {@code [[lng,lat], ...]}, a ring of {@code {"lat", "lng"}}
+     * objects, or a GeoJSON {@code LineString} geometry.
+     *
+     * @throws IllegalArgumentException if the JSON is malformed or has fewer than two points
+     */
+    public static RoutePolyline fromJson(String json, double cellSizeDegrees) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Route coordinates are not valid JSON");
+        }
+        if (root != null && root.isObject() && root.has("coordinates")) {
+            root = root.get("coordinates");
+        }
+        if (root == null || !root.isArray() || root.size() < 2) {
+            throw new IllegalArgumentException("Route requires at least two points");
+        }
+        double[] lats = new double[root.size()];
+        double[] lons = new double[root.size()];
+        for (int i = 0; i < root.size(); i++) {
+            JsonNode point = root.get(i);
+            if (point.isArray() && point.size() >= 2) {
+                lons[i] = point.get(0).asDouble();
+                lats[i] = point.get(1).asDouble();
+            } else if (point.isObject() && point.has("lat") && point.has("lng")) {
+                lats[i] = point.get("lat").asDouble();
+                lons[i] = point.get("lng").asDouble();
+            } else {
+                throw new IllegalArgumentException("Route point must be [lng, lat] or {\"lat\", \"lng\"}");
+            }
+            if (Math.abs(lats[i]) > 90 || Math.abs(lons[i]) > 180) {
+                throw new IllegalArgumentException("Route point out of range: [" + lons[i] + ", " + lats[i] + "]");
+            }
+        }
+        return new RoutePolyline(lats, lons, cellSizeDegrees);
+    }
+
+    /**
+     * Nearest point of the route to the fix.
+     */
+    public Match nearest(double lat, double lon) {
+        double kx = GeoUtils.metersPerDegreeLongitude(lat);
+        double ky = GeoUtils.METERS_PER_DEGREE_LATITUDE;
+
+        long row = row(lat);
+        long column = column(lon);
+        int bestSegment = -1;
+        double bestSquared = Double.POSITIVE_INFINITY;
+        double bestT = 0;
+        for (long r = row - 1; r <= row + 1; r++) {
+            for (long c = column - 1; c <= column + 1; c++) {
+                int[] segments = cells.get(r * columns + c);
+                if (segments == null) {
+                    continue;
+                }
+                for (int s : segments) {
+                    double t = project(s, lat, lon, kx, ky);
+                    double squared = squaredDistance(s, t, lat, lon, kx, ky);
+                    if (squared < bestSquared) {
+                        bestSquared = squared;
+                        bestSegment = s;
+                        bestT = t;
+                    }
+                }
+            }
+        }
+
+        // Anything not registered in the neighbourhood is at least one cell width away
+        double cellMeters = cellSizeDegrees * GeoUtils.metersPerDegreeLongitude(Math.abs(lat) + cellSizeDegrees);
+        if (bestSegment < 0 || bestSquared > cellMeters * cellMeters) {
+            for (int s = 0; s < segmentCount(); s++) {
+                double t = project(s, lat, lon, kx, ky);
+                double squared = squaredDistance(s, t, lat, lon, kx, ky);
+                if (squared < bestSquared) {
+                    bestSquared = squared;
+                    bestSegment = s;
+                    bestT = t;
+                }
+            }
+        }
+
+        double segmentMeters = cumulativeMeters[bestSegment + 1] - cumulativeMeters[bestSegment];
+        return new Match(Math.sqrt(bestSquared), cumulativeMeters[bestSegment] + bestT * segmentMeters, bestSegment);
+    }
+
+    public double lengthMeters() {
+        return cumulativeMeters[cumulativeMeters.length - 1];
+    }
+
+    public int segmentCount() {
+        return lats.length - 1;
+    }
+
+    /**
+     * Parameter in [0, 1] of the point on segment {@code s} closest to the fix.
+     */
+    private double project(int s, double lat, double lon, double kx, double ky) {
+        double ax = (lons[s] - lon) * kx;
+        double ay = (lats[s] - lat) * ky;
+        double dx = (lons[s + 1] - lons[s]) * kx;
+        double dy = (lats[s + 1] - lats[s]) * ky;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+        double t = -(ax * dx + ay * dy) / lengthSquared;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    private double squaredDistance(int s, double t, double lat, double lon, double kx, double ky) {
+        double x = (lons[s] + t * (lons[s + 1] - lons[s]) - lon) * kx;
+        double y = (lats[s] + t * (lats[s + 1] - lats[s]) - lat) * ky;
+        return x * x + y * y;
+    }
+
+    /**
+     * Add the segment to every cell it crosses: walk the grid rows it spans and, per row,
+     * the columns covered by the part of the segment inside that row.
+     */
+    private void registerSegment(int s, Map<Long, List<Integer>> building) {
+        double lat1 = lats[s], lon1 = lons[s];
+        double lat2 = lats[s + 1], lon2 = lons[s + 1];
+        double minLat = Math.min(lat1, lat2);
+        double maxLat = Math.max(lat1, lat2);
+        for (long r = row(minLat); r <= row(maxLat); r++) {
+            double bandLow = Math.max(minLat, r * cellSizeDegrees - 90d);
+            double bandHigh = Math.min(maxLat, (r + 1) * cellSizeDegrees - 90d);
+            double lonLow;
+            double lonHigh;
+            if (lat1 == lat2) {
+                lonLow = Math.min(lon1, lon2);
+                lonHigh = Math.max(lon1, lon2);
+            } else {
+                double a = lon1 + (bandLow - lat1) * (lon2 - lon1) / (lat2 - lat1);
+                double b = lon1 + (bandHigh - lat1) * (lon2 - lon1) / (lat2 - lat1);
+                lonLow = Math.min(a, b);
+                lonHigh = Math.max(a, b);
+            }
+            for (long c = column(lonLow); c <= column(lonHigh); c++) {
+                building.computeIfAbsent(r * columns + c, cell -> new ArrayList<>(2)).add(s);
+            }
+        }
+    }
+
+    private long row(double lat) {
+        return (long) Math.floor((Math.max(-90d, Math.min(90d, lat)) + 90d) / cellSizeDegrees);
+    }
+
+    private long column(double lon) {
+        return (long) Math.floor((Math.max(-180d, Math.min(180d, lon)) + 180d) / cellSizeDegrees);
+    }
+
+    /**
+     * @param distanceMeters distance from the fix to the nearest point of the route
+     * @param progressMeters distance along the route from its start to that point
+     * @param segment        index of the segment holding that point
+     */
+    public record Match(double distanceMeters, double progressMeters, int segment) {
+    }
+}
@@ -0,0 +1,357 @@
+package com.gps.tracking.geo;
+
+/**
+ * Shortest visiting order of a set of stops, on plain coordinate arrays.
+ *
+ * The tour is an open path: it starts at stop 0 and may end anywhere. Distances between all pairs
+ * of stops are computed once into a flat matrix. A nearest-neighbour path is then improved by local
+ * search until no move shortens it or the time budget runs out:
+ * <ul>
+ *   <li>2-opt reverses a stretch of the path, replacing two edges by two shorter ones;</li>
+ *   <li>Or-opt moves a run of up to {@value #MAX_SEGMENT} stops, either way round, elsewhere.</li>
+ * </ul>
+ * Both only try to connect a stop to one of its {@value #NEIGHBORS} nearest stops, and a queue of
+ * stops whose edges changed decides what to look at next, so a pass costs about n * NEIGHBORS
+ * distance lookups rather than n squared. Improved paths are typically within a few percent of
+ * optimal; the result is always at least as short as the nearest-neighbour path.
+ *
+ * The matrix and the nearest-neighbour path cost n squared before the time budget starts, so
+ * callers bound the number of stops; route requests take at most 1000.
+ */
+public final class TourSolver {
+    private static final int NEIGHBORS = 10;
+    private static final int MAX_SEGMENT = 3;
+    private static final double EPSILON = 1e-7;
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    private final int count;
+    private final double[] distances;
+    private final int[] neighbors;
+    private final int[] tour;
+    private final int[] positions;
+    private final int[] queue;
+    private final boolean[] queued;
+    private final int[] segment = new int[MAX_SEGMENT];
+    private int queueHead;
+    private int queueSize;
+
+    private TourSolver(double[] lats, double[] lons, int count) {
+        this.count = count;
+        this.distances = distanceMatrix(lats, lons, count);
+        this.neighbors = nearestNeighbors(distances, count, Math.min(NEIGHBORS, count - 1));
+        this.tour = new int[count];
+        this.positions = new int[count];
+        this.queue = new int[count];
+        this.queued = new boolean[count];
+    }
+
+    /**
+     * Visiting order of the first {@code count} stops, as stop indexes starting with 0. The local
+     * search stops after {@code timeBudgetNanos}; the order found so far is returned.
+     */
+    public static int[] solve(double[] lats, double[] lons, int count, long timeBudgetNanos) {
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        if (count < 3) {
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+        TourSolver solver = new TourSolver(lats, lons, count);
+        solver.nearestNeighborTour();
+        solver.improve(deadline);
+        return solver.tour;
+    }
+
+    /**
+     * Length of a path through the stops in the given order, in meters.
+     */
+    public static double pathLengthMeters(double[] lats, double[] lons, int[] order) {
+        double length = 0;
+        for (int i = 1; i < order.length; i++) {
+            length += GeoUtils.haversineMeters(lats[order[i - 1]], lons[order[i - 1]], lats[order[i]], lons[order[i]]);
+        }
+        return length;
+    }
+
+    private static double[] distanceMatrix(double[] lats, double[] lons, int count) {
+        double[] latRadians = new double[count];
+        double[] lonRadians = new double[count];
+        double[] cosLats = new double[count];
+        for (int i = 0; i < count; i++) {
+            latRadians[i] = Math.toRadians(lats[i]);
+            lonRadians[i] = Math.toRadians(lons[i]);
+            cosLats[i] = Math.cos(latRadians[i]);
+        }
+        // Haversine as in GeoUtils, with the per-stop terms hoisted out of the n squared loop
+        double[] matrix = new double[count * count];
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                double sinLat = Math.sin((latRadians[j] - latRadians[i]) / 2);
+                double sinLon = Math.sin((lonRadians[j] - lonRadians[i]) / 2);
+                double a = Math.min(1, sinLat * sinLat + cosLats[i] * cosLats[j] * sinLon * sinLon);
+                double meters = 2 * GeoUtils.EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+                matrix[i * count + j] = meters;
+                matrix[j * count + i] = meters;
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * The {@code k} nearest stops of every stop, nearest first, as a flat count * k array.
+     */
+    private static int[] nearestNeighbors(double[] distances, int count, int k) {
+        int[] result = new int[count * k];
+        double[] best = new double[k];
+        for (int i = 0; i < count; i++) {
+            int base = i * k;
+            int found = 0;
+            for (int j = 0; j < count; j++) {
+                if (j == i) {
+                    continue;
+                }
+                double distance = distances[i * count + j];
+                if (found == k && distance >= best[k - 1]) {
+                    continue;
+                }
+                // Insertion into the sorted candidates, dropping the farthest once full
+                int slot = found < k ? found++ : k - 1;
+                while (slot > 0 && best[slot - 1] > distance) {
+                    best[slot] = best[slot - 1];
+                    result[base + slot] = result[base + slot - 1];
+                    slot--;
+                }
+                best[slot] = distance;
+                result[base + slot] = j;
+            }
+        }
+        return result;
+    }
+
+    private void nearestNeighborTour() {
+        boolean[] visited = new boolean[count];
+        int current = 0;
+        visited[0] = true;
+        tour[0] = 0;
+        for (int position = 1; position < count; position++) {
+            int row = current * count;
+            int nearest = -1;
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < count; j++) {
+                if (!visited[j] && distances[row + j] < nearestDistance) {
+                    nearest = j;
+                    nearestDistance = distances[row + j];
+                }
+            }
+            visited[nearest] = true;
+            tour[position] = nearest;
+            current = nearest;
+        }
+        for (int position = 0; position < count; position++) {
+            positions[tour[position]] = position;
+        }
+    }
+
+    private void improve(long deadline) {
+        for (int stop = 0; stop < count; stop++) {
+            enqueue(stop);
+        }
+        int steps = 0;
+        while (queueSize > 0) {
+            if (++steps % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+                return;
+            }
+            int stop = queue[queueHead];
+            queueHead = (queueHead + 1) % count;
+            queueSize--;
+            queued[stop] = false;
+            if (twoOpt(stop) || orOpt(stop)) {
+                enqueue(stop);
+            }
+        }
+    }
+
+    /**
+     * Try to connect {@code a} to a near stop {@code c} by reversing the path between them, on
+     * either side of {@code a}.
+     */
+    private boolean twoOpt(int a) {
+        int pa = positions[a];
+        int k = neighborCount();
+        // Replace (a, next a) and (c, next c) by (a, c) and (next a, next c)
+        if (pa < count - 1) {
+            double removed = distance(a, tour[pa + 1]);
+            for (int n = 0; n < k; n++) {
+                int c = neighbors[a * k + n];
+                if (removed - distance(a, c) <= EPSILON) {
+                    break;
+                }
+                int i = Math.min(pa, positions[c]);
+                int j = Math.max(pa, positions[c]);
+                if (j - i < 2) {
+                    continue;
+                }
+                double gain = distance(tour[i], tour[i + 1]) - distance(tour[i], tour[j]);
+                if (j < count - 1) {
+                    gain += distance(tour[j], tour[j + 1]) - distance(tour[i + 1], tour[j + 1]);
+                }
+                if (gain > EPSILON) {
+                    touch(i, i + 1, j, j + 1);
+                    reverse(i + 1, j);
+                    return true;
+                }
+            }
+        }
+        // Replace (previous a, a) and (previous c, c) by (previous a, previous c) and (a, c)
+        if (pa > 0) {
+            double removed = distance(tour[pa - 1], a);
+            for (int n = 0; n < k; n++) {
+                int c = neighbors[a * k + n];
+                if (removed - distance(a, c) <= EPSILON) {
+                    break;
+                }
+                int i = Math.min(pa, positions[c]);
+                int j = Math.max(pa, positions[c]);
+                if (i == 0 || j - i < 2) {
+                    continue;
+                }
+                double gain = distance(tour[i - 1], tour[i]) + distance(tour[j - 1], tour[j])
+                        - distance(tour[i - 1], tour[j - 1]) - distance(tour[i], tour[j]);
+                if (gain > EPSILON) {
+                    touch(i - 1, i, j - 1, j);
+                    reverse(i, j - 1);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Try to move the run of up to {@value #MAX_SEGMENT} stops starting at {@code a} next to a
+     * near stop of either of its ends.
+     */
+    private boolean orOpt(int a) {
+        int start = positions[a];
+        if (start == 0) {
+            return false;
+        }
+        int k = neighborCount();
+        for (int length = 1; length <= MAX_SEGMENT && start + length <= count; length++) {
+            int end = start + length - 1;
+            int first = tour[start];
+            int last = tour[end];
+            int previous = tour[start - 1];
+            double removeGain = distance(previous, first);
+            if (end < count - 1) {
+                int next = tour[end + 1];
+                removeGain += distance(last, next) - distance(previous, next);
+            }
+            if (removeGain <= EPSILON) {
+                continue;
+            }
+            for (int side = 0; side < 2; side++) {
+                int x = side == 0 ? first : last;
+                for (int n = 0; n < k; n++) {
+                    int c = neighbors[x * k + n];
+                    if (removeGain - distance(x, c) <= EPSILON) {
+                        break;
+                    }
+                    int pc = positions[c];
+                    if (pc >= start && pc <= end) {
+                        continue;
+                    }
+                    // Insert after c, or after the stop before c
+                    for (int after = pc; after >= pc - 1; after--) {
+                        if (after < 0 || (after >= start - 1 && after <= end)) {
+                            continue;
+                        }
+                        int u = tour[after];
+                        int w = after < count - 1 ? tour[after + 1] : -1;
+                        double bridge = w >= 0 ? distance(u, w) : 0;
+                        double forward = distance(u, first) + (w >= 0 ? distance(last, w) : 0) - bridge;
+                        double backward = distance(u, last) + (w >= 0 ? distance(first, w) : 0) - bridge;
+                        boolean reversed = backward < forward;
+                        if (removeGain - Math.min(forward, backward) > EPSILON) {
+                            touch(start - 1, end + 1, after, after + 1);
+                            enqueue(first);
+                            enqueue(last);
+                            move(start, end, after, reversed);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move the stops at positions start..end to follow the stop now at position {@code after}.
+     */
+    private void move(int start, int end, int after, boolean reversed) {
+        int length = end - start + 1;
+        for (int i = 0; i < length; i++) {
+            segment[i] = reversed ? tour[end - i] : tour[start + i];
+        }
+        int from;
+        int to;
+        int destination;
+        if (after > end) {
+            System.arraycopy(tour, end + 1, tour, start, after - end);
+            destination = after - length + 1;
+            from = start;
+            to = after;
+        } else {
+            System.arraycopy(tour, after + 1, tour, after + 1 + length, start - after - 1);
+            destination = after + 1;
+            from = after + 1;
+            to = end;
+        }
+        System.arraycopy(segment, 0, tour, destination, length);
+        for (int position = from; position <= to; position++) {
+            positions[tour[position]] = position;
+        }
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            int swap = tour[from];
+            tour[from] = tour[to];
+            tour[to] = swap;
+            positions[tour[from]] = from;
+            positions[tour[to]] = to;
+            from++;
+            to--;
+        }
+    }
+
+    /**
+     * Queue the stops at the given positions, whose edges are about to change.
+     */
+    private void touch(int... changed) {
+        for (int position : changed) {
+            if (position >= 0 && position < count) {
+                enqueue(tour[position]);
+            }
+        }
+    }
+
+    private void enqueue(int stop) {
+        if (!queued[stop]) {
+            queued[stop] = true;
+            queue[(queueHead + queueSize) % count] = stop;
+            queueSize++;
+        }
+    }
+
+    private int neighborCount() {
+        return Math.min(NEIGHBORS, count - 1);
+    }
+
+    private double distance(int a, int b) {
+        return distances[a * count + b];
+    }
+}
@@ -0,0 +1,143 @@
+package com.gps.tracking.geo;
+
+import java.util.Arrays;
+
+/**
+ * Douglas-Peucker simplification of recorded tracks on plain coordinate arrays.
+ *
+ * Instead of running the algorithm once per tolerance, {@link #significance} runs it once with no
+ * tolerance and records, for every point, the largest tolerance at which it would still be kept:
+ * its distance from the chord it split, capped by the same value of the point whose split exposed
+ * it. Douglas-Peucker only recurses into a range when the split point exceeds the tolerance, so
+ * keeping the points whose significance is above a tolerance gives exactly the result of a run at
+ * that tolerance, and any number of levels can be cut from one pass.
+ *
+ * Distances are measured on a local equirectangular projection around the track's mean latitude,
+ * which is accurate well below a meter over the extent of a vehicle trip.
+ */
+public final class TrackSimplifier {
+    private static final double EQUATOR_METERS_PER_PIXEL_AT_ZOOM_0 = 156_543.03392;
+
+    private TrackSimplifier() {
+    }
+
+    /**
+     * Per-point significance in meters; the first and last points are always kept.
+     */
+    public static double[] significance(double[] lats, double[] lons, int count) {
+        double[] result = new double[count];
+        if (count == 0) {
+            return result;
+        }
+        result[0] = Double.POSITIVE_INFINITY;
+        result[count - 1] = Double.POSITIVE_INFINITY;
+        if (count < 3) {
+            return result;
+        }
+
+        double meanLat = 0;
+        for (int i = 0; i < count; i++) {
+            meanLat += lats[i];
+        }
+        meanLat /= count;
+        double kx = GeoUtils.metersPerDegreeLongitude(meanLat);
+        double ky = GeoUtils.METERS_PER_DEGREE_LATITUDE;
+
+        // Explicit stack of (first, last, cap) ranges instead of recursion, so long tracks cannot overflow
+        int[] firsts = new int[64];
+        int[] lasts = new int[64];
+        double[] caps = new double[64];
+        int depth = 0;
+        firsts[0] = 0;
+        lasts[0] = count - 1;
+        caps[0] = Double.POSITIVE_INFINITY;
+        depth++;
+
+        while (depth > 0) {
+            depth--;
+            int first = firsts[depth];
+            int last = lasts[depth];
+            double cap = caps[depth];
+            if (last - first < 2) {
+                continue;
+            }
+
+            double ax = lons[first] * kx;
+            double ay = lats[first] * ky;
+            double dx = lons[last] * kx - ax;
+            double dy = lats[last] * ky - ay;
+            double lengthSquared = dx * dx + dy * dy;
+
+            int split = -1;
+            double maxDistanceSquared = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = lons[i] * kx - ax;
+                double py = lats[i] * ky - ay;
+                double distanceSquared;
+                if (lengthSquared == 0) {
+                    distanceSquared = px * px + py * py;
+                } else {
+                    double t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+                    double ex = px - t * dx;
+                    double ey = py - t * dy;
+                    distanceSquared = ex * ex + ey * ey;
+                }
+                if (distanceSquared > maxDistanceSquared) {
+                    maxDistanceSquared = distanceSquared;
+                    split = i;
+                }
+            }
+
+            double value = Math.min(cap, Math.sqrt(maxDistanceSquared));
+            result[split] = value;
+
+            if (depth + 2 > firsts.length) {
+                firsts = Arrays.copyOf(firsts, firsts.length * 2);
+                lasts = Arrays.copyOf(lasts, lasts.length * 2);
+                caps = Arrays.copyOf(caps, caps.length * 2);
+            }
+            firsts[depth] = first;
+            lasts[depth] = split;
+            caps[depth++] = value;
+            firsts[depth] = split;
+            lasts[depth] = last;
+            caps[depth++] = value;
+        }
+        return result;
+    }
+
+    /**
+     * Indices of the points kept at the given tolerance, in track order.
+     */
+    public static int[] keep(double[] significance, double toleranceMeters) {
+        int kept = 0;
+        for (double value : significance) {
+            if (value > toleranceMeters) {
+                kept++;
+            }
+        }
+        int[] indices = new int[kept];
+        int next = 0;
+        for (int i = 0; i < significance.length; i++) {
+            if (significance[i] > toleranceMeters) {
+                indices[next++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Indices of the points kept by Douglas-Peucker at the given tolerance, in track order.
+     */
+    public static int[] simplify(double[] lats, double[] lons, int count, double toleranceMeters) {
+        return keep(significance(lats, lons, count), toleranceMeters);
+    }
+
+    /**
+     * Size of one screen pixel, in meters, on a Web Mercator map at the given zoom and latitude.
+     * Detail below that size is invisible, which makes it the natural tolerance for a zoom level.
+     */
+    public static double toleranceForZoom(int zoom, double latitude) {
+        return EQUATOR_METERS_PER_PIXEL_AT_ZOOM_0 * Math.cos(Math.toRadians(latitude)) / Math.pow(2, zoom);
+    }
+}
@@ -0,0 +1,98 @@
+package com.gps.tracking.ingest;
+
+import com.gps.tracking.dto.request.GpsLocationRequest;
+import com.gps.tracking.entity.GpsLocation;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One GPS fix as the ingest pipeline and the in-memory engines see it: coordinates, speed and
+ * heading as doubles and the timestamp as microseconds, so nothing per fix is boxed or parsed again
+ * after it enters the system. Speed and direction are NaN when the tracker did not report them.
+ *
+ * {@link BigDecimal} only appears at the edges: requests are converted on the way in, and entities
+ * and responses are built from a fix with the column scales of gps_locations. The timestamp keeps
+ * the database's microsecond precision; it is a local date-time, counted as if it were UTC.
+ */
+public record Fix(UUID id, UUID vehicleId, double latitude, double longitude, double speed, double direction,
+                  long timestampMicros) {
+    private static final double COORDINATE_UNITS = 1e8;
+    private static final double MEASURE_UNITS = 1e2;
+    private static final AtomicLong LAST_RECEIVED_MICROS = new AtomicLong();
+
+    /**
+     * The fix as uploaded; one sent without a timestamp is stamped with {@link #receivedNow}.
+     */
+    public static Fix of(GpsLocationRequest request) {
+        LocalDateTime timestamp = request.getTimestamp() != null ? request.getTimestamp() : receivedNow();
+        return new Fix(null, request.getVehicleId(),
+                request.getLatitude().doubleValue(), request.getLongitude().doubleValue(),
+                toDouble(request.getSpeed()), toDouble(request.getDirection()), toMicros(timestamp));
+    }
+
+    public static Fix of(GpsLocation location) {
+        return new Fix(location.getId(), location.getVehicle().getId(),
+                location.getLatitude().doubleValue(), location.getLongitude().doubleValue(),
+                toDouble(location.getSpeed()), toDouble(location.getDirection()), toMicros(location.getTimestamp()));
+    }
+
+    /**
+     * Receive time for a fix its tracker sent without a timestamp. Each call returns a later
+     * microsecond than the one before, so two such fixes of a vehicle never share the timestamp
+     * that identifies a stored fix (see V24), even when they arrive in the same upload.
+     */
+    public static LocalDateTime receivedNow() {
+        long now = toMicros(LocalDateTime.now());
+        return toDateTime(LAST_RECEIVED_MICROS.updateAndGet(last -> Math.max(now, last + 1)));
+    }
+
+    /**
+     * The same fix once it has been stored under {@code id}.
+     */
+    public Fix withId(UUID id) {
+        return new Fix(id, vehicleId, latitude, longitude, speed, direction, timestampMicros);
+    }
+
+    public boolean hasSpeed() {
+        return !Double.isNaN(speed);
+    }
+
+    public LocalDateTime timestamp() {
+        return toDateTime(timestampMicros);
+    }
+
+    // Scaled longs go straight into BigDecimal.valueOf(long, scale): one object, no string formatting
+
+    public BigDecimal latitudeDecimal() {
+        return BigDecimal.valueOf(Math.round(latitude * COORDINATE_UNITS), 8);
+    }
+
+    public BigDecimal longitudeDecimal() {
+        return BigDecimal.valueOf(Math.round(longitude * COORDINATE_UNITS), 8);
+    }
+
+    public BigDecimal speedDecimal() {
+        return hasSpeed() ? BigDecimal.valueOf(Math.round(speed * MEASURE_UNITS), 2) : null;
+    }
+
+    public BigDecimal directionDecimal() {
+        return Double.isNaN(direction) ? null : BigDecimal.valueOf(Math.round(direction * MEASURE_UNITS), 2);
+    }
+
+    public static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1000;
+    }
+
+    public static LocalDateTime toDateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
+    private static double toDouble(BigDecimal value) {
+        return value != null ? value.doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,721 @@
+package com.gps.tracking.ingest;
+
+import com.gps.tracking.cluster.VehicleOwnershipChangedEvent;
+import com.gps.tracking.dto.request.GpsLocationRequest;
+import com.gps.tracking.dto.response.GpsIngestResponse;
+import com.gps.tracking.dto.response.GpsLocationBatchResponse;
+import com.gps.tracking.dto.response.GpsLocationResponse;
+import com.gps.tracking.exception.ServiceUnavailableException;
+import com.gps.tracking.repository.IngestCheckpointRepository;
+import com.gps.tracking.service.GpsLocationService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind ingestion pipeline for GPS fixes, backed by a local write-ahead log.
+ *
+ * Fixes are split into partitions keyed by vehicle id. Each partition has its own
+ * {@link IngestLog} on local disk and exactly one worker thread that replays it into
+ * gps_locations, so fixes of the same vehicle are always persisted and processed in arrival
+ * order. Accepting a fix only appends it to the log; a flusher thread forces appended records to
+ * disk every {@code fsyncIntervalMillis}, or sooner once {@code fsyncBatchBytes} are pending,
+ * and with {@code syncAcks} an upload is acknowledged only once its fixes are on disk.
+ *
+ * Workers take up to {@code batchSize} fixes at a time and hand them to
+ * {@link GpsLocationService#ingestFixes}, storing the log position reached in the same
+ * transaction. While the database is unavailable a worker keeps retrying the same batch, and
+ * fixes keep being accepted into the log at disk speed until it reaches {@code maxSegments}; when
+ * the database is back the backlog is replayed in order, and after a crash each log resumes at
+ * its committed position. A batch that fails for any other reason is retried one fix at a time,
+ * and only the fixes that still fail are logged and skipped.
+ *
+ * The partition workers are also the single writers of per-vehicle state: fixes stored
+ * synchronously through {@link #create} and {@link #createAll} run on the vehicle's worker too,
+ * between log batches, so route lifecycle, geofence membership and trip progress of one vehicle
+ * are only ever updated by one thread and need no locks. When vehicles move between cluster nodes,
+ * each worker first stores what its log held at the time and then publishes a
+ * {@link PartitionHandoverEvent}, on which that state is dropped.
+ *
+ * The partition count fixes which log a vehicle's fixes go to, so it can only be changed once
+ * the logs of the partitions being removed have been replayed.
+ */
+@Component
+@Slf4j
+public class GpsIngestionPipeline {
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5_000;
+
+    private final GpsLocationService locationService;
+    private final IngestCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Validator validator;
+    private final int partitionCount;
+    private final int batchSize;
+    private final long pollTimeoutMillis;
+    private final Path logDirectory;
+    private final String logName;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final long fsyncIntervalMillis;
+    private final long fsyncBatchBytes;
+    private final boolean syncAcks;
+    private final long ackTimeoutMillis;
+
+    private final List<Partition> partitions = new ArrayList<>();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private Thread flusher;
+    private volatile boolean running;
+
+    private Counter acceptedCounter;
+    private Counter droppedCounter;
+    private Counter persistedCounter;
+    private Counter rejectedCounter;
+    private Counter failedCounter;
+    private Counter retriedCounter;
+    private Timer lagTimer;
+    private Timer fsyncTimer;
+
+    public GpsIngestionPipeline(GpsLocationService locationService,
+                                IngestCheckpointRepository checkpointRepository,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                ApplicationEventPublisher eventPublisher,
+                                Validator validator,
+                                @Value("${gps.ingest.partitions:4}") int partitionCount,
+                                @Value("${gps.ingest.batch-size:500}") int batchSize,
+                                @Value("${gps.ingest.poll-timeout-ms:200}") long pollTimeoutMillis,
+                                @Value("${gps.ingest.log.directory:data/ingest-log}") String logDirectory,
+                                @Value("${gps.ingest.log.name:}") String logName,
+                                @Value("${gps.cluster.membership.enabled:false}") boolean clusterEnabled,
+                                @Value("${gps.cluster.node-id:}") String nodeId,
+                                @Value("${gps.ingest.log.segment-bytes:67108864}") long segmentBytes,
+                                @Value("${gps.ingest.log.max-segments:64}") int maxSegments,
+                                @Value("${gps.ingest.log.fsync-interval-ms:20}") long fsyncIntervalMillis,
+                                @Value("${gps.ingest.log.fsync-batch-bytes:1048576}") long fsyncBatchBytes,
+                                @Value("${gps.ingest.log.sync-acks:true}") boolean syncAcks,
+                                @Value("${gps.ingest.log.ack-timeout-ms:5000}") long ackTimeoutMillis) {
+        this.locationService = locationService;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+        this.validator = validator;
+        this.partitionCount = partitionCount;
+        this.batchSize = batchSize;
+        this.pollTimeoutMillis = pollTimeoutMillis;
+        if (clusterEnabled) {
+            // Nodes share gps_ingest_checkpoints; one node resuming from another's position would
+            // skip its own unreplayed fixes or replay them all again
+            if (nodeId.isBlank()) {
+                throw new IllegalArgumentException(
+                        "gps.cluster.membership.enabled requires a stable gps.cluster.node-id to name the ingest log");
+            }
+            if (!logName.isBlank() && !logName.equals(nodeId)) {
+                throw new IllegalArgumentException("gps.ingest.log.name must be left unset or equal gps.cluster.node-id "
+                        + "when cluster membership is enabled");
+            }
+            this.logDirectory = Path.of(logDirectory).resolve(nodeId);
+            this.logName = nodeId;
+        } else {
+            this.logDirectory = Path.of(logDirectory);
+            this.logName = logName.isBlank() ? "default" : logName;
+        }
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.fsyncBatchBytes = fsyncBatchBytes;
+        this.syncAcks = syncAcks;
+        this.ackTimeoutMillis = ackTimeoutMillis;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        acceptedCounter = meterRegistry.counter("gps.ingest.accepted");
+        droppedCounter = meterRegistry.counter("gps.ingest.dropped");
+        persistedCounter = meterRegistry.counter("gps.ingest.persisted");
+        rejectedCounter = meterRegistry.counter("gps.ingest.rejected");
+        failedCounter = meterRegistry.counter("gps.ingest.failed");
+        retriedCounter = meterRegistry.counter("gps.ingest.retried");
+        lagTimer = meterRegistry.timer("gps.ingest.lag");
+        fsyncTimer = meterRegistry.timer("gps.ingest.log.fsync");
+        Gauge.builder("gps.ingest.queue.depth", this, GpsIngestionPipeline::getQueueDepth)
+                .register(meterRegistry);
+        Gauge.builder("gps.ingest.lag.last", lastLagMillis, AtomicLong::get)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+
+        checkNoOrphanedLogs();
+        running = true;
+        for (int i = 0; i < partitionCount; i++) {
+            IngestLog ingestLog = IngestLog.open(logDirectory.resolve("p" + i), segmentBytes, maxSegments);
+            Partition partition = new Partition(i, ingestLog);
+            partitions.add(partition);
+            Gauge.builder("gps.ingest.partition.depth", partition, Partition::backlog)
+                    .tag("partition", String.valueOf(i))
+                    .register(meterRegistry);
+            Gauge.builder("gps.ingest.partition.tasks", partition.tasks, Queue::size)
+                    .tag("partition", String.valueOf(i))
+                    .register(meterRegistry);
+            Gauge.builder("gps.ingest.log.bytes", ingestLog, IngestLog::size)
+                    .tag("partition", String.valueOf(i))
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+        flusher = new Thread(this::flushLogs, "gps-ingest-log-flush");
+        flusher.start();
+        for (Partition partition : partitions) {
+            partition.worker = new Thread(() -> drain(partition), "gps-ingest-" + partition.index);
+            partition.worker.start();
+        }
+        log.info("Started GPS ingestion pipeline with {} partitions logged to {}",
+                partitionCount, logDirectory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        for (Partition partition : partitions) {
+            partition.worker.interrupt();
+        }
+        for (Partition partition : partitions) {
+            partition.worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        LockSupport.unpark(flusher);
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        // Whatever was not replayed yet stays in the logs and is picked up on the next start
+        for (Partition partition : partitions) {
+            if (partition.worker.isAlive() || flusher.isAlive()) {
+                // Unmapping a segment a thread still reads or forces would crash the JVM
+                log.warn("Ingest partition {} did not stop in time; leaving its log mapped", partition.index);
+                continue;
+            }
+            partition.log.close();
+        }
+    }
+
+    /**
+     * Validate and log an upload. Items that fail validation or find their partition's log full
+     * are reported back by index; everything else is acknowledged without waiting for the
+     * database, and with synchronous acks only once it is on local disk. Items whose log is not
+     * flushed within {@code ackTimeoutMillis} are reported back as unavailable. They stay in the
+     * log and are most likely stored anyway; a retry is safe because a fix already stored for the
+     * same vehicle and timestamp is recognized and not stored twice. A fix sent without a timestamp
+     * is stamped here, and its rejection carries that timestamp: only a retry that sends it along is
+     * recognized, any other is stored as a new fix.
+     */
+    public GpsIngestResponse submitAll(List<GpsLocationRequest> requests) {
+        GpsIngestResponse response = new GpsIngestResponse();
+        long[] positions = new long[partitionCount];
+        int[] logged = new int[requests.size()];
+        LocalDateTime[] stamped = new LocalDateTime[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            logged[i] = -1;
+            GpsLocationRequest request = requests.get(i);
+            String reason = request == null ? "Location is required" : validate(request);
+            if (reason == null) {
+                Fix fix = Fix.of(request);
+                stamped[i] = fix.timestamp();
+                Partition partition = partitionFor(fix.vehicleId());
+                long position = append(partition, fix);
+                if (position < 0) {
+                    response.getRejected().add(new GpsLocationBatchResponse.RejectedLocation(
+                            i, fix.vehicleId(), "Ingestion queue is full", null, true));
+                    continue;
+                }
+                positions[partition.index] = position;
+                logged[i] = partition.index;
+            } else {
+                response.getRejected().add(new GpsLocationBatchResponse.RejectedLocation(
+                        i, request != null ? request.getVehicleId() : null, reason));
+            }
+        }
+        boolean[] late = awaitDurable(positions);
+        for (int i = 0; i < requests.size(); i++) {
+            if (logged[i] >= 0 && late[logged[i]]) {
+                response.getRejected().add(new GpsLocationBatchResponse.RejectedLocation(
+                        i, requests.get(i).getVehicleId(), "Ingest log not flushed in time, retry later", stamped[i], true));
+                response.setUnavailableCount(response.getUnavailableCount() + 1);
+            }
+        }
+        response.getRejected().sort(Comparator.comparingInt(GpsLocationBatchResponse.RejectedLocation::getIndex));
+        response.setRejectedCount(response.getRejected().size());
+        response.setQueuedCount(requests.size() - response.getRejectedCount());
+        return response;
+    }
+
+    /**
+     * Log a fix for asynchronous persistence.
+     *
+     * @return false if the vehicle's partition log is full and the fix was dropped
+     * @throws ServiceUnavailableException if the fix was not flushed within {@code ackTimeoutMillis}
+     */
+    public boolean submit(GpsLocationRequest request) {
+        // Stamp receive time now, not when the fix is eventually replayed
+        Fix fix = Fix.of(request);
+        Partition partition = partitionFor(fix.vehicleId());
+        long position = append(partition, fix);
+        if (position < 0) {
+            return false;
+        }
+        long[] positions = new long[partitionCount];
+        positions[partition.index] = position;
+        if (awaitDurable(positions)[partition.index]) {
+            throw new ServiceUnavailableException("Ingest log not flushed in time, retry later");
+        }
+        return true;
+    }
+
+    /**
+     * Store a fix right away, on its vehicle's partition worker, and return it as stored.
+     */
+    public GpsLocationResponse create(GpsLocationRequest request) {
+        return execute(partitionFor(request.getVehicleId()), () -> locationService.createLocation(request));
+    }
+
+    /**
+     * Run work on the vehicle's partition worker, between log batches, and return its result.
+     * For changes to per-vehicle state that must not interleave with the vehicle's fixes.
+     */
+    public <T> T execute(UUID vehicleId, Supplier<T> work) {
+        return execute(partitionFor(vehicleId), work);
+    }
+
+    /**
+     * Queue work on the vehicle's partition worker without waiting for it. It runs once the worker
+     * is done with what it is doing now, in the order queued, so follow-up work on a vehicle's
+     * fixes stays in line with them without holding up whoever stored them.
+     */
+    public void executeLater(UUID vehicleId, Runnable work) {
+        Partition partition = partitionFor(vehicleId);
+        Runnable task = () -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                log.error("Follow-up work on ingest partition {} failed: {}", partition.index, e.getMessage(), e);
+            }
+        };
+        partition.tasks.add(task);
+        LockSupport.unpark(partition.worker);
+        // Stopping: the worker may already have run its last tasks
+        if (!running && partition.tasks.remove(task)) {
+            task.run();
+        }
+    }
+
+    /**
+     * Index of the partition that stores the vehicle's fixes.
+     */
+    public int partitionOf(UUID vehicleId) {
+        return partitionFor(vehicleId).index;
+    }
+
+    /**
+     * Store an upload right away. Each partition stores its vehicles' fixes on its own worker, in
+     * its own transaction, so a failure leaves the other partitions' fixes stored; items are
+     * reported back by their index in the upload, as with {@link GpsLocationService#createLocations}.
+     */
+    public GpsLocationBatchResponse createAll(List<GpsLocationRequest> requests) {
+        List<List<Integer>> indexes = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            indexes.add(new ArrayList<>());
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            GpsLocationRequest request = requests.get(i);
+            // Left for the service to reject
+            UUID vehicleId = request != null ? request.getVehicleId() : null;
+            indexes.get(vehicleId != null ? partitionFor(vehicleId).index : 0).add(i);
+        }
+
+        List<FutureTask<GpsLocationBatchResponse>> tasks = new ArrayList<>(partitionCount);
+        for (Partition partition : partitions) {
+            List<GpsLocationRequest> part = indexes.get(partition.index).stream().map(requests::get).toList();
+            tasks.add(part.isEmpty() ? null : schedule(partition, () -> locationService.createLocations(part)));
+        }
+
+        GpsLocationBatchResponse response = new GpsLocationBatchResponse();
+        RuntimeException failure = null;
+        for (int p = 0; p < partitionCount; p++) {
+            if (tasks.get(p) == null) {
+                continue;
+            }
+            try {
+                GpsLocationBatchResponse part = await(tasks.get(p));
+                List<Integer> partIndexes = indexes.get(p);
+                part.getAccepted().forEach(accepted -> accepted.setIndex(partIndexes.get(accepted.getIndex())));
+                part.getRejected().forEach(rejected -> rejected.setIndex(partIndexes.get(rejected.getIndex())));
+                response.getAccepted().addAll(part.getAccepted());
+                response.getRejected().addAll(part.getRejected());
+            } catch (RuntimeException e) {
+                // Wait for the other partitions before failing the upload
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        response.getAccepted().sort(Comparator.comparingInt(GpsLocationBatchResponse.AcceptedLocation::getIndex));
+        response.getRejected().sort(Comparator.comparingInt(GpsLocationBatchResponse.RejectedLocation::getIndex));
+        response.setAcceptedCount(response.getAccepted().size());
+        response.setRejectedCount(response.getRejected().size());
+        return response;
+    }
+
+    /**
+     * Hand the vehicles over on each partition once the fixes logged so far are stored, so those
+     * fixes are processed with the state they were logged under.
+     */
+    @EventListener
+    public void onOwnershipChanged(VehicleOwnershipChangedEvent event) {
+        for (Partition partition : partitions) {
+            partition.handovers.add(new Handover(event, partition.log.end()));
+            LockSupport.unpark(partition.worker);
+        }
+    }
+
+    /**
+     * Fixes logged but not yet replayed into the database, over all partitions.
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (Partition partition : partitions) {
+            depth += partition.backlog();
+        }
+        return depth;
+    }
+
+    private long append(Partition partition, Fix fix) {
+        if (!running) {
+            droppedCounter.increment();
+            return -1;
+        }
+        long position = partition.log.append(fix, System.currentTimeMillis());
+        if (position < 0) {
+            droppedCounter.increment();
+            return -1;
+        }
+        acceptedCounter.increment();
+        LockSupport.unpark(partition.worker);
+        if (partition.log.unflushedBytes() >= fsyncBatchBytes) {
+            LockSupport.unpark(flusher);
+        }
+        return position;
+    }
+
+    private <T> T execute(Partition partition, Supplier<T> work) {
+        if (Thread.currentThread() == partition.worker) {
+            return work.get();
+        }
+        return await(schedule(partition, work));
+    }
+
+    private <T> FutureTask<T> schedule(Partition partition, Supplier<T> work) {
+        FutureTask<T> task = new FutureTask<>(work::get);
+        partition.tasks.add(task);
+        LockSupport.unpark(partition.worker);
+        // Stopping: the worker may already have run its last tasks
+        if (!running && partition.tasks.remove(task)) {
+            task.run();
+        }
+        return task;
+    }
+
+    private static <T> T await(FutureTask<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an ingest partition", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void runTasks(Partition partition) {
+        // Only the tasks queued so far, so a steady stream of them cannot starve the log
+        for (int pending = partition.tasks.size(); pending > 0; pending--) {
+            Runnable task = partition.tasks.poll();
+            if (task == null) {
+                return;
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * With synchronous acks, wait for each partition's log to be on disk up to the given position.
+     *
+     * @return per partition, whether it was not flushed in time
+     */
+    private boolean[] awaitDurable(long[] positions) {
+        boolean[] late = new boolean[positions.length];
+        if (!syncAcks) {
+            return late;
+        }
+        int i = 0;
+        try {
+            for (; i < positions.length; i++) {
+                if (positions[i] > 0 && !partitions.get(i).log.awaitFlushed(positions[i], ackTimeoutMillis)) {
+                    log.warn("Ingest log partition {} was not flushed within {} ms", i, ackTimeoutMillis);
+                    late[i] = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (; i < positions.length; i++) {
+                late[i] = positions[i] > 0;
+            }
+        }
+        return late;
+    }
+
+    private String validate(GpsLocationRequest request) {
+        Set<ConstraintViolation<GpsLocationRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private Partition partitionFor(UUID vehicleId) {
+        return partitions.get(Math.floorMod(vehicleId.hashCode(), partitionCount));
+    }
+
+    private void checkNoOrphanedLogs() throws IOException {
+        if (!Files.isDirectory(logDirectory)) {
+            return;
+        }
+        try (var directories = Files.list(logDirectory)) {
+            for (Path directory : directories.toList()) {
+                String name = directory.getFileName().toString();
+                if (name.matches("p\\d+") && Integer.parseInt(name.substring(1)) >= partitionCount) {
+                    try (var segments = Files.list(directory)) {
+                        if (segments.findAny().isPresent()) {
+                            throw new IllegalStateException("Ingest log " + directory + " belongs to a partition beyond "
+                                    + "gps.ingest.partitions=" + partitionCount + "; replay it before reducing partitions");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushLogs() {
+        while (running || partitions.stream().anyMatch(p -> p.log.unflushedBytes() > 0)) {
+            for (Partition partition : partitions) {
+                if (partition.log.unflushedBytes() > 0) {
+                    fsyncTimer.record(partition.log::flush);
+                } else {
+                    partition.log.flush();
+                }
+            }
+            if (running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis));
+            }
+        }
+    }
+
+    private void drain(Partition partition) {
+        String checkpointName = logName + "/p" + partition.index;
+        List<Fix> batch = new ArrayList<>(batchSize);
+        // End of a failed batch, which is retried one fix at a time up to there
+        long isolateUntil = -1;
+        int attempt = 0;
+        while (running) {
+            runTasks(partition);
+            handOver(partition);
+            try {
+                if (partition.position < 0) {
+                    long checkpoint = checkpointRepository.find(checkpointName).orElse(0);
+                    if (checkpoint > partition.log.end()) {
+                        log.warn("Checkpoint {} of {} is past the end of its log; replaying the whole log",
+                                checkpoint, checkpointName);
+                        checkpoint = 0;
+                    }
+                    partition.position = Math.max(checkpoint, partition.log.start());
+                    partition.log.release(partition.position);
+                    log.info("Replaying ingest log partition {} from position {} ({} fixes behind)",
+                            partition.index, partition.position, partition.backlog());
+                }
+                if (batch.isEmpty()) {
+                    int max = partition.position < isolateUntil ? 1 : batchSize;
+                    partition.batchEnd = partition.log.read(partition.position, max, batch);
+                    if (batch.isEmpty()) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pollTimeoutMillis));
+                        continue;
+                    }
+                }
+                persist(partition, checkpointName, batch);
+                batch.clear();
+                attempt = 0;
+            } catch (RuntimeException e) {
+                if (!isTransient(e) && batch.size() > 1) {
+                    // Find the fixes that fail rather than drop the whole batch with them
+                    log.warn("Failed to persist {} logged GPS fixes, retrying them one at a time: {}",
+                            batch.size(), e.getMessage());
+                    isolateUntil = partition.batchEnd;
+                    batch.clear();
+                    continue;
+                }
+                if (!isTransient(e)) {
+                    // Not going to succeed on retry; skip the fix rather than block the partition
+                    failedCounter.increment(batch.size());
+                    log.error("Failed to persist {} logged GPS fixes: {}", batch.size(), e.getMessage(), e);
+                    if (skip(partition, checkpointName, batch)) {
+                        batch.clear();
+                    }
+                    continue;
+                }
+                retriedCounter.increment();
+                long backoff = Math.min(MAX_RETRY_BACKOFF_MILLIS, pollTimeoutMillis << Math.min(attempt++, 10));
+                log.warn("Database unavailable, retrying ingest log partition {} in {} ms: {}",
+                        partition.index, backoff, e.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+            }
+        }
+        runTasks(partition);
+    }
+
+    private void handOver(Partition partition) {
+        Handover handover;
+        // Before the checkpoint is read the position is -1, below any log end
+        while ((handover = partition.handovers.peek()) != null && partition.position >= handover.logEnd()) {
+            partition.handovers.poll();
+            try {
+                eventPublisher.publishEvent(new PartitionHandoverEvent(handover.change(), partition.index, partitionCount));
+            } catch (RuntimeException e) {
+                log.error("Handing over the vehicles of ingest partition {} failed: {}",
+                        partition.index, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void persist(Partition partition, String checkpointName, List<Fix> batch) {
+        long lagMillis = System.currentTimeMillis() - partition.log.appendedMillis(partition.position);
+        GpsLocationBatchResponse response = transactionTemplate.execute(status -> {
+            GpsLocationBatchResponse result = locationService.ingestFixes(batch);
+            checkpointRepository.save(checkpointName, partition.batchEnd);
+            return result;
+        });
+        advance(partition);
+        persistedCounter.increment(response.getAcceptedCount());
+        if (response.getRejectedCount() > 0) {
+            rejectedCounter.increment(response.getRejectedCount());
+            response.getRejected().forEach(rejected ->
+                    log.warn("Dropped logged fix for vehicle {}: {}", rejected.getVehicleId(), rejected.getReason()));
+        }
+        lagTimer.record(Duration.ofMillis(lagMillis));
+        lastLagMillis.set(lagMillis);
+    }
+
+    private boolean skip(Partition partition, String checkpointName, List<Fix> batch) {
+        try {
+            checkpointRepository.save(checkpointName, partition.batchEnd);
+            advance(partition);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Could not skip {} logged GPS fixes yet: {}", batch.size(), e.getMessage());
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(MAX_RETRY_BACKOFF_MILLIS));
+            return false;
+        }
+    }
+
+    private static void advance(Partition partition) {
+        partition.position = partition.batchEnd;
+        partition.log.release(partition.position);
+    }
+
+    /**
+     * Whether the failure is the database being unreachable or shutting down, which goes away on
+     * retry, rather than something wrong with the data.
+     */
+    public static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof CannotCreateTransactionException
+                    || cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+            // Connection failures (08xxx) and server shutdown (57P0x) can surface untranslated on commit
+            if (cause instanceof SQLException sql && sql.getSQLState() != null
+                    && (sql.getSQLState().startsWith("08") || sql.getSQLState().startsWith("57P"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Handover(VehicleOwnershipChangedEvent change, long logEnd) {
+    }
+
+    private static final class Partition {
+        private final int index;
+        private final IngestLog log;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Queue<Handover> handovers = new ConcurrentLinkedQueue<>();
+        private Thread worker;
+        // Replay position, -1 until the checkpoint has been read; only touched by the worker
+        private volatile long position = -1;
+        private long batchEnd;
+
+        private Partition(int index, IngestLog log) {
+            this.index = index;
+            this.log = log;
+        }
+
+        long backlog() {
+            long from = position < 0 ? log.start() : position;
+            return (log.end() - from) / IngestLog.RECORD_BYTES;
+        }
+    }
+}
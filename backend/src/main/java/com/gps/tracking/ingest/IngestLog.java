@@ -0,0 +1,387 @@
+package com.gps.tracking.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped log of fixes for one ingestion partition.
+ *
+ * The log is a run of preallocated segment files named after the log position of their first
+ * byte. Records have a fixed size and never straddle segments:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  CRC32C of bytes 4..63
+ *      4     4  magic, marks a written record
+ *      8    16  vehicle id
+ *     24     8  fix timestamp, microseconds
+ *     32    16  latitude, longitude (double)
+ *     48     8  speed, direction (float, NaN when absent)
+ *     56     8  append time, epoch milliseconds
+ * </pre>
+ *
+ * Appends only write to the page cache. {@link #flush} forces what was appended since the last
+ * flush to disk, so fsyncs are batched across appends; callers that need a record on disk before
+ * acknowledging it wait in {@link #awaitFlushed}. On open, the tail of the last segment is scanned
+ * and cut at the first record that is missing or fails its checksum, which drops a record torn by
+ * a crash.
+ *
+ * Consumed records are never rewritten: the reader only moves forward, so what is left to replay
+ * is always a suffix of the log. Compaction therefore drops whole segments once the reader has
+ * {@link #release released} them, except the one being appended to.
+ *
+ * One thread appends at a time (appends are synchronized), one thread reads, and one thread
+ * flushes; only the flushing thread unmaps segments.
+ */
+@Slf4j
+public class IngestLog implements Closeable {
+    public static final int RECORD_BYTES = 64;
+
+    private static final int MAGIC = 0x47505331;
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final CRC32C writeCrc = new CRC32C();
+    private final CRC32C readCrc = new CRC32C();
+    private final Object flushMonitor = new Object();
+
+    private Segment active;
+    // Set once the segments are unmapped; guarded by this
+    private boolean closed;
+    private volatile long end;
+    private volatile long flushed;
+    private volatile long released;
+
+    private IngestLog(Path directory, long segmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_BYTES;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Open the log in {@code directory}, creating it if needed, and recover its end.
+     */
+    public static IngestLog open(Path directory, long segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes < RECORD_BYTES) {
+            throw new IllegalArgumentException("Segment size must hold at least one record");
+        }
+        Files.createDirectories(directory);
+        IngestLog ingestLog = new IngestLog(directory, segmentBytes, maxSegments);
+        ingestLog.recover();
+        return ingestLog;
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                segments.put(base, Segment.map(file, base, Files.size(file)));
+            }
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(0);
+            return;
+        }
+        active = segments.lastEntry().getValue();
+        int offset = 0;
+        while (offset < active.size() && isValid(active.readView, offset, readCrc)) {
+            offset += RECORD_BYTES;
+        }
+        // Clear a torn record and anything after it, so a later scan cannot pick up stale bytes
+        for (int clear = offset; clear < active.size() && active.map.getInt(clear + 4) != 0; clear += RECORD_BYTES) {
+            active.map.putLong(clear, 0L);
+        }
+        end = active.base + offset;
+        flushed = end;
+        released = segments.firstKey();
+    }
+
+    /**
+     * Position of the oldest record still kept; the end once the log is closed.
+     */
+    public long start() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first != null ? first.getKey() : end;
+    }
+
+    public long end() {
+        return end;
+    }
+
+    /**
+     * Bytes of records still kept, consumed or not.
+     */
+    public long size() {
+        return end - start();
+    }
+
+    /**
+     * Append a fix and return the log position just past it, or -1 if the log has reached its
+     * segment limit or is closed. Returns as soon as the record is in the page cache.
+     */
+    public synchronized long append(Fix fix, long appendedMillis) {
+        if (closed) {
+            return -1;
+        }
+        long position = end;
+        if (position - active.base == active.size()) {
+            if (segments.size() >= maxSegments) {
+                return -1;
+            }
+            try {
+                active = createSegment(position);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create ingest log segment in " + directory, e);
+            }
+        }
+        int offset = (int) (position - active.base);
+        ByteBuffer map = active.map;
+        map.putInt(offset + 4, MAGIC);
+        map.putLong(offset + 8, fix.vehicleId().getMostSignificantBits());
+        map.putLong(offset + 16, fix.vehicleId().getLeastSignificantBits());
+        map.putLong(offset + 24, fix.timestampMicros());
+        map.putDouble(offset + 32, fix.latitude());
+        map.putDouble(offset + 40, fix.longitude());
+        map.putFloat(offset + 48, (float) fix.speed());
+        map.putFloat(offset + 52, (float) fix.direction());
+        map.putLong(offset + 56, appendedMillis);
+        map.putInt(offset, checksum(active.writeView, offset, writeCrc));
+        end = position + RECORD_BYTES;
+        return end;
+    }
+
+    /**
+     * Read up to {@code max} records starting at {@code position} into {@code sink} and return
+     * the position after the last one read. Only the reading thread may call this.
+     */
+    public long read(long position, int max, List<Fix> sink) {
+        long limit = end;
+        for (int i = 0; i < max && position < limit; i++) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+            Segment segment = entry.getValue();
+            int offset = (int) (position - segment.base);
+            if (offset == segment.size()) {
+                // Reached the end of a full segment; the next one starts here
+                i--;
+                position = segments.higherKey(segment.base);
+                continue;
+            }
+            ByteBuffer map = segment.map;
+            if (!isValid(segment.readView, offset, readCrc)) {
+                // Only the unflushed tail can be torn, and that is cut on open; this is damage on disk
+                log.error("Skipping corrupt ingest log record at position {} in {}", position, directory);
+                i--;
+                position += RECORD_BYTES;
+                continue;
+            }
+            sink.add(new Fix(null,
+                    new UUID(map.getLong(offset + 8), map.getLong(offset + 16)),
+                    map.getDouble(offset + 32), map.getDouble(offset + 40),
+                    map.getFloat(offset + 48), map.getFloat(offset + 52),
+                    map.getLong(offset + 24)));
+            position += RECORD_BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Append time of the record at {@code position}, which must have been appended.
+     */
+    public long appendedMillis(long position) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+        int offset = (int) (position - entry.getKey());
+        if (offset == entry.getValue().size()) {
+            return appendedMillis(segments.higherKey(entry.getKey()));
+        }
+        return entry.getValue().map.getLong(offset + 56);
+    }
+
+    /**
+     * Mark everything before {@code position} as consumed; the next flush deletes the segments
+     * that lie entirely before it.
+     */
+    public void release(long position) {
+        released = Math.max(released, position);
+    }
+
+    public long unflushedBytes() {
+        return end - flushed;
+    }
+
+    /**
+     * Force appended records to disk, wake the appenders waiting for them, then delete released
+     * segments. Only the flushing thread may call this.
+     */
+    public void flush() {
+        long target = end;
+        long from = flushed;
+        if (target > from) {
+            for (Segment segment : segments.tailMap(segments.floorKey(from)).values()) {
+                if (segment.base >= target) {
+                    break;
+                }
+                int start = (int) Math.max(0, from - segment.base);
+                int stop = (int) Math.min(segment.size(), target - segment.base);
+                segment.map.force(start, stop - start);
+            }
+            synchronized (flushMonitor) {
+                flushed = target;
+                flushMonitor.notifyAll();
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Wait until everything up to {@code position} is on disk.
+     *
+     * @return false if that did not happen within the timeout
+     */
+    public boolean awaitFlushed(long position, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (flushMonitor) {
+            while (flushed < position) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                flushMonitor.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private void compact() {
+        long limit = Math.min(released, flushed);
+        Map.Entry<Long, Segment> first;
+        while ((first = segments.firstEntry()) != null) {
+            Segment segment = first.getValue();
+            if (segment == active || segment.base + segment.size() > limit) {
+                return;
+            }
+            segments.remove(segment.base);
+            segment.close();
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.warn("Could not delete ingest log segment {}: {}", segment.path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flush and unmap the log. No thread may read or flush it afterwards; appends are refused.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flush();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private Segment createSegment(long base) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", base, SUFFIX));
+        Segment segment = Segment.map(file, base, segmentBytes);
+        segments.put(base, segment);
+        return segment;
+    }
+
+    private static boolean isValid(ByteBuffer view, int offset, CRC32C crc) {
+        return view.getInt(offset + 4) == MAGIC && view.getInt(offset) == checksum(view, offset, crc);
+    }
+
+    private static int checksum(ByteBuffer view, int offset, CRC32C crc) {
+        crc.reset();
+        view.limit(offset + RECORD_BYTES).position(offset + 4);
+        crc.update(view);
+        view.limit(view.capacity());
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        private static final Method INVOKE_CLEANER;
+        private static final Object UNSAFE;
+
+        static {
+            // Unmap eagerly where the JDK allows it; otherwise the mapping goes away with the buffer
+            Method invokeCleaner = null;
+            Object unsafe = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.debug("Mapped ingest log segments will be unmapped by the garbage collector");
+            }
+            INVOKE_CLEANER = invokeCleaner;
+            UNSAFE = unsafe;
+        }
+
+        private final Path path;
+        private final long base;
+        private final MappedByteBuffer map;
+        // Separate views for the appending and the reading thread, whose position and limit
+        // are moved to checksum a record
+        private final ByteBuffer writeView;
+        private final ByteBuffer readView;
+
+        private Segment(Path path, long base, MappedByteBuffer map) {
+            this.path = path;
+            this.base = base;
+            this.map = map;
+            this.writeView = map.duplicate();
+            this.readView = map.duplicate();
+        }
+
+        static Segment map(Path path, long base, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long length = size - size % RECORD_BYTES;
+                return new Segment(path, base, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+            }
+        }
+
+        int size() {
+            return map.capacity();
+        }
+
+        void close() {
+            if (INVOKE_CLEANER != null) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, map);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    log.debug("Could not unmap {}: {}", path, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.gps.tracking.ingest;
+
+import com.gps.tracking.cluster.VehicleOwnershipChangedEvent;
+
+import java.util.UUID;
+
+/**
+ * Published on an ingest partition's worker once it has stored every fix it logged before a
+ * {@link VehicleOwnershipChangedEvent}. Components holding per-vehicle state hand over the
+ * partition's vehicles here rather than on the change itself, so replaying the older fixes cannot
+ * bring back state that was just dropped, and no fix of those vehicles is stored meanwhile.
+ */
+public record PartitionHandoverEvent(VehicleOwnershipChangedEvent change, int partition, int partitionCount) {
+
+    /**
+     * Whether the vehicle's fixes go to this partition.
+     */
+    public boolean covers(UUID vehicleId) {
+        return Math.floorMod(vehicleId.hashCode(), partitionCount) == partition;
+    }
+
+    /**
+     * Whether the vehicle is on this partition and its state is to be dropped: it moved to another
+     * node, or moved here and may have changed on its previous owner.
+     */
+    public boolean handsOver(UUID vehicleId) {
+        return covers(vehicleId) && !change.keeps(vehicleId);
+    }
+}
@@ -0,0 +1,85 @@
+package com.gps.tracking.ingest;
+
+import com.gps.tracking.service.SpeedMonitoringService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs speed monitoring for persisted fixes on the ingest partition that stored them.
+ *
+ * Fixes are handed over only once the transaction that stored them has committed, so speed
+ * history rows can reference them. They are then queued as a follow-up task on their vehicles'
+ * partition worker, which runs it after the store it is busy with: each vehicle's fixes are
+ * evaluated in order, and whoever stored them, such as a synchronous upload, does not wait for
+ * the evaluation. No fix is skipped: a slow evaluation holds the partition back, which shows up as
+ * ingest queue depth and, once the queue is full, as "Ingestion queue is full" answers.
+ */
+@Component
+@Slf4j
+public class SpeedMonitoringDispatcher {
+    private final SpeedMonitoringService speedMonitoringService;
+    private final GpsIngestionPipeline ingestionPipeline;
+    private final Counter processedCounter;
+    private final Counter failedCounter;
+
+    // Lazy: the pipeline stores fixes through GpsLocationService, which dispatches them here
+    public SpeedMonitoringDispatcher(SpeedMonitoringService speedMonitoringService,
+                                     @Lazy GpsIngestionPipeline ingestionPipeline,
+                                     MeterRegistry meterRegistry) {
+        this.speedMonitoringService = speedMonitoringService;
+        this.ingestionPipeline = ingestionPipeline;
+        this.processedCounter = meterRegistry.counter("gps.speed.monitor.processed");
+        this.failedCounter = meterRegistry.counter("gps.speed.monitor.failed");
+    }
+
+    /**
+     * Queue fixes for speed monitoring once the current transaction commits,
+     * or right away when called outside a transaction.
+     */
+    public void dispatchAfterCommit(List<Fix> fixes) {
+        if (fixes.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(fixes);
+                }
+            });
+        } else {
+            dispatch(fixes);
+        }
+    }
+
+    private void dispatch(List<Fix> fixes) {
+        // Fixes stored together normally share a partition; split them in case they do not
+        Map<Integer, List<Fix>> byPartition = new LinkedHashMap<>();
+        for (Fix fix : fixes) {
+            byPartition.computeIfAbsent(ingestionPipeline.partitionOf(fix.vehicleId()), p -> new ArrayList<>()).add(fix);
+        }
+        byPartition.values().forEach(part ->
+                ingestionPipeline.executeLater(part.get(0).vehicleId(), () -> process(part)));
+    }
+
+    private void process(List<Fix> fixes) {
+        try {
+            speedMonitoringService.processFixes(fixes);
+            processedCounter.increment(fixes.size());
+        } catch (RuntimeException e) {
+            // The fixes are stored; their episodes are requeued and the partition goes on
+            failedCounter.increment(fixes.size());
+            log.error("Speed monitoring failed for {} fixes: {}", fixes.size(), e.getMessage(), e);
+        }
+    }
+}
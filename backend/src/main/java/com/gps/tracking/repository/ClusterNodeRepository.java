@@ -0,0 +1,49 @@
+package com.gps.tracking.repository;
+
+import com.gps.tracking.cluster.ClusterNode;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Heartbeats of the backend nodes sharing this database. Liveness is judged on the database
+ * clock, so the nodes' own clocks do not need to agree.
+ */
+@Repository
+public class ClusterNodeRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    public ClusterNodeRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void heartbeat(String nodeId, String baseUrl) {
+        jdbcTemplate.update("""
+                INSERT INTO gps_cluster_nodes (node_id, base_url, started_at, heartbeat_at) VALUES (?, ?, now(), now())
+                ON CONFLICT (node_id) DO UPDATE SET base_url = EXCLUDED.base_url, heartbeat_at = EXCLUDED.heartbeat_at
+                """, nodeId, baseUrl);
+    }
+
+    /**
+     * Nodes that sent a heartbeat within the timeout, by id.
+     */
+    public List<ClusterNode> findLive(long timeoutMillis) {
+        return jdbcTemplate.query("""
+                SELECT node_id, base_url FROM gps_cluster_nodes
+                WHERE heartbeat_at > now() - make_interval(secs => ?)
+                ORDER BY node_id
+                """, (rs, row) -> new ClusterNode(rs.getString("node_id"), rs.getString("base_url")),
+                timeoutMillis / 1000d);
+    }
+
+    /**
+     * Remove a node that left, and any whose heartbeat stopped more than {@code expireMillis} ago.
+     */
+    public void delete(String nodeId, long expireMillis) {
+        jdbcTemplate.update("""
+                DELETE FROM gps_cluster_nodes
+                WHERE node_id = ? OR heartbeat_at < now() - make_interval(secs => ?)
+                """, nodeId, expireMillis / 1000d);
+    }
+}
@@ -25,12 +25,4 @@ public interface GeofenceRepository extends JpaRepository<Geofence, UUID> {
     
     @Query("SELECT COUNT(g) FROM Geofence g WHERE g.isActive = true")
     Long countActiveGeofences();
-    
-    @Query("SELECT g FROM Geofence g WHERE g.isActive = true AND " +
-           "g.shape = 'CIRCLE' AND " +
-           "(6371000 * acos(cos(radians(:latitude)) * cos(radians(g.centerLatitude)) * " +
-           "cos(radians(g.centerLongitude) - radians(:longitude)) + " +
-           "sin(radians(:latitude)) * sin(radians(g.centerLatitude)))) <= g.radiusMeters")
-    List<Geofence> findGeofencesContainingPoint(@Param("latitude") Double latitude, 
-                                               @Param("longitude") Double longitude);
 }
\ No newline at end of file
@@ -0,0 +1,231 @@
+package com.gps.tracking.repository;
+
+import com.gps.tracking.dto.response.GpsLocationResponse;
+import com.gps.tracking.dto.response.GpsLocationRollupResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Read path for a vehicle's fix history that never loads a whole range at once.
+ *
+ * Pages use keyset pagination on (timestamp, id): each page starts strictly after the last row
+ * of the previous one, so the cost of a page does not depend on how deep into the history it is
+ * and concurrent inserts never shift rows between pages. Streaming walks a range through a
+ * server-side cursor, fetching {@code fetchSize} rows per round trip. A stream holds a pooled
+ * connection for as long as the client takes to read it, so at most {@code maxStreams} run at once
+ * and the pool stays available to ingestion.
+ *
+ * Rows are mapped straight to {@link GpsLocationResponse} without going through the persistence
+ * context. Every query is bounded by vehicle and, when given, by time, so only the matching day
+ * partitions of gps_locations are scanned.
+ */
+@Repository
+public class GpsLocationHistoryRepository {
+    private static final String SELECT = "SELECT id, vehicle_id, latitude, longitude, speed, direction, timestamp, created_at "
+            + "FROM gps_locations WHERE vehicle_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingTemplate;
+    private final Semaphore streams;
+
+    public GpsLocationHistoryRepository(DataSource dataSource,
+                                        @Value("${gps.history.stream-fetch-size:1000}") int fetchSize,
+                                        @Value("${gps.history.max-concurrent-streams:4}") int maxStreams) {
+        if (maxStreams < 1) {
+            throw new IllegalArgumentException("gps.history.max-concurrent-streams must be at least 1");
+        }
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingTemplate = new JdbcTemplate(dataSource);
+        this.streamingTemplate.setFetchSize(fetchSize);
+        this.streams = new Semaphore(maxStreams);
+    }
+
+    /**
+     * Up to {@code limit} fixes of a vehicle in (timestamp, id) order, starting after the cursor.
+     * Time bounds are inclusive and optional.
+     */
+    @Transactional(readOnly = true)
+    public List<GpsLocationResponse> findPage(UUID vehicleId, String licensePlate, LocalDateTime startTime,
+                                              LocalDateTime endTime, Cursor after, boolean descending, int limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = query(vehicleId, startTime, endTime, args);
+        if (after != null) {
+            sql.append(descending ? " AND (timestamp, id) < (?, ?)" : " AND (timestamp, id) > (?, ?)");
+            args.add(after.timestamp());
+            args.add(after.id());
+        }
+        sql.append(descending ? " ORDER BY timestamp DESC, id DESC" : " ORDER BY timestamp, id");
+        sql.append(" LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> map(rs, licensePlate), args.toArray());
+    }
+
+    /**
+     * Hand every fix of a vehicle in the range to {@code sink}, oldest first, as it is read.
+     * The transaction keeps the cursor open; only one fetch of rows is in memory at a time.
+     */
+    @Transactional(readOnly = true)
+    public void forEachInRange(UUID vehicleId, String licensePlate, LocalDateTime startTime,
+                               LocalDateTime endTime, Consumer<GpsLocationResponse> sink) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = query(vehicleId, startTime, endTime, args).append(" ORDER BY timestamp, id");
+        streamingTemplate.query(sql.toString(), rs -> {
+            sink.accept(map(rs, licensePlate));
+        }, args.toArray());
+    }
+
+    /**
+     * Ids of the fixes among {@code keys} that are already stored. A vehicle has at most one fix
+     * per timestamp (see V24), so a fix uploaded again after an unanswered request is found here.
+     */
+    public Map<FixKey, UUID> findStoredIds(Collection<FixKey> keys) {
+        if (keys.isEmpty()) {
+            return Map.of();
+        }
+        UUID[] vehicleIds = new UUID[keys.size()];
+        Timestamp[] timestamps = new Timestamp[keys.size()];
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        int i = 0;
+        for (FixKey key : keys) {
+            vehicleIds[i] = key.vehicleId();
+            timestamps[i++] = Timestamp.valueOf(key.timestamp());
+            from = from == null || key.timestamp().isBefore(from) ? key.timestamp() : from;
+            to = to == null || key.timestamp().isAfter(to) ? key.timestamp() : to;
+        }
+        LocalDateTime lowest = from;
+        LocalDateTime highest = to;
+        Map<FixKey, UUID> stored = new HashMap<>();
+        // The range lets the planner skip the day partitions no key falls in
+        jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement("""
+                    SELECT l.id, l.vehicle_id, l.timestamp FROM gps_locations l
+                    JOIN unnest(?, ?) AS k(vehicle_id, timestamp)
+                      ON l.vehicle_id = k.vehicle_id AND l.timestamp = k.timestamp
+                    WHERE l.timestamp >= ? AND l.timestamp <= ?
+                    """);
+            statement.setArray(1, con.createArrayOf("uuid", vehicleIds));
+            statement.setArray(2, con.createArrayOf("timestamp", timestamps));
+            statement.setObject(3, lowest);
+            statement.setObject(4, highest);
+            return statement;
+        }, rs -> {
+            stored.put(new FixKey(rs.getObject("vehicle_id", UUID.class), rs.getObject("timestamp", LocalDateTime.class)),
+                    rs.getObject("id", UUID.class));
+        });
+        return stored;
+    }
+
+    /**
+     * Reserve one of the concurrent streams; false when all are taken. A reserved stream must be
+     * given back with {@link #closeStream} once it is done, whether or not it ran.
+     */
+    public boolean tryOpenStream() {
+        return streams.tryAcquire();
+    }
+
+    public void closeStream() {
+        streams.release();
+    }
+
+    /**
+     * Per-minute summaries of a vehicle's fixes in the range, oldest first. These outlive the raw
+     * partitions, so they cover periods whose fixes are past retention.
+     */
+    public List<GpsLocationRollupResponse> findRollups(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime) {
+        return jdbcTemplate.query("SELECT * FROM gps_location_rollups WHERE vehicle_id = ? "
+                        + "AND bucket_start >= ? AND bucket_start <= ? ORDER BY bucket_start",
+                (rs, rowNum) -> new GpsLocationRollupResponse(
+                        rs.getObject("vehicle_id", UUID.class),
+                        rs.getObject("bucket_start", LocalDateTime.class),
+                        rs.getInt("point_count"),
+                        rs.getBigDecimal("avg_speed"),
+                        rs.getBigDecimal("max_speed"),
+                        rs.getObject("first_time", LocalDateTime.class),
+                        rs.getBigDecimal("first_latitude"),
+                        rs.getBigDecimal("first_longitude"),
+                        rs.getObject("last_time", LocalDateTime.class),
+                        rs.getBigDecimal("last_latitude"),
+                        rs.getBigDecimal("last_longitude")),
+                vehicleId, startTime, endTime);
+    }
+
+    private static StringBuilder query(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime, List<Object> args) {
+        StringBuilder sql = new StringBuilder(SELECT);
+        args.add(vehicleId);
+        if (startTime != null) {
+            sql.append(" AND timestamp >= ?");
+            args.add(startTime);
+        }
+        if (endTime != null) {
+            sql.append(" AND timestamp <= ?");
+            args.add(endTime);
+        }
+        return sql;
+    }
+
+    private static GpsLocationResponse map(ResultSet rs, String licensePlate) throws SQLException {
+        return new GpsLocationResponse(
+                rs.getObject("id", UUID.class),
+                rs.getObject("vehicle_id", UUID.class),
+                licensePlate,
+                rs.getBigDecimal("latitude"),
+                rs.getBigDecimal("longitude"),
+                rs.getBigDecimal("speed"),
+                rs.getBigDecimal("direction"),
+                rs.getObject("timestamp", LocalDateTime.class),
+                rs.getObject("created_at", LocalDateTime.class)
+        );
+    }
+
+    /**
+     * Identity of a fix: its vehicle and timestamp.
+     */
+    public record FixKey(UUID vehicleId, LocalDateTime timestamp) {
+    }
+
+    /**
+     * Position of a row in (timestamp, id) order, exchanged with clients as an opaque string.
+     */
+    public record Cursor(LocalDateTime timestamp, UUID id) {
+
+        public static Cursor of(GpsLocationResponse location) {
+            return new Cursor(location.getTimestamp(), location.getId());
+        }
+
+        public String encode() {
+            String raw = timestamp + "," + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int comma = raw.indexOf(',');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, comma)), UUID.fromString(raw.substring(comma + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + value);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.gps.tracking.repository;
 
 import com.gps.tracking.entity.GpsLocation;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -13,16 +14,20 @@ import java.util.UUID;
 
 @Repository
 public interface GpsLocationRepository extends JpaRepository<GpsLocation, UUID> {
-    List<GpsLocation> findByVehicleIdOrderByTimestampDesc(UUID vehicleId);
     
-    @Query("SELECT g FROM GpsLocation g JOIN FETCH g.vehicle WHERE g.vehicle.id = :vehicleId ORDER BY g.timestamp DESC")
-    List<GpsLocation> findLatestByVehicleIdList(@Param("vehicleId") UUID vehicleId);
+    @EntityGraph(attributePaths = "vehicle")
+    Optional<GpsLocation> findFirstByVehicleIdOrderByTimestampDesc(UUID vehicleId);
     
     default Optional<GpsLocation> findLatestByVehicleId(UUID vehicleId) {
-        List<GpsLocation> locations = findLatestByVehicleIdList(vehicleId);
-        return locations.isEmpty() ? Optional.empty() : Optional.of(locations.get(0));
+        return findFirstByVehicleIdOrderByTimestampDesc(vehicleId);
     }
     
+    // One row per vehicle; both keys descending so a backward scan of the (vehicle_id, timestamp, id)
+    // index serves the order, which ascending vehicle_id with descending timestamp would not
+    @Query(value = "SELECT DISTINCT ON (vehicle_id) * FROM gps_locations ORDER BY vehicle_id DESC, timestamp DESC",
+           nativeQuery = true)
+    List<GpsLocation> findLatestForAllVehicles();
+    
     @Query("SELECT g FROM GpsLocation g WHERE g.vehicle.id = :vehicleId AND g.timestamp BETWEEN :startTime AND :endTime ORDER BY g.timestamp ASC")
     List<GpsLocation> findByVehicleIdAndTimestampBetween(
         @Param("vehicleId") UUID vehicleId,
@@ -0,0 +1,34 @@
+package com.gps.tracking.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * How far each ingest log has been replayed into gps_locations. The position is written in the
+ * same transaction as the fixes it covers, so after a crash a log resumes exactly where the
+ * committed data ends.
+ */
+@Repository
+public class IngestCheckpointRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    public IngestCheckpointRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public OptionalLong find(String logName) {
+        List<Long> positions = jdbcTemplate.queryForList(
+                "SELECT position FROM gps_ingest_checkpoints WHERE log_name = ?", Long.class, logName);
+        return positions.isEmpty() ? OptionalLong.empty() : OptionalLong.of(positions.get(0));
+    }
+
+    public void save(String logName, long position) {
+        jdbcTemplate.update("""
+                INSERT INTO gps_ingest_checkpoints (log_name, position, updated_at) VALUES (?, ?, now())
+                ON CONFLICT (log_name) DO UPDATE SET position = EXCLUDED.position, updated_at = EXCLUDED.updated_at
+                """, logName, position);
+    }
+}
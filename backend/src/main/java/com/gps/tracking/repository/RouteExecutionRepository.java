@@ -7,7 +7,9 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -15,6 +17,13 @@ public interface RouteExecutionRepository extends JpaRepository<RouteExecution,
     
     List<RouteExecution> findByOptimizedRouteIdOrderBySequenceNumberAsc(UUID optimizedRouteId);
     
+    List<RouteExecution> findByOptimizedRouteIdAndSequenceNumberInOrderBySequenceNumberAsc(
+            UUID optimizedRouteId, Collection<Integer> sequenceNumbers);
+    
+    // Sequence number, latitude and longitude only, for track simplification
+    @Query("SELECT e.sequenceNumber, e.latitude, e.longitude FROM RouteExecution e WHERE e.optimizedRoute.id = :routeId ORDER BY e.sequenceNumber ASC")
+    List<Object[]> findTrackPointsByRoute(@Param("routeId") UUID routeId);
+    
     List<RouteExecution> findByOptimizedRouteIdAndTimestampBetweenOrderBySequenceNumberAsc(
             UUID optimizedRouteId, LocalDateTime startTime, LocalDateTime endTime);
     
@@ -27,6 +36,8 @@ public interface RouteExecutionRepository extends JpaRepository<RouteExecution,
     @Query("SELECT MAX(e.cumulativeDistanceKm) FROM RouteExecution e WHERE e.optimizedRoute.id = :routeId")
     Double getTotalDistanceByRoute(@Param("routeId") UUID routeId);
     
+    Optional<RouteExecution> findFirstByOptimizedRouteIdOrderBySequenceNumberDesc(UUID optimizedRouteId);
+    
     @Query("SELECT COUNT(e) FROM RouteExecution e WHERE e.optimizedRoute.id = :routeId AND e.deviationType = :deviationType")
     Long countByRouteAndDeviationType(@Param("routeId") UUID routeId, @Param("deviationType") RouteExecution.DeviationType deviationType);
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.gps.tracking.repository;
 
 import com.gps.tracking.entity.Route;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -18,6 +19,22 @@ public interface RouteRepository extends JpaRepository<Route, UUID> {
     Optional<Route> findByVehicleIdAndStatus(UUID vehicleId, String status);
     List<Route> findByStatus(String status);
     
+    @Modifying
+    @Query("UPDATE Route r SET r.distanceKm = :distanceKm, r.pointCount = :pointCount, " +
+           "r.maxSpeedKmh = :maxSpeedKmh, r.avgSpeedKmh = :avgSpeedKmh, r.movingSeconds = :movingSeconds, " +
+           "r.lastFixTime = :lastFixTime, r.lastLatitude = :lastLatitude, r.lastLongitude = :lastLongitude " +
+           "WHERE r.id = :routeId AND r.status = 'IN_PROGRESS' " +
+           "AND (r.lastFixTime IS NULL OR r.lastFixTime <= :lastFixTime)")
+    int checkpointProgress(@Param("routeId") UUID routeId,
+                           @Param("distanceKm") BigDecimal distanceKm,
+                           @Param("pointCount") Integer pointCount,
+                           @Param("maxSpeedKmh") BigDecimal maxSpeedKmh,
+                           @Param("avgSpeedKmh") BigDecimal avgSpeedKmh,
+                           @Param("movingSeconds") Long movingSeconds,
+                           @Param("lastFixTime") LocalDateTime lastFixTime,
+                           @Param("lastLatitude") BigDecimal lastLatitude,
+                           @Param("lastLongitude") BigDecimal lastLongitude);
+    
     @Query("SELECT COALESCE(SUM(r.distanceKm), 0) FROM Route r WHERE r.vehicle.id = :vehicleId " +
            "AND r.startTime >= :startDate AND r.endTime <= :endDate AND r.status = 'COMPLETED'")
     BigDecimal getTotalDistanceByVehicleAndDateRange(@Param("vehicleId") UUID vehicleId,
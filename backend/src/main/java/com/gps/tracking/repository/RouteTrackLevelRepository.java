@@ -0,0 +1,21 @@
+package com.gps.tracking.repository;
+
+import com.gps.tracking.entity.RouteTrackLevel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface RouteTrackLevelRepository extends JpaRepository<RouteTrackLevel, UUID> {
+
+    List<RouteTrackLevel> findByOptimizedRouteIdOrderByLevelAsc(UUID optimizedRouteId);
+
+    @Modifying
+    @Query("DELETE FROM RouteTrackLevel l WHERE l.optimizedRoute.id = :routeId")
+    void deleteByRouteId(@Param("routeId") UUID routeId);
+}
@@ -46,7 +46,7 @@ public interface SpeedHistoryRepository extends JpaRepository<SpeedHistory, UUID
         @Param("endTime") LocalDateTime endTime
     );
     
-    @Query("SELECT AVG(sh.speedKmh) FROM SpeedHistory sh WHERE sh.vehicle.id = :vehicleId AND " +
+    @Query("SELECT SUM(sh.speedKmh * sh.sampleCount) / SUM(sh.sampleCount) FROM SpeedHistory sh WHERE sh.vehicle.id = :vehicleId AND " +
            "sh.recordedTime BETWEEN :startTime AND :endTime")
     BigDecimal findAverageSpeedByVehicleAndPeriod(
         @Param("vehicleId") UUID vehicleId,
@@ -54,7 +54,7 @@ public interface SpeedHistoryRepository extends JpaRepository<SpeedHistory, UUID
         @Param("endTime") LocalDateTime endTime
     );
     
-    @Query("SELECT MAX(sh.speedKmh) FROM SpeedHistory sh WHERE sh.vehicle.id = :vehicleId AND " +
+    @Query("SELECT MAX(COALESCE(sh.maxSpeedKmh, sh.speedKmh)) FROM SpeedHistory sh WHERE sh.vehicle.id = :vehicleId AND " +
            "sh.recordedTime BETWEEN :startTime AND :endTime")
     BigDecimal findMaxSpeedByVehicleAndPeriod(
         @Param("vehicleId") UUID vehicleId,
@@ -62,7 +62,7 @@ public interface SpeedHistoryRepository extends JpaRepository<SpeedHistory, UUID
         @Param("endTime") LocalDateTime endTime
     );
     
-    @Query("SELECT AVG(sh.speedKmh) FROM SpeedHistory sh WHERE sh.driver.id = :driverId AND " +
+    @Query("SELECT SUM(sh.speedKmh * sh.sampleCount) / SUM(sh.sampleCount) FROM SpeedHistory sh WHERE sh.driver.id = :driverId AND " +
            "sh.recordedTime BETWEEN :startTime AND :endTime")
     BigDecimal findAverageSpeedByDriverAndPeriod(
         @Param("driverId") UUID driverId,
@@ -70,7 +70,7 @@ public interface SpeedHistoryRepository extends JpaRepository<SpeedHistory, UUID
         @Param("endTime") LocalDateTime endTime
     );
     
-    @Query("SELECT MAX(sh.speedKmh) FROM SpeedHistory sh WHERE sh.driver.id = :driverId AND " +
+    @Query("SELECT MAX(COALESCE(sh.maxSpeedKmh, sh.speedKmh)) FROM SpeedHistory sh WHERE sh.driver.id = :driverId AND " +
            "sh.recordedTime BETWEEN :startTime AND :endTime")
     BigDecimal findMaxSpeedByDriverAndPeriod(
         @Param("driverId") UUID driverId,
@@ -21,14 +21,6 @@ public interface SpeedLimitRepository extends JpaRepository<SpeedLimit, UUID> {
     
     List<SpeedLimit> findByRoadTypeAndIsActiveTrue(SpeedLimit.RoadType roadType);
     
-    @Query("SELECT sl FROM SpeedLimit sl WHERE sl.isActive = true AND " +
-           "SQRT(POWER(69.1 * (sl.latitude - :latitude), 2) + " +
-           "POWER(69.1 * (:longitude - sl.longitude) * COS(sl.latitude / 57.3), 2)) * 1609.34 <= sl.radiusMeters")
-    List<SpeedLimit> findSpeedLimitsNearLocation(
-        @Param("latitude") BigDecimal latitude, 
-        @Param("longitude") BigDecimal longitude
-    );
-    
     @Query("SELECT sl FROM SpeedLimit sl WHERE sl.isActive = true AND " +
            "sl.latitude BETWEEN :minLat AND :maxLat AND " +
            "sl.longitude BETWEEN :minLng AND :maxLng")
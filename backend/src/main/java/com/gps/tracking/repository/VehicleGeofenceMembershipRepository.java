@@ -0,0 +1,26 @@
+package com.gps.tracking.repository;
+
+import com.gps.tracking.entity.VehicleGeofenceMembership;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface VehicleGeofenceMembershipRepository extends JpaRepository<VehicleGeofenceMembership, UUID> {
+    
+    @Query("SELECT m.geofence.id FROM VehicleGeofenceMembership m WHERE m.vehicle.id = :vehicleId")
+    List<UUID> findGeofenceIdsByVehicleId(@Param("vehicleId") UUID vehicleId);
+    
+    @Modifying
+    @Query("DELETE FROM VehicleGeofenceMembership m WHERE m.vehicle.id = :vehicleId AND m.geofence.id = :geofenceId")
+    void deleteByVehicleIdAndGeofenceId(@Param("vehicleId") UUID vehicleId, @Param("geofenceId") UUID geofenceId);
+    
+    @Modifying
+    @Query("DELETE FROM VehicleGeofenceMembership m WHERE m.geofence.id = :geofenceId")
+    void deleteByGeofenceId(@Param("geofenceId") UUID geofenceId);
+}
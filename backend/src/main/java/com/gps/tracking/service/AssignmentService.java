@@ -24,6 +24,7 @@ public class AssignmentService {
     private final VehicleDriverAssignmentRepository assignmentRepository;
     private final VehicleRepository vehicleRepository;
     private final DriverRepository driverRepository;
+    private final ReferenceDataCache referenceDataCache;
 
     @Transactional
     public AssignmentResponse assignDriverToVehicle(AssignmentRequest request) {
@@ -47,6 +48,7 @@ public class AssignmentService {
                     assignment.setIsActive(false);
                     assignment.setUnassignedAt(LocalDateTime.now());
                     assignmentRepository.save(assignment);
+                    referenceDataCache.evictActiveDriver(assignment.getVehicle().getId());
                 });
 
         VehicleDriverAssignment assignment = new VehicleDriverAssignment();
@@ -55,7 +57,9 @@ public class AssignmentService {
         assignment.setAssignedAt(LocalDateTime.now());
         assignment.setIsActive(true);
 
-        return toResponse(assignmentRepository.save(assignment));
+        VehicleDriverAssignment saved = assignmentRepository.save(assignment);
+        referenceDataCache.evictActiveDriver(request.getVehicleId());
+        return toResponse(saved);
     }
 
     @Transactional
@@ -66,6 +70,7 @@ public class AssignmentService {
         assignment.setIsActive(false);
         assignment.setUnassignedAt(LocalDateTime.now());
         assignmentRepository.save(assignment);
+        referenceDataCache.evictActiveDriver(assignment.getVehicle().getId());
     }
 
     public AssignmentResponse getCurrentAssignmentByVehicle(UUID vehicleId) {
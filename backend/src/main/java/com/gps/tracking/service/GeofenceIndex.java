@@ -0,0 +1,144 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.entity.Geofence;
+import com.gps.tracking.geo.CircleRegion;
+import com.gps.tracking.geo.GridIndex;
+import com.gps.tracking.geo.PolygonRegion;
+import com.gps.tracking.geo.Region;
+import com.gps.tracking.repository.GeofenceRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * In-memory spatial index of the active geofences, used to hit-test every ingested fix
+ * without querying the database. Loaded once at startup and kept current by
+ * {@link GeofencingService} whenever a fence is created, updated or deactivated, on this node or,
+ * through {@link #reload}, on another one.
+ */
+@Component
+@Slf4j
+public class GeofenceIndex {
+    private final GeofenceRepository geofenceRepository;
+    private final MeterRegistry meterRegistry;
+    private final GridIndex<UUID, IndexedGeofence> grid;
+
+    public GeofenceIndex(GeofenceRepository geofenceRepository,
+                         MeterRegistry meterRegistry,
+                         @Value("${gps.geofence.index.cell-size-degrees:0.01}") double cellSizeDegrees,
+                         @Value("${gps.geofence.index.max-cells-per-fence:4096}") int maxCellsPerFence) {
+        this.geofenceRepository = geofenceRepository;
+        this.meterRegistry = meterRegistry;
+        this.grid = new GridIndex<>(cellSizeDegrees, maxCellsPerFence);
+    }
+
+    @PostConstruct
+    void load() {
+        grid.clear();
+        geofenceRepository.findByIsActiveTrue().forEach(this::put);
+        Gauge.builder("gps.geofence.index.size", grid, GridIndex::size).register(meterRegistry);
+        log.info("Indexed {} active geofences", grid.size());
+    }
+
+    /**
+     * Add or replace a fence. Inactive fences and fences without usable geometry are removed.
+     */
+    public void put(Geofence geofence) {
+        Region region = Boolean.TRUE.equals(geofence.getIsActive()) ? toRegion(geofence) : null;
+        if (region == null) {
+            grid.remove(geofence.getId());
+            return;
+        }
+        grid.put(geofence.getId(), region.bounds(), new IndexedGeofence(geofence, region));
+    }
+
+    /**
+     * Whether {@link #put} would keep the fence: it is active and its geometry is usable.
+     */
+    public boolean isIndexable(Geofence geofence) {
+        return Boolean.TRUE.equals(geofence.getIsActive()) && toRegion(geofence) != null;
+    }
+
+    public void remove(UUID geofenceId) {
+        grid.remove(geofenceId);
+    }
+
+    /**
+     * Reload one fence from the database.
+     */
+    public void reload(UUID geofenceId) {
+        geofenceRepository.findById(geofenceId).ifPresentOrElse(this::put, () -> remove(geofenceId));
+    }
+
+    /**
+     * Reload every fence from the database. The index is updated in place, so fixes matched
+     * meanwhile still see the fences that did not change.
+     *
+     * @return the fences that are no longer indexed
+     */
+    public Set<UUID> reloadAll() {
+        Set<UUID> dropped = new HashSet<>(grid.keys());
+        for (Geofence geofence : geofenceRepository.findByIsActiveTrue()) {
+            put(geofence);
+            if (grid.get(geofence.getId()) != null) {
+                dropped.remove(geofence.getId());
+            }
+        }
+        dropped.forEach(grid::remove);
+        return dropped;
+    }
+
+    /**
+     * Active geofences that contain the point: bounding-box prefilter from the grid,
+     * then the exact shape test.
+     */
+    public List<Geofence> findContaining(double latitude, double longitude) {
+        List<Geofence> result = new ArrayList<>();
+        grid.forEachCandidate(latitude, longitude, candidate -> {
+            if (candidate.region().contains(latitude, longitude)) {
+                result.add(candidate.geofence());
+            }
+        });
+        return result;
+    }
+
+    public Geofence get(UUID geofenceId) {
+        IndexedGeofence indexed = grid.get(geofenceId);
+        return indexed != null ? indexed.geofence() : null;
+    }
+
+    public int size() {
+        return grid.size();
+    }
+
+    private Region toRegion(Geofence geofence) {
+        if (geofence.getShape() == Geofence.GeofenceShape.CIRCLE
+                && geofence.getCenterLatitude() != null
+                && geofence.getCenterLongitude() != null
+                && geofence.getRadiusMeters() != null) {
+            return new CircleRegion(geofence.getCenterLatitude().doubleValue(),
+                    geofence.getCenterLongitude().doubleValue(),
+                    geofence.getRadiusMeters());
+        }
+        if (geofence.getShape() == Geofence.GeofenceShape.POLYGON && geofence.getPolygonCoordinates() != null) {
+            try {
+                return PolygonRegion.fromJson(geofence.getPolygonCoordinates());
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping geofence {} with unusable polygon: {}", geofence.getId(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private record IndexedGeofence(Geofence geofence, Region region) {
+    }
+}
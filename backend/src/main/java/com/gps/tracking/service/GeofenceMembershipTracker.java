@@ -0,0 +1,197 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.entity.Geofence;
+import com.gps.tracking.entity.Vehicle;
+import com.gps.tracking.entity.VehicleGeofenceMembership;
+import com.gps.tracking.ingest.PartitionHandoverEvent;
+import com.gps.tracking.repository.VehicleGeofenceMembershipRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which geofences each vehicle is currently inside, so alerts are raised on real
+ * entry/exit transitions instead of on every fix.
+ *
+ * A change in observed containment only becomes a transition once it has held for the
+ * fence's dwell time: the larger of {@code bufferTimeMinutes} and the global minimum dwell.
+ * A vehicle that drifts across the boundary and back within that window produces nothing.
+ * Confirmed memberships are mirrored to vehicle_geofence_memberships, from which a vehicle's
+ * are loaded on its first fix after a restart, or after it moved to this node in a cluster.
+ * The state of vehicles updated by a transaction that rolls back is dropped and loaded the same
+ * way, so a retried batch confirms (and alerts) the same transitions again.
+ */
+@Component
+@Slf4j
+public class GeofenceMembershipTracker {
+    private final VehicleGeofenceMembershipRepository membershipRepository;
+    private final GeofenceIndex geofenceIndex;
+    private final Duration minimumDwell;
+
+    private final Map<UUID, Map<UUID, FenceState>> vehicles = new ConcurrentHashMap<>();
+    private final Object touchedVehiclesKey = new Object();
+
+    public GeofenceMembershipTracker(VehicleGeofenceMembershipRepository membershipRepository,
+                                     GeofenceIndex geofenceIndex,
+                                     @Value("${gps.geofence.min-dwell-seconds:0}") long minimumDwellSeconds) {
+        this.membershipRepository = membershipRepository;
+        this.geofenceIndex = geofenceIndex;
+        this.minimumDwell = Duration.ofSeconds(minimumDwellSeconds);
+    }
+
+    /**
+     * Feed one fix for a vehicle and return the transitions it confirms. Called from the vehicle's
+     * ingest partition worker only, which makes it the single writer of the vehicle's state.
+     *
+     * @param containing fences that contain the fix, as returned by {@link GeofenceIndex}
+     */
+    public List<Transition> update(Vehicle vehicle, Collection<Geofence> containing, LocalDateTime timestamp) {
+        Map<UUID, FenceState> fences = vehicles.computeIfAbsent(vehicle.getId(), this::load);
+        discardOnRollback(vehicle.getId());
+        List<Transition> transitions = new ArrayList<>();
+
+        Set<UUID> observedInside = new HashSet<>();
+        for (Geofence geofence : containing) {
+            observedInside.add(geofence.getId());
+            observe(vehicle, geofence, fences, true, timestamp, transitions);
+        }
+        for (UUID geofenceId : new ArrayList<>(fences.keySet())) {
+            if (observedInside.contains(geofenceId)) {
+                continue;
+            }
+            Geofence geofence = geofenceIndex.get(geofenceId);
+            if (geofence == null) {
+                // Fence was deactivated or deleted; forget it without raising an exit
+                fences.remove(geofenceId);
+                continue;
+            }
+            observe(vehicle, geofence, fences, false, timestamp, transitions);
+        }
+        return transitions;
+    }
+
+    @EventListener
+    public void onHandover(PartitionHandoverEvent event) {
+        vehicles.keySet().removeIf(event::handsOver);
+    }
+
+    /**
+     * Delete the stored memberships of a fence that is no longer active, within the transaction
+     * that deactivates it. The in-memory state follows with {@link #forgetGeofence} once it commits.
+     */
+    public void deleteMemberships(UUID geofenceId) {
+        membershipRepository.deleteByGeofenceId(geofenceId);
+    }
+
+    /**
+     * Drop the in-memory state of every vehicle for a fence that no longer exists or is no longer active.
+     */
+    public void forgetGeofence(UUID geofenceId) {
+        vehicles.values().forEach(fences -> fences.remove(geofenceId));
+    }
+
+    private Map<UUID, FenceState> load(UUID vehicleId) {
+        Map<UUID, FenceState> fences = new ConcurrentHashMap<>();
+        for (UUID geofenceId : membershipRepository.findGeofenceIdsByVehicleId(vehicleId)) {
+            FenceState state = new FenceState();
+            state.inside = true;
+            fences.put(geofenceId, state);
+        }
+        return fences;
+    }
+
+    /**
+     * Forget the vehicle's state if the current transaction rolls back.
+     */
+    @SuppressWarnings("unchecked")
+    private void discardOnRollback(UUID vehicleId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Set<UUID> touched = (Set<UUID>) TransactionSynchronizationManager.getResource(touchedVehiclesKey);
+        if (touched == null) {
+            Set<UUID> vehicleIds = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(touchedVehiclesKey, vehicleIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(touchedVehiclesKey);
+                    if (status != STATUS_COMMITTED) {
+                        vehicleIds.forEach(vehicles::remove);
+                    }
+                }
+            });
+            touched = vehicleIds;
+        }
+        touched.add(vehicleId);
+    }
+
+    private void observe(Vehicle vehicle, Geofence geofence, Map<UUID, FenceState> fences,
+                         boolean observedInside, LocalDateTime timestamp, List<Transition> transitions) {
+        FenceState state = fences.get(geofence.getId());
+        if (state == null) {
+            if (!observedInside) {
+                return;
+            }
+            state = new FenceState();
+            fences.put(geofence.getId(), state);
+        }
+
+        if (state.inside == observedInside) {
+            state.pendingSince = null;
+        } else {
+            if (state.pendingSince == null) {
+                state.pendingSince = timestamp;
+            }
+            if (!timestamp.isBefore(state.pendingSince.plus(dwellFor(geofence)))) {
+                state.inside = observedInside;
+                state.pendingSince = null;
+                persist(vehicle, geofence, observedInside, timestamp);
+                transitions.add(new Transition(geofence, observedInside));
+            }
+        }
+
+        if (!state.inside && state.pendingSince == null) {
+            fences.remove(geofence.getId());
+        }
+    }
+
+    private Duration dwellFor(Geofence geofence) {
+        Integer bufferMinutes = geofence.getBufferTimeMinutes();
+        Duration buffer = bufferMinutes != null ? Duration.ofMinutes(bufferMinutes) : Duration.ZERO;
+        return buffer.compareTo(minimumDwell) > 0 ? buffer : minimumDwell;
+    }
+
+    private void persist(Vehicle vehicle, Geofence geofence, boolean entered, LocalDateTime timestamp) {
+        membershipRepository.deleteByVehicleIdAndGeofenceId(vehicle.getId(), geofence.getId());
+        if (entered) {
+            membershipRepository.save(VehicleGeofenceMembership.builder()
+                    .vehicle(vehicle)
+                    .geofence(geofence)
+                    .enteredAt(timestamp)
+                    .build());
+        }
+    }
+
+    public record Transition(Geofence geofence, boolean entered) {
+    }
+
+    private static final class FenceState {
+        private boolean inside;
+        private LocalDateTime pendingSince;
+    }
+}
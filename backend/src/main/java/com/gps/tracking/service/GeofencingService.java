@@ -1,21 +1,30 @@
 package com.gps.tracking.service;
 
+import com.gps.tracking.cluster.ClusterFanout;
+import com.gps.tracking.cluster.IndexInvalidatedEvent;
 import com.gps.tracking.dto.request.GeofenceRequest;
 import com.gps.tracking.dto.response.GeofenceResponse;
 import com.gps.tracking.dto.response.GeofenceAlertResponse;
 import com.gps.tracking.entity.*;
 import com.gps.tracking.exception.ResourceNotFoundException;
+import com.gps.tracking.geo.PolygonRegion;
 import com.gps.tracking.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -30,6 +39,11 @@ public class GeofencingService {
     private final VehicleRepository vehicleRepository;
     private final DriverRepository driverRepository;
     private final GpsLocationRepository gpsLocationRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final GeofenceIndex geofenceIndex;
+    private final GeofenceMembershipTracker membershipTracker;
+    private final WebSocketService webSocketService;
+    private final ClusterFanout clusterFanout;
     
     @Transactional
     public GeofenceResponse createGeofence(GeofenceRequest request) {
@@ -50,6 +64,9 @@ public class GeofencingService {
                 .build();
         
         geofence = geofenceRepository.save(geofence);
+        Geofence created = geofence;
+        clusterFanout.invalidate(IndexInvalidatedEvent.Index.GEOFENCE, created.getId());
+        afterCommit(() -> geofenceIndex.put(created));
         log.info("Created geofence: {}", geofence.getName());
         
         return GeofenceResponse.fromEntity(geofence);
@@ -91,6 +108,19 @@ public class GeofencingService {
         geofence.setBufferTimeMinutes(request.getBufferTimeMinutes());
         
         geofence = geofenceRepository.save(geofence);
+        Geofence updated = geofence;
+        boolean indexable = geofenceIndex.isIndexable(updated);
+        if (!indexable) {
+            membershipTracker.deleteMemberships(id);
+        }
+        clusterFanout.invalidate(IndexInvalidatedEvent.Index.GEOFENCE, id);
+        afterCommit(() -> {
+            geofenceIndex.put(updated);
+            if (!indexable) {
+                membershipTracker.forgetGeofence(id);
+            }
+        });
+        referenceDataCache.evictAllGeofenceAssignments();
         log.info("Updated geofence: {}", geofence.getName());
         
         return GeofenceResponse.fromEntity(geofence);
@@ -103,9 +133,36 @@ public class GeofencingService {
         
         geofence.setIsActive(false);
         geofenceRepository.save(geofence);
+        membershipTracker.deleteMemberships(id);
+        clusterFanout.invalidate(IndexInvalidatedEvent.Index.GEOFENCE, id);
+        afterCommit(() -> {
+            geofenceIndex.remove(id);
+            membershipTracker.forgetGeofence(id);
+        });
+        referenceDataCache.evictAllGeofenceAssignments();
         log.info("Deactivated geofence: {}", geofence.getName());
     }
     
+    /**
+     * Apply a change another node made to a fence: the fence index and membership state are kept
+     * per node, like this node's own changes once they commit.
+     */
+    @EventListener
+    public void onIndexInvalidated(IndexInvalidatedEvent event) {
+        if (event.index() != IndexInvalidatedEvent.Index.GEOFENCE) {
+            return;
+        }
+        if (event.isAll()) {
+            geofenceIndex.reloadAll().forEach(membershipTracker::forgetGeofence);
+        } else {
+            geofenceIndex.reload(event.id());
+            if (geofenceIndex.get(event.id()) == null) {
+                membershipTracker.forgetGeofence(event.id());
+            }
+        }
+        referenceDataCache.evictAllGeofenceAssignments();
+    }
+    
     @Transactional
     public void assignVehicleToGeofence(UUID vehicleId, UUID geofenceId) {
         Vehicle vehicle = vehicleRepository.findById(vehicleId)
@@ -126,6 +183,7 @@ public class GeofencingService {
                 .build();
         
         assignmentRepository.save(assignment);
+        referenceDataCache.evictGeofenceAssignments(vehicleId);
         log.info("Assigned vehicle {} to geofence {}", vehicle.getLicensePlate(), geofence.getName());
     }
     
@@ -138,6 +196,7 @@ public class GeofencingService {
         assignment.setIsActive(false);
         assignment.setUnassignedAt(LocalDateTime.now());
         assignmentRepository.save(assignment);
+        referenceDataCache.evictGeofenceAssignments(vehicleId);
         
         log.info("Unassigned vehicle {} from geofence {}", 
                 assignment.getVehicle().getLicensePlate(), 
@@ -185,35 +244,64 @@ public class GeofencingService {
     }
     
     // Method to check if a point is inside geofences (called by GPS location service)
+    // Alerts are only raised when the vehicle's membership of a fence actually changes
     public void checkGeofenceViolations(GpsLocation gpsLocation) {
         Vehicle vehicle = gpsLocation.getVehicle();
-        Double latitude = gpsLocation.getLatitude().doubleValue();
-        Double longitude = gpsLocation.getLongitude().doubleValue();
+        double latitude = gpsLocation.getLatitude().doubleValue();
+        double longitude = gpsLocation.getLongitude().doubleValue();
         
-        // Get all geofences that contain this point
-        List<Geofence> containingGeofences = geofenceRepository
-                .findGeofencesContainingPoint(latitude, longitude);
+        // Get all geofences that contain this point from the in-memory index
+        List<Geofence> containingGeofences = geofenceIndex.findContaining(latitude, longitude);
+        
+        List<GeofenceMembershipTracker.Transition> transitions =
+                membershipTracker.update(vehicle, containingGeofences, gpsLocation.getTimestamp());
+        if (transitions.isEmpty()) {
+            return;
+        }
         
         // Get vehicle's assigned geofences
-        List<VehicleGeofenceAssignment> assignments = assignmentRepository
-                .findActiveAssignmentsByVehicle(vehicle.getId());
+        Set<UUID> assignedGeofenceIds = referenceDataCache.getAssignedGeofenceIds(vehicle.getId());
         
-        // Check for violations and generate alerts
-        for (Geofence geofence : containingGeofences) {
-            boolean isAssigned = assignments.stream()
-                    .anyMatch(a -> a.getGeofence().getId().equals(geofence.getId()));
+        for (GeofenceMembershipTracker.Transition transition : transitions) {
+            Geofence geofence = transition.geofence();
+            Geofence.AlertType alertType = geofence.getAlertType();
             
-            if (geofence.getType() == Geofence.GeofenceType.RESTRICTED_AREA && isAssigned) {
-                createAlert(geofence, vehicle, gpsLocation, GeofenceAlert.AlertEventType.UNAUTHORIZED_ENTRY,
-                           GeofenceAlert.AlertSeverity.HIGH, "Vehicle entered restricted area");
-            } else if (geofence.getAlertType() == Geofence.AlertType.ENTRY_ONLY || 
-                      geofence.getAlertType() == Geofence.AlertType.ENTRY_AND_EXIT) {
-                createAlert(geofence, vehicle, gpsLocation, GeofenceAlert.AlertEventType.ENTRY,
-                           GeofenceAlert.AlertSeverity.MEDIUM, "Vehicle entered geofence");
+            if (transition.entered()) {
+                boolean isAssigned = assignedGeofenceIds.contains(geofence.getId());
+                if (geofence.getType() == Geofence.GeofenceType.RESTRICTED_AREA && isAssigned) {
+                    createAlert(geofence, vehicle, gpsLocation, GeofenceAlert.AlertEventType.UNAUTHORIZED_ENTRY,
+                               GeofenceAlert.AlertSeverity.HIGH, "Vehicle entered restricted area");
+                } else if (alertType == Geofence.AlertType.ENTRY_ONLY ||
+                          alertType == Geofence.AlertType.ENTRY_AND_EXIT) {
+                    createAlert(geofence, vehicle, gpsLocation, GeofenceAlert.AlertEventType.ENTRY,
+                               GeofenceAlert.AlertSeverity.MEDIUM, "Vehicle entered geofence");
+                }
+            } else if (alertType == Geofence.AlertType.EXIT_ONLY ||
+                      alertType == Geofence.AlertType.ENTRY_AND_EXIT) {
+                createAlert(geofence, vehicle, gpsLocation, GeofenceAlert.AlertEventType.EXIT,
+                           GeofenceAlert.AlertSeverity.MEDIUM, "Vehicle exited geofence");
             }
         }
     }
     
+    /**
+     * The route corridor policy of a vehicle: among its assigned active fences with alert type
+     * ROUTE_DEVIATION, the one with the narrowest radius. The radius is the allowed distance
+     * from the planned route, and deviation alerts are recorded against this fence.
+     */
+    public Optional<Geofence> findRouteCorridor(UUID vehicleId) {
+        return referenceDataCache.getAssignedGeofenceIds(vehicleId).stream()
+                .map(geofenceIndex::get)
+                .filter(geofence -> geofence != null && geofence.getAlertType() == Geofence.AlertType.ROUTE_DEVIATION)
+                .min(Comparator.comparing(Geofence::getRadiusMeters, Comparator.nullsLast(Comparator.naturalOrder())));
+    }
+
+    public void raiseRouteDeviationAlert(Geofence corridor, GpsLocation gpsLocation, double distanceMeters) {
+        createAlert(corridor, gpsLocation.getVehicle(), gpsLocation, GeofenceAlert.AlertEventType.ROUTE_DEVIATION,
+                   GeofenceAlert.AlertSeverity.HIGH,
+                   String.format("Vehicle left its planned route (%.0f m off route)", distanceMeters));
+    }
+
     private void createAlert(Geofence geofence, Vehicle vehicle, GpsLocation gpsLocation,
                            GeofenceAlert.AlertEventType alertType, GeofenceAlert.AlertSeverity severity,
                            String message) {
@@ -236,9 +324,32 @@ public class GeofencingService {
                 .alertTime(gpsLocation.getTimestamp())
                 .build();
         
-        geofenceAlertRepository.save(alert);
+        alert = geofenceAlertRepository.save(alert);
         log.warn("Geofence alert created: {} for vehicle {} in geofence {}", 
                 alertType, vehicle.getLicensePlate(), geofence.getName());
+        broadcastAfterCommit(GeofenceAlertResponse.fromEntity(alert));
+    }
+
+    private void broadcastAfterCommit(GeofenceAlertResponse alert) {
+        // Clients must not see an alert that is then rolled back with the fix that raised it
+        afterCommit(() -> webSocketService.broadcastAlert(alert));
+    }
+
+    /**
+     * Run the action once the current transaction commits, or right away outside a transaction.
+     * In-memory state (the fence index, membership state) must not get ahead of the database.
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
     
     private Driver getCurrentDriver(UUID vehicleId) {
@@ -257,6 +368,8 @@ public class GeofencingService {
             if (request.getPolygonCoordinates() == null || request.getPolygonCoordinates().trim().isEmpty()) {
                 throw new IllegalArgumentException("Polygon geofence requires coordinate data");
             }
+            // Fail fast here rather than silently dropping the fence from the index
+            PolygonRegion.fromJson(request.getPolygonCoordinates());
         }
     }
 }
\ No newline at end of file
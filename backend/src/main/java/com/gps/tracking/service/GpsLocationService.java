@@ -1,101 +1,520 @@
 package com.gps.tracking.service;
 
 import com.gps.tracking.dto.request.GpsLocationRequest;
+import com.gps.tracking.dto.response.GpsLocationBatchResponse;
+import com.gps.tracking.dto.response.GpsLocationPageResponse;
 import com.gps.tracking.dto.response.GpsLocationResponse;
+import com.gps.tracking.dto.response.GpsLocationRollupResponse;
 import com.gps.tracking.entity.GpsLocation;
 import com.gps.tracking.entity.Route;
 import com.gps.tracking.entity.Vehicle;
 import com.gps.tracking.exception.ResourceNotFoundException;
+import com.gps.tracking.exception.ServiceUnavailableException;
+import com.gps.tracking.geo.TrackSimplifier;
+import com.gps.tracking.ingest.Fix;
+import com.gps.tracking.ingest.SpeedMonitoringDispatcher;
+import com.gps.tracking.repository.DriverRepository;
+import com.gps.tracking.repository.GpsLocationHistoryRepository;
+import com.gps.tracking.repository.GpsLocationHistoryRepository.Cursor;
+import com.gps.tracking.repository.GpsLocationHistoryRepository.FixKey;
 import com.gps.tracking.repository.GpsLocationRepository;
 import com.gps.tracking.repository.RouteRepository;
-import com.gps.tracking.repository.VehicleRepository;
-import com.gps.tracking.repository.VehicleDriverAssignmentRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class GpsLocationService {
+    private static final double MAX_LATITUDE = 90;
+    private static final double MAX_LONGITUDE = 180;
+    // Largest values the DECIMAL(5,2) speed and direction columns hold, after rounding to hundredths
+    private static final BigDecimal MAX_SPEED = new BigDecimal("999.99");
+    private static final BigDecimal MAX_DIRECTION = new BigDecimal("360.00");
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final int MAX_HISTORY_POINTS = 50_000;
+    private static final int STREAM_FLUSH_ROWS = 500;
+
     private final GpsLocationRepository locationRepository;
-    private final VehicleRepository vehicleRepository;
+    private final GpsLocationHistoryRepository historyRepository;
+    private final ObjectMapper objectMapper;
     private final RouteRepository routeRepository;
-    private final VehicleDriverAssignmentRepository assignmentRepository;
+    private final DriverRepository driverRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final WebSocketService webSocketService;
     private final GeofencingService geofencingService;
+    private final RouteOptimizationService routeOptimizationService;
+    private final SpeedMonitoringDispatcher speedMonitoringDispatcher;
+    private final RouteProgressTracker routeProgressTracker;
+    private final Validator validator;
+    private final LatestPositionStore latestPositionStore;
 
+    /**
+     * Persist one fix with all its side effects. Per-vehicle state is not locked, so this runs on
+     * the vehicle's partition worker; see {@link com.gps.tracking.ingest.GpsIngestionPipeline#create}.
+     */
     @Transactional
     public GpsLocationResponse createLocation(GpsLocationRequest request) {
-        Vehicle vehicle = vehicleRepository.findById(request.getVehicleId())
+        Vehicle vehicle = referenceDataCache.getVehicle(request.getVehicleId())
                 .orElseThrow(() -> new ResourceNotFoundException("Vehicle not found with id: " + request.getVehicleId()));
 
-        GpsLocation location = new GpsLocation();
-        location.setVehicle(vehicle);
-        location.setLatitude(request.getLatitude());
-        location.setLongitude(request.getLongitude());
-        location.setSpeed(request.getSpeed());
-        location.setDirection(request.getDirection());
-        location.setTimestamp(request.getTimestamp() != null ? request.getTimestamp() : LocalDateTime.now());
+        Fix fix = Fix.of(request);
+        FixKey key = key(fix);
+        UUID storedId = historyRepository.findStoredIds(List.of(key)).get(key);
+        if (storedId != null) {
+            // Sent again after the answer to the first upload was lost; stored once, answered twice
+            return toResponse(locationRepository.findById(storedId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Location not found with id: " + storedId)));
+        }
+        GpsLocation saved = locationRepository.save(buildLocation(vehicle, fix));
+        fix = fix.withId(saved.getId());
 
-        GpsLocation saved = locationRepository.save(location);
-
-        // Check for geofence violations
-        try {
-            geofencingService.checkGeofenceViolations(saved);
-        } catch (Exception e) {
-            // Log error but don't fail the GPS location save
-            System.err.println("Error checking geofence violations: " + e.getMessage());
-        }
-
-        // Auto-create route if no active route exists
-        routeRepository.findByVehicleIdAndStatus(request.getVehicleId(), "IN_PROGRESS")
-                .orElseGet(() -> {
-                    Route route = new Route();
-                    route.setVehicle(vehicle);
-                    route.setStartLocation(saved);
-                    route.setStartTime(saved.getTimestamp());
-                    route.setStatus("IN_PROGRESS");
-                    
-                    // Assign active driver to route if available
-                    assignmentRepository.findByVehicleIdAndIsActiveTrue(request.getVehicleId())
-                            .ifPresent(assignment -> {
-                                route.setDriver(assignment.getDriver());
-                            });
-                    
-                    return routeRepository.save(route);
-                });
+        checkGeofenceViolations(saved);
+        recordRouteExecution(saved);
+        ensureActiveRoute(vehicle, saved);
+        routeProgressTracker.record(fix);
+        speedMonitoringDispatcher.dispatchAfterCommit(List.of(fix));
 
         GpsLocationResponse response = toResponse(saved);
-        
-        // Broadcast location update via WebSocket to all connected clients
-        webSocketService.broadcastLocationUpdate(response);
+        publishAfterCommit(List.of(response));
+
+        return response;
+    }
+
+    /**
+     * Persist a batch of fixes uploaded together by one or many trackers.
+     * Vehicles are resolved with a single query, rows are written with JDBC batch inserts,
+     * and the live position and WebSocket update are sent once per vehicle, for its most recent fix.
+     * Every fix still goes through geofence checks, trip statistics, optimized-route execution and
+     * speed monitoring, in timestamp order, so transitions within one batch are not missed.
+     * Invalid items are rejected individually and reported back by their index in the request.
+     * Like {@link #createLocation}, runs on the partition worker of the vehicles in the list.
+     */
+    @Transactional
+    public GpsLocationBatchResponse createLocations(List<GpsLocationRequest> requests) {
+        GpsLocationBatchResponse response = new GpsLocationBatchResponse();
 
+        Set<UUID> vehicleIds = requests.stream()
+                .filter(Objects::nonNull)
+                .map(GpsLocationRequest::getVehicleId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<UUID, Vehicle> vehicles = referenceDataCache.getVehicles(vehicleIds);
+
+        List<Fix> fixes = new ArrayList<>(requests.size());
+        List<Integer> indexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            GpsLocationRequest request = requests.get(i);
+            String reason = validate(request);
+            Fix fix = null;
+            if (reason == null) {
+                // Fixes without a timestamp each get their own receive time, never a shared one
+                fix = Fix.of(request);
+                reason = validate(fix, vehicles);
+            }
+            if (reason != null) {
+                response.getRejected().add(new GpsLocationBatchResponse.RejectedLocation(
+                        i, request != null ? request.getVehicleId() : null, reason));
+                continue;
+            }
+            fixes.add(fix);
+            indexes.add(i);
+        }
+
+        persist(fixes, indexes, vehicles, response);
         return response;
     }
 
-    public List<GpsLocationResponse> getLocationsByVehicle(UUID vehicleId) {
-        return locationRepository.findByVehicleIdOrderByTimestampDesc(vehicleId).stream()
-                .map(this::toResponse)
-                .collect(Collectors.toList());
+    /**
+     * Persist fixes queued by the ingest pipeline, which already converted and checked them against
+     * the request constraints. Same side effects as {@link #createLocations}; fixes of unknown vehicles
+     * or with coordinates out of range are rejected by their index in the list.
+     */
+    @Transactional
+    public GpsLocationBatchResponse ingestFixes(List<Fix> fixes) {
+        GpsLocationBatchResponse response = new GpsLocationBatchResponse();
+        Set<UUID> vehicleIds = new HashSet<>();
+        for (Fix fix : fixes) {
+            vehicleIds.add(fix.vehicleId());
+        }
+        Map<UUID, Vehicle> vehicles = referenceDataCache.getVehicles(vehicleIds);
+
+        List<Fix> valid = new ArrayList<>(fixes.size());
+        List<Integer> indexes = new ArrayList<>(fixes.size());
+        for (int i = 0; i < fixes.size(); i++) {
+            Fix fix = fixes.get(i);
+            String reason = validate(fix, vehicles);
+            if (reason != null) {
+                response.getRejected().add(new GpsLocationBatchResponse.RejectedLocation(i, fix.vehicleId(), reason));
+                continue;
+            }
+            valid.add(fix);
+            indexes.add(i);
+        }
+
+        persist(valid, indexes, vehicles, response);
+        return response;
+    }
+
+    private void persist(List<Fix> uploaded, List<Integer> uploadedIndexes, Map<UUID, Vehicle> vehicles,
+                         GpsLocationBatchResponse response) {
+        // A fix of a vehicle at a timestamp that is already stored, typically a retry of an upload
+        // whose answer was lost, is accepted with the stored id but not stored or processed again
+        Set<FixKey> keys = new HashSet<>();
+        uploaded.forEach(fix -> keys.add(key(fix)));
+        Map<FixKey, UUID> storedIds = new HashMap<>(historyRepository.findStoredIds(keys));
+        List<Fix> fixes = new ArrayList<>(uploaded.size());
+        List<Integer> indexes = new ArrayList<>(uploaded.size());
+        List<Integer> repeatedIndexes = new ArrayList<>();
+        List<FixKey> repeatedKeys = new ArrayList<>();
+        Set<FixKey> seen = new HashSet<>();
+        for (int i = 0; i < uploaded.size(); i++) {
+            FixKey key = key(uploaded.get(i));
+            if (storedIds.containsKey(key) || !seen.add(key)) {
+                repeatedIndexes.add(uploadedIndexes.get(i));
+                repeatedKeys.add(key);
+            } else {
+                fixes.add(uploaded.get(i));
+                indexes.add(uploadedIndexes.get(i));
+            }
+        }
+
+        List<GpsLocation> locations = new ArrayList<>(fixes.size());
+        for (Fix fix : fixes) {
+            locations.add(buildLocation(vehicles.get(fix.vehicleId()), fix));
+        }
+        List<GpsLocation> saved = locationRepository.saveAll(locations);
+
+        // Earliest fix starts an auto-created route, latest fix drives the live position
+        List<Fix> stored = new ArrayList<>(saved.size());
+        Map<UUID, Integer> firstByVehicle = new LinkedHashMap<>();
+        Map<UUID, Integer> latestByVehicle = new LinkedHashMap<>();
+        for (int i = 0; i < saved.size(); i++) {
+            Fix fix = fixes.get(i).withId(saved.get(i).getId());
+            stored.add(fix);
+            storedIds.put(key(fix), fix.id());
+            firstByVehicle.merge(fix.vehicleId(), i,
+                    (a, b) -> stored.get(b).timestampMicros() < stored.get(a).timestampMicros() ? b : a);
+            latestByVehicle.merge(fix.vehicleId(), i,
+                    (a, b) -> stored.get(b).timestampMicros() < stored.get(a).timestampMicros() ? a : b);
+            response.getAccepted().add(new GpsLocationBatchResponse.AcceptedLocation(indexes.get(i), fix.id(),
+                    fix.timestamp()));
+        }
+
+        firstByVehicle.values().forEach(first -> ensureActiveRoute(saved.get(first).getVehicle(), saved.get(first)));
+
+        Integer[] order = new Integer[saved.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> stored.get(i).timestampMicros()));
+        List<Fix> chronological = new ArrayList<>(order.length);
+        for (int i : order) {
+            checkGeofenceViolations(saved.get(i));
+            recordRouteExecution(saved.get(i));
+            routeProgressTracker.record(stored.get(i));
+            chronological.add(stored.get(i));
+        }
+        speedMonitoringDispatcher.dispatchAfterCommit(chronological);
+
+        List<GpsLocationResponse> latest = new ArrayList<>(latestByVehicle.size());
+        latestByVehicle.values().forEach(index -> latest.add(toResponse(saved.get(index))));
+        publishAfterCommit(latest);
+
+        for (int i = 0; i < repeatedIndexes.size(); i++) {
+            response.getAccepted().add(new GpsLocationBatchResponse.AcceptedLocation(
+                    repeatedIndexes.get(i), storedIds.get(repeatedKeys.get(i)), repeatedKeys.get(i).timestamp()));
+        }
+        if (!repeatedIndexes.isEmpty()) {
+            response.getAccepted().sort(Comparator.comparingInt(GpsLocationBatchResponse.AcceptedLocation::getIndex));
+            log.debug("Accepted {} fixes that were already stored", repeatedIndexes.size());
+        }
+
+        response.setAcceptedCount(response.getAccepted().size());
+        response.setRejectedCount(response.getRejected().size());
+    }
+
+    private static FixKey key(Fix fix) {
+        return new FixKey(fix.vehicleId(), fix.timestamp());
+    }
+
+    /**
+     * The vehicle's most recent fixes, newest first, capped at one page of {@code limit} rows.
+     * Use {@link #getLocationPage} to walk further back.
+     */
+    public List<GpsLocationResponse> getLocationsByVehicle(UUID vehicleId, int limit) {
+        return getLocationPage(vehicleId, null, null, null, true, limit).getItems();
+    }
+
+    /**
+     * One page of a vehicle's fixes in (timestamp, id) order, optionally limited to a time range.
+     * Pass the returned {@code nextCursor} back to get the following page.
+     */
+    public GpsLocationPageResponse getLocationPage(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime,
+                                                   String cursor, boolean newestFirst, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Vehicle vehicle = referenceDataCache.getVehicle(vehicleId)
+                .orElseThrow(() -> new ResourceNotFoundException("Vehicle not found with id: " + vehicleId));
+        Cursor after = cursor != null && !cursor.isBlank() ? Cursor.decode(cursor) : null;
+
+        List<GpsLocationResponse> items = historyRepository.findPage(vehicleId, vehicle.getLicensePlate(),
+                startTime, endTime, after, newestFirst, limit + 1);
+        boolean hasMore = items.size() > limit;
+        if (hasMore) {
+            items = items.subList(0, limit);
+        }
+        String nextCursor = hasMore ? Cursor.of(items.get(items.size() - 1)).encode() : null;
+        return new GpsLocationPageResponse(items, nextCursor, hasMore);
+    }
+
+    /**
+     * A vehicle's fixes in the range, oldest first, written as newline-delimited JSON while they are
+     * read from a database cursor. The vehicle is checked, and one of the limited concurrent streams
+     * reserved, before the response starts.
+     */
+    public StreamingResponseBody streamLocationHistory(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime) {
+        Vehicle vehicle = referenceDataCache.getVehicle(vehicleId)
+                .orElseThrow(() -> new ResourceNotFoundException("Vehicle not found with id: " + vehicleId));
+        String licensePlate = vehicle.getLicensePlate();
+        if (!historyRepository.tryOpenStream()) {
+            throw new ServiceUnavailableException("Too many history downloads in progress, retry later");
+        }
+        return out -> {
+            try {
+                writeHistory(out, vehicleId, licensePlate, startTime, endTime);
+            } finally {
+                historyRepository.closeStream();
+            }
+        };
+    }
+
+    private void writeHistory(OutputStream out, UUID vehicleId, String licensePlate,
+                              LocalDateTime startTime, LocalDateTime endTime) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        int[] written = new int[1];
+        try {
+            historyRepository.forEachInRange(vehicleId, licensePlate, startTime, endTime, location -> {
+                try {
+                    writer.writeValue(generator, location);
+                    generator.writeRaw('\n');
+                    // First row goes out right away, then in chunks
+                    if (++written[0] % STREAM_FLUSH_ROWS == 1) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        generator.flush();
+        log.debug("Streamed {} fixes of vehicle {}", written[0], vehicleId);
     }
 
     @Transactional(readOnly = true)
     public GpsLocationResponse getLatestLocationByVehicle(UUID vehicleId) {
-        GpsLocation location = locationRepository.findLatestByVehicleId(vehicleId)
-                .orElseThrow(() -> new ResourceNotFoundException("No location found for vehicle: " + vehicleId));
-        return toResponse(location);
+        return latestPositionStore.get(vehicleId).orElseGet(() -> {
+            GpsLocation location = locationRepository.findLatestByVehicleId(vehicleId)
+                    .orElseThrow(() -> new ResourceNotFoundException("No location found for vehicle: " + vehicleId));
+            GpsLocationResponse response = toResponse(location);
+            latestPositionStore.update(response);
+            return response;
+        });
+    }
+
+    /**
+     * Latest known position for the given vehicles, or for the whole fleet when no ids are given.
+     * Vehicles without any recorded fix are left out.
+     */
+    public List<GpsLocationResponse> getLatestLocations(List<UUID> vehicleIds) {
+        if (vehicleIds == null || vehicleIds.isEmpty()) {
+            return latestPositionStore.getAll();
+        }
+        return latestPositionStore.getAll(vehicleIds);
+    }
+
+    /**
+     * A vehicle's fixes in the range, oldest first. With a tolerance in meters, or a map zoom that
+     * translates to one pixel, the track is simplified with Douglas-Peucker before it is returned.
+     * Ranges of more than {@value #MAX_HISTORY_POINTS} fixes are refused rather than loaded into
+     * memory; those go through {@link #getLocationPage} or {@link #streamLocationHistory}.
+     */
+    public List<GpsLocationResponse> getLocationHistory(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime,
+                                                        Double toleranceMeters, Integer zoom) {
+        Vehicle vehicle = referenceDataCache.getVehicle(vehicleId)
+                .orElseThrow(() -> new ResourceNotFoundException("Vehicle not found with id: " + vehicleId));
+        List<GpsLocationResponse> locations = historyRepository.findPage(vehicleId, vehicle.getLicensePlate(),
+                startTime, endTime, null, false, MAX_HISTORY_POINTS + 1);
+        if (locations.size() > MAX_HISTORY_POINTS) {
+            throw new IllegalArgumentException("Range holds more than " + MAX_HISTORY_POINTS
+                    + " fixes; narrow it, or read it from /history/page or /history/stream");
+        }
+        if ((toleranceMeters == null && zoom == null) || locations.size() < 3) {
+            return locations;
+        }
+
+        int count = locations.size();
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = locations.get(i).getLatitude().doubleValue();
+            lons[i] = locations.get(i).getLongitude().doubleValue();
+        }
+        double tolerance = toleranceMeters != null ? toleranceMeters : TrackSimplifier.toleranceForZoom(zoom, lats[0]);
+        int[] kept = TrackSimplifier.simplify(lats, lons, count, tolerance);
+        List<GpsLocationResponse> simplified = new ArrayList<>(kept.length);
+        for (int index : kept) {
+            simplified.add(locations.get(index));
+        }
+        return simplified;
+    }
+
+    public List<GpsLocationRollupResponse> getLocationRollups(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime) {
+        return historyRepository.findRollups(vehicleId, startTime, endTime);
+    }
+
+    private String validate(GpsLocationRequest request) {
+        if (request == null) {
+            return "Location is required";
+        }
+        Set<ConstraintViolation<GpsLocationRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        return null;
+    }
+
+    private String validate(Fix fix, Map<UUID, Vehicle> vehicles) {
+        if (!(Math.abs(fix.latitude()) <= MAX_LATITUDE)) {
+            return "Latitude must be between -90 and 90";
+        }
+        if (!(Math.abs(fix.longitude()) <= MAX_LONGITUDE)) {
+            return "Longitude must be between -180 and 180";
+        }
+        if (fix.hasSpeed() && !(fix.speed() >= 0 && fix.speedDecimal().compareTo(MAX_SPEED) <= 0)) {
+            return "Speed must be between 0 and 999.99";
+        }
+        BigDecimal direction = fix.directionDecimal();
+        if (direction != null && !(fix.direction() >= 0 && direction.compareTo(MAX_DIRECTION) <= 0)) {
+            return "Direction must be between 0 and 360";
+        }
+        if (!vehicles.containsKey(fix.vehicleId())) {
+            return "Vehicle not found with id: " + fix.vehicleId();
+        }
+        return null;
     }
 
-    public List<GpsLocationResponse> getLocationHistory(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime) {
-        return locationRepository.findByVehicleIdAndTimestampBetween(vehicleId, startTime, endTime).stream()
-                .map(this::toResponse)
-                .collect(Collectors.toList());
+    private GpsLocation buildLocation(Vehicle vehicle, Fix fix) {
+        GpsLocation location = new GpsLocation();
+        location.setVehicle(vehicle);
+        location.setLatitude(fix.latitudeDecimal());
+        location.setLongitude(fix.longitudeDecimal());
+        location.setSpeed(fix.speedDecimal());
+        location.setDirection(fix.directionDecimal());
+        location.setTimestamp(fix.timestamp());
+        return location;
+    }
+
+    private void checkGeofenceViolations(GpsLocation location) {
+        try {
+            geofencingService.checkGeofenceViolations(location);
+        } catch (Exception e) {
+            // Log error but don't fail the GPS location save
+            log.error("Error checking geofence violations: {}", e.getMessage());
+        }
+    }
+
+    private void recordRouteExecution(GpsLocation location) {
+        try {
+            routeOptimizationService.recordRouteExecution(location);
+        } catch (Exception e) {
+            // Same policy as geofencing: never fail the GPS location save
+            log.error("Error recording route execution: {}", e.getMessage());
+        }
+    }
+
+    // Auto-create route if no active route exists
+    private void ensureActiveRoute(Vehicle vehicle, GpsLocation startLocation) {
+        if (referenceDataCache.getActiveRouteId(vehicle.getId()).isPresent()) {
+            return;
+        }
+        Route route = new Route();
+        route.setVehicle(vehicle);
+        route.setStartLocation(startLocation);
+        route.setStartTime(startLocation.getTimestamp());
+        route.setStatus("IN_PROGRESS");
+
+        // Assign active driver to route if available
+        referenceDataCache.getActiveDriverId(vehicle.getId())
+                .ifPresent(driverId -> route.setDriver(driverRepository.getReferenceById(driverId)));
+
+        Route saved = routeRepository.save(route);
+        referenceDataCache.putActiveRoute(vehicle.getId(), saved.getId());
+        routeProgressTracker.start(saved);
+    }
+
+    /**
+     * Update the live position store and broadcast the fixes over WebSocket once the current
+     * transaction commits, or right away when called outside a transaction. A rolled-back or
+     * retried batch must not leave positions behind that were never stored.
+     */
+    private void publishAfterCommit(List<GpsLocationResponse> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(locations);
+                }
+            });
+        } else {
+            publish(locations);
+        }
+    }
+
+    private void publish(List<GpsLocationResponse> locations) {
+        for (GpsLocationResponse location : locations) {
+            latestPositionStore.update(location);
+            webSocketService.broadcastLocationUpdate(location);
+        }
     }
 
     private GpsLocationResponse toResponse(GpsLocation location) {
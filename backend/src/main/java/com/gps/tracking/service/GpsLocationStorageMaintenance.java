@@ -0,0 +1,260 @@
+package com.gps.tracking.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Keeps the day-partitioned gps_locations table in shape: creates partitions ahead of time,
+ * rolls raw fixes up into per-minute summaries, and retires partitions past retention.
+ *
+ * Rollups advance a watermark and redo the last {@code latenessMinutes} on every run, so fixes
+ * that arrive a little late still end up in their minute. Fixes that arrive later than that, such
+ * as ones replayed from the ingest log after an outage or uploaded late by a gateway, are found by
+ * created_at: every run also redoes the minutes behind the window that received a fix since the
+ * previous run (again with {@code latenessMinutes} of slack, for transactions still committing).
+ * Minutes older than the retention period are left as they are: their partition may already be
+ * retired, and a recompute from the few raw rows left would replace the full minute.
+ * A partition is only retired once it is both older than the retention period and entirely behind
+ * the rollup watermark. In DETACH mode
+ * retired partitions stay behind as standalone tables for archiving; in DROP mode they are dropped.
+ * Fixes for retired days, which land in the default partition, go the same way: moved into the
+ * day's standalone table, or deleted.
+ *
+ * Each job takes a transaction-scoped advisory lock, so only one instance runs it at a time.
+ */
+@Component
+@Slf4j
+public class GpsLocationStorageMaintenance {
+    private static final String PARTITION_PREFIX = "gps_locations_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String ROLLUP_STATE = "minute";
+    private static final String ARRIVAL_STATE = "arrival";
+    private static final String ROLLUP_SQL = """
+            INSERT INTO gps_location_rollups (vehicle_id, bucket_start, point_count, avg_speed, max_speed,
+                first_time, first_latitude, first_longitude, last_time, last_latitude, last_longitude)
+            SELECT l.vehicle_id, date_trunc('minute', l.timestamp), COUNT(*), ROUND(AVG(l.speed), 2), MAX(l.speed),
+                MIN(l.timestamp),
+                (ARRAY_AGG(l.latitude ORDER BY l.timestamp))[1], (ARRAY_AGG(l.longitude ORDER BY l.timestamp))[1],
+                MAX(l.timestamp),
+                (ARRAY_AGG(l.latitude ORDER BY l.timestamp DESC))[1], (ARRAY_AGG(l.longitude ORDER BY l.timestamp DESC))[1]
+            FROM gps_locations l
+            %s
+            GROUP BY l.vehicle_id, date_trunc('minute', l.timestamp)
+            ON CONFLICT (vehicle_id, bucket_start) DO UPDATE SET
+                point_count = EXCLUDED.point_count, avg_speed = EXCLUDED.avg_speed,
+                max_speed = EXCLUDED.max_speed, first_time = EXCLUDED.first_time,
+                first_latitude = EXCLUDED.first_latitude, first_longitude = EXCLUDED.first_longitude,
+                last_time = EXCLUDED.last_time, last_latitude = EXCLUDED.last_latitude,
+                last_longitude = EXCLUDED.last_longitude
+            """;
+    private static final long PARTITION_LOCK = 0x6770735f70617274L;
+    private static final long ROLLUP_LOCK = 0x6770735f726f6c6cL;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int premakeDays;
+    private final int retentionDays;
+    private final boolean dropRetired;
+    private final long latenessMinutes;
+    private final long maxChunkMinutes;
+    private final Counter rolledUpCounter;
+    private final Counter retiredCounter;
+
+    public GpsLocationStorageMaintenance(JdbcTemplate jdbcTemplate,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${gps.locations.partition.premake-days:7}") int premakeDays,
+                                         @Value("${gps.locations.retention-days:90}") int retentionDays,
+                                         @Value("${gps.locations.retention-mode:DETACH}") String retentionMode,
+                                         @Value("${gps.locations.rollup.lateness-minutes:10}") long latenessMinutes,
+                                         @Value("${gps.locations.rollup.max-chunk-hours:24}") long maxChunkHours) {
+        if (!"DETACH".equalsIgnoreCase(retentionMode) && !"DROP".equalsIgnoreCase(retentionMode)) {
+            throw new IllegalArgumentException("gps.locations.retention-mode must be DETACH or DROP");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.premakeDays = premakeDays;
+        this.retentionDays = retentionDays;
+        this.dropRetired = "DROP".equalsIgnoreCase(retentionMode);
+        this.latenessMinutes = latenessMinutes;
+        this.maxChunkMinutes = maxChunkHours * 60;
+        this.rolledUpCounter = meterRegistry.counter("gps.locations.rollup.buckets");
+        this.retiredCounter = meterRegistry.counter("gps.locations.partitions.retired");
+    }
+
+    /**
+     * Create the partitions for the coming days and for any day that has fallen into the default
+     * partition, then retire partitions past retention.
+     */
+    @Scheduled(fixedDelayString = "${gps.locations.partition.maintenance-interval-ms:3600000}")
+    @Transactional
+    public void maintainPartitions() {
+        if (!tryLock(PARTITION_LOCK)) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate cutoff = retentionDays > 0 ? today.minusDays(retentionDays) : null;
+
+        List<LocalDate> strayDays = jdbcTemplate.queryForList(
+                "SELECT DISTINCT timestamp::date FROM gps_locations_default ORDER BY 1", LocalDate.class);
+        for (LocalDate day : strayDays) {
+            if (cutoff == null || !day.isBefore(cutoff)) {
+                createPartition(day);
+            }
+        }
+        for (int i = -1; i <= premakeDays; i++) {
+            createPartition(today.plusDays(i));
+        }
+
+        if (cutoff != null) {
+            retirePartitions(cutoff);
+        }
+    }
+
+    /**
+     * Roll closed minutes up into gps_location_rollups, catching up in bounded chunks.
+     */
+    @Scheduled(fixedDelayString = "${gps.locations.rollup.interval-ms:60000}")
+    @Transactional
+    public void rollUp() {
+        if (!tryLock(ROLLUP_LOCK)) {
+            return;
+        }
+        LocalDateTime arrivedBy = LocalDateTime.now();
+        LocalDateTime end = arrivedBy.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime from = watermark(ROLLUP_STATE);
+        if (from == null) {
+            from = jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM gps_locations", LocalDateTime.class);
+            if (from == null) {
+                return;
+            }
+            from = from.truncatedTo(ChronoUnit.MINUTES);
+        } else {
+            from = from.minusMinutes(latenessMinutes);
+            rollUpLateArrivals(from, retentionDays > 0 ? LocalDate.now().minusDays(retentionDays).atStartOfDay() : null);
+        }
+
+        while (from.isBefore(end)) {
+            LocalDateTime to = from.plusMinutes(maxChunkMinutes);
+            if (to.isAfter(end)) {
+                to = end;
+            }
+            int buckets = jdbcTemplate.update(ROLLUP_SQL.formatted("WHERE l.timestamp >= ? AND l.timestamp < ?"), from, to);
+            rolledUpCounter.increment(buckets);
+            from = to;
+        }
+        advance(ROLLUP_STATE, end);
+        advance(ARRIVAL_STATE, arrivedBy);
+    }
+
+    /**
+     * Redo the minutes before {@code windowStart} that received fixes since the previous run,
+     * except those before {@code retainedFrom}, whose raw fixes may be gone.
+     */
+    private void rollUpLateArrivals(LocalDateTime windowStart, LocalDateTime retainedFrom) {
+        LocalDateTime arrivedSince = watermark(ARRIVAL_STATE);
+        if (arrivedSince == null) {
+            return;
+        }
+        if (retainedFrom != null && !retainedFrom.isBefore(windowStart)) {
+            return;
+        }
+        LocalDateTime lateFrom = retainedFrom != null ? retainedFrom : LocalDateTime.of(1970, 1, 1, 0, 0);
+        int buckets = jdbcTemplate.update(ROLLUP_SQL.formatted("""
+                JOIN (SELECT DISTINCT vehicle_id, date_trunc('minute', timestamp) AS bucket_start
+                      FROM gps_locations WHERE created_at >= ? AND timestamp >= ? AND timestamp < ?) late
+                  ON l.vehicle_id = late.vehicle_id
+                 AND l.timestamp >= late.bucket_start AND l.timestamp < late.bucket_start + INTERVAL '1 minute'
+                """), arrivedSince.minusMinutes(latenessMinutes), lateFrom, windowStart);
+        if (buckets > 0) {
+            log.debug("Rolled up {} minutes again for fixes that arrived late", buckets);
+        }
+        rolledUpCounter.increment(buckets);
+    }
+
+    private void advance(String name, LocalDateTime watermark) {
+        jdbcTemplate.update("""
+                INSERT INTO gps_location_rollup_state (name, watermark) VALUES (?, ?)
+                ON CONFLICT (name) DO UPDATE SET watermark = GREATEST(gps_location_rollup_state.watermark, EXCLUDED.watermark)
+                """, name, watermark);
+    }
+
+    private void createPartition(LocalDate day) {
+        Boolean created = jdbcTemplate.queryForObject("SELECT gps_locations_create_partition(?)", Boolean.class, day);
+        if (Boolean.TRUE.equals(created)) {
+            log.info("Created gps_locations partition for {}", day);
+        }
+    }
+
+    private void retirePartitions(LocalDate cutoff) {
+        LocalDateTime watermark = watermark(ROLLUP_STATE);
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'gps_locations'::regclass AND c.relname LIKE 'gps_locations_p%'
+                ORDER BY c.relname
+                """, String.class);
+        for (String partition : partitions) {
+            LocalDate day = LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            LocalDate upperBound = day.plusDays(1);
+            if (upperBound.isAfter(cutoff)) {
+                break;
+            }
+            if (watermark == null || upperBound.atStartOfDay().isAfter(watermark)) {
+                log.warn("Partition {} is past retention but not rolled up yet; keeping it", partition);
+                break;
+            }
+            jdbcTemplate.execute("ALTER TABLE gps_locations DETACH PARTITION " + partition);
+            if (dropRetired) {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+            }
+            retiredCounter.increment();
+            log.info("{} gps_locations partition {}", dropRetired ? "Dropped" : "Detached", partition);
+        }
+        if (watermark != null) {
+            LocalDateTime purgeBefore = cutoff.atStartOfDay().isBefore(watermark) ? cutoff.atStartOfDay() : watermark;
+            if (!dropRetired) {
+                archiveStrayFixes(purgeBefore);
+            }
+            int purged = jdbcTemplate.update("DELETE FROM gps_locations_default WHERE timestamp < ?", purgeBefore);
+            if (purged > 0) {
+                log.info("{} {} fixes for retired days from gps_locations_default", dropRetired ? "Deleted" : "Archived", purged);
+            }
+        }
+    }
+
+    /**
+     * Copy fixes before {@code before} that fell into the default partition into the standalone
+     * table of their day, where the day's detached partition was archived.
+     */
+    private void archiveStrayFixes(LocalDateTime before) {
+        List<LocalDate> days = jdbcTemplate.queryForList(
+                "SELECT DISTINCT timestamp::date FROM gps_locations_default WHERE timestamp < ? ORDER BY 1",
+                LocalDate.class, before);
+        for (LocalDate day : days) {
+            String table = PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " (LIKE gps_locations INCLUDING DEFAULTS)");
+            jdbcTemplate.update("INSERT INTO " + table + " SELECT * FROM gps_locations_default"
+                            + " WHERE timestamp >= ? AND timestamp < ? AND timestamp < ?",
+                    day.atStartOfDay(), day.plusDays(1).atStartOfDay(), before);
+        }
+    }
+
+    private LocalDateTime watermark(String name) {
+        List<LocalDateTime> watermarks = jdbcTemplate.queryForList(
+                "SELECT watermark FROM gps_location_rollup_state WHERE name = ?", LocalDateTime.class, name);
+        return watermarks.isEmpty() ? null : watermarks.get(0);
+    }
+
+    private boolean tryLock(long key) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, key));
+    }
+}
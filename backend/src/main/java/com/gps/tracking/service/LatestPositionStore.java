@@ -0,0 +1,96 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.dto.response.GpsLocationResponse;
+import com.gps.tracking.entity.GpsLocation;
+import com.gps.tracking.entity.Vehicle;
+import com.gps.tracking.repository.GpsLocationRepository;
+import com.gps.tracking.repository.VehicleRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Live position of every vehicle, keyed by vehicle id.
+ *
+ * Updated on every ingested fix and warmed once at startup, so reads of the current fleet
+ * position never have to touch gps_locations. A late fix never replaces a newer one.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LatestPositionStore {
+    private final GpsLocationRepository locationRepository;
+    private final VehicleRepository vehicleRepository;
+
+    private final Map<UUID, GpsLocationResponse> positions = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void warmUp() {
+        Map<UUID, Vehicle> vehicles = vehicleRepository.findAll().stream()
+                .collect(Collectors.toMap(Vehicle::getId, Function.identity()));
+        List<GpsLocation> latest = locationRepository.findLatestForAllVehicles();
+        for (GpsLocation location : latest) {
+            Vehicle vehicle = vehicles.get(location.getVehicle().getId());
+            if (vehicle != null) {
+                update(toResponse(location, vehicle));
+            }
+        }
+        log.info("Warmed latest position store with {} vehicles", positions.size());
+    }
+
+    public void update(GpsLocationResponse location) {
+        positions.merge(location.getVehicleId(), location,
+                (current, candidate) -> candidate.getTimestamp().isBefore(current.getTimestamp()) ? current : candidate);
+    }
+
+    public Optional<GpsLocationResponse> get(UUID vehicleId) {
+        return Optional.ofNullable(positions.get(vehicleId));
+    }
+
+    public List<GpsLocationResponse> getAll(Collection<UUID> vehicleIds) {
+        List<GpsLocationResponse> result = new ArrayList<>(vehicleIds.size());
+        for (UUID vehicleId : vehicleIds) {
+            GpsLocationResponse location = positions.get(vehicleId);
+            if (location != null) {
+                result.add(location);
+            }
+        }
+        return result;
+    }
+
+    public List<GpsLocationResponse> getAll() {
+        return new ArrayList<>(positions.values());
+    }
+
+    public void remove(UUID vehicleId) {
+        positions.remove(vehicleId);
+    }
+
+    private GpsLocationResponse toResponse(GpsLocation location, Vehicle vehicle) {
+        return new GpsLocationResponse(
+                location.getId(),
+                vehicle.getId(),
+                vehicle.getLicensePlate(),
+                location.getLatitude(),
+                location.getLongitude(),
+                location.getSpeed(),
+                location.getDirection(),
+                location.getTimestamp(),
+                location.getCreatedAt()
+        );
+    }
+}
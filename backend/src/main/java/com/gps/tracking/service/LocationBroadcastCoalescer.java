@@ -0,0 +1,376 @@
+package com.gps.tracking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gps.tracking.dto.response.GpsLocationResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Batches live location updates into one frame per destination per tick.
+ *
+ * Between ticks only the newest update of each vehicle is kept; an update that replaces a pending
+ * one is counted as merged, and one older than the pending or last sent update of its vehicle is
+ * dropped, so clients end each tick on the same positions they would have reached fix by fix. On
+ * each tick the pending updates are serialized once and sent to /topic/locations and, filtered
+ * through {@link LocationSubscriptionIndex}, to each session's own queue.
+ *
+ * Every update sent gets the next version of this server's stream, and every frame is an envelope
+ * {@code {"epoch", "version", "snapshot", "locations": [...]}} giving the stream (a new epoch per
+ * start) and the last version it reflects. A session gets a snapshot of the fleet when it
+ * subscribes to /topic/locations, or of what its filter matches when it sets one. A client that
+ * reconnects passes the epoch and version it last saw (as {@code epoch}/{@code since} headers of
+ * the SUBSCRIBE, or in its filter) and is sent only the newest update of each vehicle since, from
+ * a bounded {@link LocationReplayBuffer}; if that version has already left the buffer it gets a
+ * snapshot instead. Snapshots and replays go out on the broadcast thread, in order with the ticks;
+ * a client keeps the newest of a vehicle's positions by timestamp whatever order frames arrive in.
+ *
+ * The tick stretches while the outbound channel to the clients has a backlog after a flush (up to
+ * {@code max-tick-ms}) and shrinks back towards {@code tick-ms} once it has drained.
+ */
+@Component
+@Slf4j
+public class LocationBroadcastCoalescer {
+    public static final String SESSION_LOCATIONS_QUEUE = "/queue/locations";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final LocationSubscriptionIndex subscriptionIndex;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolTaskExecutor outboundExecutor;
+    private final MessageChannel clientOutboundChannel;
+    private final LatestPositionStore latestPositionStore;
+    private final MeterRegistry meterRegistry;
+    private final long baseTickMillis;
+    private final long maxTickMillis;
+    private final int backlogThreshold;
+
+    private final Map<UUID, GpsLocationResponse> pending = new ConcurrentHashMap<>();
+    private final Map<UUID, GpsLocationResponse> lastSent = new ConcurrentHashMap<>();
+    private final AtomicLong tickMillis = new AtomicLong();
+    private final String epoch = UUID.randomUUID().toString();
+    private final AtomicLong version = new AtomicLong();
+    private final LocationReplayBuffer replayBuffer;
+    private ScheduledExecutorService ticker;
+
+    private Counter mergedCounter;
+    private Counter droppedCounter;
+    private Counter sentCounter;
+    private Counter framesCounter;
+    private Counter rejectedFramesCounter;
+    private Counter snapshotCounter;
+    private Counter replayCounter;
+
+    public LocationBroadcastCoalescer(SimpMessagingTemplate messagingTemplate,
+                                      LocationSubscriptionIndex subscriptionIndex,
+                                      ObjectMapper objectMapper,
+                                      @Qualifier("clientOutboundChannelExecutor") ThreadPoolTaskExecutor outboundExecutor,
+                                      @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                                      LatestPositionStore latestPositionStore,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${gps.websocket.broadcast.tick-ms:250}") long baseTickMillis,
+                                      @Value("${gps.websocket.broadcast.max-tick-ms:2000}") long maxTickMillis,
+                                      @Value("${gps.websocket.broadcast.backlog-threshold:1000}") int backlogThreshold,
+                                      @Value("${gps.websocket.replay.capacity:50000}") int replayCapacity) {
+        this.messagingTemplate = messagingTemplate;
+        this.subscriptionIndex = subscriptionIndex;
+        this.objectMapper = objectMapper;
+        this.outboundExecutor = outboundExecutor;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.latestPositionStore = latestPositionStore;
+        this.meterRegistry = meterRegistry;
+        this.baseTickMillis = Math.max(1, baseTickMillis);
+        this.maxTickMillis = Math.max(this.baseTickMillis, maxTickMillis);
+        this.backlogThreshold = backlogThreshold;
+        this.replayBuffer = new LocationReplayBuffer(replayCapacity);
+    }
+
+    @PostConstruct
+    void start() {
+        mergedCounter = meterRegistry.counter("gps.websocket.broadcast.merged");
+        droppedCounter = meterRegistry.counter("gps.websocket.broadcast.dropped");
+        sentCounter = meterRegistry.counter("gps.websocket.broadcast.sent");
+        framesCounter = meterRegistry.counter("gps.websocket.broadcast.frames");
+        rejectedFramesCounter = meterRegistry.counter("gps.websocket.broadcast.frames.rejected");
+        snapshotCounter = meterRegistry.counter("gps.websocket.sync.snapshots");
+        replayCounter = meterRegistry.counter("gps.websocket.sync.replays");
+        Gauge.builder("gps.websocket.broadcast.version", version, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("gps.websocket.broadcast.pending", pending, Map::size).register(meterRegistry);
+        Gauge.builder("gps.websocket.broadcast.tick", tickMillis, AtomicLong::get)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+
+        tickMillis.set(baseTickMillis);
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gps-ws-broadcast");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.schedule(this::tick, baseTickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Queue an update for the next tick.
+     */
+    public void offer(GpsLocationResponse location) {
+        UUID vehicleId = location.getVehicleId();
+        GpsLocationResponse sent = lastSent.get(vehicleId);
+        if (sent != null && isOlder(location, sent)) {
+            droppedCounter.increment();
+            return;
+        }
+        boolean[] merged = new boolean[1];
+        GpsLocationResponse kept = pending.merge(vehicleId, location, (current, offered) -> {
+            merged[0] = true;
+            return isOlder(offered, current) ? current : offered;
+        });
+        if (merged[0]) {
+            if (kept == location) {
+                mergedCounter.increment();
+            } else {
+                droppedCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * Bring a session up to date with its newly set filter: a replay since {@code sinceVersion}
+     * if the client passed one from this epoch that is still buffered, a snapshot otherwise.
+     */
+    public void sync(String sessionId, String clientEpoch, Long sinceVersion) {
+        ticker.execute(() -> sync(clientEpoch, sinceVersion,
+                location -> subscriptionIndex.matches(sessionId, location.vehicleId(), location.latitude(), location.longitude()),
+                frame -> send("/user/" + sessionId + SESSION_LOCATIONS_QUEUE, sessionId, frame)));
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (!LocationSubscriptionIndex.FLEET_TOPIC.equals(accessor.getDestination())) {
+            return;
+        }
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+        String since = accessor.getFirstNativeHeader("since");
+        Long sinceVersion;
+        try {
+            sinceVersion = since != null ? Long.valueOf(since) : null;
+        } catch (NumberFormatException e) {
+            sinceVersion = null;
+        }
+        String clientEpoch = accessor.getFirstNativeHeader("epoch");
+        Long resumeFrom = sinceVersion;
+        ticker.execute(() -> sync(clientEpoch, resumeFrom, location -> true,
+                frame -> sendToSubscription(sessionId, subscriptionId, frame)));
+    }
+
+    private void sync(String clientEpoch, Long sinceVersion, Predicate<LocationReplayBuffer.Update> filter,
+                      Consumer<byte[]> sender) {
+        long current = version.get();
+        List<LocationReplayBuffer.Update> replay = epoch.equals(clientEpoch) && sinceVersion != null
+                ? replayBuffer.since(sinceVersion) : null;
+        List<byte[]> locations = new ArrayList<>();
+        if (replay != null) {
+            for (LocationReplayBuffer.Update update : replay) {
+                if (filter.test(update)) {
+                    locations.add(update.json());
+                }
+            }
+            replayCounter.increment();
+            sender.accept(toFrame(false, current, locations));
+            return;
+        }
+        for (GpsLocationResponse location : latestPositionStore.getAll()) {
+            LocationReplayBuffer.Update update = new LocationReplayBuffer.Update(0, location.getVehicleId(),
+                    location.getLatitude().doubleValue(), location.getLongitude().doubleValue(), null);
+            if (!filter.test(update)) {
+                continue;
+            }
+            byte[] json = serialize(location);
+            if (json != null) {
+                locations.add(json);
+            }
+        }
+        snapshotCounter.increment();
+        sender.accept(toFrame(true, current, locations));
+    }
+
+    private void tick() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Location broadcast failed", e);
+        } finally {
+            if (!ticker.isShutdown()) {
+                ticker.schedule(this::tick, adaptTick(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<GpsLocationResponse> updates = new ArrayList<>(pending.size());
+        for (UUID vehicleId : List.copyOf(pending.keySet())) {
+            GpsLocationResponse location = pending.remove(vehicleId);
+            if (location != null) {
+                updates.add(location);
+                lastSent.put(vehicleId, location);
+            }
+        }
+
+        // Serialize each update once, then assemble the frames each destination gets
+        List<byte[]> serialized = new ArrayList<>(updates.size());
+        Map<String, List<byte[]>> bySession = new HashMap<>();
+        for (GpsLocationResponse location : updates) {
+            byte[] json = serialize(location);
+            if (json == null) {
+                continue;
+            }
+            double latitude = location.getLatitude().doubleValue();
+            double longitude = location.getLongitude().doubleValue();
+            serialized.add(json);
+            replayBuffer.add(new LocationReplayBuffer.Update(version.incrementAndGet(), location.getVehicleId(),
+                    latitude, longitude, json));
+            for (String sessionId : subscriptionIndex.route(location.getVehicleId(), latitude, longitude)) {
+                bySession.computeIfAbsent(sessionId, id -> new ArrayList<>()).add(json);
+            }
+        }
+        sentCounter.increment(serialized.size());
+
+        long current = version.get();
+        if (subscriptionIndex.hasFleetTopicSubscribers() && !serialized.isEmpty()) {
+            send(LocationSubscriptionIndex.FLEET_TOPIC, null, toFrame(false, current, serialized));
+        }
+        bySession.forEach((sessionId, locations) ->
+                send("/user/" + sessionId + SESSION_LOCATIONS_QUEUE, sessionId, toFrame(false, current, locations)));
+    }
+
+    private byte[] serialize(GpsLocationResponse location) {
+        try {
+            return objectMapper.writeValueAsBytes(location);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize location update for vehicle {}", location.getVehicleId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Send straight to one subscription of a session, bypassing the broker, as replies to
+     * subscriptions are.
+     */
+    private void sendToSubscription(String sessionId, String subscriptionId, byte[] frame) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(LocationSubscriptionIndex.FLEET_TOPIC);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        try {
+            clientOutboundChannel.send(MessageBuilder.createMessage(frame, headers.getMessageHeaders()));
+            framesCounter.increment();
+        } catch (MessagingException e) {
+            rejectedFramesCounter.increment();
+            log.debug("Could not queue location snapshot for session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private void send(String destination, String sessionId, byte[] frame) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        if (sessionId != null) {
+            // A session id as the user name, plus the session header, targets that one session
+            headers.setSessionId(sessionId);
+        }
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        try {
+            messagingTemplate.send(destination, MessageBuilder.createMessage(frame, headers.getMessageHeaders()));
+            framesCounter.increment();
+        } catch (MessagingException e) {
+            // The outbound queue is full; the vehicles' next updates will carry their positions
+            rejectedFramesCounter.increment();
+            log.debug("Could not queue location batch for {}: {}", destination, e.getMessage());
+        }
+    }
+
+    private long adaptTick() {
+        int backlog = outboundExecutor.getQueueSize();
+        long current = tickMillis.get();
+        long next;
+        if (backlog > backlogThreshold) {
+            next = Math.min(maxTickMillis, current * 2);
+        } else if (backlog < backlogThreshold / 4) {
+            next = Math.max(baseTickMillis, (current + baseTickMillis) / 2);
+        } else {
+            next = current;
+        }
+        if (next != current) {
+            log.debug("Location broadcast tick {} -> {} ms, outbound backlog {}", current, next, backlog);
+            tickMillis.set(next);
+        }
+        return next;
+    }
+
+    private byte[] toFrame(boolean snapshot, long frameVersion, List<byte[]> elements) {
+        byte[] head = ("{\"epoch\":\"" + epoch + "\",\"version\":" + frameVersion
+                + ",\"snapshot\":" + snapshot + ",\"locations\":").getBytes(StandardCharsets.UTF_8);
+        int size = head.length + 3 + Math.max(0, elements.size() - 1);
+        for (byte[] element : elements) {
+            size += element.length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.writeBytes(head);
+        out.write('[');
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(elements.get(i));
+        }
+        out.write(']');
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    private static boolean isOlder(GpsLocationResponse location, GpsLocationResponse than) {
+        return location.getTimestamp() != null && than.getTimestamp() != null
+                && location.getTimestamp().isBefore(than.getTimestamp());
+    }
+}
@@ -0,0 +1,54 @@
+package com.gps.tracking.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded ring of the most recent broadcast updates, by version, from which a reconnecting client
+ * is sent what it missed instead of a full snapshot. Updates hold their serialized JSON so replay
+ * does not serialize again. Not thread-safe: only the broadcast thread uses it.
+ */
+public class LocationReplayBuffer {
+    private final Update[] ring;
+    private long lastVersion;
+
+    public LocationReplayBuffer(int capacity) {
+        this.ring = new Update[Math.max(1, capacity)];
+    }
+
+    public record Update(long version, UUID vehicleId, double latitude, double longitude, byte[] json) {
+    }
+
+    public void add(Update update) {
+        ring[(int) (update.version() % ring.length)] = update;
+        lastVersion = update.version();
+    }
+
+    /**
+     * The newest update of each vehicle after {@code sinceVersion}, oldest first, or null if some
+     * of those updates have already been overwritten.
+     */
+    public List<Update> since(long sinceVersion) {
+        if (sinceVersion > lastVersion) {
+            return null;
+        }
+        long count = lastVersion - sinceVersion;
+        if (count > ring.length) {
+            return null;
+        }
+        Map<UUID, Update> newest = new LinkedHashMap<>();
+        for (long version = sinceVersion + 1; version <= lastVersion; version++) {
+            Update update = ring[(int) (version % ring.length)];
+            if (update == null || update.version() != version) {
+                return null;
+            }
+            // Re-inserting moves the vehicle behind the updates it now supersedes
+            newest.remove(update.vehicleId());
+            newest.put(update.vehicleId(), update);
+        }
+        return new ArrayList<>(newest.values());
+    }
+}
@@ -0,0 +1,178 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.dto.request.LocationSubscriptionRequest;
+import com.gps.tracking.geo.BoundingBox;
+import com.gps.tracking.geo.GridIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which WebSocket sessions want which location updates.
+ *
+ * A session registers a viewport and/or a set of followed vehicles (see
+ * {@link LocationSubscriptionRequest}). Viewports live in a {@link GridIndex}, so routing a fix
+ * reads one grid cell instead of testing every session; followed vehicles are a plain map from
+ * vehicle to sessions. A fix is routed to the sessions whose viewport holds the new position or
+ * the vehicle's previous one, so a client also sees the update that takes a vehicle out of view.
+ *
+ * Also counts the sessions subscribed to the unfiltered /topic/locations feed, so that feed is
+ * only serialized while someone listens to it.
+ */
+@Component
+@Slf4j
+public class LocationSubscriptionIndex {
+    public static final String FLEET_TOPIC = "/topic/locations";
+
+    private final GridIndex<ViewportKey, String> viewports;
+    private final Map<String, LocationSubscriptionRequest> subscriptions = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<String>> followers = new ConcurrentHashMap<>();
+    private final Map<UUID, double[]> lastPositions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> fleetTopicSubscriptions = new ConcurrentHashMap<>();
+
+    public LocationSubscriptionIndex(MeterRegistry meterRegistry,
+                                     @Value("${gps.websocket.subscription.cell-size-degrees:0.5}") double cellSizeDegrees,
+                                     @Value("${gps.websocket.subscription.max-cells-per-viewport:1024}") int maxCellsPerViewport) {
+        this.viewports = new GridIndex<>(cellSizeDegrees, maxCellsPerViewport);
+        Gauge.builder("gps.websocket.subscriptions", subscriptions, Map::size).register(meterRegistry);
+        Gauge.builder("gps.websocket.fleet-topic.sessions", fleetTopicSubscriptions, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Replace the session's filter. A filter with neither a viewport nor vehicles removes it.
+     */
+    public synchronized void subscribe(String sessionId, LocationSubscriptionRequest request) {
+        unsubscribe(sessionId);
+        boolean hasVehicles = request.getVehicleIds() != null && !request.getVehicleIds().isEmpty();
+        if (!request.hasViewport() && !hasVehicles) {
+            return;
+        }
+        if (request.hasViewport()) {
+            List<BoundingBox> boxes = toBoxes(request);
+            for (int part = 0; part < boxes.size(); part++) {
+                viewports.put(new ViewportKey(sessionId, part), boxes.get(part), sessionId);
+            }
+        }
+        if (hasVehicles) {
+            for (UUID vehicleId : request.getVehicleIds()) {
+                followers.computeIfAbsent(vehicleId, id -> ConcurrentHashMap.newKeySet()).add(sessionId);
+            }
+        }
+        subscriptions.put(sessionId, request);
+    }
+
+    public synchronized void unsubscribe(String sessionId) {
+        LocationSubscriptionRequest previous = subscriptions.remove(sessionId);
+        if (previous == null) {
+            return;
+        }
+        viewports.remove(new ViewportKey(sessionId, 0));
+        viewports.remove(new ViewportKey(sessionId, 1));
+        if (previous.getVehicleIds() != null) {
+            for (UUID vehicleId : previous.getVehicleIds()) {
+                followers.computeIfPresent(vehicleId, (id, sessions) -> {
+                    sessions.remove(sessionId);
+                    return sessions.isEmpty() ? null : sessions;
+                });
+            }
+        }
+    }
+
+    /**
+     * Sessions that should receive a fix of {@code vehicleId} at the given position. Remembers
+     * the position for the vehicle's next fix.
+     */
+    public Set<String> route(UUID vehicleId, double latitude, double longitude) {
+        double[] previous = lastPositions.put(vehicleId, new double[]{latitude, longitude});
+        if (subscriptions.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> sessions = new HashSet<>();
+        viewports.forEachCandidate(latitude, longitude, sessions::add);
+        if (previous != null && (previous[0] != latitude || previous[1] != longitude)) {
+            viewports.forEachCandidate(previous[0], previous[1], sessions::add);
+        }
+        Set<String> following = followers.get(vehicleId);
+        if (following != null) {
+            sessions.addAll(following);
+        }
+        return sessions;
+    }
+
+    /**
+     * Whether the session's filter lets an update of the vehicle at the given position through.
+     */
+    public boolean matches(String sessionId, UUID vehicleId, double latitude, double longitude) {
+        LocationSubscriptionRequest subscription = subscriptions.get(sessionId);
+        if (subscription == null) {
+            return false;
+        }
+        if (subscription.getVehicleIds() != null && subscription.getVehicleIds().contains(vehicleId)) {
+            return true;
+        }
+        if (subscription.hasViewport()) {
+            for (BoundingBox box : toBoxes(subscription)) {
+                if (box.contains(latitude, longitude)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean hasFleetTopicSubscribers() {
+        return !fleetTopicSubscriptions.isEmpty();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (FLEET_TOPIC.equals(accessor.getDestination())) {
+            fleetTopicSubscriptions.computeIfAbsent(accessor.getSessionId(), id -> ConcurrentHashMap.newKeySet())
+                    .add(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        fleetTopicSubscriptions.computeIfPresent(accessor.getSessionId(), (id, subscriptionIds) -> {
+            subscriptionIds.remove(accessor.getSubscriptionId());
+            return subscriptionIds.isEmpty() ? null : subscriptionIds;
+        });
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        fleetTopicSubscriptions.remove(event.getSessionId());
+        unsubscribe(event.getSessionId());
+    }
+
+    private static List<BoundingBox> toBoxes(LocationSubscriptionRequest request) {
+        double south = Math.min(request.getSouth(), request.getNorth());
+        double north = Math.max(request.getSouth(), request.getNorth());
+        if (request.getWest() <= request.getEast()) {
+            return List.of(new BoundingBox(south, request.getWest(), north, request.getEast()));
+        }
+        // Crosses the antimeridian: index the two halves separately
+        return List.of(new BoundingBox(south, request.getWest(), north, 180),
+                new BoundingBox(south, -180, north, request.getEast()));
+    }
+
+    private record ViewportKey(String sessionId, int part) {
+    }
+}
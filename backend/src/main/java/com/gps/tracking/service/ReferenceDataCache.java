@@ -0,0 +1,218 @@
+package com.gps.tracking.service;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.gps.tracking.entity.Route;
+import com.gps.tracking.entity.Vehicle;
+import com.gps.tracking.ingest.PartitionHandoverEvent;
+import com.gps.tracking.repository.RouteRepository;
+import com.gps.tracking.repository.VehicleDriverAssignmentRepository;
+import com.gps.tracking.repository.VehicleGeofenceAssignmentRepository;
+import com.gps.tracking.repository.VehicleRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded, time-limited caches for the reference data looked up on every ingested fix:
+ * vehicles, the IN_PROGRESS route, the active driver assignment and the geofence assignments
+ * of a vehicle. Services that change this data invalidate the affected vehicle right away and
+ * again once their transaction completes, so a load racing the commit cannot keep the old row;
+ * the TTL only bounds staleness for changes made outside the application. A route opened by a
+ * transaction is visible to that transaction at once and cached for everyone only once it commits.
+ *
+ * Hit and miss counts are published as cache.gets{cache=...,result=hit|miss}.
+ */
+@Component
+public class ReferenceDataCache {
+    private final LoadingCache<UUID, Optional<Vehicle>> vehicles;
+    private final LoadingCache<UUID, Optional<UUID>> activeRoutes;
+    private final LoadingCache<UUID, Optional<UUID>> activeDrivers;
+    private final LoadingCache<UUID, Set<UUID>> geofenceAssignments;
+    private final Object pendingActiveRoutesKey = new Object();
+
+    public ReferenceDataCache(VehicleRepository vehicleRepository,
+                              RouteRepository routeRepository,
+                              VehicleDriverAssignmentRepository driverAssignmentRepository,
+                              VehicleGeofenceAssignmentRepository geofenceAssignmentRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${gps.cache.max-size:10000}") long maxSize,
+                              @Value("${gps.cache.ttl-seconds:300}") long ttlSeconds) {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+
+        vehicles = newBuilder(maxSize, ttl).build(new CacheLoader<>() {
+            @Override
+            public Optional<Vehicle> load(UUID vehicleId) {
+                return vehicleRepository.findById(vehicleId);
+            }
+
+            @Override
+            public Map<UUID, Optional<Vehicle>> loadAll(Set<? extends UUID> vehicleIds) {
+                Map<UUID, Optional<Vehicle>> loaded = new HashMap<>();
+                vehicleIds.forEach(id -> loaded.put(id, Optional.empty()));
+                vehicleRepository.findAllById(new ArrayList<UUID>(vehicleIds)).forEach(v -> loaded.put(v.getId(), Optional.of(v)));
+                return loaded;
+            }
+        });
+        activeRoutes = newBuilder(maxSize, ttl).build(vehicleId ->
+                routeRepository.findByVehicleIdAndStatus(vehicleId, "IN_PROGRESS").map(Route::getId));
+        activeDrivers = newBuilder(maxSize, ttl).build(vehicleId ->
+                driverAssignmentRepository.findByVehicleIdAndIsActiveTrue(vehicleId)
+                        .map(assignment -> assignment.getDriver().getId()));
+        geofenceAssignments = newBuilder(maxSize, ttl).build(vehicleId ->
+                geofenceAssignmentRepository.findActiveAssignmentsByVehicle(vehicleId).stream()
+                        .map(assignment -> assignment.getGeofence().getId())
+                        .collect(Collectors.toUnmodifiableSet()));
+
+        CaffeineCacheMetrics.monitor(meterRegistry, vehicles, "vehicles");
+        CaffeineCacheMetrics.monitor(meterRegistry, activeRoutes, "activeRoutes");
+        CaffeineCacheMetrics.monitor(meterRegistry, activeDrivers, "activeDriverAssignments");
+        CaffeineCacheMetrics.monitor(meterRegistry, geofenceAssignments, "geofenceAssignments");
+    }
+
+    private static Caffeine<Object, Object> newBuilder(long maxSize, Duration ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats();
+    }
+
+    // Vehicles
+
+    public Optional<Vehicle> getVehicle(UUID vehicleId) {
+        return vehicles.get(vehicleId);
+    }
+
+    /**
+     * Resolve several vehicles at once; only the ids missing from the cache hit the database,
+     * with a single query. Unknown ids are left out of the result.
+     */
+    public Map<UUID, Vehicle> getVehicles(Collection<UUID> vehicleIds) {
+        Map<UUID, Vehicle> result = new HashMap<>();
+        vehicles.getAll(vehicleIds).forEach((id, vehicle) -> vehicle.ifPresent(v -> result.put(id, v)));
+        return result;
+    }
+
+    public void evictVehicle(UUID vehicleId) {
+        invalidate(() -> {
+            vehicles.invalidate(vehicleId);
+            activeRoutes.invalidate(vehicleId);
+            activeDrivers.invalidate(vehicleId);
+            geofenceAssignments.invalidate(vehicleId);
+        });
+    }
+
+    // Active (IN_PROGRESS) route
+
+    public Optional<UUID> getActiveRouteId(UUID vehicleId) {
+        Map<UUID, UUID> pending = pendingActiveRoutes();
+        if (pending != null && pending.containsKey(vehicleId)) {
+            return Optional.of(pending.get(vehicleId));
+        }
+        return activeRoutes.get(vehicleId);
+    }
+
+    /**
+     * Make a route opened in the current transaction the vehicle's active route: for the rest of
+     * that transaction right away, and for everyone once it commits. A route that is rolled back
+     * is never cached.
+     */
+    public void putActiveRoute(UUID vehicleId, UUID routeId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            activeRoutes.put(vehicleId, Optional.of(routeId));
+            return;
+        }
+        Map<UUID, UUID> pending = pendingActiveRoutes();
+        if (pending == null) {
+            Map<UUID, UUID> opened = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(pendingActiveRoutesKey, opened);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    opened.forEach((vehicle, route) -> activeRoutes.put(vehicle, Optional.of(route)));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingActiveRoutesKey);
+                }
+            });
+            pending = opened;
+        }
+        pending.put(vehicleId, routeId);
+    }
+
+    public void evictActiveRoute(UUID vehicleId) {
+        Map<UUID, UUID> pending = pendingActiveRoutes();
+        if (pending != null) {
+            pending.remove(vehicleId);
+        }
+        invalidate(() -> activeRoutes.invalidate(vehicleId));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<UUID, UUID> pendingActiveRoutes() {
+        return (Map<UUID, UUID>) TransactionSynchronizationManager.getResource(pendingActiveRoutesKey);
+    }
+
+    // Another node may have opened or closed routes of vehicles this node just gained
+    @EventListener
+    public void onHandover(PartitionHandoverEvent event) {
+        activeRoutes.invalidateAll(activeRoutes.asMap().keySet().stream().filter(event::handsOver).toList());
+    }
+
+    // Active driver assignment
+
+    public Optional<UUID> getActiveDriverId(UUID vehicleId) {
+        return activeDrivers.get(vehicleId);
+    }
+
+    public void evictActiveDriver(UUID vehicleId) {
+        invalidate(() -> activeDrivers.invalidate(vehicleId));
+    }
+
+    // Geofence assignments
+
+    public Set<UUID> getAssignedGeofenceIds(UUID vehicleId) {
+        return geofenceAssignments.get(vehicleId);
+    }
+
+    public void evictGeofenceAssignments(UUID vehicleId) {
+        invalidate(() -> geofenceAssignments.invalidate(vehicleId));
+    }
+
+    public void evictAllGeofenceAssignments() {
+        invalidate(geofenceAssignments::invalidateAll);
+    }
+
+    /**
+     * Run an invalidation now, so the current transaction reads its own changes, and again once
+     * it completes, dropping whatever was loaded in between from rows not yet committed.
+     */
+    private static void invalidate(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+}
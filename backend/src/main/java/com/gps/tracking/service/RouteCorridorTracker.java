@@ -0,0 +1,256 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.entity.OptimizedRoute;
+import com.gps.tracking.geo.GeoUtils;
+import com.gps.tracking.geo.RoutePolyline;
+import com.gps.tracking.ingest.PartitionHandoverEvent;
+import com.gps.tracking.repository.OptimizedRouteRepository;
+import com.gps.tracking.repository.RouteExecutionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled planned-route corridors for every IN_PROGRESS optimized route, keyed by vehicle.
+ *
+ * Each fix of a vehicle on a route is matched against the route polyline to get its distance
+ * from the plan and its progress along it, and extends the distance actually traveled. The
+ * tracker also remembers whether the vehicle is outside its corridor so that a deviation is
+ * reported once when it leaves, not on every fix while it stays away. Routes are loaded at
+ * startup and kept current by {@link RouteOptimizationService} as they start and complete, which
+ * happens on the vehicle's ingest partition of its owner node. A vehicle not known here yet, such
+ * as one that moved over from another node, has its route looked up on its first fix.
+ * The routes of vehicles tracked by a transaction that rolls back are dropped and reloaded from
+ * their recorded executions on the vehicle's next fix, so a retried batch gets the same sequence
+ * numbers and raises the same deviation again.
+ */
+@Component
+@Slf4j
+public class RouteCorridorTracker {
+    private final OptimizedRouteRepository optimizedRouteRepository;
+    private final RouteExecutionRepository routeExecutionRepository;
+    private final MeterRegistry meterRegistry;
+    private final double cellSizeDegrees;
+    private final int defaultWidthMeters;
+
+    private final Map<UUID, ActiveRoute> routesByVehicle = new ConcurrentHashMap<>();
+    // Vehicles whose route, or lack of one, is current here; others are looked up on their next fix
+    private final Set<UUID> knownVehicles = ConcurrentHashMap.newKeySet();
+    private final Object touchedRoutesKey = new Object();
+
+    public RouteCorridorTracker(OptimizedRouteRepository optimizedRouteRepository,
+                                RouteExecutionRepository routeExecutionRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${gps.route.corridor.cell-size-degrees:0.01}") double cellSizeDegrees,
+                                @Value("${gps.route.corridor.default-width-meters:200}") int defaultWidthMeters) {
+        this.optimizedRouteRepository = optimizedRouteRepository;
+        this.routeExecutionRepository = routeExecutionRepository;
+        this.meterRegistry = meterRegistry;
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.defaultWidthMeters = defaultWidthMeters;
+    }
+
+    @PostConstruct
+    void load() {
+        // Newest first, so a vehicle with several IN_PROGRESS routes tracks the latest one
+        optimizedRouteRepository.findByStatusAndIsActiveTrueOrderByCreatedAtDesc(OptimizedRoute.RouteStatus.IN_PROGRESS)
+                .stream()
+                .filter(route -> route.getVehicle() != null
+                        && !routesByVehicle.containsKey(route.getVehicle().getId()))
+                .forEach(this::start);
+        Gauge.builder("gps.route.corridor.active", routesByVehicle, Map::size).register(meterRegistry);
+        log.info("Tracking {} active route corridors", routesByVehicle.size());
+    }
+
+    /**
+     * Start tracking a route for its vehicle, replacing any route tracked for it before.
+     * Sequence numbers, traveled distance, the last position and whether the vehicle was outside
+     * its corridor continue from the last execution already recorded. Call once the route's
+     * status has committed.
+     */
+    public void start(OptimizedRoute route) {
+        ActiveRoute active = load(route);
+        if (active != null) {
+            routesByVehicle.put(route.getVehicle().getId(), active);
+            knownVehicles.add(route.getVehicle().getId());
+        }
+    }
+
+    /**
+     * Stop tracking the route; a newer route already tracked for the same vehicle is left alone.
+     */
+    public void stop(OptimizedRoute route) {
+        if (route.getVehicle() == null) {
+            return;
+        }
+        routesByVehicle.computeIfPresent(route.getVehicle().getId(),
+                (vehicleId, active) -> active.routeId.equals(route.getId()) ? null : active);
+    }
+
+    @EventListener
+    public void onHandover(PartitionHandoverEvent event) {
+        routesByVehicle.keySet().removeIf(event::handsOver);
+        knownVehicles.removeIf(event::handsOver);
+    }
+
+    /**
+     * Match one fix against the vehicle's active route.
+     *
+     * @param widthMeters allowed distance from the planned line, or {@code null} for the configured default
+     * @return empty when the vehicle has no route in progress
+     */
+    public Optional<CorridorFix> track(UUID vehicleId, double latitude, double longitude,
+                                       LocalDateTime timestamp, Integer widthMeters) {
+        ActiveRoute active = routesByVehicle.get(vehicleId);
+        if (active == null && knownVehicles.add(vehicleId)) {
+            try {
+                active = reload(vehicleId);
+            } catch (RuntimeException e) {
+                knownVehicles.remove(vehicleId);
+                throw e;
+            }
+        }
+        if (active == null) {
+            return Optional.empty();
+        }
+        discardOnRollback(vehicleId, active);
+        RoutePolyline.Match match = active.polyline.nearest(latitude, longitude);
+        int width = widthMeters != null ? widthMeters : defaultWidthMeters;
+
+        synchronized (active) {
+            // A late fix still gets its own deviation, but must not bend the traveled path
+            if (active.lastTimestamp == null || !timestamp.isBefore(active.lastTimestamp)) {
+                if (active.lastTimestamp != null) {
+                    active.traveledMeters += GeoUtils.haversineMeters(
+                            active.lastLatitude, active.lastLongitude, latitude, longitude);
+                }
+                active.lastLatitude = latitude;
+                active.lastLongitude = longitude;
+                active.lastTimestamp = timestamp;
+            }
+            boolean wasOutside = active.outside != null ? active.outside : active.lastDistanceMeters > width;
+            boolean outside = match.distanceMeters() > width;
+            boolean leftCorridor = outside && !wasOutside;
+            active.outside = outside;
+            active.sequence++;
+
+            return Optional.of(new CorridorFix(active.routeId, active.sequence, match.distanceMeters(),
+                    match.progressMeters(), active.polyline.lengthMeters(), active.traveledMeters, leftCorridor));
+        }
+    }
+
+    private ActiveRoute reload(UUID vehicleId) {
+        // Newest first, as at startup
+        List<OptimizedRoute> routes = optimizedRouteRepository.findByVehicleIdAndStatusIn(vehicleId,
+                List.of(OptimizedRoute.RouteStatus.IN_PROGRESS));
+        if (routes.isEmpty()) {
+            return null;
+        }
+        ActiveRoute active = load(routes.get(0));
+        if (active == null) {
+            return null;
+        }
+        ActiveRoute existing = routesByVehicle.putIfAbsent(vehicleId, active);
+        return existing != null ? existing : active;
+    }
+
+    private ActiveRoute load(OptimizedRoute route) {
+        if (route.getVehicle() == null || route.getRouteCoordinates() == null) {
+            return null;
+        }
+        RoutePolyline polyline;
+        try {
+            polyline = RoutePolyline.fromJson(route.getRouteCoordinates(), cellSizeDegrees);
+        } catch (IllegalArgumentException e) {
+            log.warn("Not tracking route {} with unusable coordinates: {}", route.getId(), e.getMessage());
+            return null;
+        }
+        ActiveRoute active = new ActiveRoute(route.getId(), polyline);
+        routeExecutionRepository.findFirstByOptimizedRouteIdOrderBySequenceNumberDesc(route.getId())
+                .ifPresent(last -> {
+                    active.sequence = last.getSequenceNumber();
+                    if (last.getCumulativeDistanceKm() != null) {
+                        active.traveledMeters = last.getCumulativeDistanceKm().doubleValue() * 1000;
+                    }
+                    active.lastLatitude = last.getLatitude().doubleValue();
+                    active.lastLongitude = last.getLongitude().doubleValue();
+                    active.lastTimestamp = last.getTimestamp();
+                    if (last.getDistanceFromPlannedKm() != null) {
+                        // Compared against the corridor width on the next fix
+                        active.lastDistanceMeters = last.getDistanceFromPlannedKm().doubleValue() * 1000;
+                    }
+                });
+        return active;
+    }
+
+    /**
+     * Drop the vehicle's route if the current transaction rolls back; its next fix reloads it.
+     */
+    @SuppressWarnings("unchecked")
+    private void discardOnRollback(UUID vehicleId, ActiveRoute active) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Map<UUID, ActiveRoute> touched = (Map<UUID, ActiveRoute>) TransactionSynchronizationManager.getResource(touchedRoutesKey);
+        if (touched == null) {
+            Map<UUID, ActiveRoute> routes = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(touchedRoutesKey, routes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(touchedRoutesKey);
+                    if (status != STATUS_COMMITTED) {
+                        // A route started or stopped meanwhile is left alone
+                        routes.forEach((vehicle, route) -> {
+                            if (routesByVehicle.remove(vehicle, route)) {
+                                knownVehicles.remove(vehicle);
+                            }
+                        });
+                    }
+                }
+            });
+            touched = routes;
+        }
+        touched.put(vehicleId, active);
+    }
+
+    /**
+     * @param leftCorridor true only for the fix that took the vehicle outside the corridor
+     */
+    public record CorridorFix(UUID routeId, int sequenceNumber, double distanceMeters, double progressMeters,
+                              double routeLengthMeters, double traveledMeters, boolean leftCorridor) {
+    }
+
+    private static final class ActiveRoute {
+        private final UUID routeId;
+        private final RoutePolyline polyline;
+        private int sequence;
+        private double traveledMeters;
+        private double lastLatitude;
+        private double lastLongitude;
+        private LocalDateTime lastTimestamp;
+        // Unknown until the first fix after a (re)load, then decided by lastDistanceMeters
+        private Boolean outside;
+        private double lastDistanceMeters;
+
+        private ActiveRoute(UUID routeId, RoutePolyline polyline) {
+            this.routeId = routeId;
+            this.polyline = polyline;
+        }
+    }
+}
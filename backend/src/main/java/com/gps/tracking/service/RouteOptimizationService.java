@@ -4,13 +4,17 @@ import com.gps.tracking.dto.request.OptimizedRouteRequest;
 import com.gps.tracking.dto.response.OptimizedRouteResponse;
 import com.gps.tracking.entity.*;
 import com.gps.tracking.exception.ResourceNotFoundException;
+import com.gps.tracking.geo.GeoUtils;
+import com.gps.tracking.geo.TourSolver;
 import com.gps.tracking.repository.*;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -19,7 +23,6 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class RouteOptimizationService {
     
@@ -29,6 +32,35 @@ public class RouteOptimizationService {
     private final VehicleRepository vehicleRepository;
     private final DriverRepository driverRepository;
     private final GpsLocationRepository gpsLocationRepository;
+    private final RouteCorridorTracker corridorTracker;
+    private final GeofencingService geofencingService;
+    private final RouteTrackLevelService routeTrackLevelService;
+    private final long optimizationTimeBudgetNanos;
+    
+    public RouteOptimizationService(OptimizedRouteRepository optimizedRouteRepository,
+                                    RouteStopRepository routeStopRepository,
+                                    RouteExecutionRepository routeExecutionRepository,
+                                    VehicleRepository vehicleRepository,
+                                    DriverRepository driverRepository,
+                                    GpsLocationRepository gpsLocationRepository,
+                                    RouteCorridorTracker corridorTracker,
+                                    GeofencingService geofencingService,
+                                    RouteTrackLevelService routeTrackLevelService,
+                                    @Value("${gps.route.optimization.time-budget-ms:250}") long optimizationTimeBudgetMillis) {
+        if (optimizationTimeBudgetMillis < 0) {
+            throw new IllegalArgumentException("gps.route.optimization.time-budget-ms must not be negative");
+        }
+        this.optimizedRouteRepository = optimizedRouteRepository;
+        this.routeStopRepository = routeStopRepository;
+        this.routeExecutionRepository = routeExecutionRepository;
+        this.vehicleRepository = vehicleRepository;
+        this.driverRepository = driverRepository;
+        this.gpsLocationRepository = gpsLocationRepository;
+        this.corridorTracker = corridorTracker;
+        this.geofencingService = geofencingService;
+        this.routeTrackLevelService = routeTrackLevelService;
+        this.optimizationTimeBudgetNanos = optimizationTimeBudgetMillis * 1_000_000L;
+    }
     
     @Transactional
     public OptimizedRouteResponse createOptimizedRoute(OptimizedRouteRequest request) {
@@ -110,6 +142,8 @@ public class RouteOptimizationService {
         route.setStatus(OptimizedRoute.RouteStatus.IN_PROGRESS);
         route.setActualStartTime(LocalDateTime.now());
         route = optimizedRouteRepository.save(route);
+        OptimizedRoute started = route;
+        afterCommit(() -> corridorTracker.start(started));
         
         log.info("Started route execution: {}", route.getName());
         return buildRouteResponse(route);
@@ -127,13 +161,16 @@ public class RouteOptimizationService {
         calculateActualMetrics(route);
         
         route = optimizedRouteRepository.save(route);
+        OptimizedRoute completed = route;
+        afterCommit(() -> corridorTracker.stop(completed));
+        routeTrackLevelService.buildLevels(route);
         
         log.info("Completed route execution: {}", route.getName());
         return buildRouteResponse(route);
     }
     
-    public List<RouteExecution> getRouteExecution(UUID routeId) {
-        return routeExecutionRepository.findByOptimizedRouteIdOrderBySequenceNumberAsc(routeId);
+    public List<RouteExecution> getRouteExecution(UUID routeId, Double toleranceMeters, Integer zoom) {
+        return routeTrackLevelService.getExecution(routeId, toleranceMeters, zoom);
     }
     
     public OptimizedRouteResponse.RouteAnalytics getRouteAnalytics(UUID routeId) {
@@ -164,120 +201,109 @@ public class RouteOptimizationService {
                 .build();
     }
     
-    @Transactional
-    public void recordRouteExecution(UUID routeId, GpsLocation gpsLocation) {
-        OptimizedRoute route = optimizedRouteRepository.findById(routeId)
-                .orElseThrow(() -> new ResourceNotFoundException("Route not found"));
-        
-        if (route.getStatus() != OptimizedRoute.RouteStatus.IN_PROGRESS) {
+    /**
+     * Record a fix of a vehicle against its IN_PROGRESS route: distance from the planned line,
+     * progress along it and distance traveled so far. Raises a ROUTE_DEVIATION alert when the fix
+     * takes the vehicle out of its corridor (see {@link GeofencingService#findRouteCorridor}).
+     * Runs in the caller's transaction; vehicles without a route in progress cost one map lookup.
+     */
+    public void recordRouteExecution(GpsLocation gpsLocation) {
+        UUID vehicleId = gpsLocation.getVehicle().getId();
+        Optional<Geofence> corridor = geofencingService.findRouteCorridor(vehicleId);
+        
+        Optional<RouteCorridorTracker.CorridorFix> tracked = corridorTracker.track(vehicleId,
+                gpsLocation.getLatitude().doubleValue(), gpsLocation.getLongitude().doubleValue(),
+                gpsLocation.getTimestamp(), corridor.map(Geofence::getRadiusMeters).orElse(null));
+        if (tracked.isEmpty()) {
             return; // Only record execution for active routes
         }
+        RouteCorridorTracker.CorridorFix fix = tracked.get();
         
-        // Calculate deviation from planned route
-        BigDecimal deviation = calculateDeviationFromPlannedRoute(route, gpsLocation);
-        RouteExecution.DeviationType deviationType = determineDeviationType(deviation);
-        
-        // Get sequence number
-        Integer sequenceNumber = getNextSequenceNumber(routeId);
-        
+        BigDecimal deviation = toKilometers(fix.distanceMeters());
         RouteExecution execution = RouteExecution.builder()
-                .optimizedRoute(route)
+                .optimizedRoute(optimizedRouteRepository.getReferenceById(fix.routeId()))
                 .gpsLocation(gpsLocation)
-                .sequenceNumber(sequenceNumber)
+                .sequenceNumber(fix.sequenceNumber())
                 .latitude(gpsLocation.getLatitude())
                 .longitude(gpsLocation.getLongitude())
                 .speed(gpsLocation.getSpeed())
                 .direction(gpsLocation.getDirection())
                 .distanceFromPlannedKm(deviation)
-                .cumulativeDistanceKm(calculateCumulativeDistance(routeId, gpsLocation))
+                .cumulativeDistanceKm(toKilometers(fix.traveledMeters()))
+                .progressKm(toKilometers(fix.progressMeters()))
                 .timestamp(gpsLocation.getTimestamp())
-                .deviationType(deviationType)
+                .deviationType(determineDeviationType(deviation))
                 .build();
         
         routeExecutionRepository.save(execution);
+        
+        if (fix.leftCorridor()) {
+            if (corridor.isPresent()) {
+                geofencingService.raiseRouteDeviationAlert(corridor.get(), gpsLocation, fix.distanceMeters());
+            } else {
+                log.warn("Vehicle {} left the corridor of route {} ({} m off route)",
+                        vehicleId, fix.routeId(), Math.round(fix.distanceMeters()));
+            }
+        }
     }
     
     // Private helper methods
     
+    // The corridor tracker must not follow a route whose status change is rolled back
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
     private List<OptimizedRouteRequest.RouteStopRequest> optimizeStops(
             List<OptimizedRouteRequest.RouteStopRequest> stops, 
             OptimizedRoute.OptimizationType optimizationType) {
         
         switch (optimizationType) {
             case SHORTEST_DISTANCE:
-                return optimizeForShortestDistance(stops);
             case FASTEST_TIME:
-                return optimizeForFastestTime(stops);
             case FUEL_EFFICIENT:
-                return optimizeForFuelEfficiency(stops);
             case BALANCED:
-                return optimizeBalanced(stops);
+                // Travel time and fuel are estimated in proportion to distance (see calculateRouteMetrics)
+                // and service times do not depend on the order, so the shortest path serves every objective
+                return optimizeForShortestDistance(stops);
             default:
                 return stops; // Return original order for CUSTOM
         }
     }
     
+    /**
+     * Shortest path through the stops, starting at the first one (see {@link TourSolver}).
+     */
     private List<OptimizedRouteRequest.RouteStopRequest> optimizeForShortestDistance(List<OptimizedRouteRequest.RouteStopRequest> stops) {
-        // Implement Traveling Salesman Problem (TSP) algorithm
-        // For simplicity, using nearest neighbor algorithm
         if (stops.size() <= 2) return stops;
         
-        List<OptimizedRouteRequest.RouteStopRequest> optimized = new ArrayList<>();
-        List<OptimizedRouteRequest.RouteStopRequest> remaining = new ArrayList<>(stops);
-        
-        // Start with first stop
-        OptimizedRouteRequest.RouteStopRequest current = remaining.remove(0);
-        optimized.add(current);
-        
-        while (!remaining.isEmpty()) {
-            OptimizedRouteRequest.RouteStopRequest nearest = findNearestStop(current, remaining);
-            remaining.remove(nearest);
-            optimized.add(nearest);
-            current = nearest;
+        int count = stops.size();
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = stops.get(i).getLatitude().doubleValue();
+            lons[i] = stops.get(i).getLongitude().doubleValue();
         }
+        long started = System.nanoTime();
+        int[] order = TourSolver.solve(lats, lons, count, optimizationTimeBudgetNanos);
+        log.debug("Ordered {} stops in {} ms", count, (System.nanoTime() - started) / 1_000_000);
         
+        List<OptimizedRouteRequest.RouteStopRequest> optimized = new ArrayList<>(count);
+        for (int index : order) {
+            optimized.add(stops.get(index));
+        }
         return optimized;
     }
     
-    private OptimizedRouteRequest.RouteStopRequest findNearestStop(
-            OptimizedRouteRequest.RouteStopRequest current, 
-            List<OptimizedRouteRequest.RouteStopRequest> candidates) {
-        
-        return candidates.stream()
-                .min((a, b) -> Double.compare(
-                    calculateDistance(current.getLatitude(), current.getLongitude(), a.getLatitude(), a.getLongitude()),
-                    calculateDistance(current.getLatitude(), current.getLongitude(), b.getLatitude(), b.getLongitude())
-                ))
-                .orElse(candidates.get(0));
-    }
-    
-    private double calculateDistance(BigDecimal lat1, BigDecimal lon1, BigDecimal lat2, BigDecimal lon2) {
-        // Haversine formula for calculating distance between two points
-        double R = 6371; // Earth's radius in kilometers
-        double dLat = Math.toRadians(lat2.doubleValue() - lat1.doubleValue());
-        double dLon = Math.toRadians(lon2.doubleValue() - lon1.doubleValue());
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                Math.cos(Math.toRadians(lat1.doubleValue())) * Math.cos(Math.toRadians(lat2.doubleValue())) *
-                Math.sin(dLon/2) * Math.sin(dLon/2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        return R * c;
-    }
-    
-    private List<OptimizedRouteRequest.RouteStopRequest> optimizeForFastestTime(List<OptimizedRouteRequest.RouteStopRequest> stops) {
-        // For now, use same as shortest distance (in real implementation, consider traffic data)
-        return optimizeForShortestDistance(stops);
-    }
-    
-    private List<OptimizedRouteRequest.RouteStopRequest> optimizeForFuelEfficiency(List<OptimizedRouteRequest.RouteStopRequest> stops) {
-        // Consider elevation, traffic patterns, and fuel consumption
-        return optimizeForShortestDistance(stops);
-    }
-    
-    private List<OptimizedRouteRequest.RouteStopRequest> optimizeBalanced(List<OptimizedRouteRequest.RouteStopRequest> stops) {
-        // Balance between distance, time, and fuel efficiency
-        return optimizeForShortestDistance(stops);
-    }
-    
     private RouteMetrics calculateRouteMetrics(List<OptimizedRouteRequest.RouteStopRequest> stops) {
         BigDecimal totalDistance = BigDecimal.ZERO;
         BigDecimal totalDuration = BigDecimal.ZERO;
@@ -286,10 +312,10 @@ public class RouteOptimizationService {
             OptimizedRouteRequest.RouteStopRequest current = stops.get(i);
             OptimizedRouteRequest.RouteStopRequest next = stops.get(i + 1);
             
-            double distance = calculateDistance(
-                current.getLatitude(), current.getLongitude(),
-                next.getLatitude(), next.getLongitude()
-            );
+            double distance = GeoUtils.haversineMeters(
+                current.getLatitude().doubleValue(), current.getLongitude().doubleValue(),
+                next.getLatitude().doubleValue(), next.getLongitude().doubleValue()
+            ) / 1000.0;
             
             totalDistance = totalDistance.add(BigDecimal.valueOf(distance));
             
@@ -435,11 +461,6 @@ public class RouteOptimizationService {
         return score.setScale(2, RoundingMode.HALF_UP);
     }
     
-    private BigDecimal calculateDeviationFromPlannedRoute(OptimizedRoute route, GpsLocation gpsLocation) {
-        // Simplified calculation - in real implementation, use route geometry
-        return BigDecimal.valueOf(0.1); // Placeholder
-    }
-    
     private RouteExecution.DeviationType determineDeviationType(BigDecimal deviation) {
         if (deviation.compareTo(BigDecimal.valueOf(0.05)) <= 0) {
             return RouteExecution.DeviationType.ON_ROUTE;
@@ -450,14 +471,8 @@ public class RouteOptimizationService {
         }
     }
     
-    private Integer getNextSequenceNumber(UUID routeId) {
-        List<RouteExecution> executions = routeExecutionRepository.findByOptimizedRouteIdOrderBySequenceNumberAsc(routeId);
-        return executions.isEmpty() ? 1 : executions.get(executions.size() - 1).getSequenceNumber() + 1;
-    }
-    
-    private BigDecimal calculateCumulativeDistance(UUID routeId, GpsLocation currentLocation) {
-        // Calculate cumulative distance from start of route
-        return BigDecimal.valueOf(10.5); // Placeholder
+    private BigDecimal toKilometers(double meters) {
+        return BigDecimal.valueOf(meters / 1000.0).setScale(3, RoundingMode.HALF_UP);
     }
     
     private BigDecimal calculateTimeVariance(OptimizedRoute route) {
@@ -0,0 +1,365 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.dto.response.RouteProgressResponse;
+import com.gps.tracking.entity.Route;
+import com.gps.tracking.geo.GeoUtils;
+import com.gps.tracking.ingest.Fix;
+import com.gps.tracking.ingest.PartitionHandoverEvent;
+import com.gps.tracking.repository.GpsLocationRepository;
+import com.gps.tracking.repository.RouteRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Running statistics for every IN_PROGRESS trip, updated on each ingested fix so that live
+ * progress and closing a trip never have to reload its fixes.
+ *
+ * Per fix the accumulator adds the great-circle distance from the previous fix, the point count,
+ * the peak reported speed, and the elapsed time when the vehicle was moving (reported or derived
+ * speed at least {@code movingSpeedKmh}; gaps longer than {@code maxGapSeconds} are not counted).
+ * Average speed is distance over moving time. Fixes no newer than the last accumulated one are
+ * ignored, so late or replayed fixes are never counted twice.
+ *
+ * State is checkpointed to the routes table periodically; a checkpoint writes only what the
+ * transactions that recorded fixes have committed, never fixes still being stored. A route not in
+ * memory (after a restart) is resumed from its checkpoint plus the fixes recorded since; routes
+ * touched by a transaction that rolls back are dropped and resumed the same way, so they never
+ * count fixes (or belong to a trip) that were not stored. In a cluster, routes of vehicles that move to another node are
+ * checkpointed and dropped here once the fixes logged before the move are stored (see
+ * {@link PartitionHandoverEvent}), and the new owner resumes them;
+ * routes of vehicles that moved here are resumed afresh for the same reason.
+ */
+@Component
+@Slf4j
+public class RouteProgressTracker {
+    private final RouteRepository routeRepository;
+    private final GpsLocationRepository locationRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final double movingSpeedKmh;
+    private final long maxGapMicros;
+
+    private final Map<UUID, Accumulator> routes = new ConcurrentHashMap<>();
+    private final Object touchedRoutesKey = new Object();
+
+    public RouteProgressTracker(RouteRepository routeRepository,
+                                GpsLocationRepository locationRepository,
+                                ReferenceDataCache referenceDataCache,
+                                MeterRegistry meterRegistry,
+                                @Value("${gps.route.moving-speed-kmh:3}") double movingSpeedKmh,
+                                @Value("${gps.route.max-gap-seconds:300}") long maxGapSeconds) {
+        this.routeRepository = routeRepository;
+        this.locationRepository = locationRepository;
+        this.referenceDataCache = referenceDataCache;
+        this.movingSpeedKmh = movingSpeedKmh;
+        this.maxGapMicros = maxGapSeconds * 1_000_000L;
+        Gauge.builder("gps.route.progress.active", routes, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Begin accumulating a route that was just created; its fixes follow through {@link #record}.
+     */
+    public void start(Route route) {
+        routes.put(route.getId(), new Accumulator(route.getVehicle().getId()));
+        discardOnRollback(route.getId());
+    }
+
+    /**
+     * Add a persisted fix to its vehicle's IN_PROGRESS route, if it has one.
+     */
+    public void record(Fix fix) {
+        Optional<UUID> routeId = referenceDataCache.getActiveRouteId(fix.vehicleId());
+        if (routeId.isEmpty()) {
+            return;
+        }
+        Accumulator accumulator = routes.get(routeId.get());
+        if (accumulator == null) {
+            accumulator = routeRepository.findById(routeId.get()).map(this::resume).orElse(null);
+            if (accumulator == null) {
+                return;
+            }
+        }
+        accumulator.add(fix);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accumulator.commit();
+        }
+        discardOnRollback(routeId.get());
+    }
+
+    /**
+     * Live statistics of a route; completed routes report their final values. A route in progress
+     * that is not accumulated here (this node does not own its vehicle, or it has had no fix since
+     * a restart) is rebuilt for this answer only: only the partition that records its fixes keeps it.
+     */
+    public RouteProgressResponse progress(Route route) {
+        Accumulator accumulator = routes.get(route.getId());
+        if (accumulator == null && "IN_PROGRESS".equals(route.getStatus())) {
+            accumulator = load(route);
+        }
+        if (accumulator == null) {
+            return new RouteProgressResponse(route.getId(), route.getVehicle().getId(), route.getStatus(),
+                    route.getStartTime(), route.getLastFixTime(), route.getDistanceKm(),
+                    route.getPointCount() != null ? route.getPointCount() : 0,
+                    route.getMaxSpeedKmh(), route.getAvgSpeedKmh(),
+                    route.getMovingSeconds() != null ? route.getMovingSeconds() : 0);
+        }
+        synchronized (accumulator) {
+            return new RouteProgressResponse(route.getId(), accumulator.vehicleId, route.getStatus(),
+                    route.getStartTime(), accumulator.lastFixTime(), accumulator.distanceKm(),
+                    accumulator.pointCount, accumulator.maxSpeedKmh(), accumulator.avgSpeedKmh(),
+                    accumulator.movingMicros / 1_000_000L);
+        }
+    }
+
+    /**
+     * Copy a route's final statistics onto the entity, and stop accumulating it once the current
+     * transaction commits; until then fixes still count towards it.
+     */
+    public void finish(Route route) {
+        Accumulator accumulator = routes.get(route.getId());
+        if (accumulator == null) {
+            accumulator = load(route);
+        }
+        synchronized (accumulator) {
+            accumulator.applyTo(route);
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            routes.remove(route.getId());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                routes.remove(route.getId());
+            }
+        });
+    }
+
+    /**
+     * Persist the statistics of routes that changed since the last checkpoint.
+     */
+    @Scheduled(fixedDelayString = "${gps.route.checkpoint-interval-ms:30000}")
+    @Transactional
+    public void checkpoint() {
+        routes.forEach((routeId, accumulator) -> {
+            synchronized (accumulator) {
+                checkpoint(routeId, accumulator);
+            }
+        });
+    }
+
+    @EventListener
+    @Transactional
+    public void onHandover(PartitionHandoverEvent event) {
+        Map<UUID, Accumulator> lost = new HashMap<>();
+        routes.forEach((routeId, accumulator) -> {
+            if (event.handsOver(accumulator.vehicleId) && routes.remove(routeId, accumulator)
+                    && event.change().ownedBefore(accumulator.vehicleId)) {
+                lost.put(routeId, accumulator);
+            }
+        });
+        // Dropped first, so a failed checkpoint still leaves the route to its new owner
+        lost.forEach((routeId, accumulator) -> {
+            synchronized (accumulator) {
+                checkpoint(routeId, accumulator);
+            }
+        });
+    }
+
+    /**
+     * Forget the route if the current transaction rolls back; once it commits, the fixes it added
+     * become part of what is checkpointed.
+     */
+    @SuppressWarnings("unchecked")
+    private void discardOnRollback(UUID routeId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Set<UUID> touched = (Set<UUID>) TransactionSynchronizationManager.getResource(touchedRoutesKey);
+        if (touched == null) {
+            Set<UUID> routeIds = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(touchedRoutesKey, routeIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(touchedRoutesKey);
+                    if (status != STATUS_COMMITTED) {
+                        routeIds.forEach(routes::remove);
+                        return;
+                    }
+                    routeIds.forEach(routeId -> {
+                        Accumulator accumulator = routes.get(routeId);
+                        if (accumulator != null) {
+                            accumulator.commit();
+                        }
+                    });
+                }
+            });
+            touched = routeIds;
+        }
+        touched.add(routeId);
+    }
+
+    private void checkpoint(UUID routeId, Accumulator accumulator) {
+        if (!accumulator.dirty) {
+            return;
+        }
+        Snapshot committed = accumulator.committed;
+        routeRepository.checkpointProgress(routeId, committed.distanceKm(), committed.pointCount(),
+                committed.maxSpeedKmh(), committed.avgSpeedKmh(), committed.movingSeconds(),
+                committed.lastFixTime(), committed.lastLatitude(), committed.lastLongitude());
+        accumulator.dirty = false;
+    }
+
+    private Accumulator resume(Route route) {
+        Accumulator loaded = load(route);
+        Accumulator existing = routes.putIfAbsent(route.getId(), loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    /**
+     * Rebuild a route's state from its checkpoint and the fixes recorded after it.
+     */
+    private Accumulator load(Route route) {
+        Accumulator accumulator = new Accumulator(route.getVehicle().getId());
+        if (route.getLastFixTime() != null) {
+            accumulator.distanceMeters = route.getDistanceKm() != null ? route.getDistanceKm().doubleValue() * 1000 : 0;
+            accumulator.pointCount = route.getPointCount() != null ? route.getPointCount() : 0;
+            accumulator.maxSpeedKmh = route.getMaxSpeedKmh() != null ? route.getMaxSpeedKmh().doubleValue() : Double.NaN;
+            accumulator.movingMicros = route.getMovingSeconds() != null ? route.getMovingSeconds() * 1_000_000L : 0;
+            accumulator.lastFixMicros = Fix.toMicros(route.getLastFixTime());
+            accumulator.lastLatitude = route.getLastLatitude().doubleValue();
+            accumulator.lastLongitude = route.getLastLongitude().doubleValue();
+        }
+        LocalDateTime from = route.getLastFixTime() != null ? route.getLastFixTime() : route.getStartTime();
+        LocalDateTime to = route.getEndTime() != null ? route.getEndTime() : LocalDateTime.now().plusDays(1);
+        locationRepository.findByVehicleIdAndTimestampBetween(route.getVehicle().getId(), from, to)
+                .forEach(location -> accumulator.add(Fix.of(location)));
+        // Rebuilt from stored data only
+        accumulator.commit();
+        log.debug("Resumed route {} at {} points", route.getId(), accumulator.pointCount);
+        return accumulator;
+    }
+
+    private static BigDecimal coordinate(double value) {
+        return BigDecimal.valueOf(value).setScale(8, RoundingMode.HALF_UP);
+    }
+
+    private record Snapshot(BigDecimal distanceKm, int pointCount, BigDecimal maxSpeedKmh, BigDecimal avgSpeedKmh,
+                            long movingSeconds, LocalDateTime lastFixTime, BigDecimal lastLatitude,
+                            BigDecimal lastLongitude) {
+    }
+
+    private final class Accumulator {
+        private final UUID vehicleId;
+        private double distanceMeters;
+        private int pointCount;
+        private double maxSpeedKmh = Double.NaN;
+        private long movingMicros;
+        private long lastFixMicros = Long.MIN_VALUE;
+        private double lastLatitude;
+        private double lastLongitude;
+        // Changed by fixes whose transaction has not committed yet
+        private boolean pending;
+        // State as of the last commit, and whether it changed since the last checkpoint
+        private Snapshot committed;
+        private boolean dirty;
+
+        private Accumulator(UUID vehicleId) {
+            this.vehicleId = vehicleId;
+        }
+
+        private synchronized void add(Fix fix) {
+            long timestamp = fix.timestampMicros();
+            boolean first = lastFixMicros == Long.MIN_VALUE;
+            if (!first && timestamp <= lastFixMicros) {
+                return;
+            }
+            double latitude = fix.latitude();
+            double longitude = fix.longitude();
+            double speedKmh = fix.speed();
+
+            if (!first) {
+                double meters = GeoUtils.haversineMeters(lastLatitude, lastLongitude, latitude, longitude);
+                distanceMeters += meters;
+                long micros = timestamp - lastFixMicros;
+                if (micros <= maxGapMicros) {
+                    double derivedKmh = meters / micros * 3_600_000;
+                    // NaN (no reported speed) compares false
+                    boolean moving = derivedKmh >= movingSpeedKmh || speedKmh >= movingSpeedKmh;
+                    if (moving) {
+                        movingMicros += micros;
+                    }
+                }
+            }
+            pointCount++;
+            if (fix.hasSpeed() && (Double.isNaN(maxSpeedKmh) || speedKmh > maxSpeedKmh)) {
+                maxSpeedKmh = speedKmh;
+            }
+            lastFixMicros = timestamp;
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            pending = true;
+        }
+
+        private synchronized void commit() {
+            if (!pending || lastFixMicros == Long.MIN_VALUE) {
+                return;
+            }
+            committed = new Snapshot(distanceKm(), pointCount, maxSpeedKmh(), avgSpeedKmh(),
+                    movingMicros / 1_000_000L, lastFixTime(), coordinate(lastLatitude), coordinate(lastLongitude));
+            pending = false;
+            dirty = true;
+        }
+
+        private LocalDateTime lastFixTime() {
+            return lastFixMicros != Long.MIN_VALUE ? Fix.toDateTime(lastFixMicros) : null;
+        }
+
+        private BigDecimal distanceKm() {
+            return BigDecimal.valueOf(distanceMeters / 1000).setScale(2, RoundingMode.HALF_UP);
+        }
+
+        private BigDecimal maxSpeedKmh() {
+            return !Double.isNaN(maxSpeedKmh) ? BigDecimal.valueOf(maxSpeedKmh).setScale(2, RoundingMode.HALF_UP) : null;
+        }
+
+        private BigDecimal avgSpeedKmh() {
+            if (movingMicros == 0) {
+                return null;
+            }
+            return BigDecimal.valueOf(distanceMeters / movingMicros * 3_600_000).setScale(2, RoundingMode.HALF_UP);
+        }
+
+        private void applyTo(Route route) {
+            route.setDistanceKm(distanceKm());
+            route.setPointCount(pointCount);
+            route.setMaxSpeedKmh(maxSpeedKmh());
+            route.setAvgSpeedKmh(avgSpeedKmh());
+            route.setMovingSeconds(movingMicros / 1_000_000L);
+            if (lastFixMicros != Long.MIN_VALUE) {
+                route.setLastFixTime(lastFixTime());
+                route.setLastLatitude(coordinate(lastLatitude));
+                route.setLastLongitude(coordinate(lastLongitude));
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.gps.tracking.service;
 
+import com.gps.tracking.dto.response.RouteProgressResponse;
 import com.gps.tracking.dto.response.RouteResponse;
 import com.gps.tracking.entity.GpsLocation;
 import com.gps.tracking.entity.Route;
@@ -10,7 +11,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -21,6 +21,8 @@ import java.util.stream.Collectors;
 public class RouteService {
     private final RouteRepository routeRepository;
     private final GpsLocationRepository locationRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final RouteProgressTracker routeProgressTracker;
 
     public List<RouteResponse> getAllRoutes() {
         return routeRepository.findAll().stream()
@@ -40,6 +42,12 @@ public class RouteService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Close a route at one of its vehicle's fixes. Call it on the vehicle's ingest partition
+     * (see {@link com.gps.tracking.ingest.GpsIngestionPipeline#execute}) so no fix of the vehicle
+     * is being stored meanwhile; the trip statistics and the cached active route are only dropped
+     * once the route is committed as COMPLETED.
+     */
     @Transactional
     public RouteResponse endRoute(UUID routeId, UUID endLocationId) {
         Route route = routeRepository.findById(routeId)
@@ -59,120 +67,18 @@ public class RouteService {
         route.setEndTime(endTime);
         route.setStatus("COMPLETED");
 
-        // Calculate total traveled distance using all GPS locations in the route
-        // Include start location explicitly to ensure it's included in calculation
-        BigDecimal totalDistance = calculateTotalTraveledDistance(
-                route.getVehicle().getId(),
-                route.getStartTime(),
-                endTime,
-                route.getStartLocation(),
-                endLocation
-        );
-        route.setDistanceKm(totalDistance);
-
-        return toResponse(routeRepository.save(route));
-    }
-
-    public static double distance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // radius of Earth in km
+        // Distance and trip statistics were accumulated as fixes arrived
+        routeProgressTracker.finish(route);
 
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                   Math.cos(Math.toRadians(lat1)) *
-                   Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon/2) * Math.sin(dLon/2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        return R * c;
-    }
-
-    private BigDecimal calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        return BigDecimal.valueOf(distance(lat1, lon1, lat2, lon2));
+        Route saved = routeRepository.save(route);
+        referenceDataCache.evictActiveRoute(route.getVehicle().getId());
+        return toResponse(saved);
     }
 
-    /**
-     * Calculate total traveled distance by summing distances between consecutive GPS locations
-     * This gives the actual traveled distance, not just straight-line distance
-     */
-    private BigDecimal calculateTotalTraveledDistance(UUID vehicleId, LocalDateTime startTime, LocalDateTime endTime, 
-                                                      GpsLocation startLocation, GpsLocation endLocation) {
-        // Get all GPS locations for this vehicle during the route period, ordered by timestamp
-        // BETWEEN is inclusive in PostgreSQL, but we'll ensure start and end are included
-        List<GpsLocation> locations = locationRepository.findByVehicleIdAndTimestampBetween(
-                vehicleId,
-                startTime,
-                endTime
-        );
-
-        // Build a complete list ensuring start and end locations are included
-        java.util.Set<UUID> locationIds = new java.util.HashSet<>();
-        java.util.List<GpsLocation> allLocations = new java.util.ArrayList<>();
-        
-        // Add start location if not already in the list
-        if (startLocation != null) {
-            allLocations.add(startLocation);
-            locationIds.add(startLocation.getId());
-        }
-        
-        // Add all locations from query that are not start/end
-        for (GpsLocation loc : locations) {
-            if (!locationIds.contains(loc.getId())) {
-                // Only add if it's not the start or end location (to avoid duplicates)
-                if (!loc.getId().equals(startLocation != null ? startLocation.getId() : null) &&
-                    !loc.getId().equals(endLocation != null ? endLocation.getId() : null)) {
-                    allLocations.add(loc);
-                    locationIds.add(loc.getId());
-                }
-            }
-        }
-        
-        // Add end location if not already in the list
-        if (endLocation != null && !locationIds.contains(endLocation.getId())) {
-            allLocations.add(endLocation);
-        }
-
-        // If no locations or only one location, return 0
-        if (allLocations.isEmpty() || allLocations.size() < 2) {
-            return BigDecimal.ZERO;
-        }
-
-        // Ensure locations are sorted by timestamp
-        allLocations.sort((l1, l2) -> l1.getTimestamp().compareTo(l2.getTimestamp()));
-
-        // Log for debugging
-        System.out.println("=== Distance Calculation Debug ===");
-        System.out.println("Total locations found: " + allLocations.size());
-        System.out.println("Start time: " + startTime);
-        System.out.println("End time: " + endTime);
-        for (int i = 0; i < allLocations.size(); i++) {
-            GpsLocation loc = allLocations.get(i);
-            System.out.println(String.format("Location %d: Lat=%.6f, Lng=%.6f, Time=%s", 
-                i + 1, loc.getLatitude().doubleValue(), loc.getLongitude().doubleValue(), loc.getTimestamp()));
-        }
-
-        // Calculate distance between each consecutive pair of locations
-        BigDecimal totalDistance = BigDecimal.ZERO;
-        for (int i = 0; i < allLocations.size() - 1; i++) {
-            GpsLocation current = allLocations.get(i);
-            GpsLocation next = allLocations.get(i + 1);
-
-            double segmentDistance = distance(
-                    current.getLatitude().doubleValue(),
-                    current.getLongitude().doubleValue(),
-                    next.getLatitude().doubleValue(),
-                    next.getLongitude().doubleValue()
-            );
-
-            System.out.println(String.format("Segment %d->%d: %.2f km", i + 1, i + 2, segmentDistance));
-            totalDistance = totalDistance.add(BigDecimal.valueOf(segmentDistance));
-        }
-
-        System.out.println("Total distance: " + totalDistance + " km");
-        System.out.println("===================================");
-
-        return totalDistance;
+    public RouteProgressResponse getRouteProgress(UUID routeId) {
+        Route route = routeRepository.findById(routeId)
+                .orElseThrow(() -> new ResourceNotFoundException("Route not found with id: " + routeId));
+        return routeProgressTracker.progress(route);
     }
 
     private RouteResponse toResponse(Route route) {
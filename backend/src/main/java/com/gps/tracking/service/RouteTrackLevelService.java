@@ -0,0 +1,171 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.entity.OptimizedRoute;
+import com.gps.tracking.entity.RouteExecution;
+import com.gps.tracking.entity.RouteTrackLevel;
+import com.gps.tracking.geo.TrackSimplifier;
+import com.gps.tracking.repository.RouteExecutionRepository;
+import com.gps.tracking.repository.RouteTrackLevelRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Simplified tracks for route replay.
+ *
+ * When a route completes, its recorded track is simplified once and cut into levels of detail, one
+ * per configured tolerance, each stored as the sequence numbers of the execution points it keeps.
+ * A replay at a given tolerance (or map zoom) then loads only the points of the coarsest level that
+ * is still at least as precise as requested. Routes without levels are simplified on the fly.
+ */
+@Service
+@Slf4j
+public class RouteTrackLevelService {
+    private static final int MAX_IN_LIST = 10_000;
+
+    private final RouteExecutionRepository routeExecutionRepository;
+    private final RouteTrackLevelRepository routeTrackLevelRepository;
+    private final double[] tolerancesMeters;
+
+    public RouteTrackLevelService(RouteExecutionRepository routeExecutionRepository,
+                                  RouteTrackLevelRepository routeTrackLevelRepository,
+                                  @Value("${gps.track.lod.tolerances-meters:5,20,80,320}") double[] tolerancesMeters) {
+        this.routeExecutionRepository = routeExecutionRepository;
+        this.routeTrackLevelRepository = routeTrackLevelRepository;
+        this.tolerancesMeters = tolerancesMeters.clone();
+        Arrays.sort(this.tolerancesMeters);
+    }
+
+    /**
+     * Replace the stored levels of a route with ones built from its current execution points.
+     * Levels that would keep as many points as the next finer one are skipped.
+     */
+    @Transactional
+    public void buildLevels(OptimizedRoute route) {
+        routeTrackLevelRepository.deleteByRouteId(route.getId());
+        Track track = loadTrack(route.getId());
+        if (track.count < 3) {
+            return;
+        }
+
+        double[] significance = TrackSimplifier.significance(track.lats, track.lons, track.count);
+        BigDecimal referenceLatitude = BigDecimal.valueOf(track.lats[0]).setScale(8, RoundingMode.HALF_UP);
+        List<RouteTrackLevel> levels = new ArrayList<>();
+        int previousCount = track.count;
+        for (double tolerance : tolerancesMeters) {
+            int[] kept = TrackSimplifier.keep(significance, tolerance);
+            if (kept.length >= previousCount) {
+                continue;
+            }
+            int[] sequenceNumbers = new int[kept.length];
+            for (int i = 0; i < kept.length; i++) {
+                sequenceNumbers[i] = track.sequenceNumbers[kept[i]];
+            }
+            levels.add(RouteTrackLevel.builder()
+                    .optimizedRoute(route)
+                    .level(levels.size())
+                    .toleranceMeters(BigDecimal.valueOf(tolerance).setScale(2, RoundingMode.HALF_UP))
+                    .referenceLatitude(referenceLatitude)
+                    .pointCount(kept.length)
+                    .sequenceNumbers(sequenceNumbers)
+                    .build());
+            previousCount = kept.length;
+        }
+        routeTrackLevelRepository.saveAll(levels);
+        log.debug("Built {} track levels for route {} from {} points", levels.size(), route.getId(), track.count);
+    }
+
+    /**
+     * Execution points of a route for replay, simplified to the given tolerance in meters or to
+     * one pixel at the given map zoom. Without either, every point is returned.
+     */
+    @Transactional(readOnly = true)
+    public List<RouteExecution> getExecution(UUID routeId, Double toleranceMeters, Integer zoom) {
+        if (toleranceMeters == null && zoom == null) {
+            return routeExecutionRepository.findByOptimizedRouteIdOrderBySequenceNumberAsc(routeId);
+        }
+
+        List<RouteTrackLevel> levels = routeTrackLevelRepository.findByOptimizedRouteIdOrderByLevelAsc(routeId);
+        if (levels.isEmpty()) {
+            return simplifyOnTheFly(routeId, toleranceMeters, zoom);
+        }
+
+        double tolerance = toleranceMeters != null ? toleranceMeters
+                : TrackSimplifier.toleranceForZoom(zoom, levels.get(0).getReferenceLatitude().doubleValue());
+        RouteTrackLevel match = null;
+        for (RouteTrackLevel level : levels) {
+            if (level.getToleranceMeters().doubleValue() <= tolerance) {
+                match = level;
+            }
+        }
+        if (match == null) {
+            return routeExecutionRepository.findByOptimizedRouteIdOrderBySequenceNumberAsc(routeId);
+        }
+        return loadBySequenceNumbers(routeId, match.getSequenceNumbers());
+    }
+
+    private List<RouteExecution> simplifyOnTheFly(UUID routeId, Double toleranceMeters, Integer zoom) {
+        List<RouteExecution> executions = routeExecutionRepository.findByOptimizedRouteIdOrderBySequenceNumberAsc(routeId);
+        int count = executions.size();
+        if (count < 3) {
+            return executions;
+        }
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = executions.get(i).getLatitude().doubleValue();
+            lons[i] = executions.get(i).getLongitude().doubleValue();
+        }
+        double tolerance = toleranceMeters != null ? toleranceMeters : TrackSimplifier.toleranceForZoom(zoom, lats[0]);
+        int[] kept = TrackSimplifier.simplify(lats, lons, count, tolerance);
+        List<RouteExecution> result = new ArrayList<>(kept.length);
+        for (int index : kept) {
+            result.add(executions.get(index));
+        }
+        return result;
+    }
+
+    private List<RouteExecution> loadBySequenceNumbers(UUID routeId, int[] sequenceNumbers) {
+        List<RouteExecution> result = new ArrayList<>(sequenceNumbers.length);
+        for (int from = 0; from < sequenceNumbers.length; from += MAX_IN_LIST) {
+            int to = Math.min(sequenceNumbers.length, from + MAX_IN_LIST);
+            List<Integer> chunk = Arrays.stream(sequenceNumbers, from, to).boxed().toList();
+            result.addAll(routeExecutionRepository
+                    .findByOptimizedRouteIdAndSequenceNumberInOrderBySequenceNumberAsc(routeId, chunk));
+        }
+        return result;
+    }
+
+    private Track loadTrack(UUID routeId) {
+        List<Object[]> rows = routeExecutionRepository.findTrackPointsByRoute(routeId);
+        Track track = new Track(rows.size());
+        for (Object[] row : rows) {
+            track.sequenceNumbers[track.count] = (Integer) row[0];
+            track.lats[track.count] = ((BigDecimal) row[1]).doubleValue();
+            track.lons[track.count] = ((BigDecimal) row[2]).doubleValue();
+            track.count++;
+        }
+        return track;
+    }
+
+    private static final class Track {
+        private final int[] sequenceNumbers;
+        private final double[] lats;
+        private final double[] lons;
+        private int count;
+
+        private Track(int capacity) {
+            sequenceNumbers = new int[capacity];
+            lats = new double[capacity];
+            lons = new double[capacity];
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.entity.SpeedLimit;
+import com.gps.tracking.geo.GeoUtils;
+import com.gps.tracking.ingest.Fix;
+import com.gps.tracking.ingest.PartitionHandoverEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming per-vehicle speed state: overspeed episodes and rolled-up speed samples.
+ *
+ * An episode opens on the first fix above the applicable limit and tracks the peak excess,
+ * the time between first and last fix over the limit, and the distance driven between
+ * consecutive fixes that were both over. It closes once the vehicle has stayed at or below the
+ * limit, or stopped reporting, for the grace period; a fix over the limit after a longer gap
+ * starts a new episode.
+ *
+ * Fixes are also rolled up into one sample per vehicle per bucket (mean and max speed, sample
+ * count, strictest limit seen), which is what gets stored as speed history.
+ *
+ * Callers must feed each vehicle's fixes in timestamp order from one thread at a time;
+ * {@link #sweep} may run concurrently and is synchronized per vehicle. All time arithmetic is on
+ * the fixes' microsecond timestamps.
+ *
+ * Episodes and samples whose rows could not be stored are {@link #requeue requeued} and returned
+ * again with the vehicle's next fix or sweep. In a cluster, the state of vehicles that move to
+ * another node is {@link #handOver handed over}: returned to be stored if the vehicle was owned
+ * here, and dropped in any case.
+ */
+@Component
+public class SpeedEpisodeTracker {
+    private final long graceMicros;
+    private final long bucketMicros;
+    private final Map<UUID, VehicleState> vehicles = new ConcurrentHashMap<>();
+
+    public SpeedEpisodeTracker(@Value("${gps.speed.episode.grace-seconds:30}") long graceSeconds,
+                               @Value("${gps.speed.history.bucket-seconds:60}") long bucketSeconds) {
+        this.graceMicros = graceSeconds * 1_000_000L;
+        this.bucketMicros = bucketSeconds * 1_000_000L;
+    }
+
+    /**
+     * Feed one fix that reports a speed, with the limit that applies there, if any.
+     */
+    public Result observe(Fix fix, SpeedLimit speedLimit) {
+        Result result = Result.EMPTY;
+        long time = fix.timestampMicros();
+        double latitude = fix.latitude();
+        double longitude = fix.longitude();
+        double speedKmh = fix.speed();
+        double overKmh = speedLimit != null ? speedKmh - speedLimit.getSpeedLimitKmh().doubleValue() : 0;
+
+        VehicleState state = vehicles.computeIfAbsent(fix.vehicleId(), id -> new VehicleState());
+        synchronized (state) {
+            if (state.swept) {
+                // Swept between lookup and lock; start over on a fresh state
+                return observe(fix, speedLimit);
+            }
+            state.lastSeenNanos = System.nanoTime();
+            if (state.hasPending()) {
+                result = new Result();
+                state.drainPendingTo(result);
+            }
+
+            Episode episode = state.episode;
+            if (episode != null && time > episode.lastOverMicros + graceMicros) {
+                if (result == Result.EMPTY) {
+                    result = new Result();
+                }
+                result.closedEpisodes.add(episode);
+                state.episode = episode = null;
+            }
+            if (overKmh > 0) {
+                if (episode == null) {
+                    episode = state.episode = new Episode(fix.vehicleId(), time);
+                } else if (state.lastOver) {
+                    episode.distanceOverMeters += GeoUtils.haversineMeters(
+                            state.lastLatitude, state.lastLongitude, latitude, longitude);
+                }
+                episode.observe(fix, overKmh, speedLimit);
+            }
+            state.lastOver = overKmh > 0;
+            state.lastLatitude = latitude;
+            state.lastLongitude = longitude;
+
+            if (speedKmh > 0) {
+                SpeedSample sample = state.sample;
+                if (sample != null && time >= sample.startMicros + bucketMicros) {
+                    if (result == Result.EMPTY) {
+                        result = new Result();
+                    }
+                    result.samples.add(sample);
+                    sample = null;
+                }
+                if (sample == null) {
+                    sample = state.sample = new SpeedSample(fix.vehicleId(), time);
+                }
+                sample.observe(fix, overKmh > 0, speedLimit);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Close episodes and flush samples of vehicles that have not reported for the grace period.
+     */
+    public Result sweep() {
+        Result result = new Result();
+        long idleNanos = graceMicros * 1000;
+        long now = System.nanoTime();
+        vehicles.forEach((vehicleId, state) -> {
+            synchronized (state) {
+                if (now - state.lastSeenNanos < idleNanos) {
+                    return;
+                }
+                if (state.episode != null) {
+                    result.closedEpisodes.add(state.episode);
+                }
+                if (state.sample != null) {
+                    result.samples.add(state.sample);
+                }
+                state.drainPendingTo(result);
+                state.swept = true;
+                vehicles.remove(vehicleId);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Give back episodes and samples that were returned but not stored, so the vehicle's next fix
+     * or sweep returns them again.
+     */
+    public void requeue(Result result) {
+        for (Episode episode : result.closedEpisodes) {
+            addPending(episode.vehicleId, episode, null);
+        }
+        for (SpeedSample sample : result.samples) {
+            addPending(sample.vehicleId, null, sample);
+        }
+    }
+
+    /**
+     * Drop the state of the partition's vehicles that move to or from another node. Open episodes,
+     * samples and requeued rows of vehicles owned here until now are returned to be stored.
+     */
+    public Result handOver(PartitionHandoverEvent event) {
+        Result result = new Result();
+        vehicles.forEach((vehicleId, state) -> {
+            if (!event.handsOver(vehicleId)) {
+                return;
+            }
+            synchronized (state) {
+                if (state.swept) {
+                    return;
+                }
+                if (event.change().ownedBefore(vehicleId)) {
+                    if (state.episode != null) {
+                        result.closedEpisodes.add(state.episode);
+                    }
+                    if (state.sample != null) {
+                        result.samples.add(state.sample);
+                    }
+                    state.drainPendingTo(result);
+                }
+                state.swept = true;
+                vehicles.remove(vehicleId);
+            }
+        });
+        return result;
+    }
+
+    private void addPending(UUID vehicleId, Episode episode, SpeedSample sample) {
+        while (true) {
+            // A state created here counts as idle, so the next sweep returns the rows
+            VehicleState state = vehicles.computeIfAbsent(vehicleId, id -> {
+                VehicleState idle = new VehicleState();
+                idle.lastSeenNanos = System.nanoTime() - graceMicros * 1000;
+                return idle;
+            });
+            synchronized (state) {
+                if (state.swept) {
+                    continue;
+                }
+                if (state.pendingEpisodes == null) {
+                    state.pendingEpisodes = new ArrayList<>();
+                    state.pendingSamples = new ArrayList<>();
+                }
+                if (episode != null) {
+                    state.pendingEpisodes.add(episode);
+                }
+                if (sample != null) {
+                    state.pendingSamples.add(sample);
+                }
+                return;
+            }
+        }
+    }
+
+    public static final class Result {
+        // Returned for the common case of a fix that closes nothing, so observing allocates nothing
+        private static final Result EMPTY = new Result(List.of(), List.of());
+
+        private final List<Episode> closedEpisodes;
+        private final List<SpeedSample> samples;
+
+        private Result() {
+            this(new ArrayList<>(), new ArrayList<>());
+        }
+
+        private Result(List<Episode> closedEpisodes, List<SpeedSample> samples) {
+            this.closedEpisodes = closedEpisodes;
+            this.samples = samples;
+        }
+
+        public List<Episode> closedEpisodes() {
+            return closedEpisodes;
+        }
+
+        public List<SpeedSample> samples() {
+            return samples;
+        }
+    }
+
+    /**
+     * One continuous stretch over the limit. The peak fix is the one with the largest excess.
+     */
+    public static final class Episode {
+        private final UUID vehicleId;
+        private final long startMicros;
+        private long lastOverMicros;
+        private Fix peakFix;
+        private SpeedLimit peakSpeedLimit;
+        private double peakOverKmh;
+        private double distanceOverMeters;
+        private int sampleCount;
+
+        private Episode(UUID vehicleId, long startMicros) {
+            this.vehicleId = vehicleId;
+            this.startMicros = startMicros;
+            this.lastOverMicros = startMicros;
+        }
+
+        private void observe(Fix fix, double overKmh, SpeedLimit speedLimit) {
+            lastOverMicros = fix.timestampMicros();
+            sampleCount++;
+            if (overKmh > peakOverKmh) {
+                peakOverKmh = overKmh;
+                peakFix = fix;
+                peakSpeedLimit = speedLimit;
+            }
+        }
+
+        public UUID getVehicleId() { return vehicleId; }
+        public LocalDateTime getStartTime() { return Fix.toDateTime(startMicros); }
+        public LocalDateTime getEndTime() { return Fix.toDateTime(lastOverMicros); }
+        public Fix getPeakFix() { return peakFix; }
+        public SpeedLimit getPeakSpeedLimit() { return peakSpeedLimit; }
+        public double getPeakSpeedKmh() { return peakFix.speed(); }
+        public double getPeakOverKmh() { return peakOverKmh; }
+        public double getDistanceOverMeters() { return distanceOverMeters; }
+        public int getSampleCount() { return sampleCount; }
+        public long getDurationSeconds() { return (lastOverMicros - startMicros) / 1_000_000L; }
+    }
+
+    /**
+     * Rolled-up speed of one vehicle over one bucket, positioned at its last fix.
+     */
+    public static final class SpeedSample {
+        private final UUID vehicleId;
+        private final long startMicros;
+        private Fix lastFix;
+        private SpeedLimit strictestLimit;
+        private double speedSumKmh;
+        private double maxSpeedKmh;
+        private int sampleCount;
+        private boolean violation;
+
+        private SpeedSample(UUID vehicleId, long startMicros) {
+            this.vehicleId = vehicleId;
+            this.startMicros = startMicros;
+        }
+
+        private void observe(Fix fix, boolean over, SpeedLimit speedLimit) {
+            lastFix = fix;
+            speedSumKmh += fix.speed();
+            maxSpeedKmh = Math.max(maxSpeedKmh, fix.speed());
+            sampleCount++;
+            violation |= over;
+            if (speedLimit != null && (strictestLimit == null
+                    || speedLimit.getSpeedLimitKmh().compareTo(strictestLimit.getSpeedLimitKmh()) < 0)) {
+                strictestLimit = speedLimit;
+            }
+        }
+
+        public UUID getVehicleId() { return vehicleId; }
+        public Fix getLastFix() { return lastFix; }
+        public SpeedLimit getStrictestLimit() { return strictestLimit; }
+        public double getMeanSpeedKmh() { return speedSumKmh / sampleCount; }
+        public double getMaxSpeedKmh() { return maxSpeedKmh; }
+        public int getSampleCount() { return sampleCount; }
+        public boolean isViolation() { return violation; }
+    }
+
+    private static final class VehicleState {
+        private Episode episode;
+        private SpeedSample sample;
+        private boolean lastOver;
+        private double lastLatitude;
+        private double lastLongitude;
+        private long lastSeenNanos;
+        private boolean swept;
+        // Requeued after their rows failed to store; null until then
+        private List<Episode> pendingEpisodes;
+        private List<SpeedSample> pendingSamples;
+
+        private boolean hasPending() {
+            return pendingEpisodes != null;
+        }
+
+        private void drainPendingTo(Result result) {
+            if (pendingEpisodes != null) {
+                result.closedEpisodes.addAll(pendingEpisodes);
+                result.samples.addAll(pendingSamples);
+                pendingEpisodes = null;
+                pendingSamples = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.entity.SpeedLimit;
+import com.gps.tracking.geo.CircleRegion;
+import com.gps.tracking.geo.GridIndex;
+import com.gps.tracking.geo.PolygonRegion;
+import com.gps.tracking.geo.Region;
+import com.gps.tracking.repository.SpeedLimitRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * In-memory spatial index of the active speed limit zones, circle and polygon, used to resolve
+ * the limit that applies to a fix without querying the database. Loaded once at startup and kept
+ * current by {@link SpeedMonitoringService} whenever a zone is created, updated or deleted, on
+ * this node or, through {@link #reload}, on another one.
+ *
+ * A polygon zone takes precedence over its center/radius when both are set.
+ */
+@Component
+@Slf4j
+public class SpeedLimitIndex {
+    private final SpeedLimitRepository speedLimitRepository;
+    private final MeterRegistry meterRegistry;
+    private final GridIndex<UUID, IndexedSpeedLimit> grid;
+
+    public SpeedLimitIndex(SpeedLimitRepository speedLimitRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${gps.speed.index.cell-size-degrees:0.01}") double cellSizeDegrees,
+                           @Value("${gps.speed.index.max-cells-per-zone:4096}") int maxCellsPerZone) {
+        this.speedLimitRepository = speedLimitRepository;
+        this.meterRegistry = meterRegistry;
+        this.grid = new GridIndex<>(cellSizeDegrees, maxCellsPerZone);
+    }
+
+    @PostConstruct
+    void load() {
+        grid.clear();
+        speedLimitRepository.findAll().forEach(this::put);
+        Gauge.builder("gps.speed.index.size", grid, GridIndex::size).register(meterRegistry);
+        log.info("Indexed {} active speed limit zones", grid.size());
+    }
+
+    /**
+     * Add or replace a zone. Inactive zones and zones without usable geometry are removed.
+     */
+    public void put(SpeedLimit speedLimit) {
+        Region region = Boolean.TRUE.equals(speedLimit.getIsActive()) && speedLimit.getSpeedLimitKmh() != null
+                ? toRegion(speedLimit) : null;
+        if (region == null) {
+            grid.remove(speedLimit.getId());
+            return;
+        }
+        grid.put(speedLimit.getId(), region.bounds(), new IndexedSpeedLimit(speedLimit, region));
+    }
+
+    public void remove(UUID speedLimitId) {
+        grid.remove(speedLimitId);
+    }
+
+    /**
+     * Reload one zone from the database.
+     */
+    public void reload(UUID speedLimitId) {
+        speedLimitRepository.findById(speedLimitId).ifPresentOrElse(this::put, () -> remove(speedLimitId));
+    }
+
+    /**
+     * Reload every zone from the database. The index is updated in place, so fixes evaluated
+     * meanwhile still see the zones that did not change.
+     */
+    public void reloadAll() {
+        Set<UUID> dropped = new HashSet<>(grid.keys());
+        for (SpeedLimit speedLimit : speedLimitRepository.findAll()) {
+            put(speedLimit);
+            dropped.remove(speedLimit.getId());
+        }
+        dropped.forEach(grid::remove);
+    }
+
+    /**
+     * Active zones that contain the point.
+     */
+    public List<SpeedLimit> findContaining(double latitude, double longitude) {
+        List<SpeedLimit> result = new ArrayList<>();
+        grid.forEachCandidate(latitude, longitude, candidate -> {
+            if (candidate.region().contains(latitude, longitude)) {
+                result.add(candidate.speedLimit());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The lowest limit among the zones that contain the point, if any.
+     */
+    public Optional<SpeedLimit> findMostRestrictive(double latitude, double longitude) {
+        SpeedLimit[] best = new SpeedLimit[1];
+        grid.forEachCandidate(latitude, longitude, candidate -> {
+            SpeedLimit speedLimit = candidate.speedLimit();
+            if ((best[0] == null || speedLimit.getSpeedLimitKmh().compareTo(best[0].getSpeedLimitKmh()) < 0)
+                    && candidate.region().contains(latitude, longitude)) {
+                best[0] = speedLimit;
+            }
+        });
+        return Optional.ofNullable(best[0]);
+    }
+
+    public int size() {
+        return grid.size();
+    }
+
+    private Region toRegion(SpeedLimit speedLimit) {
+        if (speedLimit.getPolygonCoordinates() != null && !speedLimit.getPolygonCoordinates().isBlank()) {
+            try {
+                return PolygonRegion.fromJson(speedLimit.getPolygonCoordinates());
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping speed limit {} with unusable polygon: {}", speedLimit.getId(), e.getMessage());
+                return null;
+            }
+        }
+        if (speedLimit.getLatitude() != null && speedLimit.getLongitude() != null
+                && speedLimit.getRadiusMeters() != null) {
+            return new CircleRegion(speedLimit.getLatitude().doubleValue(),
+                    speedLimit.getLongitude().doubleValue(),
+                    speedLimit.getRadiusMeters().doubleValue());
+        }
+        return null;
+    }
+
+    private record IndexedSpeedLimit(SpeedLimit speedLimit, Region region) {
+    }
+}
@@ -1,13 +1,22 @@
 package com.gps.tracking.service;
 
+import com.gps.tracking.cluster.ClusterFanout;
+import com.gps.tracking.cluster.IndexInvalidatedEvent;
 import com.gps.tracking.entity.*;
+import com.gps.tracking.ingest.Fix;
+import com.gps.tracking.ingest.PartitionHandoverEvent;
 import com.gps.tracking.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -29,6 +38,9 @@ public class SpeedMonitoringService {
     private final VehicleRepository vehicleRepository;
     private final DriverRepository driverRepository;
     private final GpsLocationRepository gpsLocationRepository;
+    private final SpeedLimitIndex speedLimitIndex;
+    private final SpeedEpisodeTracker episodeTracker;
+    private final ClusterFanout clusterFanout;
     
     // Speed Limit Management
     public Page<SpeedLimit> getAllSpeedLimits(Pageable pageable) {
@@ -39,13 +51,18 @@ public class SpeedMonitoringService {
         return speedLimitRepository.findById(id);
     }
     
+    @Transactional
     public SpeedLimit createSpeedLimit(SpeedLimit speedLimit) {
         speedLimit.setId(null);
         speedLimit.setCreatedAt(LocalDateTime.now());
         speedLimit.setUpdatedAt(LocalDateTime.now());
-        return speedLimitRepository.save(speedLimit);
+        SpeedLimit saved = speedLimitRepository.save(speedLimit);
+        clusterFanout.invalidate(IndexInvalidatedEvent.Index.SPEED_LIMIT, saved.getId());
+        afterCommit(() -> speedLimitIndex.put(saved));
+        return saved;
     }
     
+    @Transactional
     public SpeedLimit updateSpeedLimit(UUID id, SpeedLimit speedLimit) {
         SpeedLimit existing = speedLimitRepository.findById(id)
             .orElseThrow(() -> new RuntimeException("Speed limit not found"));
@@ -63,15 +80,36 @@ public class SpeedMonitoringService {
         existing.setIsActive(speedLimit.getIsActive());
         existing.setUpdatedAt(LocalDateTime.now());
         
-        return speedLimitRepository.save(existing);
+        SpeedLimit saved = speedLimitRepository.save(existing);
+        clusterFanout.invalidate(IndexInvalidatedEvent.Index.SPEED_LIMIT, id);
+        afterCommit(() -> speedLimitIndex.put(saved));
+        return saved;
     }
     
+    @Transactional
     public void deleteSpeedLimit(UUID id) {
         speedLimitRepository.deleteById(id);
+        clusterFanout.invalidate(IndexInvalidatedEvent.Index.SPEED_LIMIT, id);
+        afterCommit(() -> speedLimitIndex.remove(id));
+    }
+    
+    /**
+     * Apply a change another node made to a zone; the zone index is kept per node.
+     */
+    @EventListener
+    public void onIndexInvalidated(IndexInvalidatedEvent event) {
+        if (event.index() != IndexInvalidatedEvent.Index.SPEED_LIMIT) {
+            return;
+        }
+        if (event.isAll()) {
+            speedLimitIndex.reloadAll();
+        } else {
+            speedLimitIndex.reload(event.id());
+        }
     }
     
     public List<SpeedLimit> findSpeedLimitsNearLocation(BigDecimal latitude, BigDecimal longitude) {
-        return speedLimitRepository.findSpeedLimitsNearLocation(latitude, longitude);
+        return speedLimitIndex.findContaining(latitude.doubleValue(), longitude.doubleValue());
     }
     
     // Speed Violation Management
@@ -152,74 +190,139 @@ public class SpeedMonitoringService {
     }
     
     // Speed Monitoring Logic
-    @Transactional
-    public void processGpsLocation(GpsLocation gpsLocation) {
-        try {
-            // Skip processing if speed is null or zero
-            if (gpsLocation.getSpeed() == null || gpsLocation.getSpeed().compareTo(BigDecimal.ZERO) <= 0) {
-                return;
+    
+    /**
+     * Evaluate stored fixes in one transaction of their own, so it can run right after the
+     * transaction that stored them has committed. Fixes over the limit extend the vehicle's
+     * overspeed episode; a violation is written once per episode when it closes, and speed
+     * history is written as periodic roll-ups rather than one row per fix. Fixes of a vehicle
+     * must arrive in timestamp order. If the rows cannot be stored the exception propagates, and
+     * the episodes and samples are requeued to be stored with the vehicle's next fix or sweep.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void processFixes(List<Fix> fixes) {
+        for (Fix fix : fixes) {
+            // Skip processing if speed is unknown
+            if (!fix.hasSpeed()) {
+                continue;
             }
             
-            // Find applicable speed limits for this location
-            List<SpeedLimit> applicableSpeedLimits = findSpeedLimitsNearLocation(
-                gpsLocation.getLatitude(), 
-                gpsLocation.getLongitude()
-            );
-            
-            // Determine the most restrictive speed limit
-            SpeedLimit applicableSpeedLimit = applicableSpeedLimits.stream()
-                .min((sl1, sl2) -> sl1.getSpeedLimitKmh().compareTo(sl2.getSpeedLimitKmh()))
+            // Most restrictive speed limit zone at this location, from the in-memory index
+            SpeedLimit applicableSpeedLimit = speedLimitIndex.findMostRestrictive(fix.latitude(), fix.longitude())
                 .orElse(null);
             
-            // Create speed history record
+            persist(episodeTracker.observe(fix, applicableSpeedLimit));
+        }
+    }
+    
+    /**
+     * Close episodes and flush speed history of vehicles that stopped reporting.
+     */
+    @Scheduled(fixedDelayString = "${gps.speed.sweep-interval-ms:10000}")
+    @Transactional
+    public void closeIdleEpisodes() {
+        persist(episodeTracker.sweep());
+    }
+    
+    /**
+     * Store the episodes and samples of vehicles that move to or from another node, and drop
+     * their state, once the fixes logged on the partition before the move are processed.
+     */
+    @EventListener
+    @Transactional
+    public void onHandover(PartitionHandoverEvent event) {
+        persist(episodeTracker.handOver(event));
+    }
+    
+    private void persist(SpeedEpisodeTracker.Result result) {
+        if (result.closedEpisodes().isEmpty() && result.samples().isEmpty()) {
+            return;
+        }
+        requeueOnRollback(result);
+        
+        for (SpeedEpisodeTracker.Episode episode : result.closedEpisodes()) {
+            SpeedViolation violation = createSpeedViolation(episode);
+            log.warn("Speed violation: vehicle {} exceeded {} km/h limit by up to {} km/h for {} s",
+                episode.getVehicleId(), violation.getSpeedLimitKmh(),
+                violation.getSpeedOverLimitKmh(), episode.getDurationSeconds());
+        }
+        
+        for (SpeedEpisodeTracker.SpeedSample sample : result.samples()) {
+            Fix fix = sample.getLastFix();
             SpeedHistory speedHistory = new SpeedHistory();
-            speedHistory.setVehicle(gpsLocation.getVehicle());
+            speedHistory.setVehicle(vehicleRepository.getReferenceById(sample.getVehicleId()));
             // Note: Driver will be null since GpsLocation doesn't have driver field
             speedHistory.setDriver(null);
-            speedHistory.setGpsLocation(gpsLocation);
-            speedHistory.setRecordedTime(gpsLocation.getTimestamp());
-            speedHistory.setSpeedKmh(gpsLocation.getSpeed());
-            speedHistory.setLatitude(gpsLocation.getLatitude());
-            speedHistory.setLongitude(gpsLocation.getLongitude());
+            speedHistory.setGpsLocation(gpsLocationRepository.getReferenceById(fix.id()));
+            speedHistory.setRecordedTime(fix.timestamp());
+            speedHistory.setSpeedKmh(toKmh(sample.getMeanSpeedKmh()));
+            speedHistory.setMaxSpeedKmh(toKmh(sample.getMaxSpeedKmh()));
+            speedHistory.setSampleCount(sample.getSampleCount());
+            speedHistory.setLatitude(fix.latitudeDecimal());
+            speedHistory.setLongitude(fix.longitudeDecimal());
+            speedHistory.setIsViolation(sample.isViolation());
             
-            if (applicableSpeedLimit != null) {
-                speedHistory.setApplicableSpeedLimitKmh(applicableSpeedLimit.getSpeedLimitKmh());
-                speedHistory.setRoadType(applicableSpeedLimit.getRoadType());
-                
-                // Check for speed violation
-                BigDecimal speedOverLimit = gpsLocation.getSpeed().subtract(applicableSpeedLimit.getSpeedLimitKmh());
-                if (speedOverLimit.compareTo(BigDecimal.ZERO) > 0) {
-                    speedHistory.setIsViolation(true);
-                    
-                    // Create speed violation record
-                    SpeedViolation violation = createSpeedViolation(gpsLocation, applicableSpeedLimit, speedOverLimit);
-                    speedHistory.setViolation(violation);
-                    
-                    log.warn("Speed violation detected: Vehicle {} exceeded speed limit by {} km/h", 
-                        gpsLocation.getVehicle().getLicensePlate(), speedOverLimit);
-                }
+            SpeedLimit speedLimit = sample.getStrictestLimit();
+            if (speedLimit != null) {
+                speedHistory.setApplicableSpeedLimitKmh(speedLimit.getSpeedLimitKmh());
+                speedHistory.setRoadType(speedLimit.getRoadType());
             }
             
             speedHistoryRepository.save(speedHistory);
-            
-        } catch (Exception e) {
-            log.error("Error processing GPS location for speed monitoring: {}", e.getMessage(), e);
         }
     }
     
-    private SpeedViolation createSpeedViolation(GpsLocation gpsLocation, SpeedLimit speedLimit, BigDecimal speedOverLimit) {
+    // The zone index must not get ahead of the database
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    // Episodes were already taken out of the tracker; a failed commit must not lose them
+    private void requeueOnRollback(SpeedEpisodeTracker.Result result) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    log.warn("Speed monitoring rows not stored, requeued {} episodes and {} samples",
+                        result.closedEpisodes().size(), result.samples().size());
+                    episodeTracker.requeue(result);
+                }
+            }
+        });
+    }
+    
+    private SpeedViolation createSpeedViolation(SpeedEpisodeTracker.Episode episode) {
+        Fix peak = episode.getPeakFix();
+        SpeedLimit speedLimit = episode.getPeakSpeedLimit();
+        
         SpeedViolation violation = new SpeedViolation();
-        violation.setVehicle(gpsLocation.getVehicle());
+        violation.setVehicle(vehicleRepository.getReferenceById(episode.getVehicleId()));
         // Note: Driver will be null since GpsLocation doesn't have driver field
         violation.setDriver(null);
-        violation.setGpsLocation(gpsLocation);
+        violation.setGpsLocation(gpsLocationRepository.getReferenceById(peak.id()));
         violation.setSpeedLimit(speedLimit);
-        violation.setViolationTime(gpsLocation.getTimestamp());
-        violation.setRecordedSpeedKmh(gpsLocation.getSpeed());
+        violation.setViolationTime(episode.getStartTime());
+        violation.setEpisodeEndTime(episode.getEndTime());
+        violation.setDurationSeconds((int) episode.getDurationSeconds());
+        violation.setDistanceOverLimitMeters(BigDecimal.valueOf(episode.getDistanceOverMeters()).setScale(2, RoundingMode.HALF_UP));
+        violation.setSampleCount(episode.getSampleCount());
+        violation.setRecordedSpeedKmh(toKmh(episode.getPeakSpeedKmh()));
         violation.setSpeedLimitKmh(speedLimit.getSpeedLimitKmh());
-        violation.setSpeedOverLimitKmh(speedOverLimit);
-        violation.setLatitude(gpsLocation.getLatitude());
-        violation.setLongitude(gpsLocation.getLongitude());
+        violation.setSpeedOverLimitKmh(toKmh(episode.getPeakOverKmh()));
+        violation.setLatitude(peak.latitudeDecimal());
+        violation.setLongitude(peak.longitudeDecimal());
         violation.setLocationDescription(speedLimit.getName());
         
         // Calculate severity and fine
@@ -229,6 +332,10 @@ public class SpeedMonitoringService {
         return speedViolationRepository.save(violation);
     }
     
+    private BigDecimal toKmh(double speedKmh) {
+        return BigDecimal.valueOf(speedKmh).setScale(2, RoundingMode.HALF_UP);
+    }
+    
     // Report Generation
     @Transactional
     public SpeedReport generateViolationReport(UUID vehicleId, UUID driverId, LocalDate startDate, LocalDate endDate, String generatedBy) {
@@ -1,6 +1,7 @@
 package com.gps.tracking.service;
 
 import com.gps.tracking.dto.request.VehicleRequest;
+import com.gps.tracking.dto.response.GpsLocationResponse;
 import com.gps.tracking.dto.response.VehicleResponse;
 import com.gps.tracking.entity.Vehicle;
 import com.gps.tracking.exception.ResourceNotFoundException;
@@ -8,6 +9,8 @@ import com.gps.tracking.repository.VehicleRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.UUID;
@@ -17,6 +20,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class VehicleService {
     private final VehicleRepository vehicleRepository;
+    private final LatestPositionStore latestPositionStore;
+    private final ReferenceDataCache referenceDataCache;
 
     public List<VehicleResponse> getAllVehicles() {
         return vehicleRepository.findAll().stream()
@@ -40,7 +45,9 @@ public class VehicleService {
         vehicle.setModel(request.getModel());
         vehicle.setVehicleType(request.getVehicleType());
         vehicle.setStatus(request.getStatus());
-        return toResponse(vehicleRepository.save(vehicle));
+        Vehicle saved = vehicleRepository.save(vehicle);
+        referenceDataCache.evictVehicle(saved.getId());
+        return toResponse(saved);
     }
 
     @Transactional
@@ -58,7 +65,15 @@ public class VehicleService {
         vehicle.setModel(request.getModel());
         vehicle.setVehicleType(request.getVehicleType());
         vehicle.setStatus(request.getStatus());
-        return toResponse(vehicleRepository.save(vehicle));
+        Vehicle saved = vehicleRepository.save(vehicle);
+        referenceDataCache.evictVehicle(id);
+        // Readers hold on to stored positions, so publish a renamed copy once the new plate is committed
+        String licensePlate = saved.getLicensePlate();
+        afterCommit(() -> latestPositionStore.get(id).ifPresent(location -> latestPositionStore.update(
+                new GpsLocationResponse(location.getId(), location.getVehicleId(), licensePlate,
+                        location.getLatitude(), location.getLongitude(), location.getSpeed(),
+                        location.getDirection(), location.getTimestamp(), location.getCreatedAt()))));
+        return toResponse(saved);
     }
 
     @Transactional
@@ -67,6 +82,21 @@ public class VehicleService {
             throw new ResourceNotFoundException("Vehicle not found with id: " + id);
         }
         vehicleRepository.deleteById(id);
+        latestPositionStore.remove(id);
+        referenceDataCache.evictVehicle(id);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
     private VehicleResponse toResponse(Vehicle vehicle) {
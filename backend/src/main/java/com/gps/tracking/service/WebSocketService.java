@@ -1,5 +1,7 @@
 package com.gps.tracking.service;
 
+import com.gps.tracking.cluster.ClusterFanout;
+import com.gps.tracking.dto.response.GeofenceAlertResponse;
 import com.gps.tracking.dto.response.GpsLocationResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -8,14 +10,25 @@ import org.springframework.stereotype.Service;
 @Service
 @RequiredArgsConstructor
 public class WebSocketService {
+    private final LocationBroadcastCoalescer broadcastCoalescer;
     private final SimpMessagingTemplate messagingTemplate;
+    private final ClusterFanout clusterFanout;
 
     /**
-     * Broadcast GPS location update to all connected clients
+     * Broadcast a GPS location update. Updates go out in batches on the next broadcast tick, to
+     * /topic/locations and to the sessions whose viewport or followed vehicles they match, on this
+     * node and, through the cluster fan-out, on every other node.
      */
     public void broadcastLocationUpdate(GpsLocationResponse location) {
-        // Broadcast to all clients subscribed to /topic/locations
-        messagingTemplate.convertAndSend("/topic/locations", location);
+        broadcastCoalescer.offer(location);
+        clusterFanout.publish(location);
     }
-}
 
+    /**
+     * Broadcast a geofence alert to /topic/alerts on every node.
+     */
+    public void broadcastAlert(GeofenceAlertResponse alert) {
+        messagingTemplate.convertAndSend(ClusterFanout.ALERTS_TOPIC, alert);
+        clusterFanout.publish(alert);
+    }
+}
@@ -0,0 +1,180 @@
+package com.gps.tracking.service;
+
+import com.gps.tracking.dto.response.WebSocketSessionStatsResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-session accounting of the client outbound channel, installed as its interceptor.
+ *
+ * A message counts as queued from the moment it is handed to the channel until a pool thread has
+ * written it to the session, or the channel rejected it. The write itself is timed: it is where a
+ * slow browser shows up, since concurrent writers to a busy session wait on its send buffer.
+ *
+ * Sessions whose send buffer or send time limit is exceeded are closed by Spring with
+ * {@link CloseStatus#SESSION_NOT_RELIABLE}; those closes are counted as evictions.
+ */
+@Component
+@Slf4j
+public class WebSocketSessionMetrics implements ExecutorChannelInterceptor {
+    private final Map<String, SessionStats> sessions = new ConcurrentHashMap<>();
+    private final ThreadLocal<Long> handleStart = new ThreadLocal<>();
+    private final Timer sendTimer;
+    private final Counter evictionCounter;
+
+    public WebSocketSessionMetrics(MeterRegistry meterRegistry) {
+        this.sendTimer = Timer.builder("gps.websocket.send")
+                .description("Time to write one message to a client session")
+                .register(meterRegistry);
+        this.evictionCounter = meterRegistry.counter("gps.websocket.evictions");
+        Gauge.builder("gps.websocket.outbound.queued", this, WebSocketSessionMetrics::totalQueued).register(meterRegistry);
+        Gauge.builder("gps.websocket.outbound.queued.max", this, WebSocketSessionMetrics::maxQueued)
+                .description("Messages queued for the most backed-up session")
+                .register(meterRegistry);
+        Gauge.builder("gps.websocket.sessions", sessions, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SessionStats stats = stats(message);
+        if (stats != null) {
+            stats.queued.incrementAndGet();
+        }
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        // Rejected by the channel's executor: it will never be handled
+        if (!sent || ex != null) {
+            dequeue(stats(message));
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        handleStart.set(System.nanoTime());
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        Long start = handleStart.get();
+        handleStart.remove();
+        SessionStats stats = stats(message);
+        if (stats == null) {
+            return;
+        }
+        dequeue(stats);
+        if (start != null) {
+            long nanos = System.nanoTime() - start;
+            sendTimer.record(nanos, TimeUnit.NANOSECONDS);
+            stats.sent.increment();
+            stats.sendNanos.add(nanos);
+            stats.maxSendNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) {
+            sessions.computeIfAbsent(sessionId, SessionStats::new);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        SessionStats stats = sessions.remove(event.getSessionId());
+        if (CloseStatus.SESSION_NOT_RELIABLE.equals(event.getCloseStatus())) {
+            evictionCounter.increment();
+            if (stats != null) {
+                log.warn("Evicted slow WebSocket session {}: {} messages queued, {} sent, slowest send {} ms",
+                        event.getSessionId(), stats.queued.get(), stats.sent.sum(),
+                        TimeUnit.NANOSECONDS.toMillis(stats.maxSendNanos.get()));
+            } else {
+                log.warn("Evicted slow WebSocket session {}", event.getSessionId());
+            }
+        }
+    }
+
+    /**
+     * Snapshot of every open session, most backed-up first.
+     */
+    public List<WebSocketSessionStatsResponse> snapshot() {
+        return sessions.values().stream()
+                .map(SessionStats::toResponse)
+                .sorted(Comparator.comparingInt(WebSocketSessionStatsResponse::getQueued).reversed())
+                .toList();
+    }
+
+    private int totalQueued() {
+        int total = 0;
+        for (SessionStats stats : sessions.values()) {
+            total += stats.queued.get();
+        }
+        return total;
+    }
+
+    private int maxQueued() {
+        int max = 0;
+        for (SessionStats stats : sessions.values()) {
+            max = Math.max(max, stats.queued.get());
+        }
+        return max;
+    }
+
+    private SessionStats stats(Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    private void dequeue(SessionStats stats) {
+        if (stats != null) {
+            stats.queued.decrementAndGet();
+        }
+    }
+
+    private static final class SessionStats {
+        private final String sessionId;
+        private final LocalDateTime connectedAt = LocalDateTime.now();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder sendNanos = new LongAdder();
+        private final AtomicLong maxSendNanos = new AtomicLong();
+
+        private SessionStats(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        WebSocketSessionStatsResponse toResponse() {
+            long count = sent.sum();
+            return new WebSocketSessionStatsResponse(sessionId, connectedAt, queued.get(), count,
+                    count > 0 ? sendNanos.sum() / count / 1_000_000d : 0d,
+                    maxSendNanos.get() / 1_000_000d);
+        }
+    }
+}
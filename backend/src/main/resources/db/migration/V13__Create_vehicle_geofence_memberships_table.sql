@@ -0,0 +1,11 @@
+-- Current geofence membership per vehicle, maintained on confirmed entry/exit transitions
+-- so the in-memory membership state can be rebuilt after a restart
+CREATE TABLE IF NOT EXISTS vehicle_geofence_memberships (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    vehicle_id UUID NOT NULL REFERENCES vehicles(id) ON DELETE CASCADE,
+    geofence_id UUID NOT NULL REFERENCES geofences(id) ON DELETE CASCADE,
+    entered_at TIMESTAMP NOT NULL
+);
+
+CREATE UNIQUE INDEX idx_vehicle_geofence_memberships_unique ON vehicle_geofence_memberships(vehicle_id, geofence_id);
+CREATE INDEX idx_vehicle_geofence_memberships_geofence_id ON vehicle_geofence_memberships(geofence_id);
@@ -0,0 +1,2 @@
+-- Distance along the planned route polyline to the point nearest each recorded fix
+ALTER TABLE route_executions ADD COLUMN progress_km DECIMAL(8,3);
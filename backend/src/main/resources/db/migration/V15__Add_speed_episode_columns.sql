@@ -0,0 +1,11 @@
+-- A speed violation now covers a whole overspeed episode: violation_time is when it started,
+-- recorded/over-limit speeds and the position are those of the peak fix
+ALTER TABLE speed_violations ADD COLUMN episode_end_time TIMESTAMP;
+ALTER TABLE speed_violations ADD COLUMN duration_seconds INTEGER;
+ALTER TABLE speed_violations ADD COLUMN distance_over_limit_meters DECIMAL(10,2);
+ALTER TABLE speed_violations ADD COLUMN sample_count INTEGER;
+
+-- Speed history rows are rolled up per vehicle per bucket: speed_kmh is the mean,
+-- max_speed_kmh the peak and sample_count the number of fixes behind the row
+ALTER TABLE speed_history ADD COLUMN max_speed_kmh DECIMAL(5,2);
+ALTER TABLE speed_history ADD COLUMN sample_count INTEGER NOT NULL DEFAULT 1;
@@ -0,0 +1,9 @@
+-- Running trip statistics, checkpointed periodically from the in-memory route accumulators.
+-- last_fix_time/last_latitude/last_longitude let the accumulator resume after a restart.
+ALTER TABLE routes ADD COLUMN point_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE routes ADD COLUMN max_speed_kmh DECIMAL(5,2);
+ALTER TABLE routes ADD COLUMN avg_speed_kmh DECIMAL(5,2);
+ALTER TABLE routes ADD COLUMN moving_seconds BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE routes ADD COLUMN last_fix_time TIMESTAMP;
+ALTER TABLE routes ADD COLUMN last_latitude DECIMAL(10,8);
+ALTER TABLE routes ADD COLUMN last_longitude DECIMAL(11,8);
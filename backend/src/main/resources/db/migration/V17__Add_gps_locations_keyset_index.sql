@@ -0,0 +1,4 @@
+-- Keyset pagination and streaming of a vehicle's history order by (timestamp, id); with id in the
+-- index both directions are served by an index scan, including the row comparison on the cursor.
+CREATE INDEX idx_gps_locations_vehicle_timestamp_id ON gps_locations(vehicle_id, timestamp, id);
+DROP INDEX IF EXISTS idx_gps_locations_vehicle_timestamp;
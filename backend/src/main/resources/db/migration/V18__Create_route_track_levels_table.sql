@@ -0,0 +1,13 @@
+-- Levels of detail of completed routes' recorded tracks. Each level lists the sequence numbers of
+-- the route_executions kept at its tolerance, so replays load only those rows.
+CREATE TABLE route_track_levels (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    optimized_route_id UUID NOT NULL REFERENCES optimized_routes(id) ON DELETE CASCADE,
+    level INTEGER NOT NULL,
+    tolerance_meters DECIMAL(10, 2) NOT NULL,
+    reference_latitude DECIMAL(10, 8) NOT NULL,
+    point_count INTEGER NOT NULL,
+    sequence_numbers INTEGER[] NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (optimized_route_id, level)
+);
@@ -0,0 +1,82 @@
+-- Range-partition gps_locations by day on timestamp.
+--
+-- A partitioned table's primary key must include the partition key, so the key becomes
+-- (id, timestamp) and gps_locations(id) can no longer be the target of foreign keys. The columns
+-- that referenced it (routes start/end location, geofence alerts, route executions) keep their
+-- values; a fix whose partition has aged out simply no longer resolves.
+--
+-- Fixes for days without a partition land in gps_locations_default. Partitions are created ahead
+-- of time, and retention detached or dropped, by the application's storage maintenance job.
+
+DO $$
+DECLARE
+    fk RECORD;
+BEGIN
+    FOR fk IN
+        SELECT conrelid::regclass AS table_name, conname
+        FROM pg_constraint
+        WHERE contype = 'f' AND confrelid = 'gps_locations'::regclass
+    LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', fk.table_name, fk.conname);
+    END LOOP;
+END $$;
+
+ALTER TABLE gps_locations RENAME TO gps_locations_legacy;
+ALTER TABLE gps_locations_legacy RENAME CONSTRAINT gps_locations_pkey TO gps_locations_legacy_pkey;
+DROP INDEX IF EXISTS idx_gps_locations_vehicle_timestamp_id;
+DROP INDEX IF EXISTS idx_gps_locations_timestamp;
+DROP INDEX IF EXISTS idx_gps_locations_vehicle_id;
+
+CREATE TABLE gps_locations (
+    id UUID NOT NULL DEFAULT gen_random_uuid(),
+    vehicle_id UUID NOT NULL REFERENCES vehicles(id) ON DELETE CASCADE,
+    latitude DECIMAL(10, 8) NOT NULL,
+    longitude DECIMAL(11, 8) NOT NULL,
+    speed DECIMAL(5, 2),
+    direction DECIMAL(5, 2),
+    timestamp TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+-- Served per partition: a vehicle's history, keyset pages and latest fix all read this index
+CREATE INDEX idx_gps_locations_vehicle_timestamp_id ON gps_locations(vehicle_id, timestamp, id);
+
+CREATE TABLE gps_locations_default PARTITION OF gps_locations DEFAULT;
+
+-- Create the partition for one day, moving any of that day's rows out of the default partition.
+-- Returns false when the partition (or a detached table of that name) already exists.
+CREATE OR REPLACE FUNCTION gps_locations_create_partition(day DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    partition_name TEXT := 'gps_locations_p' || to_char(day, 'YYYYMMDD');
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    EXECUTE format('CREATE TABLE %I (LIKE gps_locations INCLUDING DEFAULTS)', partition_name);
+    EXECUTE format('INSERT INTO %I SELECT * FROM gps_locations_default WHERE timestamp >= %L AND timestamp < %L',
+                   partition_name, day, day + 1);
+    EXECUTE format('DELETE FROM gps_locations_default WHERE timestamp >= %L AND timestamp < %L', day, day + 1);
+    -- Lets ATTACH skip scanning the new partition to validate its bounds
+    EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I CHECK (timestamp >= %L AND timestamp < %L)',
+                   partition_name, partition_name || '_bounds', day, day + 1);
+    EXECUTE format('ALTER TABLE gps_locations ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, day, day + 1);
+    RETURN TRUE;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Partitions for every day that has data plus the coming week, then copy the rows straight into them
+SELECT gps_locations_create_partition(day)
+FROM (
+    SELECT DISTINCT timestamp::date AS day FROM gps_locations_legacy
+    UNION
+    SELECT generate_series(CURRENT_DATE - 1, CURRENT_DATE + 7, INTERVAL '1 day')::date
+) days
+ORDER BY day;
+
+INSERT INTO gps_locations (id, vehicle_id, latitude, longitude, speed, direction, timestamp, created_at)
+SELECT id, vehicle_id, latitude, longitude, speed, direction, timestamp, created_at
+FROM gps_locations_legacy;
+
+DROP TABLE gps_locations_legacy;
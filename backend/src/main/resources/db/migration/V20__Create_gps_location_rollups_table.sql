@@ -0,0 +1,21 @@
+-- Per-vehicle, per-minute summaries of gps_locations, kept after raw partitions age out
+CREATE TABLE gps_location_rollups (
+    vehicle_id UUID NOT NULL REFERENCES vehicles(id) ON DELETE CASCADE,
+    bucket_start TIMESTAMP NOT NULL,
+    point_count INTEGER NOT NULL,
+    avg_speed DECIMAL(5, 2),
+    max_speed DECIMAL(5, 2),
+    first_time TIMESTAMP NOT NULL,
+    first_latitude DECIMAL(10, 8) NOT NULL,
+    first_longitude DECIMAL(11, 8) NOT NULL,
+    last_time TIMESTAMP NOT NULL,
+    last_latitude DECIMAL(10, 8) NOT NULL,
+    last_longitude DECIMAL(11, 8) NOT NULL,
+    PRIMARY KEY (vehicle_id, bucket_start)
+);
+
+-- Everything before the watermark has been rolled up (minus the lateness window, which is redone)
+CREATE TABLE gps_location_rollup_state (
+    name VARCHAR(50) PRIMARY KEY,
+    watermark TIMESTAMP NOT NULL
+);
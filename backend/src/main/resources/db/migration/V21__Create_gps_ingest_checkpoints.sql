@@ -0,0 +1,6 @@
+-- Replay position of each local ingest log, committed together with the fixes it covers
+CREATE TABLE gps_ingest_checkpoints (
+    log_name VARCHAR(128) PRIMARY KEY,
+    position BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
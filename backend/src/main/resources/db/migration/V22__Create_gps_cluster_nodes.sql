@@ -0,0 +1,8 @@
+-- Backend nodes sharing this database; a node whose heartbeat is older than the node timeout is
+-- treated as gone and its vehicles move to the remaining nodes
+CREATE TABLE gps_cluster_nodes (
+    node_id VARCHAR(64) PRIMARY KEY,
+    base_url VARCHAR(255) NOT NULL,
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    heartbeat_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,3 @@
+-- Finds the fixes stored since the last rollup run, whatever their timestamp, so minutes that
+-- receive late fixes (ingest log replay, delayed gateway uploads) are rolled up again
+CREATE INDEX idx_gps_locations_created_at ON gps_locations(created_at);
@@ -0,0 +1,12 @@
+-- A vehicle has at most one fix per timestamp. A fix the ingest log reported as not flushed in
+-- time, or whose forwarded upload went unanswered, may be stored and still be sent again; the
+-- ingest path accepts such a repeat with the stored id, and this index backs that up. A fix
+-- sent without a timestamp gets a receive time of its own, echoed back for the retry.
+-- Repeats stored before now are removed first, keeping the earliest.
+DELETE FROM gps_locations a
+USING gps_locations b
+WHERE a.vehicle_id = b.vehicle_id
+  AND a.timestamp = b.timestamp
+  AND (a.created_at, a.id) > (b.created_at, b.id);
+
+CREATE UNIQUE INDEX idx_gps_locations_vehicle_timestamp_unique ON gps_locations(vehicle_id, timestamp);
@@ -1,14 +1,33 @@
 import { useEffect, useRef, useState } from 'react';
 import { Client } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
-import { GpsLocation } from '../types/gpsLocation';
+import { GpsLocation, LocationFilter, LocationFrame } from '../types/gpsLocation';
 
 const WS_URL = 'http://localhost:8080/ws';
+const FILTER_DESTINATION = '/app/locations/subscription';
 
-export function useWebSocket() {
+/**
+ * Live location updates, delivered as batches holding the newest update of each vehicle that
+ * moved since the previous batch. The first batch is a snapshot of everything the hook covers.
+ * Without a filter the hook receives the whole fleet; with one it receives only updates inside
+ * the filter's viewport or for its vehicles, and sends the filter again whenever it changes (e.g.
+ * on every pan or zoom), which brings a snapshot of what the new filter matches.
+ *
+ * The last stream version seen is remembered, so after a reconnect the server only sends what
+ * changed in the meantime.
+ */
+export function useWebSocket(filter?: LocationFilter) {
   const [isConnected, setIsConnected] = useState(false);
-  const [latestLocation, setLatestLocation] = useState<GpsLocation | null>(null);
+  const [latestLocations, setLatestLocations] = useState<GpsLocation[]>([]);
   const clientRef = useRef<Client | null>(null);
+  const filtered = filter !== undefined;
+  const filterJson = JSON.stringify(filter ?? {});
+  const filterJsonRef = useRef(filterJson);
+  filterJsonRef.current = filterJson;
+  const epochRef = useRef<string | null>(null);
+  const versionRef = useRef<number | null>(null);
+  // Filter the received versions belong to; a changed filter needs a fresh snapshot
+  const syncedFilterRef = useRef<string | null>(null);
 
   useEffect(() => {
     // Initialize STOMP client
@@ -20,18 +39,41 @@ export function useWebSocket() {
       onConnect: (frame) => {
         console.log('WebSocket connected', frame);
         setIsConnected(true);
-        
-        // Subscribe to location updates
+
+        // Subscribe to location updates: the whole fleet, or this session's filtered queue
         if (clientRef.current) {
-          clientRef.current.subscribe('/topic/locations', (message) => {
+          const resume = epochRef.current !== null && versionRef.current !== null
+            && (!filtered || syncedFilterRef.current === filterJsonRef.current);
+          const onFrame = (body: string) => {
             try {
-              const location: GpsLocation = JSON.parse(message.body);
-              console.log('Received location update:', location);
-              setLatestLocation(location);
+              const frame: LocationFrame = JSON.parse(body);
+              if (frame.epoch !== epochRef.current) {
+                epochRef.current = frame.epoch;
+                versionRef.current = frame.version;
+              } else {
+                versionRef.current = Math.max(versionRef.current ?? 0, frame.version);
+              }
+              setLatestLocations(frame.locations);
             } catch (error) {
               console.error('Error parsing location update:', error);
             }
-          });
+          };
+          if (filtered) {
+            clientRef.current.subscribe('/user/queue/locations', (message) => onFrame(message.body));
+            // Filters live in the server session, so a reconnect has to send it again
+            const filter = JSON.parse(filterJsonRef.current);
+            if (resume) {
+              filter.epoch = epochRef.current;
+              filter.sinceVersion = versionRef.current;
+            }
+            syncedFilterRef.current = filterJsonRef.current;
+            clientRef.current.publish({ destination: FILTER_DESTINATION, body: JSON.stringify(filter) });
+          } else {
+            const headers: Record<string, string> = resume
+              ? { epoch: epochRef.current as string, since: String(versionRef.current) }
+              : {};
+            clientRef.current.subscribe('/topic/locations', (message) => onFrame(message.body), headers);
+          }
         }
       },
       onDisconnect: () => {
@@ -54,8 +96,28 @@ export function useWebSocket() {
         clientRef.current = null;
       }
     };
-  }, []);
+  }, [filtered]);
 
-  return { isConnected, latestLocation };
+  // Send the filter again when it changes
+  useEffect(() => {
+    if (filtered && clientRef.current?.connected && syncedFilterRef.current !== filterJson) {
+      syncedFilterRef.current = filterJson;
+      clientRef.current.publish({ destination: FILTER_DESTINATION, body: filterJson });
+    }
+  }, [filtered, filterJson]);
+
+  return { isConnected, latestLocations };
 }
 
+/**
+ * Turn Leaflet bounds into a filter viewport: longitudes are wrapped into [-180, 180] and a view
+ * that shows the whole world once or more becomes the full range.
+ */
+export function toViewport(south: number, west: number, north: number, east: number): LocationFilter {
+  const wrap = (lon: number) => ((((lon + 180) % 360) + 360) % 360) - 180;
+  const clampLat = (lat: number) => Math.max(-90, Math.min(90, lat));
+  if (east - west >= 360) {
+    return { south: clampLat(south), west: -180, north: clampLat(north), east: 180 };
+  }
+  return { south: clampLat(south), west: wrap(west), north: clampLat(north), east: wrap(east) };
+}
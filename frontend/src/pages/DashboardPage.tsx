@@ -1,5 +1,5 @@
 import { useEffect, useState } from 'react';
-import { MapContainer, TileLayer, Marker, Popup } from 'react-leaflet';
+import { MapContainer, TileLayer, Marker, Popup, useMap, useMapEvents } from 'react-leaflet';
 import { vehicleService } from '../services/vehicleService';
 import { driverService } from '../services/driverService';
 import { routeService } from '../services/routeService';
@@ -7,8 +7,8 @@ import { gpsLocationService } from '../services/gpsLocationService';
 import { Vehicle } from '../types/vehicle';
 import { Driver } from '../types/driver';
 import { Route } from '../types/route';
-import { GpsLocation } from '../types/gpsLocation';
-import { useWebSocket } from '../hooks/useWebSocket';
+import { GpsLocation, LocationFilter } from '../types/gpsLocation';
+import { toViewport, useWebSocket } from '../hooks/useWebSocket';
 import L from 'leaflet';
 
 delete (L.Icon.Default.prototype as any)._getIconUrl;
@@ -18,29 +18,47 @@ L.Icon.Default.mergeOptions({
   shadowUrl: 'https://cdnjs.cloudflare.com/ajax/libs/leaflet/1.9.4/images/marker-shadow.png',
 });
 
+// Reports the visible area, padded a little so vehicles just off screen are already placed
+function ViewportTracker({ onChange }: { onChange: (viewport: LocationFilter) => void }) {
+  const map = useMap();
+  const report = () => {
+    const bounds = map.getBounds().pad(0.2);
+    onChange(toViewport(bounds.getSouth(), bounds.getWest(), bounds.getNorth(), bounds.getEast()));
+  };
+  useMapEvents({ moveend: report });
+  useEffect(report, [map]);
+  return null;
+}
+
 export default function DashboardPage() {
   const [vehicles, setVehicles] = useState<Vehicle[]>([]);
   const [drivers, setDrivers] = useState<Driver[]>([]);
   const [routes, setRoutes] = useState<Route[]>([]);
   const [locations, setLocations] = useState<Map<string, GpsLocation>>(new Map());
   const [loading, setLoading] = useState(true);
-  const { isConnected, latestLocation: wsLocation } = useWebSocket();
+  const [viewport, setViewport] = useState<LocationFilter>({});
+  const { isConnected, latestLocations: wsLocations } = useWebSocket(viewport);
 
   useEffect(() => {
     loadData();
   }, []);
 
-  // Update location when WebSocket receives update
+  // Update locations when WebSocket receives a batch of updates
   useEffect(() => {
-    if (wsLocation) {
-      console.log('WebSocket location update received on dashboard:', wsLocation);
+    if (wsLocations.length > 0) {
       setLocations(prev => {
         const newMap = new Map(prev);
-        newMap.set(wsLocation.vehicleId, wsLocation);
+        for (const location of wsLocations) {
+          // A snapshot can arrive after a newer update; keep the newest position
+          const current = newMap.get(location.vehicleId);
+          if (!current || new Date(location.timestamp) >= new Date(current.timestamp)) {
+            newMap.set(location.vehicleId, location);
+          }
+        }
         return newMap;
       });
     }
-  }, [wsLocation]);
+  }, [wsLocations]);
 
   const loadData = async () => {
     try {
@@ -53,15 +71,11 @@ export default function DashboardPage() {
       setDrivers(driversData);
       setRoutes(routesData);
       
-      // Load latest locations for all vehicles
+      // Load latest locations for the whole fleet in one call
       const locationsMap = new Map<string, GpsLocation>();
-      for (const vehicle of vehiclesData) {
-        try {
-          const location = await gpsLocationService.getLatest(vehicle.id);
-          locationsMap.set(vehicle.id, location);
-        } catch (error) {
-          // No location for this vehicle
-        }
+      const latestLocations = await gpsLocationService.getLatestForFleet();
+      for (const location of latestLocations) {
+        locationsMap.set(location.vehicleId, location);
       }
       setLocations(locationsMap);
     } catch (error) {
@@ -125,6 +139,7 @@ export default function DashboardPage() {
               attribution='&copy; <a href="https://www.openstreetmap.org/copyright">OpenStreetMap</a> contributors'
               url="https://{s}.tile.openstreetmap.org/{z}/{x}/{y}.png"
             />
+            <ViewportTracker onChange={setViewport} />
             {locationArray.map((location) => (
               <Marker key={location.id} position={[location.latitude, location.longitude]}>
                 <Popup>
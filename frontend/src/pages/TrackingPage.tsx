@@ -24,7 +24,10 @@ export default function TrackingPage() {
   const [locations, setLocations] = useState<GpsLocation[]>([]);
   const [latestLocation, setLatestLocation] = useState<GpsLocation | null>(null);
   const [loading, setLoading] = useState(true);
-  const { isConnected, latestLocation: wsLocation } = useWebSocket();
+  // Only the selected vehicle's updates are needed here
+  const { isConnected, latestLocations: wsLocations } = useWebSocket({
+    vehicleIds: selectedVehicle ? [selectedVehicle] : [],
+  });
   const { toast, showToast, hideToast } = useToast();
   const [formData, setFormData] = useState<GpsLocationRequest>({
     vehicleId: '',
@@ -47,13 +50,14 @@ export default function TrackingPage() {
 
   // Update location when WebSocket receives update for selected vehicle
   useEffect(() => {
-    if (wsLocation && wsLocation.vehicleId === selectedVehicle) {
+    const wsLocation = wsLocations.find(location => location.vehicleId === selectedVehicle);
+    if (wsLocation) {
       console.log('WebSocket location update received for selected vehicle:', wsLocation);
       setLatestLocation(wsLocation);
       // Optionally reload locations to show in history
       loadLocations();
     }
-  }, [wsLocation, selectedVehicle]);
+  }, [wsLocations, selectedVehicle]);
 
   const loadVehicles = async () => {
     try {
@@ -1,5 +1,5 @@
 import api from './api';
-import { GpsLocation, GpsLocationRequest } from '../types/gpsLocation';
+import { GpsLocation, GpsLocationPage, GpsLocationRequest } from '../types/gpsLocation';
 
 export const gpsLocationService = {
   create: async (data: GpsLocationRequest): Promise<GpsLocation> => {
@@ -17,12 +17,32 @@ export const gpsLocationService = {
     return response.data;
   },
 
-  getHistory: async (vehicleId: string, startTime: string, endTime: string): Promise<GpsLocation[]> => {
+  getLatestForFleet: async (vehicleIds?: string[]): Promise<GpsLocation[]> => {
+    const response = await api.get<GpsLocation[]>('/gps-locations/latest', {
+      params: vehicleIds && vehicleIds.length > 0 ? { vehicleIds: vehicleIds.join(',') } : undefined,
+    });
+    return response.data;
+  },
+
+  getHistory: async (
+    vehicleId: string,
+    startTime: string,
+    endTime: string,
+    detail?: { toleranceMeters?: number; zoom?: number }
+  ): Promise<GpsLocation[]> => {
     const response = await api.get<GpsLocation[]>(`/gps-locations/vehicle/${vehicleId}/history`, {
-      params: { startTime, endTime },
+      params: { startTime, endTime, ...detail },
     });
     return response.data;
   },
+
+  getHistoryPage: async (
+    vehicleId: string,
+    params: { startTime?: string; endTime?: string; cursor?: string; order?: 'asc' | 'desc'; limit?: number }
+  ): Promise<GpsLocationPage> => {
+    const response = await api.get<GpsLocationPage>(`/gps-locations/vehicle/${vehicleId}/history/page`, { params });
+    return response.data;
+  },
 };
 
 
@@ -53,8 +53,11 @@ class RouteOptimizationService {
     return response.data;
   }
 
-  async getRouteExecution(routeId: string): Promise<RouteExecution[]> {
-    const response = await api.get(`${this.baseUrl}/routes/${routeId}/execution`);
+  async getRouteExecution(
+    routeId: string,
+    detail?: { toleranceMeters?: number; zoom?: number }
+  ): Promise<RouteExecution[]> {
+    const response = await api.get(`${this.baseUrl}/routes/${routeId}/execution`, { params: detail });
     return response.data;
   }
 
@@ -1,5 +1,5 @@
 import api from './api';
-import { Route } from '../types/route';
+import { Route, RouteProgress } from '../types/route';
 
 export const routeService = {
   getAll: async (): Promise<Route[]> => {
@@ -12,6 +12,11 @@ export const routeService = {
     return response.data;
   },
 
+  getProgress: async (id: string): Promise<RouteProgress> => {
+    const response = await api.get<RouteProgress>(`/routes/${id}/progress`);
+    return response.data;
+  },
+
   getByVehicle: async (vehicleId: string): Promise<Route[]> => {
     const response = await api.get<Route[]>(`/routes/vehicle/${vehicleId}`);
     return response.data;
@@ -21,3 +21,28 @@ export interface GpsLocationRequest {
 
 
 
+
+// Narrows the live feed to a map viewport and/or followed vehicles; a viewport whose west edge
+// is east of its east edge crosses the antimeridian
+export interface LocationFilter {
+  south?: number;
+  west?: number;
+  north?: number;
+  east?: number;
+  vehicleIds?: string[];
+}
+
+// One live update frame: the newest location of each vehicle that changed, or a snapshot of all
+// the vehicles a subscription covers, as of a version of the server's update stream
+export interface LocationFrame {
+  epoch: string;
+  version: number;
+  snapshot: boolean;
+  locations: GpsLocation[];
+}
+
+export interface GpsLocationPage {
+  items: GpsLocation[];
+  nextCursor?: string;
+  hasMore: boolean;
+}
@@ -12,5 +12,18 @@ export interface Route {
   status: string;
 }
 
+export interface RouteProgress {
+  routeId: string;
+  vehicleId: string;
+  status: string;
+  startTime: string;
+  lastFixTime?: string;
+  distanceKm?: number;
+  pointCount: number;
+  maxSpeedKmh?: number;
+  avgSpeedKmh?: number;
+  movingSeconds: number;
+}
+
 
 
@@ -0,0 +1,205 @@
+package com.gps.tracking.gateway;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One forwarding lane: a fixed pool of batches filled by one selector thread and posted to the
+ * backend's ingest endpoint by one sender thread, strictly in the order they were filled.
+ *
+ * Every fix of a connection is decoded by the same selector thread, and a lane has at most one
+ * request in flight and retries a batch before moving on, so a vehicle's fixes reach the backend
+ * in the order the device sent them. When all of a lane's batches are full or in flight,
+ * {@link #acquire} returns null and the selector thread stops reading; that is where
+ * backpressure from a slow backend reaches the devices.
+ *
+ * Fixes the backend marks retryable, turned away because its queue was full or it could not
+ * confirm them, are sent again; a repeat of a fix it did store is stored only once. Fixes it
+ * rejects as invalid are counted and dropped. A 503 that lists items means the rest of the batch was
+ * accepted, so only the listed fixes that are worth another attempt are sent again.
+ */
+final class BatchForwarder implements Runnable {
+    private static final long MAX_BACKOFF_MILLIS = 5_000;
+
+    private static final Logger log = LoggerFactory.getLogger(BatchForwarder.class);
+
+    private final GatewayConfig config;
+    private final GatewayMetrics metrics;
+    private final HttpClient http;
+    private final ObjectMapper mapper;
+    private final Runnable onRelease;
+    private final BlockingQueue<FixBatch> free;
+    private final BlockingQueue<FixBatch> ready;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(64 * 1024);
+    private final int[] retryIndices;
+    private volatile boolean running = true;
+
+    BatchForwarder(GatewayConfig config, GatewayMetrics metrics, HttpClient http, ObjectMapper mapper,
+                   Runnable onRelease) {
+        this.config = config;
+        this.metrics = metrics;
+        this.http = http;
+        this.mapper = mapper;
+        this.onRelease = onRelease;
+        this.free = new ArrayBlockingQueue<>(config.batchesPerLane);
+        this.ready = new ArrayBlockingQueue<>(config.batchesPerLane);
+        for (int i = 0; i < config.batchesPerLane; i++) {
+            free.add(new FixBatch(config.batchSize));
+        }
+        this.retryIndices = new int[config.batchSize];
+    }
+
+    /**
+     * An empty batch to decode into, or null if every batch of the lane is still in use.
+     */
+    FixBatch acquire() {
+        return free.poll();
+    }
+
+    boolean hasFreeBatch() {
+        return !free.isEmpty();
+    }
+
+    /**
+     * Hand a filled batch to the sender. Never blocks: the lane owns every batch, so there is
+     * always room for one that came out of {@link #acquire}.
+     */
+    void submit(FixBatch batch) {
+        ready.add(batch);
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        while (running || !ready.isEmpty()) {
+            FixBatch batch;
+            try {
+                batch = ready.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch == null) {
+                continue;
+            }
+            try {
+                forward(batch);
+            } catch (InterruptedException e) {
+                metrics.fixesDropped.add(batch.size());
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+                free.add(batch);
+                onRelease.run();
+            }
+        }
+    }
+
+    private void forward(FixBatch batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                long start = System.nanoTime();
+                HttpResponse<byte[]> response = post(batch);
+                metrics.forwardNanos.add(System.nanoTime() - start);
+                metrics.batchesForwarded.increment();
+                int status = response.statusCode();
+                if (status / 100 == 2) {
+                    if (!retainRetryable(batch, response.body())) {
+                        return;
+                    }
+                    // Whatever was left is waiting for room in the backend's queue: not an error
+                    attempt = 0;
+                } else if (status == 503 && isItemized(response.body())) {
+                    // Accepted fixes are in the backend's log and will be stored; resend only the rest
+                    log.warn("Backend could not take every fix of a batch of {}", batch.size());
+                    if (!retainRetryable(batch, response.body())) {
+                        return;
+                    }
+                } else if (status / 100 == 4 && status != 429) {
+                    log.warn("Backend refused a batch of {} fixes with status {}; dropping it", batch.size(), status);
+                    metrics.fixesDropped.add(batch.size());
+                    return;
+                } else {
+                    log.warn("Backend answered status {} for a batch of {} fixes", status, batch.size());
+                }
+            } catch (IOException e) {
+                log.warn("Forwarding a batch of {} fixes failed: {}", batch.size(), e.getMessage());
+            }
+            if (attempt >= config.maxAttempts) {
+                log.error("Giving up on a batch of {} fixes after {} attempts", batch.size(), attempt);
+                metrics.fixesDropped.add(batch.size());
+                return;
+            }
+            metrics.forwardRetries.increment();
+            Thread.sleep(Math.min(MAX_BACKOFF_MILLIS, 100L << Math.min(attempt, 6)));
+        }
+    }
+
+    private HttpResponse<byte[]> post(FixBatch batch) throws IOException, InterruptedException {
+        body.reset();
+        try (JsonGenerator json = mapper.getFactory().createGenerator(body)) {
+            batch.writeJson(json, config.timeZone);
+        }
+        HttpRequest request = HttpRequest.newBuilder(config.forwardUri)
+                .timeout(config.forwardTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Whether an error answer is the ingest endpoint's per-item response, rather than a bare error
+     * from the backend or a proxy in front of it, after which the whole batch is sent again.
+     */
+    private boolean isItemized(byte[] responseBody) {
+        try {
+            return mapper.readTree(responseBody).has("rejected");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Count the outcome of an accepted upload and keep only the fixes worth sending again.
+     *
+     * @return true if some fixes were kept for another attempt
+     */
+    private boolean retainRetryable(FixBatch batch, byte[] responseBody) throws IOException {
+        JsonNode rejected = mapper.readTree(responseBody).path("rejected");
+        int retry = 0;
+        int invalid = 0;
+        for (JsonNode item : rejected) {
+            if (item.path("retryable").asBoolean()) {
+                retryIndices[retry++] = item.path("index").asInt();
+            } else {
+                invalid++;
+                log.debug("Backend rejected fix for vehicle {}: {}", item.path("vehicleId").asText(),
+                        item.path("reason").asText());
+            }
+        }
+        metrics.fixesForwarded.add(batch.size() - retry - invalid);
+        metrics.fixesRejected.add(invalid);
+        if (retry == 0) {
+            return false;
+        }
+        batch.retain(retryIndices, retry);
+        return true;
+    }
+}
@@ -0,0 +1,28 @@
+package com.gps.tracking.gateway;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * State of one device connection. The receive buffer is direct, so the kernel writes into it
+ * without an intermediate heap copy, and frames are decoded where they landed. Between reads it
+ * is kept in write mode, holding any partial frame at its start.
+ */
+final class Connection {
+    final SocketChannel channel;
+    final ByteBuffer buffer;
+    final String remote;
+    SelectionKey key;
+    long lastReadNanos;
+    long frames;
+    long bytes;
+    boolean paused;
+
+    Connection(SocketChannel channel, int bufferBytes, String remote) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        this.remote = remote;
+        this.lastReadNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,116 @@
+package com.gps.tracking.gateway;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+
+/**
+ * A reusable batch of decoded fixes held in primitive arrays, in arrival order. Batches are
+ * pooled by their {@link BatchForwarder}, so decoding fills existing arrays instead of
+ * allocating per fix.
+ */
+final class FixBatch {
+    static final int ABSENT = -1;
+
+    private final long[] vehicleMostBits;
+    private final long[] vehicleLeastBits;
+    private final long[] timestampMillis;
+    private final int[] latitudeE7;
+    private final int[] longitudeE7;
+    private final int[] speedCenti;
+    private final int[] headingCenti;
+    private int size;
+    private long startedNanos;
+
+    FixBatch(int capacity) {
+        vehicleMostBits = new long[capacity];
+        vehicleLeastBits = new long[capacity];
+        timestampMillis = new long[capacity];
+        latitudeE7 = new int[capacity];
+        longitudeE7 = new int[capacity];
+        speedCenti = new int[capacity];
+        headingCenti = new int[capacity];
+    }
+
+    void add(long mostBits, long leastBits, long millis, int latitude, int longitude, int speed, int heading) {
+        if (size == 0) {
+            startedNanos = System.nanoTime();
+        }
+        vehicleMostBits[size] = mostBits;
+        vehicleLeastBits[size] = leastBits;
+        timestampMillis[size] = millis;
+        latitudeE7[size] = latitude;
+        longitudeE7[size] = longitude;
+        speedCenti[size] = speed;
+        headingCenti[size] = heading;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == timestampMillis.length;
+    }
+
+    long startedNanos() {
+        return startedNanos;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Keep only the fixes at the given ascending indices, in order.
+     */
+    void retain(int[] indices, int count) {
+        for (int i = 0; i < count; i++) {
+            int from = indices[i];
+            vehicleMostBits[i] = vehicleMostBits[from];
+            vehicleLeastBits[i] = vehicleLeastBits[from];
+            timestampMillis[i] = timestampMillis[from];
+            latitudeE7[i] = latitudeE7[from];
+            longitudeE7[i] = longitudeE7[from];
+            speedCenti[i] = speedCenti[from];
+            headingCenti[i] = headingCenti[from];
+        }
+        size = count;
+    }
+
+    /**
+     * Write the batch as the body of POST /api/gps-locations/ingest. The backend takes local
+     * timestamps, so they are rendered in its time zone.
+     */
+    void writeJson(JsonGenerator json, ZoneId zone) throws IOException {
+        json.writeStartObject();
+        json.writeArrayFieldStart("locations");
+        for (int i = 0; i < size; i++) {
+            json.writeStartObject();
+            json.writeStringField("vehicleId", new UUID(vehicleMostBits[i], vehicleLeastBits[i]).toString());
+            json.writeFieldName("latitude");
+            json.writeNumber(BigDecimal.valueOf(latitudeE7[i], 7));
+            json.writeFieldName("longitude");
+            json.writeNumber(BigDecimal.valueOf(longitudeE7[i], 7));
+            if (speedCenti[i] != ABSENT) {
+                json.writeFieldName("speed");
+                json.writeNumber(BigDecimal.valueOf(speedCenti[i], 2));
+            }
+            if (headingCenti[i] != ABSENT) {
+                json.writeFieldName("direction");
+                json.writeNumber(BigDecimal.valueOf(headingCenti[i], 2));
+            }
+            json.writeStringField("timestamp",
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis[i]), zone).toString());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+}
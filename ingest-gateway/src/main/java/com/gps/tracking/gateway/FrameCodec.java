@@ -0,0 +1,108 @@
+package com.gps.tracking.gateway;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * The device frame, version 1. All fields are big-endian:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     2  length      unsigned, bytes that follow this field (38 for version 1)
+ *      2     1  version     1
+ *      3     1  flags       bit 0: speed present, bit 1: heading present
+ *      4    16  vehicle id  UUID, most significant 8 bytes first
+ *     20     8  timestamp   milliseconds since the epoch, UTC
+ *     28     4  latitude    signed, 1e-7 degrees
+ *     32     4  longitude   signed, 1e-7 degrees
+ *     36     2  speed       unsigned, 0.01 km/h
+ *     38     2  heading     unsigned, 0.01 degrees, below 36000
+ * </pre>
+ *
+ * A length above 38 is accepted and the extra bytes are skipped, so later versions can append
+ * fields. Over TCP frames follow each other on the stream; a UDP datagram carries one or more
+ * whole frames.
+ *
+ * Decoding reads fields with absolute gets straight out of the receive buffer, so no bytes are
+ * copied and nothing is allocated per frame.
+ */
+public final class FrameCodec {
+    public static final int LENGTH_BYTES = 2;
+    public static final int BODY_BYTES = 38;
+    public static final int FRAME_BYTES = LENGTH_BYTES + BODY_BYTES;
+    public static final int MAX_BODY_BYTES = 1024;
+    public static final int VERSION = 1;
+    public static final int FLAG_SPEED = 1;
+    public static final int FLAG_HEADING = 2;
+
+    private static final int MAX_LATITUDE_E7 = 900_000_000;
+    private static final int MAX_LONGITUDE_E7 = 1_800_000_000;
+    private static final int FULL_CIRCLE_CENTI = 36_000;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Body length of the frame starting at {@code at}, or -1 if the length field is not complete.
+     *
+     * @throws IllegalArgumentException if the length cannot belong to a frame; the stream is
+     *                                  out of sync and cannot be recovered
+     */
+    public static int bodyLength(ByteBuffer buffer, int at, int limit) {
+        if (limit - at < LENGTH_BYTES) {
+            return -1;
+        }
+        int length = buffer.getShort(at) & 0xFFFF;
+        if (length < BODY_BYTES || length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Decode the complete frame starting at {@code at} into the batch.
+     *
+     * @return false if the frame is well-formed but its version or values are invalid
+     */
+    public static boolean decode(ByteBuffer buffer, int at, FixBatch batch) {
+        int body = at + LENGTH_BYTES;
+        if ((buffer.get(body) & 0xFF) != VERSION) {
+            return false;
+        }
+        int flags = buffer.get(body + 1);
+        int latitude = buffer.getInt(body + 26);
+        int longitude = buffer.getInt(body + 30);
+        int speed = buffer.getShort(body + 34) & 0xFFFF;
+        int heading = buffer.getShort(body + 36) & 0xFFFF;
+        // Both bounds, not Math.abs: the absolute value of Integer.MIN_VALUE is negative
+        if (latitude < -MAX_LATITUDE_E7 || latitude > MAX_LATITUDE_E7
+                || longitude < -MAX_LONGITUDE_E7 || longitude > MAX_LONGITUDE_E7
+                || ((flags & FLAG_HEADING) != 0 && heading >= FULL_CIRCLE_CENTI)) {
+            return false;
+        }
+        batch.add(buffer.getLong(body + 2), buffer.getLong(body + 10), buffer.getLong(body + 18),
+                latitude, longitude,
+                (flags & FLAG_SPEED) != 0 ? speed : FixBatch.ABSENT,
+                (flags & FLAG_HEADING) != 0 ? heading : FixBatch.ABSENT);
+        return true;
+    }
+
+    /**
+     * Append one version 1 frame at the buffer's position. Speed and heading are in hundredths
+     * and omitted when negative.
+     */
+    public static void encode(ByteBuffer buffer, UUID vehicleId, long timestampMillis, int latitudeE7,
+                              int longitudeE7, int speedCentiKmh, int headingCentiDegrees) {
+        int flags = (speedCentiKmh >= 0 ? FLAG_SPEED : 0) | (headingCentiDegrees >= 0 ? FLAG_HEADING : 0);
+        buffer.putShort((short) BODY_BYTES)
+                .put((byte) VERSION)
+                .put((byte) flags)
+                .putLong(vehicleId.getMostSignificantBits())
+                .putLong(vehicleId.getLeastSignificantBits())
+                .putLong(timestampMillis)
+                .putInt(latitudeE7)
+                .putInt(longitudeE7)
+                .putShort((short) Math.max(speedCentiKmh, 0))
+                .putShort((short) Math.max(headingCentiDegrees, 0));
+    }
+}
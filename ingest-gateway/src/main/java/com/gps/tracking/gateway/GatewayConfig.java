@@ -0,0 +1,99 @@
+package com.gps.tracking.gateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Properties;
+
+/**
+ * Gateway settings. Defaults come from gateway.properties on the classpath, overridden by an
+ * optional properties file given on the command line, overridden in turn by -D system properties.
+ */
+final class GatewayConfig {
+    final String bindAddress;
+    final int tcpPort;
+    final int udpPort;
+    final int ioThreads;
+    final int maxConnections;
+    final int connectionBufferBytes;
+    final Duration idleTimeout;
+    final URI forwardUri;
+    final int batchSize;
+    final Duration linger;
+    final int batchesPerLane;
+    final int maxAttempts;
+    final Duration forwardTimeout;
+    final ZoneId timeZone;
+    final int metricsPort;
+    final Duration metricsLogInterval;
+
+    private GatewayConfig(Properties properties) {
+        bindAddress = properties.getProperty("gateway.bind-address", "0.0.0.0");
+        tcpPort = intValue(properties, "gateway.tcp.port");
+        udpPort = intValue(properties, "gateway.udp.port");
+        int threads = intValue(properties, "gateway.io-threads");
+        ioThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        maxConnections = intValue(properties, "gateway.max-connections");
+        connectionBufferBytes = intValue(properties, "gateway.connection.buffer-bytes");
+        idleTimeout = Duration.ofSeconds(intValue(properties, "gateway.connection.idle-timeout-seconds"));
+        forwardUri = URI.create(properties.getProperty("gateway.forward.url"));
+        batchSize = intValue(properties, "gateway.forward.batch-size");
+        linger = Duration.ofMillis(intValue(properties, "gateway.forward.linger-ms"));
+        batchesPerLane = intValue(properties, "gateway.forward.batches-per-lane");
+        maxAttempts = intValue(properties, "gateway.forward.max-attempts");
+        forwardTimeout = Duration.ofMillis(intValue(properties, "gateway.forward.timeout-ms"));
+        String zone = properties.getProperty("gateway.time-zone", "system");
+        timeZone = "system".equalsIgnoreCase(zone) ? ZoneId.systemDefault() : ZoneId.of(zone);
+        metricsPort = intValue(properties, "gateway.metrics.port");
+        metricsLogInterval = Duration.ofSeconds(intValue(properties, "gateway.metrics.log-interval-seconds"));
+
+        if (connectionBufferBytes < FrameCodec.LENGTH_BYTES + FrameCodec.MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("gateway.connection.buffer-bytes must hold the largest frame ("
+                    + (FrameCodec.LENGTH_BYTES + FrameCodec.MAX_BODY_BYTES) + " bytes)");
+        }
+        // The backend rejects ingest uploads of more than 1000 locations
+        if (batchSize < 1 || batchSize > 1000) {
+            throw new IllegalArgumentException("gateway.forward.batch-size must be between 1 and 1000");
+        }
+        if (batchesPerLane < 2) {
+            throw new IllegalArgumentException("gateway.forward.batches-per-lane must be at least 2");
+        }
+    }
+
+    static GatewayConfig load(String[] args) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream defaults = GatewayConfig.class.getResourceAsStream("/gateway.properties")) {
+            if (defaults != null) {
+                properties.load(defaults);
+            }
+        }
+        if (args.length > 0) {
+            try (Reader reader = Files.newBufferedReader(Path.of(args[0]))) {
+                properties.load(reader);
+            }
+        }
+        System.getProperties().forEach((key, value) -> {
+            if (key.toString().startsWith("gateway.")) {
+                properties.setProperty(key.toString(), value.toString());
+            }
+        });
+        return new GatewayConfig(properties);
+    }
+
+    private static int intValue(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing setting " + key);
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Setting " + key + " must be an integer: " + value);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.gps.tracking.gateway;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gateway counters, rendered in the Prometheus text format. Throughput is the rate of the
+ * byte, frame and forwarded-fix counters.
+ */
+final class GatewayMetrics {
+    final AtomicInteger openConnections = new AtomicInteger();
+    final AtomicInteger pausedConnections = new AtomicInteger();
+    final LongAdder acceptedConnections = new LongAdder();
+    final LongAdder refusedConnections = new LongAdder();
+    final LongAdder closedConnections = new LongAdder();
+    final LongAdder idleTimeouts = new LongAdder();
+    final LongAdder bytesReceived = new LongAdder();
+    final LongAdder framesDecoded = new LongAdder();
+    final LongAdder framesInvalid = new LongAdder();
+    final LongAdder protocolErrors = new LongAdder();
+    final LongAdder datagramsReceived = new LongAdder();
+    final LongAdder datagramsDropped = new LongAdder();
+    final LongAdder backpressurePauses = new LongAdder();
+    final LongAdder batchesForwarded = new LongAdder();
+    final LongAdder fixesForwarded = new LongAdder();
+    final LongAdder fixesRejected = new LongAdder();
+    final LongAdder fixesDropped = new LongAdder();
+    final LongAdder forwardRetries = new LongAdder();
+    final LongAdder forwardNanos = new LongAdder();
+
+    String render() {
+        StringBuilder out = new StringBuilder(2048);
+        gauge(out, "gps_gateway_connections_open", "Open device connections", openConnections.get());
+        gauge(out, "gps_gateway_connections_paused", "Connections not being read because forwarding is behind",
+                pausedConnections.get());
+        counter(out, "gps_gateway_connections_accepted_total", "Accepted device connections", acceptedConnections);
+        counter(out, "gps_gateway_connections_refused_total", "Connections refused at the connection limit",
+                refusedConnections);
+        counter(out, "gps_gateway_connections_closed_total", "Closed device connections", closedConnections);
+        counter(out, "gps_gateway_connections_idle_timeouts_total", "Connections closed for inactivity", idleTimeouts);
+        counter(out, "gps_gateway_bytes_received_total", "Bytes read from devices", bytesReceived);
+        counter(out, "gps_gateway_frames_decoded_total", "Frames decoded into fixes", framesDecoded);
+        counter(out, "gps_gateway_frames_invalid_total", "Well-formed frames with an unknown version or invalid values",
+                framesInvalid);
+        counter(out, "gps_gateway_protocol_errors_total", "Streams or datagrams abandoned on a bad frame length",
+                protocolErrors);
+        counter(out, "gps_gateway_datagrams_received_total", "UDP datagrams received", datagramsReceived);
+        counter(out, "gps_gateway_datagrams_dropped_total", "UDP datagrams dropped because forwarding is behind",
+                datagramsDropped);
+        counter(out, "gps_gateway_backpressure_pauses_total", "Times a connection stopped being read",
+                backpressurePauses);
+        counter(out, "gps_gateway_forward_batches_total", "Batches posted to the backend", batchesForwarded);
+        counter(out, "gps_gateway_forward_fixes_total", "Fixes queued by the backend", fixesForwarded);
+        counter(out, "gps_gateway_forward_rejected_total", "Fixes the backend rejected as invalid", fixesRejected);
+        counter(out, "gps_gateway_forward_dropped_total", "Fixes given up after the last forwarding attempt",
+                fixesDropped);
+        counter(out, "gps_gateway_forward_retries_total", "Forwarding attempts repeated after a failure",
+                forwardRetries);
+        counter(out, "gps_gateway_forward_seconds_total", "Time spent posting batches",
+                forwardNanos.sum() / 1e9);
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, LongAdder value) {
+        counter(out, name, help, value.sum());
+    }
+
+    private static void counter(StringBuilder out, String name, String help, Number value) {
+        write(out, name, help, "counter", value);
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, Number value) {
+        write(out, name, help, "gauge", value);
+    }
+
+    private static void write(StringBuilder out, String name, String help, String type, Number value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,214 @@
+package com.gps.tracking.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.http.HttpClient;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Standalone gateway for devices that send binary fixes over raw TCP or UDP instead of JSON over
+ * HTTP. Frames are described in {@link FrameCodec}; decoded fixes are posted in batches to the
+ * backend's /api/gps-locations/ingest endpoint and from there take the same path as any upload.
+ *
+ * A blocking acceptor hands connections round-robin to {@code io-threads} selector loops, each
+ * with its own forwarding lane. Usage: {@code java -jar gps-ingest-gateway.jar [gateway.properties]}.
+ */
+public final class IngestGateway {
+    private static final Logger log = LoggerFactory.getLogger(IngestGateway.class);
+
+    private final GatewayConfig config;
+    private final GatewayMetrics metrics = new GatewayMetrics();
+    private final List<IoLoop> loops = new ArrayList<>();
+    private final List<BatchForwarder> forwarders = new ArrayList<>();
+    private final List<Thread> loopThreads = new ArrayList<>();
+    private final List<Thread> forwarderThreads = new ArrayList<>();
+    private ServerSocketChannel server;
+    private DatagramChannel udp;
+    private HttpServer metricsServer;
+    private ScheduledExecutorService reporter;
+    private volatile boolean running;
+
+    IngestGateway(GatewayConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        IngestGateway gateway = new IngestGateway(GatewayConfig.load(args));
+        Runtime.getRuntime().addShutdownHook(new Thread(gateway::stop, "gateway-shutdown"));
+        gateway.start();
+    }
+
+    void start() throws IOException {
+        running = true;
+        HttpClient http = HttpClient.newBuilder()
+                .connectTimeout(config.forwardTimeout)
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        ObjectMapper mapper = new ObjectMapper();
+
+        for (int i = 0; i < config.ioThreads; i++) {
+            IoLoop loop = new IoLoop(config, metrics);
+            BatchForwarder forwarder = new BatchForwarder(config, metrics, http, mapper, loop::wakeup);
+            loop.setForwarder(forwarder);
+            loops.add(loop);
+            forwarders.add(forwarder);
+        }
+
+        if (config.udpPort > 0) {
+            udp = DatagramChannel.open();
+            udp.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+            udp.bind(new InetSocketAddress(config.bindAddress, config.udpPort));
+            loops.get(0).bindUdp(udp);
+            log.info("Listening for UDP frames on {}:{}", config.bindAddress, config.udpPort);
+        }
+        for (int i = 0; i < loops.size(); i++) {
+            forwarderThreads.add(startThread(forwarders.get(i), "gateway-forward-" + i));
+            loopThreads.add(startThread(loops.get(i), "gateway-io-" + i));
+        }
+        if (config.tcpPort > 0) {
+            server = ServerSocketChannel.open();
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(new InetSocketAddress(config.bindAddress, config.tcpPort), 1024);
+            startThread(this::accept, "gateway-accept");
+            log.info("Listening for TCP frames on {}:{}", config.bindAddress, config.tcpPort);
+        }
+        if (config.metricsPort > 0) {
+            startMetricsServer();
+        }
+        if (!config.metricsLogInterval.isZero()) {
+            startReporter();
+        }
+        log.info("Forwarding to {} with {} lanes of {} batches of {} fixes",
+                config.forwardUri, loops.size(), config.batchesPerLane, config.batchSize);
+    }
+
+    void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        closeQuietly(server);
+        // Loops hand their last partial batch to the lanes, which then drain before stopping
+        loops.forEach(IoLoop::stop);
+        join(loopThreads);
+        forwarders.forEach(BatchForwarder::stop);
+        join(forwarderThreads);
+        closeQuietly(udp);
+        if (metricsServer != null) {
+            metricsServer.stop(0);
+        }
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        log.info("Gateway stopped");
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (AsynchronousCloseException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Accept failed: {}", e.getMessage());
+                continue;
+            }
+            if (metrics.openConnections.get() >= config.maxConnections) {
+                metrics.refusedConnections.increment();
+                closeQuietly(channel);
+                continue;
+            }
+            try {
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                continue;
+            }
+            metrics.openConnections.incrementAndGet();
+            metrics.acceptedConnections.increment();
+            loops.get(next).adopt(channel);
+            next = (next + 1) % loops.size();
+        }
+    }
+
+    private void startMetricsServer() throws IOException {
+        metricsServer = HttpServer.create(new InetSocketAddress(config.bindAddress, config.metricsPort), 0);
+        metricsServer.createContext("/metrics", exchange -> {
+            byte[] body = metrics.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        metricsServer.start();
+        log.info("Serving metrics on {}:{}/metrics", config.bindAddress, config.metricsPort);
+    }
+
+    private void startReporter() {
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gateway-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalSeconds = config.metricsLogInterval.toSeconds();
+        long[] last = new long[2];
+        reporter.scheduleAtFixedRate(() -> {
+            long frames = metrics.framesDecoded.sum();
+            long forwarded = metrics.fixesForwarded.sum();
+            log.info("{} connections ({} paused), {} frames/s decoded, {} fixes/s forwarded, {} dropped",
+                    metrics.openConnections.get(), metrics.pausedConnections.get(),
+                    (frames - last[0]) / intervalSeconds, (forwarded - last[1]) / intervalSeconds,
+                    metrics.fixesDropped.sum() + metrics.datagramsDropped.sum());
+            last[0] = frames;
+            last[1] = forwarded;
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static Thread startThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) {
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Closing channel failed: {}", e.getMessage());
+        }
+    }
+}
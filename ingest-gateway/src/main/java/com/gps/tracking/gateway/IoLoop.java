@@ -0,0 +1,347 @@
+package com.gps.tracking.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One selector thread serving a share of the device connections, and optionally the UDP socket.
+ *
+ * Frames are decoded straight out of each connection's direct buffer into the loop's current
+ * batch, which goes to the loop's own {@link BatchForwarder} when it is full or has lingered
+ * long enough. A connection is read at most {@link #MAX_READS_PER_WAKEUP} times per wakeup so
+ * one chatty device cannot starve the others.
+ *
+ * When the forwarder has no free batch, the connection that needed one is paused: it stops
+ * being selected for reads and keeps its undecoded bytes, so the kernel's receive buffer and
+ * then the TCP window fill up and the device has to slow down. Paused connections resume, oldest
+ * first, as soon as a batch comes back. UDP cannot push back, so datagrams that arrive while the
+ * lane is full are dropped and counted.
+ */
+final class IoLoop implements Runnable {
+    private static final int MAX_READS_PER_WAKEUP = 4;
+    private static final int MAX_DATAGRAMS_PER_WAKEUP = 256;
+    private static final int MAX_DATAGRAM_BYTES = 65_507;
+    private static final long IDLE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Logger log = LoggerFactory.getLogger(IoLoop.class);
+
+    private final GatewayConfig config;
+    private final GatewayMetrics metrics;
+    private final Selector selector;
+    private final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Connection> paused = new ArrayDeque<>();
+    private final long lingerNanos;
+    private final long idleTimeoutNanos;
+    private BatchForwarder forwarder;
+    private DatagramChannel udp;
+    private ByteBuffer datagram;
+    private FixBatch current;
+    private long nextIdleCheckNanos;
+    private volatile boolean running = true;
+
+    IoLoop(GatewayConfig config, GatewayMetrics metrics) throws IOException {
+        this.config = config;
+        this.metrics = metrics;
+        this.selector = Selector.open();
+        this.lingerNanos = config.linger.toNanos();
+        this.idleTimeoutNanos = config.idleTimeout.toNanos();
+    }
+
+    void setForwarder(BatchForwarder forwarder) {
+        this.forwarder = forwarder;
+    }
+
+    /**
+     * Serve the UDP socket from this loop as well. Must be called before the loop starts.
+     */
+    void bindUdp(DatagramChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        udp = channel;
+        datagram = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+    }
+
+    /**
+     * Take over a freshly accepted connection; called from the acceptor thread.
+     */
+    void adopt(SocketChannel channel) {
+        incoming.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Called by the forwarder when a batch is free again, so paused connections resume promptly.
+     */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        nextIdleCheckNanos = System.nanoTime() + IDLE_CHECK_NANOS;
+        try {
+            while (running) {
+                selector.select(selectTimeoutMillis());
+                registerIncoming();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.attachment() instanceof Connection connection) {
+                        read(connection);
+                    } else {
+                        receiveDatagrams();
+                    }
+                }
+                long now = System.nanoTime();
+                if (current != null && current.size() > 0 && now - current.startedNanos() >= lingerNanos) {
+                    flush();
+                }
+                resumePaused();
+                if (now >= nextIdleCheckNanos) {
+                    closeIdle(now);
+                    nextIdleCheckNanos = now + IDLE_CHECK_NANOS;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Selector loop failed", e);
+        } finally {
+            if (current != null && current.size() > 0) {
+                flush();
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) {
+                    close(connection);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.debug("Closing selector failed", e);
+            }
+        }
+    }
+
+    private long selectTimeoutMillis() {
+        if (current == null || current.size() == 0) {
+            return 1000;
+        }
+        long remaining = lingerNanos - (System.nanoTime() - current.startedNanos());
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    private void registerIncoming() {
+        SocketChannel channel;
+        while ((channel = incoming.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                Connection connection = new Connection(channel, config.connectionBufferBytes,
+                        String.valueOf(channel.getRemoteAddress()));
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                log.debug("Could not register connection: {}", e.getMessage());
+                metrics.openConnections.decrementAndGet();
+                metrics.closedConnections.increment();
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void read(Connection connection) {
+        for (int reads = 0; reads < MAX_READS_PER_WAKEUP; reads++) {
+            int count;
+            try {
+                count = connection.channel.read(connection.buffer);
+            } catch (IOException e) {
+                log.debug("Read from {} failed: {}", connection.remote, e.getMessage());
+                close(connection);
+                return;
+            }
+            if (count < 0) {
+                close(connection);
+                return;
+            }
+            if (count == 0) {
+                return;
+            }
+            connection.bytes += count;
+            connection.lastReadNanos = System.nanoTime();
+            metrics.bytesReceived.add(count);
+            if (!decodeBuffered(connection)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decode every complete frame in the connection's buffer and keep the remainder.
+     *
+     * @return false if the connection was paused or closed
+     */
+    private boolean decodeBuffered(Connection connection) {
+        ByteBuffer buffer = connection.buffer;
+        buffer.flip();
+        int position = buffer.position();
+        int limit = buffer.limit();
+        try {
+            while (true) {
+                int length = FrameCodec.bodyLength(buffer, position, limit);
+                if (length < 0 || limit - position < FrameCodec.LENGTH_BYTES + length) {
+                    break;
+                }
+                if (!ensureBatch()) {
+                    pause(connection);
+                    break;
+                }
+                if (FrameCodec.decode(buffer, position, current)) {
+                    connection.frames++;
+                    metrics.framesDecoded.increment();
+                } else {
+                    metrics.framesInvalid.increment();
+                }
+                position += FrameCodec.LENGTH_BYTES + length;
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Closing {}: {}", connection.remote, e.getMessage());
+            metrics.protocolErrors.increment();
+            close(connection);
+            return false;
+        }
+        buffer.position(position);
+        buffer.compact();
+        return !connection.paused;
+    }
+
+    private void receiveDatagrams() throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; i++) {
+            datagram.clear();
+            if (udp.receive(datagram) == null) {
+                return;
+            }
+            datagram.flip();
+            metrics.datagramsReceived.increment();
+            metrics.bytesReceived.add(datagram.remaining());
+            decodeDatagram();
+        }
+    }
+
+    private void decodeDatagram() {
+        int position = 0;
+        int limit = datagram.limit();
+        try {
+            while (position < limit) {
+                int length = FrameCodec.bodyLength(datagram, position, limit);
+                if (length < 0 || limit - position < FrameCodec.LENGTH_BYTES + length) {
+                    throw new IllegalArgumentException("Truncated frame");
+                }
+                if (!ensureBatch()) {
+                    metrics.datagramsDropped.increment();
+                    return;
+                }
+                if (FrameCodec.decode(datagram, position, current)) {
+                    metrics.framesDecoded.increment();
+                } else {
+                    metrics.framesInvalid.increment();
+                }
+                position += FrameCodec.LENGTH_BYTES + length;
+            }
+        } catch (IllegalArgumentException e) {
+            metrics.protocolErrors.increment();
+        }
+    }
+
+    /**
+     * Make sure there is a batch with room for one more fix.
+     */
+    private boolean ensureBatch() {
+        if (current != null && current.isFull()) {
+            flush();
+        }
+        if (current == null) {
+            current = forwarder.acquire();
+        }
+        return current != null;
+    }
+
+    private void flush() {
+        forwarder.submit(current);
+        current = null;
+    }
+
+    private void pause(Connection connection) {
+        connection.paused = true;
+        connection.key.interestOps(0);
+        paused.add(connection);
+        metrics.pausedConnections.incrementAndGet();
+        metrics.backpressurePauses.increment();
+    }
+
+    private void resumePaused() {
+        while (!paused.isEmpty() && ((current != null && !current.isFull()) || forwarder.hasFreeBatch())) {
+            Connection connection = paused.poll();
+            connection.paused = false;
+            metrics.pausedConnections.decrementAndGet();
+            // Frames that were already buffered come first; decoding them may pause it again
+            if (decodeBuffered(connection)) {
+                connection.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void closeIdle(long now) {
+        if (idleTimeoutNanos <= 0) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection && !connection.paused
+                    && now - connection.lastReadNanos > idleTimeoutNanos) {
+                metrics.idleTimeouts.increment();
+                close(connection);
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        if (connection.paused) {
+            paused.remove(connection);
+            connection.paused = false;
+            metrics.pausedConnections.decrementAndGet();
+        }
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        metrics.openConnections.decrementAndGet();
+        metrics.closedConnections.increment();
+        log.debug("Closed {} after {} frames, {} bytes", connection.remote, connection.frames, connection.bytes);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Closing channel failed: {}", e.getMessage());
+        }
+    }
+}